@@ -0,0 +1,74 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+
+/**
+ * Represents the ADVANCED obstacle avoidance algorithm. The speed falls in proportion to the clearance in front
+ * and the car steers away from the nearer side, the harder the closer the obstacle in front is,
+ * so it follows corridors and rounds obstacles instead of stopping at each of them.
+ * It keeps no state, every decision is made from the newest readings alone.
+ *
+ * @author Rafał Dąbrowski
+ */
+class AdvancedAutonomy implements AutonomousAlgorithm {
+    static final int STOP_DISTANCE_MM = SimpleAutonomy.STOP_DISTANCE_MM;
+    //  Farther than this, an obstacle in front does not slow the car down
+    static final int CLEAR_DISTANCE_MM = 1500;
+    //  Farther than this, a wall on the side does not steer the car
+    static final int SIDE_RANGE_MM = 600;
+    static final int MAX_THROTTLE = 80;
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void drive(TelemetryFrame telemetry, DriveMixer mixer) {
+        mixer.arcade(turn(telemetry.frontDistance, telemetry.leftDistance, telemetry.rightDistance),
+                throttle(telemetry.frontDistance));
+    }
+
+    /**
+     * This method returns the throttle for the clearance in front,
+     * which falls from the highest one at CLEAR_DISTANCE_MM to none at STOP_DISTANCE_MM.
+     *
+     * @param frontDistance The distance to the obstacle in front, in millimetres.
+     * @return The throttle offset, ranges from <0, MAX_THROTTLE>.
+     */
+    static int throttle(int frontDistance) {
+        int clearance = Math.min(frontDistance, CLEAR_DISTANCE_MM) - STOP_DISTANCE_MM;
+
+        if (clearance <= 0) {
+            return 0;
+        }
+
+        return MAX_THROTTLE * clearance / (CLEAR_DISTANCE_MM - STOP_DISTANCE_MM);
+    }
+
+    /**
+     * This method returns the turn away from the nearer side. With an obstacle in front
+     * the car turns towards the side with more room as well, pivoting once it has stopped.
+     *
+     * @param frontDistance The distance to the obstacle in front, in millimetres.
+     * @param leftDistance  The distance to the obstacle on the left, in millimetres.
+     * @param rightDistance The distance to the obstacle on the right, in millimetres.
+     * @return The turn offset, ranges from <-100, 100>, positive to the right.
+     */
+    static int turn(int frontDistance, int leftDistance, int rightDistance) {
+        int left = Math.min(leftDistance, SIDE_RANGE_MM);
+        int right = Math.min(rightDistance, SIDE_RANGE_MM);
+        int turn = DriveMixer.MAX_INPUT * (right - left) / SIDE_RANGE_MM;
+        int front = Math.min(frontDistance, CLEAR_DISTANCE_MM);
+
+        int turnAway = SimpleAutonomy.turnAway(leftDistance, rightDistance);
+
+        if (front <= STOP_DISTANCE_MM) {
+            return turnAway;
+        }
+
+        //  The urgency grows as the obstacle in front gets closer
+        turn += turnAway * (CLEAR_DISTANCE_MM - front) / (CLEAR_DISTANCE_MM - STOP_DISTANCE_MM);
+
+        return Math.max(-DriveMixer.MAX_INPUT, Math.min(DriveMixer.MAX_INPUT, turn));
+    }
+}
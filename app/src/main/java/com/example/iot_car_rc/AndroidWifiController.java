@@ -0,0 +1,50 @@
+package com.example.iot_car_rc;
+
+import android.net.wifi.WifiConfiguration;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+
+/**
+ * Represents the WifiController backed by the Android WifiManager.
+ *
+ * @author Rafał Dąbrowski
+ */
+class AndroidWifiController implements WifiController {
+    private final WifiManager wifiManager;
+
+    /**
+     * A constructor for AndroidWifiController
+     *
+     * @param wifiManager The Wi-Fi manager of the system.
+     * @return AndroidWifiController instance.
+     */
+    AndroidWifiController(WifiManager wifiManager) {
+        this.wifiManager = wifiManager;
+    }
+
+    @Override
+    public boolean isWifiEnabled() {
+        return this.wifiManager.isWifiEnabled();
+    }
+
+    @Override
+    public int addNetwork(String ssid) {
+        WifiConfiguration wifiConfiguration = new WifiConfiguration();
+        wifiConfiguration.SSID = String.format("\"%s\"", ssid);
+        wifiConfiguration.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+
+        return this.wifiManager.addNetwork(wifiConfiguration);
+    }
+
+    @Override
+    public boolean connect(int networkId) {
+        return this.wifiManager.enableNetwork(networkId, true) && this.wifiManager.reconnect();
+    }
+
+    @Override
+    public int getConnectedNetworkId() {
+        WifiInfo info = this.wifiManager.getConnectionInfo();
+
+        return info == null ? NO_NETWORK : info.getNetworkId();
+    }
+}
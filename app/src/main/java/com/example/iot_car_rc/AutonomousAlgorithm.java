@@ -0,0 +1,34 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+
+/**
+ * Interface for the obstacle avoidance algorithms the autonomous engine drives the car with.
+ * An algorithm turns the newest telemetry into stick offsets, which it mixes into motor speeds.
+ * It is called once per tick of the engine, on its thread, and every call is timed
+ * against the engine's budget, so it must neither block nor allocate memory.
+ *
+ * <p>A sensor without an echo reports TelemetryFrame.NO_READING, which is farther
+ * than any obstacle, so the algorithms treat it as free space.
+ *
+ * @author Rafał Dąbrowski
+ */
+interface AutonomousAlgorithm {
+    /**
+     * This method forgets what the algorithm has learned from earlier telemetry,
+     * it is called whenever the engine switches to the algorithm.
+     *
+     * @return Nothing.
+     */
+    void reset();
+
+    /**
+     * This method decides how to drive from the newest telemetry and mixes it into motor speeds.
+     * The frame is the same as on the previous tick if no newer one has arrived since.
+     *
+     * @param telemetry The newest telemetry frame.
+     * @param mixer     The mixer the decision is mixed with, the engine sends its result to the car.
+     * @return Nothing.
+     */
+    void drive(TelemetryFrame telemetry, DriveMixer mixer);
+}
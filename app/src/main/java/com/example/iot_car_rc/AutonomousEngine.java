@@ -0,0 +1,418 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+import com.example.iot_car_rc.core.FloatDriveMixer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents the autonomous driving engine, which runs the obstacle avoidance algorithms on the phone.
+ * On every tick it takes the newest telemetry frame, lets the algorithm decide how to drive
+ * and hands the motor speeds to its output, the command transmitter.
+ *
+ * <p>Every tick must finish within a fixed budget, a small part of the tick period,
+ * so the engine adds next to nothing to the age of the telemetry it decides on. A tick which overruns the budget
+ * falls back to the next simpler algorithm, down to SIMPLE, which keeps no state and costs next to nothing.
+ * Once RECOVERY_TICKS ticks in a row have taken less than half the budget,
+ * the engine steps back up towards the selected algorithm, one at a time.
+ * Without fresh telemetry the engine stops the motors, it never drives blind.
+ * If the telemetry stays stale for RELEASE_NANOS, the engine hands the driving back to the car,
+ * which runs the algorithm on board, and takes over again once fresh telemetry arrives.
+ *
+ * <p>The telemetry queue is filled by the transmitter's receiver thread and drained by the engine thread only.
+ * Ticks follow the monotonic clock, like those of the CommandScheduler.
+ *
+ * @author Rafał Dąbrowski
+ */
+class AutonomousEngine implements Runnable, FixedRateLoop.Task {
+    static final int TICK_RATE = 50;
+    //  A tenth of the tick period, the rest belongs to the sender, the receiver and the user interface
+    static final long TICK_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    static final long STALE_TELEMETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+    //  Stale for this long, the telemetry is not coming back soon, e.g. the car stopped streaming it
+    static final long RELEASE_NANOS = TimeUnit.SECONDS.toNanos(2);
+    //  Five seconds at the tick rate
+    static final int RECOVERY_TICKS = 250;
+    private static final int TELEMETRY_CAPACITY = 64;
+
+    /**
+     * Interface for the receiver of the motor speeds the engine decides on, called on the engine thread.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Output {
+        /**
+         * This method drives the car.
+         *
+         * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+         * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+         * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+         * @param drivingAlgorithm The algorithm which decided on the speeds.
+         * @return Nothing.
+         */
+        void drive(int leftMotorSpeed, int rightMotorSpeed, int direction, int drivingAlgorithm);
+
+        /**
+         * This method hands the driving back to the car, which runs the algorithm on board.
+         *
+         * @param drivingAlgorithm The selected driving algorithm.
+         * @return Nothing.
+         */
+        void release(int drivingAlgorithm);
+    }
+
+    //  Indexed by the value of the driving algorithm, from the simplest to the richest
+    private final AutonomousAlgorithm[] algorithms = {
+            new SimpleAutonomy(), new AdvancedAutonomy(), new ComplexAutonomy()
+    };
+    private final TelemetryRing telemetry = new TelemetryRing(TELEMETRY_CAPACITY);
+    private final Output output;
+    private final long budgetNanos;
+    private final long tickPeriodNanos = TimeUnit.SECONDS.toNanos(1) / TICK_RATE;
+
+    //  Used by the engine thread only
+    private final TelemetryFrame latest = new TelemetryFrame();
+    private final DriveMixer mixer = new FloatDriveMixer();
+    private long latestReceivedNanos = -1;
+    private int appliedAlgorithm = -1;
+    private int cleanTicks;
+    private boolean stale;
+    private long staleSinceNanos;
+    private boolean released;
+
+    private final LatencyHistogram tickTimes;
+    private final MetricsRegistry.Counter overrunCount;
+    private final MetricsRegistry.Counter fallbackCount;
+    private final MetricsRegistry.Counter recoveryCount;
+    private final MetricsRegistry.Counter staleCount;
+    private final MetricsRegistry.Counter releaseCount;
+
+    private volatile int selectedAlgorithm = DrivingAlgorithm.SIMPLE.getDrivingAlgorithm();
+    private volatile int effectiveAlgorithm = DrivingAlgorithm.SIMPLE.getDrivingAlgorithm();
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    /**
+     * A constructor for AutonomousEngine
+     *
+     * @param output      The receiver of the motor speeds.
+     * @param metrics     The registry the engine's metrics are registered in.
+     * @param budgetNanos The longest a tick may take, in nanoseconds.
+     * @return AutonomousEngine instance.
+     * @throws IllegalArgumentException if the budget is not positive.
+     */
+    AutonomousEngine(Output output, MetricsRegistry metrics, long budgetNanos) {
+        if (budgetNanos <= 0) {
+            throw new IllegalArgumentException("The tick budget must be positive");
+        }
+
+        this.output = output;
+        this.budgetNanos = budgetNanos;
+        this.tickTimes = metrics.histogram("autonomy.tick_ns");
+        this.overrunCount = metrics.counter("autonomy.overruns");
+        this.fallbackCount = metrics.counter("autonomy.fallbacks");
+        this.recoveryCount = metrics.counter("autonomy.recoveries");
+        this.staleCount = metrics.counter("autonomy.stale_ticks");
+        this.releaseCount = metrics.counter("autonomy.releases");
+        metrics.gauge("autonomy.algorithm", () -> this.effectiveAlgorithm);
+    }
+
+    /**
+     * This method removes the gauge of the engine, so the registry does not keep it reachable.
+     * The counters and the histogram hold no reference to the engine and are kept.
+     *
+     * @param metrics The registry the engine's metrics were registered in.
+     * @return Nothing.
+     */
+    void unregisterMetrics(MetricsRegistry metrics) {
+        metrics.remove("autonomy.algorithm");
+    }
+
+    /**
+     * This method replaces the implementation of a driving algorithm. It must be called before the engine is started.
+     *
+     * @param drivingAlgorithm The driving algorithm.
+     * @param algorithm        Its implementation.
+     * @return Nothing.
+     */
+    void setAlgorithm(DrivingAlgorithm drivingAlgorithm, AutonomousAlgorithm algorithm) {
+        this.algorithms[drivingAlgorithm.getDrivingAlgorithm()] = algorithm;
+    }
+
+    /**
+     * This method selects the driving algorithm, it takes effect from the next tick.
+     * It may be called from any thread.
+     *
+     * @param drivingAlgorithm The driving algorithm.
+     * @return Nothing.
+     */
+    void select(DrivingAlgorithm drivingAlgorithm) {
+        this.selectedAlgorithm = drivingAlgorithm.getDrivingAlgorithm();
+    }
+
+    /**
+     * This method returns the value of the algorithm which drives the car,
+     * lower than the selected one after a fallback.
+     *
+     * @return The value of the effective driving algorithm.
+     */
+    int getEffectiveAlgorithm() {
+        return this.effectiveAlgorithm;
+    }
+
+    /**
+     * This method returns the queue the received telemetry frames are offered to.
+     *
+     * @return The telemetry queue.
+     */
+    TelemetryRing getTelemetry() {
+        return this.telemetry;
+    }
+
+    /**
+     * This method starts the engine thread.
+     *
+     * @return Nothing.
+     */
+    synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.running = true;
+        this.stale = false;
+        this.released = false;
+        this.thread = new Thread(this, "AutonomousEngine");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * This method stops the engine thread, waits for it to finish and stops the motors,
+     * the transmitter would keep repeating the last speeds otherwise.
+     *
+     * @return Nothing.
+     * @throws InterruptedException if interrupted while waiting for the thread.
+     */
+    synchronized void stop() throws InterruptedException {
+        Thread thread = this.thread;
+
+        if (thread == null) {
+            return;
+        }
+
+        this.running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        this.thread = null;
+        this.output.drive(0, 0, DriveMixer.FORWARD, this.effectiveAlgorithm);
+    }
+
+    /**
+     * This method returns whether the engine thread is running.
+     *
+     * @return True if the engine is running, false otherwise.
+     */
+    boolean isRunning() {
+        return this.thread != null;
+    }
+
+    /**
+     * This method is the body of the engine thread.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public void run() {
+        FixedRateLoop.run(this);
+    }
+
+    /**
+     * This method returns whether the engine thread should keep ticking.
+     *
+     * @return True until the engine is stopped.
+     */
+    @Override
+    public boolean isTicking() {
+        return this.running;
+    }
+
+    /**
+     * This method returns the period of the ticks.
+     *
+     * @return The period of the ticks in nanoseconds.
+     */
+    @Override
+    public long getTickPeriodNanos() {
+        return this.tickPeriodNanos;
+    }
+
+    /**
+     * This method handles a single tick, the engine times its ticks itself.
+     *
+     * @param now           The time of the tick in nanoseconds, from System.nanoTime().
+     * @param latenessNanos How late the tick is in nanoseconds.
+     * @return Nothing.
+     */
+    @Override
+    public void onTick(long now, long latenessNanos) {
+        tick(now);
+    }
+
+    /**
+     * This method parks the engine thread until the next tick or until it is stopped.
+     *
+     * @param remainingNanos The time left until the next tick in nanoseconds.
+     * @return Nothing.
+     */
+    @Override
+    public void awaitTick(long remainingNanos) {
+        LockSupport.parkNanos(this, remainingNanos);
+    }
+
+    /**
+     * This method handles a single tick. It drives the car with the effective algorithm,
+     * or stops it or hands it back to the car if the telemetry is stale,
+     * and falls back or recovers depending on how long the tick took.
+     *
+     * @param now The time of the tick in nanoseconds, from System.nanoTime().
+     * @return True if the algorithm drove the car, false if the telemetry was stale.
+     */
+    boolean tick(long now) {
+        long start = System.nanoTime();
+        long receivedNanos;
+
+        //  Only the newest frame matters, the older ones were already acted on or are superseded
+        while ((receivedNanos = this.telemetry.poll(this.latest)) >= 0) {
+            this.latestReceivedNanos = receivedNanos;
+        }
+
+        int selected = this.selectedAlgorithm;
+
+        if (selected != this.appliedAlgorithm) {
+            this.appliedAlgorithm = selected;
+            switchTo(selected);
+        }
+
+        int effective = this.effectiveAlgorithm;
+
+        if (this.latestReceivedNanos < 0 || now - this.latestReceivedNanos > STALE_TELEMETRY_NANOS) {
+            this.staleCount.increment();
+
+            if (!this.stale) {
+                this.stale = true;
+                this.staleSinceNanos = now;
+            }
+
+            if (this.released) {
+                return false;
+            }
+
+            //  Zeros sent for good would keep the car from driving at all
+            if (now - this.staleSinceNanos >= RELEASE_NANOS) {
+                this.released = true;
+                this.releaseCount.increment();
+                this.output.release(selected);
+            } else {
+                this.output.drive(0, 0, DriveMixer.FORWARD, effective);
+            }
+
+            return false;
+        }
+
+        this.stale = false;
+        this.released = false;
+
+        this.algorithms[effective].drive(this.latest, this.mixer);
+        long elapsed = System.nanoTime() - start;
+        this.tickTimes.record(elapsed);
+
+        //  A late decision is still the best one there is, it is sent before falling back
+        this.output.drive(this.mixer.getLeftMotorSpeed(), this.mixer.getRightMotorSpeed(),
+                this.mixer.getDirection(), effective);
+
+        if (elapsed > this.budgetNanos) {
+            this.overrunCount.increment();
+            this.cleanTicks = 0;
+
+            if (effective > DrivingAlgorithm.SIMPLE.getDrivingAlgorithm()) {
+                this.fallbackCount.increment();
+                switchTo(effective - 1);
+            }
+        } else if (elapsed > this.budgetNanos / 2 || effective == selected) {
+            this.cleanTicks = 0;
+        } else if (++this.cleanTicks >= RECOVERY_TICKS) {
+            this.recoveryCount.increment();
+            switchTo(effective + 1);
+        }
+
+        return true;
+    }
+
+    /**
+     * This method returns the histogram of the compute time of the ticks, in nanoseconds.
+     *
+     * @return The tick time histogram.
+     */
+    LatencyHistogram getTickTimes() {
+        return this.tickTimes;
+    }
+
+    /**
+     * This method returns the number of ticks which overran the budget.
+     *
+     * @return Number of overruns.
+     */
+    long getOverrunCount() {
+        return this.overrunCount.get();
+    }
+
+    /**
+     * This method returns the number of falls back to a simpler algorithm.
+     *
+     * @return Number of fallbacks.
+     */
+    long getFallbackCount() {
+        return this.fallbackCount.get();
+    }
+
+    /**
+     * This method returns the number of steps back up towards the selected algorithm.
+     *
+     * @return Number of recoveries.
+     */
+    long getRecoveryCount() {
+        return this.recoveryCount.get();
+    }
+
+    /**
+     * This method returns the number of times the driving was handed back to the car for stale telemetry.
+     *
+     * @return Number of releases.
+     */
+    long getReleaseCount() {
+        return this.releaseCount.get();
+    }
+
+    /**
+     * This method returns the number of ticks which stopped the motors for stale telemetry.
+     *
+     * @return Number of stale ticks.
+     */
+    long getStaleCount() {
+        return this.staleCount.get();
+    }
+
+    /**
+     * This method makes the algorithm the effective one, starting it afresh.
+     *
+     * @param drivingAlgorithm The value of the driving algorithm.
+     * @return Nothing.
+     */
+    private void switchTo(int drivingAlgorithm) {
+        this.algorithms[drivingAlgorithm].reset();
+        this.effectiveAlgorithm = drivingAlgorithm;
+        this.cleanTicks = 0;
+    }
+}
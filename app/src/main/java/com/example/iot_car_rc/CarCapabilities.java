@@ -0,0 +1,133 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents what the firmware of a car supports, as it reports in the capability handshake:
+ * the command frame versions it understands, how many commands per second it takes,
+ * the driving algorithms it implements, whether it acknowledges commands and sends telemetry
+ * and whether it runs uploaded trajectories.
+ * Firmware which does not answer the handshake is assumed to have the LEGACY capabilities.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CarCapabilities {
+    static final int ACKNOWLEDGEMENTS = 1;
+    static final int TELEMETRY = 1 << 1;
+    static final int TRAJECTORIES = 1 << 2;
+    private static final int ALL_ALGORITHMS = (1 << DrivingAlgorithm.values().length) - 1;
+
+    //  The original firmware: JSON commands at the base command rate, no acknowledgements nor telemetry
+    static final CarCapabilities LEGACY = new CarCapabilities(0, 50, ALL_ALGORITHMS, 0);
+
+    private final int protocolVersion;
+    private final int maxCommandRate;
+    private final int algorithms;
+    private final int features;
+
+    /**
+     * A constructor for CarCapabilities
+     *
+     * @param protocolVersion The highest command frame version the car understands, 0 for JSON only.
+     * @param maxCommandRate  The highest number of commands per second the car takes.
+     * @param algorithms      The bit mask of the supported driving algorithms, bit n for the value n.
+     * @param features        The bit mask of the supported features, e.g. TELEMETRY.
+     * @return CarCapabilities instance.
+     */
+    CarCapabilities(int protocolVersion, int maxCommandRate, int algorithms, int features) {
+        this.protocolVersion = protocolVersion;
+        this.maxCommandRate = maxCommandRate;
+        this.algorithms = algorithms;
+        this.features = features;
+    }
+
+    /**
+     * This method returns the highest command frame version the car understands.
+     *
+     * @return The version, 0 for JSON only.
+     */
+    int getProtocolVersion() {
+        return this.protocolVersion;
+    }
+
+    /**
+     * This method returns the wire format the car should be sent.
+     * Firmware older than the sequenced binary frame is sent JSON, which every firmware understands.
+     *
+     * @return The wire format.
+     */
+    PacketFormat getPacketFormat() {
+        return this.protocolVersion >= CommandFrame.VERSION ? PacketFormat.BINARY : PacketFormat.JSON;
+    }
+
+    /**
+     * This method checks if the car understands frames repeating the previous commands.
+     *
+     * @return True if redundant frames are supported, false otherwise.
+     */
+    boolean supportsRedundancy() {
+        return this.protocolVersion >= CommandFrame.VERSION_3;
+    }
+
+    /**
+     * This method returns the highest number of commands per second the car takes.
+     *
+     * @return The command rate.
+     */
+    int getMaxCommandRate() {
+        return this.maxCommandRate;
+    }
+
+    /**
+     * This method returns the bit mask of the supported driving algorithms.
+     *
+     * @return The bit mask, bit n for the value n.
+     */
+    int getAlgorithms() {
+        return this.algorithms;
+    }
+
+    /**
+     * This method checks if the car implements a driving algorithm.
+     *
+     * @param drivingAlgorithm The driving algorithm.
+     * @return True if the algorithm is supported, false otherwise.
+     */
+    boolean supports(DrivingAlgorithm drivingAlgorithm) {
+        return (this.algorithms & (1 << drivingAlgorithm.getDrivingAlgorithm())) != 0;
+    }
+
+    /**
+     * This method returns the bit mask of the supported features.
+     *
+     * @return The bit mask.
+     */
+    int getFeatures() {
+        return this.features;
+    }
+
+    /**
+     * This method checks if the car acknowledges sequenced commands.
+     *
+     * @return True if commands are acknowledged, false otherwise.
+     */
+    boolean supportsAcknowledgements() {
+        return (this.features & ACKNOWLEDGEMENTS) != 0;
+    }
+
+    /**
+     * This method checks if the car sends telemetry.
+     *
+     * @return True if telemetry is sent, false otherwise.
+     */
+    boolean supportsTelemetry() {
+        return (this.features & TELEMETRY) != 0;
+    }
+
+    /**
+     * This method checks if the car runs uploaded trajectories in the TRAJECTORY driving mode.
+     *
+     * @return True if trajectories are supported, false otherwise.
+     */
+    boolean supportsTrajectories() {
+        return (this.features & TRAJECTORIES) != 0;
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.iot_car_rc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Represents the steps connecting the command transmitter to a car: discovering the car on the local network,
+ * asking it for its capabilities, configuring the transmitter for them and connecting it.
+ * A car whose firmware does not answer discovery is expected at the fallback address,
+ * one which does not answer the handshake is assumed to have the legacy capabilities,
+ * so older firmware is driven like it always was, only later.
+ *
+ * <p>The time every step takes is measured:
+ * <pre>
+ *     connect.discovery_ns  from the discovery request to the first answer, or the timeout
+ *     connect.handshake_ns  from the first capability request to the answer, or the last timeout
+ *     connect.total_ns      from the discovery request to the connected transmitter
+ * </pre>
+ * and the first connection is recorded in the startup trace as the FIRST_CONNECT milestone.
+ *
+ * <p>Connecting blocks the calling thread, it must not run on the main thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CarConnector {
+    static final String FIRST_CONNECT = "first_connect";
+    static final long DISCOVERY_TIMEOUT_MS = 300;
+    static final long HANDSHAKE_TIMEOUT_MS = 200;
+    static final int HANDSHAKE_ATTEMPTS = 3;
+
+    private final InetSocketAddress discoveryAddress;
+    private final InetSocketAddress fallbackAddress;
+    private final StartupTrace startupTrace;
+    private final LatencyHistogram discoveryTimes;
+    private final LatencyHistogram handshakeTimes;
+    private final LatencyHistogram connectTimes;
+    private final MetricsRegistry.Counter discoveredCount;
+    private final MetricsRegistry.Counter legacyCount;
+
+    /**
+     * A constructor for CarConnector
+     *
+     * @param discoveryAddress The address discovery requests are sent to, usually the broadcast address and the cars' port.
+     * @param fallbackAddress  The address of a car which does not answer discovery.
+     * @param metrics          The registry the connection metrics are registered in.
+     * @param startupTrace     The trace the first connection is recorded in, null records nothing.
+     * @return CarConnector instance.
+     */
+    CarConnector(InetSocketAddress discoveryAddress, InetSocketAddress fallbackAddress,
+                 MetricsRegistry metrics, StartupTrace startupTrace) {
+        this.discoveryAddress = discoveryAddress;
+        this.fallbackAddress = fallbackAddress;
+        this.startupTrace = startupTrace;
+        this.discoveryTimes = metrics.histogram("connect.discovery_ns");
+        this.handshakeTimes = metrics.histogram("connect.handshake_ns");
+        this.connectTimes = metrics.histogram("connect.total_ns");
+        this.discoveredCount = metrics.counter("connect.discovered");
+        this.legacyCount = metrics.counter("connect.legacy");
+    }
+
+    /**
+     * This method finds a car, configures the transmitter for its capabilities and connects the transmitter to it.
+     *
+     * @param transmitter The transmitter of the commands.
+     * @return The capabilities the transmitter was configured for.
+     * @throws IOException if the discovery socket could not be opened or used, or the transmitter could not be connected.
+     */
+    CarCapabilities connect(CommandTransmitter transmitter) throws IOException {
+        long start = System.nanoTime();
+        InetSocketAddress car;
+        CarCapabilities capabilities;
+
+        //  Discovery has a socket of its own, so replies to it never reach the transmitter's receiver
+        try (CommandTransport transport = new DatagramChannelTransport(true)) {
+            CarDiscovery discovery = new CarDiscovery(transport);
+
+            car = discovery.discover(this.discoveryAddress, DISCOVERY_TIMEOUT_MS);
+            long discovered = System.nanoTime();
+            this.discoveryTimes.record(discovered - start);
+
+            if (car != null) {
+                this.discoveredCount.increment();
+            } else {
+                car = this.fallbackAddress;
+            }
+
+            capabilities = discovery.handshake(car, HANDSHAKE_TIMEOUT_MS, HANDSHAKE_ATTEMPTS);
+            this.handshakeTimes.record(System.nanoTime() - discovered);
+        }
+
+        if (capabilities == null) {
+            this.legacyCount.increment();
+            capabilities = CarCapabilities.LEGACY;
+        }
+
+        transmitter.configure(capabilities);
+        transmitter.setInetAddress(car);
+        this.connectTimes.record(System.nanoTime() - start);
+
+        if (this.startupTrace != null) {
+            this.startupTrace.mark(FIRST_CONNECT);
+        }
+
+        return capabilities;
+    }
+
+    /**
+     * This method returns the histogram of the time it takes to connect, in nanoseconds.
+     *
+     * @return The connect time histogram.
+     */
+    LatencyHistogram getConnectTimes() {
+        return this.connectTimes;
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.iot_car_rc;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the discovery of cars on the local network and the capability handshake with one of them,
+ * over an unconnected transport of their own, before the command transmitter is connected.
+ * Discovery broadcasts a single DISCOVER request and gathers the ANNOUNCE replies,
+ * so all cars are found in one round trip. See DiscoveryMessage for the wire format.
+ *
+ * <p>Discovery is used by a single thread and blocks it, it must not run on the main thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CarDiscovery {
+    private static final int MAX_PACKET_SIZE = 1472;
+
+    private final CommandTransport transport;
+    private final Random random = new Random();
+    private final DiscoveryMessage request = new DiscoveryMessage();
+    private final DiscoveryMessage reply = new DiscoveryMessage();
+    private final ByteBuffer requestBuffer = ByteBuffer.allocate(DiscoveryMessage.CAPABILITIES_SIZE);
+    private final ByteBuffer replyBuffer = ByteBuffer.allocate(MAX_PACKET_SIZE);
+
+    /**
+     * A constructor for CarDiscovery
+     *
+     * @param transport The unconnected transport the requests are sent and the replies received on.
+     * @return CarDiscovery instance.
+     */
+    CarDiscovery(CommandTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * This method finds the first car answering a discovery request.
+     *
+     * @param target    The address the request is sent to, usually the broadcast address and the cars' port.
+     * @param timeoutMs The longest time to wait for an answer, in milliseconds.
+     * @return The address the car answered from, which commands are sent to, null if no car answered in time.
+     * @throws IOException if the request could not be sent or a reply received.
+     */
+    InetSocketAddress discover(InetSocketAddress target, long timeoutMs) throws IOException {
+        long nonce = nextNonce();
+        send(DiscoveryMessage.DISCOVER, nonce, target);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        return receive(DiscoveryMessage.ANNOUNCE, nonce, null, deadline);
+    }
+
+    /**
+     * This method finds the cars answering a discovery request.
+     * It waits until enough cars have answered or the time runs out.
+     *
+     * @param target    The address the request is sent to, usually the broadcast address and the cars' port.
+     * @param timeoutMs The longest time to wait for the answers, in milliseconds.
+     * @param maxCars   The number of cars after which it stops waiting.
+     * @param cars      The list the addresses of the cars are added to, every car once.
+     * @return Number of cars found.
+     * @throws IOException if the request could not be sent or a reply received.
+     */
+    int discover(InetSocketAddress target, long timeoutMs, int maxCars, List<InetSocketAddress> cars)
+            throws IOException {
+        long nonce = nextNonce();
+        send(DiscoveryMessage.DISCOVER, nonce, target);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        int found = 0;
+
+        while (found < maxCars) {
+            InetSocketAddress car = receive(DiscoveryMessage.ANNOUNCE, nonce, null, deadline);
+
+            if (car == null) {
+                break;
+            }
+
+            //  A car may answer a broadcast on more than one interface
+            if (!cars.contains(car)) {
+                cars.add(car);
+                found++;
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * This method asks a car for its capabilities. A lost request or reply is retried with the same nonce,
+     * so a late reply to an earlier attempt is accepted as well.
+     *
+     * @param car       The address of the car.
+     * @param timeoutMs The longest time to wait for a reply to every attempt, in milliseconds.
+     * @param attempts  The number of attempts.
+     * @return The capabilities of the car, null if it never answered, e.g. because its firmware predates the handshake.
+     * @throws IOException if a request could not be sent or a reply received.
+     */
+    CarCapabilities handshake(InetSocketAddress car, long timeoutMs, int attempts) throws IOException {
+        long nonce = nextNonce();
+
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            send(DiscoveryMessage.HELLO, nonce, car);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+            if (receive(DiscoveryMessage.CAPABILITIES, nonce, car, deadline) != null) {
+                return this.reply.toCapabilities();
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * This method returns a new nonce.
+     *
+     * @return The nonce, unsigned 32-bit.
+     */
+    private long nextNonce() {
+        return this.random.nextInt() & 0xFFFFFFFFL;
+    }
+
+    /**
+     * This method sends a request.
+     *
+     * @param type   The type of the request.
+     * @param nonce  The nonce of the request.
+     * @param target The address the request is sent to.
+     * @return Nothing.
+     * @throws IOException if the request could not be sent.
+     */
+    private void send(int type, long nonce, InetSocketAddress target) throws IOException {
+        this.requestBuffer.clear();
+        this.request.set(type, nonce).encode(this.requestBuffer);
+        this.requestBuffer.flip();
+
+        if (!this.transport.send(this.requestBuffer, target)) {
+            Log.e("The request was dropped", "DISCOVERY_ERROR:send");
+        }
+    }
+
+    /**
+     * This method waits for the reply to a request, skipping any other packet.
+     *
+     * @param type     The type of the reply.
+     * @param nonce    The nonce of the request.
+     * @param from     The address the reply must come from, null for any.
+     * @param deadline The time after which it stops waiting, from System.nanoTime().
+     * @return The address the reply came from, null if none arrived in time.
+     * @throws IOException if a reply could not be received.
+     */
+    private InetSocketAddress receive(int type, long nonce, InetSocketAddress from, long deadline)
+            throws IOException {
+        while (true) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+            if (remainingMs <= 0) {
+                return null;
+            }
+
+            this.replyBuffer.clear();
+            SocketAddress sender = this.transport.receiveFrom(this.replyBuffer, remainingMs);
+
+            //  Nothing arrived, or the selector woke up without a packet
+            if (sender == null) {
+                continue;
+            }
+
+            this.replyBuffer.flip();
+
+            if (this.reply.decode(this.replyBuffer)
+                    && this.reply.type == type
+                    && this.reply.nonce == nonce
+                    && sender instanceof InetSocketAddress
+                    && (from == null || from.equals(sender))) {
+                return (InetSocketAddress) sender;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.iot_car_rc;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Represents a single target of the car fleet, either a car or a group of cars.
+ * A car and an addressed group hold their own drive state, command filter and sequence numbers,
+ * and are sent a command on every tick of the fleet. A group without an address
+ * only lists its member cars, a command for it is copied into the drive state of every member.
+ *
+ * <p>The drive state may be set from any thread, everything else but the counters
+ * and the link statistics is used by the fleet thread only.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CarEndpoint {
+    private final int id;
+    private final InetSocketAddress address;
+    private final int[] members;
+    private final boolean group;
+
+    final DriveState driveState = new DriveState();
+    final CommandFilter filter;
+    final LinkStatistics linkStatistics;
+    long nextSequence;
+
+    private volatile long sentCount;
+    private volatile long droppedCount;
+    private volatile long failedCount;
+
+    /**
+     * A constructor for CarEndpoint
+     *
+     * @param id           The identifier of the endpoint within the fleet.
+     * @param address      The address of the car or the group, null for a group sent to its members one by one.
+     * @param members      The identifiers of the member cars of a group sent to its members one by one.
+     * @param group        True for a group of cars, false for a car.
+     * @param filter       The filter deciding which drive states are sent.
+     * @param ackTimeoutMs The time after which an unacknowledged command counts as lost, in milliseconds.
+     * @return CarEndpoint instance.
+     */
+    CarEndpoint(int id, InetSocketAddress address, int[] members,
+                boolean group, CommandFilter filter, long ackTimeoutMs) {
+        this.id = id;
+        this.address = address;
+        this.members = members;
+        this.group = group;
+        this.filter = filter;
+        this.linkStatistics = new LinkStatistics(ackTimeoutMs);
+    }
+
+    /**
+     * This method returns the identifier of the endpoint within the fleet.
+     *
+     * @return The identifier.
+     */
+    int getId() {
+        return this.id;
+    }
+
+    /**
+     * This method returns the address commands are sent to.
+     *
+     * @return The address, null for a group sent to its members one by one.
+     */
+    InetSocketAddress getAddress() {
+        return this.address;
+    }
+
+    /**
+     * This method checks if the endpoint is a group of cars.
+     *
+     * @return True for a group, false for a car.
+     */
+    boolean isGroup() {
+        return this.group;
+    }
+
+    /**
+     * This method returns the identifiers of the member cars of a group.
+     *
+     * @return The member identifiers, null unless the group is sent to its members one by one.
+     */
+    int[] getMembers() {
+        return this.members;
+    }
+
+    /**
+     * This method returns the link statistics of the car, measured from its acknowledgements.
+     * Commands sent to an addressed group are not acknowledged per car, so its statistics stay empty.
+     *
+     * @return The link statistics.
+     */
+    LinkStatistics getLinkStatistics() {
+        return this.linkStatistics;
+    }
+
+    /**
+     * This method returns the filter, which suppresses unchanged and sub-threshold commands.
+     *
+     * @return The command filter.
+     */
+    CommandFilter getCommandFilter() {
+        return this.filter;
+    }
+
+    /**
+     * This method returns the number of commands sent to the endpoint.
+     *
+     * @return Number of sent commands.
+     */
+    long getSentCount() {
+        return this.sentCount;
+    }
+
+    /**
+     * This method returns the number of commands dropped because the socket was busy.
+     *
+     * @return Number of dropped commands.
+     */
+    long getDroppedCount() {
+        return this.droppedCount;
+    }
+
+    /**
+     * This method returns the number of commands which failed with an I/O error.
+     *
+     * @return Number of failed commands.
+     */
+    long getFailedCount() {
+        return this.failedCount;
+    }
+
+    /**
+     * This method records a command handed to the socket. Called on the fleet thread only.
+     *
+     * @param sequence The sequence number of the command.
+     * @param now      The send time in nanoseconds, from System.nanoTime().
+     * @return Nothing.
+     */
+    void onSent(long sequence, long now) {
+        this.sentCount++;
+
+        if (!this.group) {
+            this.linkStatistics.onSent(sequence, now);
+        }
+    }
+
+    /**
+     * This method records a command the socket could not take. Called on the fleet thread only.
+     *
+     * @return Nothing.
+     */
+    void onDropped() {
+        this.droppedCount++;
+    }
+
+    /**
+     * This method records a command which failed with an I/O error. Called on the fleet thread only.
+     *
+     * @return Nothing.
+     */
+    void onFailed() {
+        this.failedCount++;
+    }
+}
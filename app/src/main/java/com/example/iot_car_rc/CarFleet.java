@@ -0,0 +1,451 @@
+package com.example.iot_car_rc;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents a fleet of remote cars driven from a single unconnected socket and a single thread.
+ * Every car has its own drive state, command filter, sequence numbers and link statistics.
+ * On every tick the fleet thread sends each car which needs a command a binary frame,
+ * and between the ticks it reads the acknowledgements, which are matched to the cars by their address.
+ *
+ * <p>A group of cars is either sent to its members one by one, or sent a single frame
+ * to a broadcast or multicast address all of its cars listen on.
+ * Cars and groups are added from any thread, the registry is copied on write,
+ * so the fleet thread reads it without locking.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CarFleet implements Runnable, FixedRateLoop.Task {
+    static final int PORT = 4210;
+    private static final int COMMAND_RATE = 50;
+    private static final int QUANTIZATION_STEP = 1;
+    private static final int DEADBAND = 3;
+    private static final long KEEPALIVE_INTERVAL_MS = 250;
+    private static final long ACK_TIMEOUT_MS = 500;
+
+    private final CommandTransport transport;
+    private final long tickPeriodNanos;
+    private final LatencyHistogram tickLateness = new LatencyHistogram();
+
+    //  Copied on write under the lock of the fleet, read by the fleet thread without locking
+    private volatile CarEndpoint[] endpoints = new CarEndpoint[0];
+    private volatile Map<SocketAddress, CarEndpoint> cars = new HashMap<>();
+
+    //  Used by the fleet thread only
+    private final CommandFrame frame = new CommandFrame();
+    private final CommandAck ack = new CommandAck();
+    private final ByteBuffer message = ByteBuffer.allocateDirect(CommandFrame.SIZE);
+    private final ByteBuffer reply = ByteBuffer.allocateDirect(CommandFrame.MAX_JSON_SIZE);
+
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    /**
+     * A constructor for CarFleet. It sends 50 commands per second to every car.
+     *
+     * @return CarFleet instance.
+     * @throws IOException if the channel could not be opened.
+     */
+    CarFleet() throws IOException {
+        this(new DatagramChannelTransport(true), COMMAND_RATE);
+    }
+
+    /**
+     * A constructor for CarFleet
+     *
+     * @param transport      The unconnected transport carrying the packets to all cars.
+     * @param ticksPerSecond The rate of the ticks.
+     * @return CarFleet instance.
+     * @throws IllegalArgumentException if the rate is not positive.
+     */
+    CarFleet(CommandTransport transport, int ticksPerSecond) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("The tick rate must be positive");
+        }
+
+        this.transport = transport;
+        this.tickPeriodNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+    }
+
+    /**
+     * This method adds a car listening on the default port.
+     *
+     * @param address The IPv4 Address of the car.
+     * @return The identifier of the car.
+     * @throws UnknownHostException if no IP address for the host could be found.
+     */
+    int addCar(String address) throws UnknownHostException {
+        return addCar(new InetSocketAddress(InetAddress.getByName(address), PORT));
+    }
+
+    /**
+     * This method adds a car.
+     *
+     * @param address The address and port of the car.
+     * @return The identifier of the car.
+     * @throws IllegalArgumentException if a car with the address was already added.
+     */
+    synchronized int addCar(InetSocketAddress address) {
+        if (this.cars.containsKey(address)) {
+            throw new IllegalArgumentException("The car " + address + " was already added");
+        }
+
+        CarEndpoint car = add(address, null, false);
+
+        Map<SocketAddress, CarEndpoint> cars = new HashMap<>(this.cars);
+        cars.put(address, car);
+        this.cars = cars;
+
+        return car.getId();
+    }
+
+    /**
+     * This method adds a group of cars, which is sent a single frame
+     * to a broadcast or multicast address all of its cars listen on.
+     * Cars do not tell group frames apart, so a car is best driven either on its own or through the group.
+     *
+     * @param address The broadcast or multicast address and port of the group.
+     * @return The identifier of the group.
+     */
+    synchronized int addGroup(InetSocketAddress address) {
+        return add(address, null, true).getId();
+    }
+
+    /**
+     * This method adds a group of cars, a command for the group is set as the command of every member.
+     *
+     * @param carIds The identifiers of the member cars.
+     * @return The identifier of the group.
+     * @throws IllegalArgumentException if an identifier does not belong to a car.
+     */
+    synchronized int addGroup(int... carIds) {
+        for (int carId : carIds) {
+            if (carId < 0 || carId >= this.endpoints.length || this.endpoints[carId].isGroup()) {
+                throw new IllegalArgumentException("The identifier " + carId + " does not belong to a car");
+            }
+        }
+
+        return add(null, carIds.clone(), true).getId();
+    }
+
+    /**
+     * This method sends the command to a car or a group of cars.
+     * It only updates the drive state, which is sent on the next tick of the fleet.
+     *
+     * @param id               The identifier of the car or the group.
+     * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+     * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+     * @param drivingAlgorithm The algorithm used to drive the car.
+     * @return Nothing.
+     * @throws IllegalArgumentException if there is no car or group with the identifier.
+     */
+    void sendCommand(int id, int leftMotorSpeed, int rightMotorSpeed,
+                     int direction, int drivingMode, int drivingAlgorithm) {
+        CarEndpoint[] endpoints = this.endpoints;
+        CarEndpoint endpoint = get(endpoints, id);
+        int[] members = endpoint.getMembers();
+
+        if (members == null) {
+            endpoint.driveState.set(leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm);
+            return;
+        }
+
+        for (int member : members) {
+            endpoints[member].driveState.set(
+                    leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm
+            );
+        }
+    }
+
+    /**
+     * This method returns a car or a group of cars, which holds its send statistics.
+     *
+     * @param id The identifier of the car or the group.
+     * @return The car or the group.
+     * @throws IllegalArgumentException if there is no car or group with the identifier.
+     */
+    CarEndpoint getCar(int id) {
+        return get(this.endpoints, id);
+    }
+
+    /**
+     * This method returns the number of cars and groups in the fleet.
+     *
+     * @return Number of cars and groups.
+     */
+    int getCarCount() {
+        return this.endpoints.length;
+    }
+
+    /**
+     * This method returns the histogram of tick lateness in nanoseconds.
+     *
+     * @return The tick lateness histogram.
+     */
+    LatencyHistogram getTickLateness() {
+        return this.tickLateness;
+    }
+
+    /**
+     * This method starts the fleet thread.
+     *
+     * @return Nothing.
+     */
+    synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this, "CarFleet");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * This method stops the fleet thread and waits for it to finish.
+     *
+     * @return Nothing.
+     * @throws InterruptedException if interrupted while waiting for the thread.
+     */
+    synchronized void stop() throws InterruptedException {
+        Thread thread = this.thread;
+
+        if (thread == null) {
+            return;
+        }
+
+        this.running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        this.thread = null;
+    }
+
+    /**
+     * This method stops the fleet thread and closes the transport.
+     *
+     * @return Nothing.
+     */
+    void close() {
+        try {
+            stop();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            this.transport.close();
+        } catch (IOException exception) {
+            Log.e(exception.getMessage(), "FLEET_ERROR:close");
+        }
+    }
+
+    /**
+     * This method is the body of the fleet thread.
+     * It sends the commands on every tick and reads the acknowledgements until the next tick is due.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public void run() {
+        FixedRateLoop.run(this);
+    }
+
+    /**
+     * This method returns whether the fleet thread should keep ticking.
+     *
+     * @return True until the fleet is stopped.
+     */
+    @Override
+    public boolean isTicking() {
+        return this.running;
+    }
+
+    /**
+     * This method returns the period of the ticks.
+     *
+     * @return The period of the ticks in nanoseconds.
+     */
+    @Override
+    public long getTickPeriodNanos() {
+        return this.tickPeriodNanos;
+    }
+
+    /**
+     * This method records how late the tick is and handles it.
+     *
+     * @param now           The time of the tick in nanoseconds, from System.nanoTime().
+     * @param latenessNanos How late the tick is in nanoseconds.
+     * @return Nothing.
+     */
+    @Override
+    public void onTick(long now, long latenessNanos) {
+        this.tickLateness.record(latenessNanos);
+        onTick(now);
+    }
+
+    /**
+     * This method handles a single tick. It sends every car and addressed group
+     * its drive state if the filter of the car lets it through.
+     *
+     * @param now The time of the tick in nanoseconds, from System.nanoTime().
+     * @return Number of commands handed to the socket.
+     */
+    int onTick(long now) {
+        int sent = 0;
+
+        for (CarEndpoint endpoint : this.endpoints) {
+            if (endpoint.getAddress() != null && send(endpoint, now)) {
+                sent++;
+            }
+        }
+
+        return sent;
+    }
+
+    /**
+     * This method sends the drive state of the endpoint if the filter lets it through.
+     *
+     * @param endpoint The car or the addressed group.
+     * @param now      The time of the tick in nanoseconds, from System.nanoTime().
+     * @return True if a command was handed to the socket, false otherwise.
+     */
+    private boolean send(CarEndpoint endpoint, long now) {
+        long state = endpoint.filter.filter(endpoint.driveState.get(), now);
+
+        if (state == DriveState.EMPTY) {
+            return false;
+        }
+
+        long sequence = endpoint.nextSequence++;
+
+        this.frame.set(
+                DriveState.leftMotorSpeed(state),
+                DriveState.rightMotorSpeed(state),
+                DriveState.direction(state),
+                DriveState.drivingMode(state),
+                DriveState.drivingAlgorithm(state)
+        ).stamp(sequence, now / 1000);
+
+        this.message.clear();
+        this.frame.encodeBinary(this.message);
+        this.message.flip();
+
+        try {
+            if (!this.transport.send(this.message, endpoint.getAddress())) {
+                endpoint.onDropped();
+                return false;
+            }
+        } catch (IOException exception) {
+            Log.e(exception.getMessage(), "FLEET_ERROR:send");
+            endpoint.onFailed();
+            return false;
+        }
+
+        endpoint.onSent(sequence, now);
+
+        return true;
+    }
+
+    /**
+     * This method reads the acknowledgements until the next tick is due.
+     * Waits shorter than a millisecond are parked, as the socket timeout has a millisecond resolution.
+     *
+     * @param remainingNanos The time left until the next tick in nanoseconds.
+     * @return Nothing.
+     */
+    @Override
+    public void awaitTick(long remainingNanos) {
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(remainingNanos);
+
+        if (remainingMs == 0) {
+            LockSupport.parkNanos(this, remainingNanos);
+            return;
+        }
+
+        try {
+            this.reply.clear();
+            SocketAddress from = this.transport.receiveFrom(this.reply, remainingMs);
+
+            if (from != null) {
+                this.reply.flip();
+                onAck(from, System.nanoTime());
+            }
+        } catch (IOException exception) {
+            if (this.running) {
+                Log.e(exception.getMessage(), "FLEET_ERROR:receive");
+                LockSupport.parkNanos(this, remainingNanos);
+            }
+        }
+    }
+
+    /**
+     * This method matches an acknowledgement in the reply buffer to the car it came from.
+     *
+     * @param from          The address the reply was sent from.
+     * @param receivedNanos The receive time in nanoseconds, from System.nanoTime().
+     * @return Nothing.
+     */
+    private void onAck(SocketAddress from, long receivedNanos) {
+        CarEndpoint car = this.cars.get(from);
+
+        if (car == null || !this.ack.decode(this.reply)) {
+            return;
+        }
+
+        //  The echoed timestamp wraps around every 71 minutes, the difference does not
+        int roundTripMicros = (int) (receivedNanos / 1000) - this.ack.timestamp;
+        car.linkStatistics.onAck(this.ack.sequence, TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+    }
+
+    /**
+     * This method appends a car or a group to the registry. Called under the lock of the fleet.
+     *
+     * @param address The address of the car or the group, null for a group sent to its members one by one.
+     * @param members The identifiers of the member cars of a group sent to its members one by one.
+     * @param group   True for a group of cars, false for a car.
+     * @return The new endpoint.
+     */
+    private CarEndpoint add(InetSocketAddress address, int[] members, boolean group) {
+        CarEndpoint[] endpoints = Arrays.copyOf(this.endpoints, this.endpoints.length + 1);
+        CarEndpoint endpoint = new CarEndpoint(
+                endpoints.length - 1, address, members, group,
+                new CommandFilter(QUANTIZATION_STEP, DEADBAND, KEEPALIVE_INTERVAL_MS), ACK_TIMEOUT_MS
+        );
+
+        endpoints[endpoint.getId()] = endpoint;
+        this.endpoints = endpoints;
+
+        return endpoint;
+    }
+
+    /**
+     * This method returns the endpoint with the identifier.
+     *
+     * @param endpoints The registry.
+     * @param id        The identifier of the car or the group.
+     * @return The car or the group.
+     * @throws IllegalArgumentException if there is no car or group with the identifier.
+     */
+    private static CarEndpoint get(CarEndpoint[] endpoints, int id) {
+        if (id < 0 || id >= endpoints.length) {
+            throw new IllegalArgumentException("There is no car or group " + id);
+        }
+
+        return endpoints[id];
+    }
+}
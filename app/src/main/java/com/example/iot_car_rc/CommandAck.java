@@ -0,0 +1,82 @@
+package com.example.iot_car_rc;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents the acknowledgement the remote car sends back for every sequenced command frame.
+ * It echoes the sequence number and the send timestamp of the frame, so the round-trip time
+ * is known from the acknowledgement alone. The acknowledgement is mutable and meant to be reused.
+ *
+ * <p>Binary layout (version 1, {@value #SIZE} bytes, big-endian):
+ * <pre>
+ *  0  magic             0xCB
+ *  1  version           1
+ *  2  sequence number   unsigned 32-bit, copied from the command frame
+ *  6  send timestamp    unsigned 32-bit, copied from the command frame
+ * </pre>
+ *
+ * @author Rafał Dąbrowski
+ */
+class CommandAck {
+    static final byte MAGIC = (byte) 0xCB;
+    static final byte VERSION = 1;
+    static final int SIZE = 10;
+
+    long sequence;
+    int timestamp;
+
+    /**
+     * This method sets the content of the acknowledgement from the acknowledged frame.
+     *
+     * @param frame The acknowledged command frame.
+     * @return This acknowledgement.
+     */
+    CommandAck set(CommandFrame frame) {
+        this.sequence = frame.sequence;
+        this.timestamp = frame.timestamp;
+
+        return this;
+    }
+
+    /**
+     * This method writes the acknowledgement into the buffer.
+     *
+     * @param buffer The buffer the acknowledgement is written into.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encode(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE) {
+            throw new BufferOverflowException();
+        }
+
+        buffer.put(MAGIC)
+                .put(VERSION)
+                .putInt((int) sequence)
+                .putInt(timestamp);
+    }
+
+    /**
+     * This method reads an acknowledgement from the buffer, starting at the buffer's current position.
+     * The buffer's position is only advanced if the acknowledgement was read.
+     *
+     * @param buffer The buffer the acknowledgement is read from.
+     * @return True if a valid acknowledgement was read, false otherwise.
+     */
+    boolean decode(ByteBuffer buffer) {
+        int start = buffer.position();
+
+        if (buffer.remaining() < SIZE
+                || buffer.get(start) != MAGIC
+                || buffer.get(start + 1) != VERSION) {
+            return false;
+        }
+
+        this.sequence = buffer.getInt(start + 2) & 0xFFFFFFFFL;
+        this.timestamp = buffer.getInt(start + 6);
+        buffer.position(start + SIZE);
+
+        return true;
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.iot_car_rc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the change-detection stage between the joystick mixer and the transmitter.
+ * Motor speeds are quantized, and a drive state is suppressed if it only differs
+ * from the last sent one by motor speed changes within the deadband.
+ * A suppressed state is still sent once nothing was sent for the maximum silence interval,
+ * so the car keeps receiving commands while the joystick rests.
+ *
+ * <p>The filter is used by a single thread, the counters may be read from any thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CommandFilter {
+    private static final int MAX_SPEED = 255;
+
+    private volatile int quantizationStep;
+    private volatile int deadband;
+    private volatile long maxSilenceNanos;
+
+    private long lastSentState = DriveState.EMPTY;
+    private long lastSentNanos;
+
+    private volatile long offeredCount;
+    private volatile long suppressedCount;
+    private volatile long refreshCount;
+
+    /**
+     * A constructor for CommandFilter
+     *
+     * @param quantizationStep The step motor speeds are rounded to, 1 keeps them as they are.
+     * @param deadband         The largest motor speed change which is suppressed, 0 only suppresses duplicates.
+     * @param maxSilenceMs     The longest time without a command, in milliseconds.
+     * @return CommandFilter instance.
+     * @throws IllegalArgumentException if a parameter is out of range.
+     */
+    CommandFilter(int quantizationStep, int deadband, long maxSilenceMs) {
+        setQuantizationStep(quantizationStep);
+        setDeadband(deadband);
+        setMaxSilence(maxSilenceMs);
+    }
+
+    /**
+     * This method sets the step motor speeds are rounded to.
+     *
+     * @param quantizationStep The quantization step, ranges from <1, 255>.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the step is out of range.
+     */
+    void setQuantizationStep(int quantizationStep) {
+        if (quantizationStep < 1 || quantizationStep > MAX_SPEED) {
+            throw new IllegalArgumentException("The quantization step must range from 1 to 255");
+        }
+
+        this.quantizationStep = quantizationStep;
+    }
+
+    /**
+     * This method sets the largest motor speed change which is suppressed.
+     *
+     * @param deadband The deadband, ranges from <0, 255>.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the deadband is out of range.
+     */
+    void setDeadband(int deadband) {
+        if (deadband < 0 || deadband > MAX_SPEED) {
+            throw new IllegalArgumentException("The deadband must range from 0 to 255");
+        }
+
+        this.deadband = deadband;
+    }
+
+    /**
+     * This method sets the longest time without a command.
+     *
+     * @param maxSilenceMs The maximum silence interval in milliseconds.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the interval is not positive.
+     */
+    void setMaxSilence(long maxSilenceMs) {
+        if (maxSilenceMs <= 0) {
+            throw new IllegalArgumentException("The maximum silence interval must be positive");
+        }
+
+        this.maxSilenceNanos = TimeUnit.MILLISECONDS.toNanos(maxSilenceMs);
+    }
+
+    /**
+     * This method decides if the drive state should be sent.
+     *
+     * @param state The packed drive state.
+     * @param now   The current time in nanoseconds, from System.nanoTime().
+     * @return The quantized state to be sent, or DriveState.EMPTY if it is suppressed.
+     */
+    long filter(long state, long now) {
+        if (state == DriveState.EMPTY) {
+            return DriveState.EMPTY;
+        }
+
+        this.offeredCount++;
+
+        int leftMotorSpeed = quantize(DriveState.leftMotorSpeed(state));
+        int rightMotorSpeed = quantize(DriveState.rightMotorSpeed(state));
+        long quantized = DriveState.pack(
+                leftMotorSpeed,
+                rightMotorSpeed,
+                DriveState.direction(state),
+                DriveState.drivingMode(state),
+                DriveState.drivingAlgorithm(state)
+        );
+
+        if (isWithinDeadband(quantized)) {
+            if (now - this.lastSentNanos < this.maxSilenceNanos) {
+                this.suppressedCount++;
+                return DriveState.EMPTY;
+            }
+
+            this.refreshCount++;
+        }
+
+        this.lastSentState = quantized;
+        this.lastSentNanos = now;
+
+        return quantized;
+    }
+
+    /**
+     * This method returns the number of drive states offered to the filter.
+     *
+     * @return Number of offered states.
+     */
+    long getOfferedCount() {
+        return this.offeredCount;
+    }
+
+    /**
+     * This method returns the number of suppressed drive states.
+     *
+     * @return Number of suppressed states.
+     */
+    long getSuppressedCount() {
+        return this.suppressedCount;
+    }
+
+    /**
+     * This method returns the number of unchanged drive states sent
+     * because the maximum silence interval has elapsed.
+     *
+     * @return Number of refreshes.
+     */
+    long getRefreshCount() {
+        return this.refreshCount;
+    }
+
+    /**
+     * This method returns the fraction of offered drive states which were suppressed.
+     *
+     * @return The suppression ratio, ranges from <0, 1>.
+     */
+    double getSuppressionRatio() {
+        long offered = this.offeredCount;
+
+        return offered == 0 ? 0 : (double) this.suppressedCount / offered;
+    }
+
+    /**
+     * This method checks if the quantized state only differs from the last sent one
+     * by motor speed changes within the deadband. Stopping a motor is never suppressed.
+     *
+     * @param quantized The quantized packed drive state.
+     * @return True if the state is within the deadband, false otherwise.
+     */
+    private boolean isWithinDeadband(long quantized) {
+        long last = this.lastSentState;
+
+        if (last == DriveState.EMPTY
+                || DriveState.direction(quantized) != DriveState.direction(last)
+                || DriveState.drivingMode(quantized) != DriveState.drivingMode(last)
+                || DriveState.drivingAlgorithm(quantized) != DriveState.drivingAlgorithm(last)) {
+            return false;
+        }
+
+        return isWithinDeadband(DriveState.leftMotorSpeed(quantized), DriveState.leftMotorSpeed(last))
+                && isWithinDeadband(DriveState.rightMotorSpeed(quantized), DriveState.rightMotorSpeed(last));
+    }
+
+    /**
+     * This method checks if the motor speed change is within the deadband.
+     *
+     * @param speed     The new motor speed.
+     * @param lastSpeed The last sent motor speed.
+     * @return True if the change is within the deadband, false otherwise.
+     */
+    private boolean isWithinDeadband(int speed, int lastSpeed) {
+        if (speed == lastSpeed) {
+            return true;
+        }
+
+        return speed != 0 && Math.abs(speed - lastSpeed) <= this.deadband;
+    }
+
+    /**
+     * This method rounds the motor speed to the nearest quantization step.
+     *
+     * @param speed The motor speed, ranges from <0, 255>.
+     * @return The quantized motor speed, ranges from <0, 255>.
+     */
+    private int quantize(int speed) {
+        int step = this.quantizationStep;
+
+        return Math.min(MAX_SPEED, (speed + step / 2) / step * step);
+    }
+}
@@ -0,0 +1,396 @@
+package com.example.iot_car_rc;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a single command frame sent to the remote car.
+ * The frame is mutable and meant to be reused, neither encoding nor decoding allocates memory.
+ *
+ * <p>Binary layout (version 2, {@value #SIZE} bytes, big-endian):
+ * <pre>
+ *  0  magic             0xCA
+ *  1  version           2
+ *  2  flags             reserved, 0
+ *  3  left motor speed  0..255
+ *  4  right motor speed 0..255
+ *  5  direction         0 is backward, 1 is forward
+ *  6  driving mode      0 is remote, 1 is autonomous, 2 follows a trajectory
+ *  7  driving algorithm see DrivingAlgorithm
+ *  8  sequence number   unsigned 32-bit, echoed by the car in its CommandAck
+ * 12  send timestamp    unsigned 32-bit microseconds of the phone's monotonic clock, echoed as well
+ * </pre>
+ * Version 1 frames are the first 8 bytes only, they are still decoded.
+ *
+ * <p>Redundant frames (version 3) are version 2 frames followed by the previous commands,
+ * so the car recovers the commands of lost packets from the next packet which arrives:
+ * <pre>
+ * 16  history count     0..{@value #MAX_REDUNDANCY}
+ * 17  history           one entry per previous command, newest first, with the sequence numbers
+ *                       counting down from the frame's one. An entry is a byte with a bit set for
+ *                       every value which differs from the newer command (bit 0 left motor speed,
+ *                       1 right motor speed, 2 direction, 3 driving mode, 4 driving algorithm),
+ *                       followed by those values only
+ * </pre>
+ * The JSON format carries neither the sequence number nor the timestamp,
+ * so older firmware never acknowledges commands.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CommandFrame {
+    static final byte MAGIC = (byte) 0xCA;
+    static final byte VERSION = 2;
+    static final int SIZE = 16;
+    static final byte VERSION_1 = 1;
+    static final int VERSION_1_SIZE = 8;
+    static final byte VERSION_3 = 3;
+    static final int MAX_REDUNDANCY = 8;
+    //  A version 3 frame with a full history in which every value changes
+    static final int MAX_REDUNDANT_SIZE = SIZE + 1 + MAX_REDUNDANCY * 6;
+
+    //  The shifts of the values in a command packed like the DriveState, in history entry bit order
+    private static final int[] FIELD_SHIFTS = {32, 24, 16, 8, 0};
+    //  Marks a decoded frame which did not carry a sequence number
+    static final long NO_SEQUENCE = -1;
+
+    //  The longest JSON packet, 92 bytes of keys and punctuation and five values
+    //  of at most 11 characters each (a negative 32-bit integer)
+    static final int MAX_JSON_SIZE = 147;
+
+    private static final byte[] JSON_LEFT_MOTOR_SPEED = ascii("{\"left_motor_speed\":");
+    private static final byte[] JSON_RIGHT_MOTOR_SPEED = ascii(",\"right_motor_speed\":");
+    private static final byte[] JSON_DIRECTION = ascii(",\"direction\":");
+    private static final byte[] JSON_DRIVING_MODE = ascii(",\"driving_mode\":");
+    private static final byte[] JSON_DRIVING_ALGORITHM = ascii(",\"driving_algorithm\":");
+
+    int leftMotorSpeed;
+    int rightMotorSpeed;
+    int direction;
+    int drivingMode;
+    int drivingAlgorithm;
+    int flags;
+    long sequence;
+    int timestamp;
+
+    //  The previous commands carried by a decoded redundant frame, packed like the DriveState, newest first
+    final long[] history = new long[MAX_REDUNDANCY];
+    int historyCount;
+
+    /**
+     * This method sets the content of the frame.
+     *
+     * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+     * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+     * @param drivingAlgorithm The algorithm used to drive the car.
+     * @return This frame.
+     */
+    CommandFrame set(int leftMotorSpeed, int rightMotorSpeed,
+                     int direction, int drivingMode, int drivingAlgorithm) {
+        this.leftMotorSpeed = leftMotorSpeed;
+        this.rightMotorSpeed = rightMotorSpeed;
+        this.direction = direction;
+        this.drivingMode = drivingMode;
+        this.drivingAlgorithm = drivingAlgorithm;
+        this.flags = 0;
+
+        return this;
+    }
+
+    /**
+     * This method sets the sequence number and the send timestamp of the frame.
+     *
+     * @param sequence  The sequence number, only the lower 32 bits are sent.
+     * @param timestamp The send time in microseconds, only the lower 32 bits are sent.
+     * @return This frame.
+     */
+    CommandFrame stamp(long sequence, long timestamp) {
+        this.sequence = sequence & 0xFFFFFFFFL;
+        this.timestamp = (int) timestamp;
+
+        return this;
+    }
+
+    /**
+     * This method writes the frame into the buffer in the requested format,
+     * starting at the buffer's current position.
+     *
+     * @param buffer The buffer the frame is written into.
+     * @param format The wire format of the frame.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encode(ByteBuffer buffer, PacketFormat format) {
+        if (format == PacketFormat.JSON) {
+            encodeJson(buffer);
+        } else {
+            encodeBinary(buffer);
+        }
+    }
+
+    /**
+     * This method writes the frame into the buffer in the binary format.
+     *
+     * @param buffer The buffer the frame is written into.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encodeBinary(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE) {
+            throw new BufferOverflowException();
+        }
+
+        buffer.put(MAGIC)
+                .put(VERSION)
+                .put((byte) flags)
+                .put((byte) leftMotorSpeed)
+                .put((byte) rightMotorSpeed)
+                .put((byte) direction)
+                .put((byte) drivingMode)
+                .put((byte) drivingAlgorithm)
+                .putInt((int) sequence)
+                .putInt(timestamp);
+    }
+
+    /**
+     * This method writes the frame into the buffer in the binary format,
+     * followed by the newest commands of the history, delta-compressed.
+     * The history must hold the commands sent with the sequence numbers
+     * counting down from the frame's one.
+     *
+     * @param buffer  The buffer the frame is written into.
+     * @param history The previous commands.
+     * @param depth   The largest number of previous commands written, at most MAX_REDUNDANCY.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encodeRedundant(ByteBuffer buffer, CommandHistory history, int depth) {
+        int count = Math.min(Math.min(history.size(), depth), MAX_REDUNDANCY);
+
+        if (buffer.remaining() < SIZE + 1 + count * 6) {
+            throw new BufferOverflowException();
+        }
+
+        int start = buffer.position();
+        encodeBinary(buffer);
+        buffer.put(start + 1, VERSION_3);
+        buffer.put((byte) count);
+
+        long newer = DriveState.pack(leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm);
+
+        for (int age = 0; age < count; age++) {
+            long older = history.get(age);
+            int maskPosition = buffer.position();
+            int mask = 0;
+
+            buffer.put((byte) 0);
+
+            for (int field = 0; field < 5; field++) {
+                int value = field(older, field);
+
+                if (value != field(newer, field)) {
+                    mask |= 1 << field;
+                    buffer.put((byte) value);
+                }
+            }
+
+            buffer.put(maskPosition, (byte) mask);
+            newer = older;
+        }
+    }
+
+    /**
+     * This method writes the frame into the buffer as a stringified JSON object,
+     * with the keys in the order used by older firmware. It is the output of Android's JSONObject,
+     * which keeps the keys in insertion order, the desktop org.json orders them by hash.
+     *
+     * @param buffer The buffer the frame is written into.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encodeJson(ByteBuffer buffer) {
+        buffer.put(JSON_LEFT_MOTOR_SPEED);
+        putDecimal(buffer, leftMotorSpeed);
+        buffer.put(JSON_RIGHT_MOTOR_SPEED);
+        putDecimal(buffer, rightMotorSpeed);
+        buffer.put(JSON_DIRECTION);
+        putDecimal(buffer, direction);
+        buffer.put(JSON_DRIVING_MODE);
+        putDecimal(buffer, drivingMode);
+        buffer.put(JSON_DRIVING_ALGORITHM);
+        putDecimal(buffer, drivingAlgorithm);
+        buffer.put((byte) '}');
+    }
+
+    /**
+     * This method reads a binary frame from the buffer, starting at the buffer's current position.
+     * The buffer's position is only advanced if the frame was read.
+     * Version 1 frames are read with the sequence number set to NO_SEQUENCE,
+     * the history of redundant frames is read into the history array.
+     *
+     * @param buffer The buffer the frame is read from.
+     * @return True if a valid frame was read, false otherwise.
+     */
+    boolean decodeBinary(ByteBuffer buffer) {
+        int start = buffer.position();
+
+        if (buffer.remaining() < VERSION_1_SIZE || buffer.get(start) != MAGIC) {
+            return false;
+        }
+
+        byte version = buffer.get(start + 1);
+        int size;
+
+        this.historyCount = 0;
+
+        if (version == VERSION_3 && buffer.remaining() > SIZE) {
+            size = decodeHistory(buffer, start);
+
+            if (size < 0) {
+                return false;
+            }
+
+            this.sequence = buffer.getInt(start + 8) & 0xFFFFFFFFL;
+            this.timestamp = buffer.getInt(start + 12);
+        } else if (version == VERSION && buffer.remaining() >= SIZE) {
+            size = SIZE;
+            this.sequence = buffer.getInt(start + 8) & 0xFFFFFFFFL;
+            this.timestamp = buffer.getInt(start + 12);
+        } else if (version == VERSION_1) {
+            size = VERSION_1_SIZE;
+            this.sequence = NO_SEQUENCE;
+            this.timestamp = 0;
+        } else {
+            return false;
+        }
+
+        this.flags = buffer.get(start + 2) & 0xFF;
+        this.leftMotorSpeed = buffer.get(start + 3) & 0xFF;
+        this.rightMotorSpeed = buffer.get(start + 4) & 0xFF;
+        this.direction = buffer.get(start + 5) & 0xFF;
+        this.drivingMode = buffer.get(start + 6) & 0xFF;
+        this.drivingAlgorithm = buffer.get(start + 7) & 0xFF;
+        buffer.position(start + size);
+
+        return true;
+    }
+
+    /**
+     * This method reads the history of a redundant frame, relative to the command at the start of the frame.
+     *
+     * @param buffer The buffer the frame is read from.
+     * @param start  The position of the frame in the buffer.
+     * @return The size of the whole frame, or -1 if the history is malformed.
+     */
+    private int decodeHistory(ByteBuffer buffer, int start) {
+        int count = buffer.get(start + SIZE) & 0xFF;
+        int position = start + SIZE + 1;
+        int end = buffer.limit();
+
+        if (count > MAX_REDUNDANCY) {
+            return -1;
+        }
+
+        long newer = DriveState.pack(
+                buffer.get(start + 3) & 0xFF,
+                buffer.get(start + 4) & 0xFF,
+                buffer.get(start + 5) & 0xFF,
+                buffer.get(start + 6) & 0xFF,
+                buffer.get(start + 7) & 0xFF
+        );
+
+        for (int age = 0; age < count; age++) {
+            if (position >= end) {
+                return -1;
+            }
+
+            int mask = buffer.get(position++) & 0xFF;
+            long older = newer;
+
+            for (int field = 0; field < 5; field++) {
+                if ((mask & 1 << field) != 0) {
+                    if (position >= end) {
+                        return -1;
+                    }
+
+                    older = withField(older, field, buffer.get(position++) & 0xFF);
+                }
+            }
+
+            this.history[age] = older;
+            newer = older;
+        }
+
+        this.historyCount = count;
+
+        return position - start;
+    }
+
+    /**
+     * This method returns a value of the packed command.
+     *
+     * @param state The packed command.
+     * @param field The value, 0 is the left motor speed and 4 the driving algorithm.
+     * @return The value.
+     */
+    private static int field(long state, int field) {
+        return (int) (state >>> FIELD_SHIFTS[field]) & 0xFF;
+    }
+
+    /**
+     * This method replaces a value of the packed command.
+     *
+     * @param state The packed command.
+     * @param field The value, 0 is the left motor speed and 4 the driving algorithm.
+     * @param value The new value, ranges from <0, 255>.
+     * @return The packed command with the value replaced.
+     */
+    private static long withField(long state, int field, int value) {
+        int shift = FIELD_SHIFTS[field];
+
+        return state & ~(0xFFL << shift) | (long) value << shift;
+    }
+
+    /**
+     * This method writes a decimal representation of the value as ASCII characters.
+     *
+     * @param buffer The buffer the value is written into.
+     * @param value  The value to be written.
+     * @return Nothing.
+     */
+    private static void putDecimal(ByteBuffer buffer, int value) {
+        long remaining = value;
+
+        if (remaining < 0) {
+            buffer.put((byte) '-');
+            remaining = -remaining;
+        }
+
+        long divisor = 1;
+        while (divisor * 10 <= remaining) {
+            divisor *= 10;
+        }
+
+        for (; divisor > 0; divisor /= 10) {
+            buffer.put((byte) ('0' + remaining / divisor));
+            remaining %= divisor;
+        }
+    }
+
+    /**
+     * This method converts the string into ASCII bytes.
+     *
+     * @param string The string to be converted.
+     * @return ASCII bytes of the string.
+     */
+    private static byte[] ascii(String string) {
+        byte[] bytes = new byte[string.length()];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) string.charAt(i);
+        }
+
+        return bytes;
+    }
+}
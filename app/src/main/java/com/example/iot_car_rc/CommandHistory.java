@@ -0,0 +1,75 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents the last commands sent to the car, packed like the DriveState, newest first.
+ * Redundant command frames repeat them, so the car can recover the commands of lost packets
+ * from the next packet which arrives. Used by the sender thread only, it does not allocate memory.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CommandHistory {
+    private final long[] states;
+    private int newest = -1;
+    private int size;
+
+    /**
+     * A constructor for CommandHistory
+     *
+     * @param depth The number of commands kept.
+     * @return CommandHistory instance.
+     * @throws IllegalArgumentException if the depth is not positive.
+     */
+    CommandHistory(int depth) {
+        if (depth <= 0) {
+            throw new IllegalArgumentException("The history depth must be positive");
+        }
+
+        this.states = new long[depth];
+    }
+
+    /**
+     * This method adds a command, the oldest one is forgotten if the history is full.
+     *
+     * @param state The packed command.
+     * @return Nothing.
+     */
+    void add(long state) {
+        this.newest = (this.newest + 1) % this.states.length;
+        this.states[this.newest] = state;
+        this.size = Math.min(this.size + 1, this.states.length);
+    }
+
+    /**
+     * This method returns a command.
+     *
+     * @param age The age of the command, 0 is the newest one.
+     * @return The packed command.
+     * @throws IndexOutOfBoundsException if there is no command of that age.
+     */
+    long get(int age) {
+        if (age < 0 || age >= this.size) {
+            throw new IndexOutOfBoundsException("There is no command of age " + age);
+        }
+
+        return this.states[(this.newest - age + this.states.length) % this.states.length];
+    }
+
+    /**
+     * This method returns the number of commands kept.
+     *
+     * @return Number of commands.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * This method forgets every command.
+     *
+     * @return Nothing.
+     */
+    void clear() {
+        this.newest = -1;
+        this.size = 0;
+    }
+}
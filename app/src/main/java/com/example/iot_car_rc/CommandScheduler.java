@@ -0,0 +1,183 @@
+package com.example.iot_car_rc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents a fixed-rate command scheduler.
+ * On every tick it samples the current drive state and publishes it to the sender
+ * if the command filter lets it through. The filter repeats an unchanged state
+ * as a keepalive once its maximum silence interval elapses,
+ * so the car can tell "hold steady" apart from a lost link.
+ * Ticks follow the monotonic clock, the lateness of every tick is recorded for tuning.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CommandScheduler implements Runnable, FixedRateLoop.Task {
+    private final DriveState driveState;
+    private final CommandSender sender;
+    private final CommandFilter filter;
+    private final LatencyHistogram tickLateness = new LatencyHistogram();
+
+    private volatile long tickPeriodNanos;
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    /**
+     * A constructor for CommandScheduler
+     *
+     * @param driveState     The drive state sampled on every tick.
+     * @param sender         The sender the commands are published to.
+     * @param filter         The filter deciding which drive states are sent.
+     * @param ticksPerSecond The rate of the ticks.
+     * @return CommandScheduler instance.
+     * @throws IllegalArgumentException if the rate is not positive.
+     */
+    CommandScheduler(DriveState driveState, CommandSender sender,
+                     CommandFilter filter, int ticksPerSecond) {
+        this.driveState = driveState;
+        this.sender = sender;
+        this.filter = filter;
+        setRate(ticksPerSecond);
+    }
+
+    /**
+     * This method sets the rate of the ticks, it takes effect from the next tick.
+     *
+     * @param ticksPerSecond The rate of the ticks.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the rate is not positive.
+     */
+    void setRate(int ticksPerSecond) {
+        if (ticksPerSecond <= 0) {
+            throw new IllegalArgumentException("The tick rate must be positive");
+        }
+
+        this.tickPeriodNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+    }
+
+    /**
+     * This method returns the rate of the ticks.
+     *
+     * @return The rate of the ticks.
+     */
+    int getRate() {
+        return (int) Math.round((double) TimeUnit.SECONDS.toNanos(1) / this.tickPeriodNanos);
+    }
+
+    /**
+     * This method starts the scheduler thread.
+     *
+     * @return Nothing.
+     */
+    synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this, "CommandScheduler");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * This method stops the scheduler thread and waits for it to finish.
+     *
+     * @return Nothing.
+     * @throws InterruptedException if interrupted while waiting for the thread.
+     */
+    synchronized void stop() throws InterruptedException {
+        Thread thread = this.thread;
+
+        if (thread == null) {
+            return;
+        }
+
+        this.running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        this.thread = null;
+    }
+
+    /**
+     * This method is the body of the scheduler thread.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public void run() {
+        FixedRateLoop.run(this);
+    }
+
+    /**
+     * This method returns whether the scheduler thread should keep ticking.
+     *
+     * @return True until the scheduler is stopped.
+     */
+    @Override
+    public boolean isTicking() {
+        return this.running;
+    }
+
+    /**
+     * This method returns the period of the ticks.
+     *
+     * @return The period of the ticks in nanoseconds.
+     */
+    @Override
+    public long getTickPeriodNanos() {
+        return this.tickPeriodNanos;
+    }
+
+    /**
+     * This method records how late the tick is and handles it.
+     *
+     * @param now           The time of the tick in nanoseconds, from System.nanoTime().
+     * @param latenessNanos How late the tick is in nanoseconds.
+     * @return Nothing.
+     */
+    @Override
+    public void onTick(long now, long latenessNanos) {
+        this.tickLateness.record(latenessNanos);
+        onTick(now);
+    }
+
+    /**
+     * This method parks the scheduler thread until the next tick or until it is stopped.
+     *
+     * @param remainingNanos The time left until the next tick in nanoseconds.
+     * @return Nothing.
+     */
+    @Override
+    public void awaitTick(long remainingNanos) {
+        LockSupport.parkNanos(this, remainingNanos);
+    }
+
+    /**
+     * This method handles a single tick. It publishes the drive state if the filter lets it through.
+     *
+     * @param now The time of the tick in nanoseconds, from System.nanoTime().
+     * @return True if a command was published, false otherwise.
+     */
+    boolean onTick(long now) {
+        long state = this.filter.filter(this.driveState.get(), now);
+
+        if (state == DriveState.EMPTY) {
+            return false;
+        }
+
+        this.sender.publish(state);
+
+        return true;
+    }
+
+    /**
+     * This method returns the histogram of tick lateness in nanoseconds.
+     *
+     * @return The tick lateness histogram.
+     */
+    LatencyHistogram getTickLateness() {
+        return this.tickLateness;
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.iot_car_rc;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents a long-lived sender thread with a single "latest value wins" mailbox.
+ * Publishing a command replaces any command the sender has not picked up yet,
+ * so the car always receives the freshest state instead of a queue of stale ones.
+ * Commands are packed into a single long like the DriveState,
+ * neither publishing nor sending allocates memory.
+ *
+ * @author Rafał Dąbrowski
+ */
+class CommandSender implements Runnable {
+    private static final long EMPTY = DriveState.EMPTY;
+
+    private final AtomicLong mailbox = new AtomicLong(EMPTY);
+    private final AtomicLong publishedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final Transmission transmission;
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Interface for the actual transmission of a command, called on the sender thread only.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Transmission {
+        /**
+         * This method transmits the command to the remote car.
+         *
+         * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+         * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+         * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+         * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+         * @param drivingAlgorithm The algorithm used to drive the car.
+         * @return Nothing.
+         * @throws IOException if the command could not be sent.
+         */
+        void transmit(int leftMotorSpeed, int rightMotorSpeed,
+                      int direction, int drivingMode, int drivingAlgorithm) throws IOException;
+    }
+
+    /**
+     * A constructor for CommandSender
+     *
+     * @param transmission The transmission used to send the commands.
+     * @return CommandSender instance.
+     */
+    CommandSender(Transmission transmission) {
+        this.transmission = transmission;
+    }
+
+    /**
+     * This method starts the sender thread.
+     *
+     * @return Nothing.
+     */
+    synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this, "CommandSender");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * This method stops the sender thread and waits for it to finish.
+     * A command still in the mailbox is dropped.
+     *
+     * @return Nothing.
+     * @throws InterruptedException if interrupted while waiting for the thread.
+     */
+    synchronized void stop() throws InterruptedException {
+        Thread thread = this.thread;
+
+        if (thread == null) {
+            return;
+        }
+
+        this.running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        this.thread = null;
+    }
+
+    /**
+     * This method publishes the newest command. It never blocks,
+     * a command published before and not sent yet is superseded.
+     *
+     * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+     * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+     * @param drivingAlgorithm The algorithm used to drive the car.
+     * @return Nothing.
+     */
+    void publish(int leftMotorSpeed, int rightMotorSpeed,
+                 int direction, int drivingMode, int drivingAlgorithm) {
+        publish(DriveState.pack(leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm));
+    }
+
+    /**
+     * This method publishes the newest command packed like the DriveState.
+     *
+     * @param command The packed command.
+     * @return Nothing.
+     */
+    void publish(long command) {
+        this.publishedCount.incrementAndGet();
+
+        if (this.mailbox.getAndSet(command) != EMPTY) {
+            this.coalescedCount.incrementAndGet();
+        }
+
+        LockSupport.unpark(this.thread);
+    }
+
+    /**
+     * This method is the body of the sender thread. It sends the newest command
+     * whenever there is one and parks otherwise.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public void run() {
+        while (this.running) {
+            long command = this.mailbox.getAndSet(EMPTY);
+
+            if (command == EMPTY) {
+                LockSupport.park(this);
+                continue;
+            }
+
+            try {
+                this.transmission.transmit(
+                        DriveState.leftMotorSpeed(command),
+                        DriveState.rightMotorSpeed(command),
+                        DriveState.direction(command),
+                        DriveState.drivingMode(command),
+                        DriveState.drivingAlgorithm(command)
+                );
+                this.sentCount.incrementAndGet();
+            } catch (IOException exception) {
+                this.failedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * This method returns the number of published commands.
+     *
+     * @return Number of published commands.
+     */
+    long getPublishedCount() {
+        return this.publishedCount.get();
+    }
+
+    /**
+     * This method returns the number of commands superseded before being sent.
+     *
+     * @return Number of coalesced commands.
+     */
+    long getCoalescedCount() {
+        return this.coalescedCount.get();
+    }
+
+    /**
+     * This method returns the number of commands sent successfully.
+     *
+     * @return Number of sent commands.
+     */
+    long getSentCount() {
+        return this.sentCount.get();
+    }
+
+    /**
+     * This method returns the number of commands the transmission failed to send.
+     *
+     * @return Number of failed commands.
+     */
+    long getFailedCount() {
+        return this.failedCount.get();
+    }
+}
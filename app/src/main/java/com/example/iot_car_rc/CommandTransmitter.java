@@ -1,173 +1,651 @@
 package com.example.iot_car_rc;
 
-import android.os.AsyncTask;
 import android.util.Log;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import java.io.IOException;
-import java.lang.ref.WeakReference;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents a Command Transmitter.
+ * Binary commands carry a sequence number and a send timestamp, the acknowledgements
+ * the car sends back are read by a receiver thread and feed the link statistics.
+ * Telemetry frames the car sends back on the same socket are queued for the user interface.
+ * Every command handed to the socket is appended to the session log, if one is set.
  *
  * @author Rafał Dąbrowski
  */
-class CommandTransmitter {
-    private static final CommandTransmitter INSTANCE = null;
+class CommandTransmitter implements CommandSender.Transmission, PacketReceiver.Listener {
+    private static CommandTransmitter instance;
+    private static final int COMMAND_RATE = 50;
+    private static final int MIN_COMMAND_RATE = 10;
+    private static final long RATE_CONTROL_INTERVAL_MS = 1_000;
+    private static final int QUANTIZATION_STEP = 1;
+    private static final int DEADBAND = 3;
+    private static final long KEEPALIVE_INTERVAL_MS = 250;
+    private static final long ACK_TIMEOUT_MS = 500;
+    private static final int TELEMETRY_CAPACITY = 256;
     private final int PORT = 4210;
-    private DatagramSocket socket;
-    private InetAddress inetAddress;
-
-    /**
-     * Represents an AsyncTask used to send commands using UDP
-     *
-     * @author Rafał Dąbrowski
-     */
-    private static class SendCommandTask extends AsyncTask<String, Void, Void> {
-        //  Needed to access CommandTransmitter properties
-        //  and prevent memory leakage since the class is static
-        private WeakReference<CommandTransmitter> commandTransmitterReference;
-
-        /**
-         * A constructor for SendCommandTask
-         *
-         * @param commandTransmitter a CommandTransmitter context
-         * @return SendCommandTask instance.
-         */
-        SendCommandTask(CommandTransmitter commandTransmitter) {
-            this.commandTransmitterReference = new WeakReference<>(commandTransmitter);
-        }
-
-        /**
-         * This method sets the transmitter's IP Address.
-         *
-         * @param strings An array of strings containing JSON objects,
-         *                only the first one is used.
-         * @return Nothing.
-         */
-        @Override
-        protected Void doInBackground(String... strings) {
-            //  Get the command transmitter instance
-            CommandTransmitter commandTransmitter = this.commandTransmitterReference.get();
-
-            //  Allocate space for the message
-            ByteBuffer message = ByteBuffer.allocate(strings[0].getBytes().length);
-            //  Set the message and rewind bytes
-            message.put(strings[0].getBytes()).rewind();
-            //  Create the packet
-            DatagramPacket packet = new DatagramPacket(
-                    message.array(),                //  The message as byte array
-                    message.limit(),                //  The message length
-                    commandTransmitter.inetAddress, //  IP Address
-                    commandTransmitter.PORT         //  Port
-            );
-
-            try {
-                commandTransmitter.socket.send(packet);
-            } catch (IOException exception) {
-                Log.e(exception.getMessage(), "TRANSMITTER_ERROR:SendCommandTask");
-            }
+    private final CommandTransport transport;
+    private volatile PacketFormat packetFormat = PacketFormat.BINARY;
+    private volatile int redundancy;
+    private volatile RateController rateController;
+    private volatile StartupTrace startupTrace;
+    private volatile CarCapabilities capabilities = CarCapabilities.LEGACY;
+    private volatile boolean configured;
+    private volatile InetSocketAddress address;
+    private volatile TelemetryRing telemetrySink;
+    private volatile SessionRecorder sessionRecorder;
+
+    //  The scheduler samples the drive state at a fixed rate and publishes it to the sender
+    private final DriveState driveState = new DriveState();
+    private final CommandSender sender = new CommandSender(this);
+    private final CommandFilter filter =
+            new CommandFilter(QUANTIZATION_STEP, DEADBAND, KEEPALIVE_INTERVAL_MS);
+    private final CommandScheduler scheduler =
+            new CommandScheduler(driveState, sender, filter, COMMAND_RATE);
+
+    //  Commands are sent from a single sender thread, which is the only user of these
+    private final CommandFrame frame = new CommandFrame();
+    private final ByteBuffer message = ByteBuffer.allocateDirect(
+            Math.max(CommandFrame.MAX_JSON_SIZE, CommandFrame.MAX_REDUNDANT_SIZE));
+    private final CommandHistory history = new CommandHistory(CommandFrame.MAX_REDUNDANCY);
+    private long nextSequence;
+    private boolean controlStarted;
+    private long nextControlNanos;
+    private long previousSendErrors;
+    private boolean firstCommandSent;
 
-            return null;
+    //  Replies are read on the receiver thread, which is the only user of the ack and the telemetry frame
+    private final PacketReceiver receiver;
+    private final CommandAck ack = new CommandAck();
+    private final LinkStatistics linkStatistics = new LinkStatistics(ACK_TIMEOUT_MS);
+    private final TelemetryFrame telemetryFrame = new TelemetryFrame();
+    private final TelemetryRing telemetry = new TelemetryRing(TELEMETRY_CAPACITY);
+
+    //  Health metrics, updated on the sender thread without locking or allocating
+    private final MetricsRegistry.Counter commandsSent;
+    private final MetricsRegistry.Counter sendsDropped;
+    private final MetricsRegistry.Counter sendFailures;
+    private final MetricsRegistry.Counter bytesSent;
+    private final LatencyHistogram sendTimes;
+    private final MetricsRegistry.Counter rateBackOffs;
+    private final MetricsRegistry.Counter rateRampUps;
+    private final MetricsRegistry.Counter redundancyUps;
+    private final MetricsRegistry.Counter redundancyDowns;
+
+    /**
+     * This method returns the Command Transmitter instance, it is created on the first call
+     * and shared until it is closed.
+     *
+     * @return Command Transmitter instance.
+     * @throws IOException if the channel could not be opened.
+     * @see IOException
+     */
+    static synchronized CommandTransmitter getInstance() throws IOException {
+        if (instance == null) {
+            //  A non-blocking channel lets the receiver poll without holding up a reconnect
+            instance = new CommandTransmitter(new DatagramChannelTransport(true), MetricsRegistry.getDefault());
+            instance.setStartupTrace(StartupTrace.getDefault());
         }
+
+        return instance;
     }
 
     /**
-     * This method returns the Command Transmitter instance
+     * A constructor for Command Transmitter. Its metrics are kept in a registry of its own.
      *
+     * @param transport The transport carrying the packets to the remote car.
      * @return Command Transmitter instance.
-     * @throws SocketException if the socket could not be opened,
-     *                         or the socket could not bind to the specified local port.
-     * @see SocketException
      */
-    static CommandTransmitter getInstance() throws SocketException {
-        return INSTANCE == null ? new CommandTransmitter() : INSTANCE;
+    CommandTransmitter(CommandTransport transport) {
+        this(transport, new MetricsRegistry());
     }
 
     /**
      * A constructor for Command Transmitter
      *
+     * @param transport The transport carrying the packets to the remote car.
+     * @param metrics   The registry the transmitter's metrics are registered in.
      * @return Command Transmitter instance.
-     * @throws SocketException if the socket could not be opened,
-     *                         or the socket could not bind to the specified local port.
-     * @see SocketException
      */
-    private CommandTransmitter() throws SocketException {
-        socket = new DatagramSocket();
+    CommandTransmitter(CommandTransport transport, MetricsRegistry metrics) {
+        this.transport = transport;
+        this.receiver = new PacketReceiver(transport, this);
+
+        this.commandsSent = metrics.counter("transmitter.commands_sent");
+        this.sendsDropped = metrics.counter("transmitter.sends_dropped");
+        this.sendFailures = metrics.counter("transmitter.send_failures");
+        this.bytesSent = metrics.counter("transmitter.bytes_sent");
+        this.sendTimes = metrics.histogram("transmitter.send_ns");
+        metrics.register("scheduler.tick_lateness_ns", this.scheduler.getTickLateness());
+        metrics.gauge("filter.suppressed", this.filter::getSuppressedCount);
+        metrics.gauge("sender.coalesced", this.sender::getCoalescedCount);
+        metrics.gauge("link.rtt_p50_us",
+                () -> TimeUnit.NANOSECONDS.toMicros(this.linkStatistics.getRoundTripPercentile(0.5)));
+        metrics.gauge("link.rtt_p99_us",
+                () -> TimeUnit.NANOSECONDS.toMicros(this.linkStatistics.getRoundTripPercentile(0.99)));
+        metrics.gauge("link.loss_permille",
+                () -> Math.round(this.linkStatistics.getLossRate(System.nanoTime()) * 1000));
+        metrics.gauge("telemetry.overruns", this.telemetry::getOverrunCount);
+        metrics.gauge("rate.commands_per_second", this.scheduler::getRate);
+        metrics.gauge("rate.redundancy", () -> this.redundancy);
+        this.rateBackOffs = metrics.counter("rate.back_offs");
+        this.rateRampUps = metrics.counter("rate.ramp_ups");
+        this.redundancyUps = metrics.counter("rate.redundancy_ups");
+        this.redundancyDowns = metrics.counter("rate.redundancy_downs");
+
+        sender.start();
+        scheduler.start();
+        receiver.start();
+    }
+
+    /**
+     * This method sets the transmitter's IP Address and connects the transport to it.
+     *
+     * @param address The IPv4 Address of the remote car.
+     * @return Nothing.
+     * @throws UnknownHostException if no IP address for the host could be found,
+     *                              or if a scope_id was specified for a global IPv6 address.
+     * @throws IOException          if the transport could not be connected.
+     * @see UnknownHostException
+     */
+    void setInetAddress(String address) throws IOException {
+        setInetAddress(address, this.PORT);
     }
 
     /**
-     * This method sets the transmitter's IP Address.
+     * This method sets the transmitter's IP Address and port and connects the transport to them.
+     * It is used to talk to a simulated car on another port.
      *
      * @param address The IPv4 Address of the remote car.
+     * @param port    The UDP port of the remote car.
      * @return Nothing.
      * @throws UnknownHostException if no IP address for the host could be found,
      *                              or if a scope_id was specified for a global IPv6 address.
+     * @throws IOException          if the transport could not be connected.
      * @see UnknownHostException
      */
-    void setInetAddress(String address) throws UnknownHostException {
-        this.inetAddress = InetAddress.getByName(address);
+    void setInetAddress(String address, int port) throws IOException {
+        setInetAddress(new InetSocketAddress(InetAddress.getByName(address), port));
+    }
+
+    /**
+     * This method sets the transmitter's socket address, e.g. the one a car was discovered at,
+     * and connects the transport to it.
+     *
+     * @param address The IPv4 Address and the UDP port of the remote car.
+     * @return Nothing.
+     * @throws IOException if the transport could not be connected.
+     */
+    void setInetAddress(InetSocketAddress address) throws IOException {
+        this.transport.connect(address);
+        this.address = address;
+    }
+
+    /**
+     * This method returns the socket address of the remote car.
+     *
+     * @return The address the transport is connected to, or null until it is.
+     */
+    InetSocketAddress getInetAddress() {
+        return this.address;
+    }
+
+    /**
+     * This method configures the transmitter for what the car's firmware supports.
+     * The wire format follows the command frame versions the car understands,
+     * the command rate never exceeds what it takes, and the rate and redundancy adapt
+     * to the link quality if the car acknowledges commands, with redundancy only if it understands it.
+     *
+     * @param capabilities The capabilities of the car, reported in the handshake.
+     * @return Nothing.
+     */
+    void configure(CarCapabilities capabilities) {
+        int maxRate = Math.max(1, Math.min(COMMAND_RATE, capabilities.getMaxCommandRate()));
+
+        this.capabilities = capabilities;
+        this.configured = true;
+        setPacketFormat(capabilities.getPacketFormat());
+
+        if (capabilities.getPacketFormat() == PacketFormat.BINARY && capabilities.supportsAcknowledgements()) {
+            setRateController(new RateController(
+                    Math.min(MIN_COMMAND_RATE, maxRate),
+                    maxRate,
+                    capabilities.supportsRedundancy() ? CommandFrame.MAX_REDUNDANCY : 0,
+                    RATE_CONTROL_INTERVAL_MS
+            ));
+        } else {
+            setRateController(null);
+            this.scheduler.setRate(maxRate);
+            this.redundancy = 0;
+        }
+    }
+
+    /**
+     * This method returns the capabilities of the car the transmitter was last configured for.
+     *
+     * @return The capabilities, LEGACY until the transmitter is configured.
+     */
+    CarCapabilities getCapabilities() {
+        return this.capabilities;
+    }
+
+    /**
+     * This method sets the wire format of the commands.
+     * JSON is only needed for older firmware, the binary format is used by default.
+     *
+     * @param packetFormat The wire format of the commands.
+     * @return Nothing.
+     */
+    void setPacketFormat(PacketFormat packetFormat) {
+        this.packetFormat = packetFormat;
+    }
+
+    /**
+     * This method returns whether the transmitter has been configured for a car,
+     * before that its capabilities are not the car's.
+     *
+     * @return True if configured, false otherwise.
+     */
+    boolean isConfigured() {
+        return this.configured;
+    }
+
+    /**
+     * This method returns the wire format of the commands.
+     *
+     * @return The wire format.
+     */
+    PacketFormat getPacketFormat() {
+        return this.packetFormat;
+    }
+
+    /**
+     * This method sets the number of previous commands repeated in every binary packet.
+     * A car which lost packets recovers their commands from the next packet which arrives,
+     * without waiting for a retransmission. Every repeated command adds one to six bytes.
+     *
+     * @param redundancy The number of repeated commands, 0 turns redundancy off, which is the default.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the number is out of range.
+     */
+    void setRedundancy(int redundancy) {
+        if (redundancy < 0 || redundancy > CommandFrame.MAX_REDUNDANCY) {
+            throw new IllegalArgumentException("The redundancy must range from 0 to " + CommandFrame.MAX_REDUNDANCY);
+        }
+
+        this.redundancy = redundancy;
+    }
+
+    /**
+     * This method sets the controller adapting the command rate and redundancy to the link quality.
+     * The controller takes its first step once the car acknowledged a command,
+     * so older firmware which does not acknowledge is left alone.
+     * Redundant packets need firmware which understands them, so adaptation is off by default.
+     *
+     * @param rateController The controller, null turns adaptation off and keeps the last rate and redundancy.
+     * @return Nothing.
+     */
+    void setRateController(RateController rateController) {
+        this.rateController = rateController;
+
+        if (rateController != null) {
+            this.scheduler.setRate(rateController.getRate());
+            this.redundancy = rateController.getRedundancy();
+        }
+    }
+
+    /**
+     * This method sets the trace the first command sent is recorded in, as the FIRST_COMMAND milestone.
+     *
+     * @param startupTrace The trace of the cold start, null records nothing.
+     * @return Nothing.
+     */
+    void setStartupTrace(StartupTrace startupTrace) {
+        this.startupTrace = startupTrace;
+    }
+
+    /**
+     * This method sets a second queue every received telemetry frame is copied into,
+     * for a consumer which must not wait for the user interface to drain the first one.
+     *
+     * @param telemetrySink The queue, drained by a single thread of its own, null copies nothing.
+     * @return Nothing.
+     */
+    void setTelemetrySink(TelemetryRing telemetrySink) {
+        this.telemetrySink = telemetrySink;
+    }
+
+    /**
+     * This method sets the session log every command is appended to once it is handed to the socket,
+     * whoever gave it. Commands which are dropped or fail are not recorded.
+     *
+     * @param sessionRecorder The recorder of the session log, null records nothing.
+     * @return Nothing.
+     */
+    void setSessionRecorder(SessionRecorder sessionRecorder) {
+        this.sessionRecorder = sessionRecorder;
     }
 
     /**
      * This method sends the command to the remote car.
+     * It only updates the drive state, which is sent on the next tick of the scheduler.
+     * It never blocks, a command which has not been sent yet is replaced by the newer one.
      *
      * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
      * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
      * @param direction        The driving direction of the car (0 is backward, 1 is forward).
-     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
      * @param drivingAlgorithm The algorithm used to drive the car.
      * @return Nothing.
-     * @throws JSONException if parameters are of the wrong type
-     * @see JSONException
      */
     void sendCommand(int leftMotorSpeed, int rightMotorSpeed,
-                     int direction, int drivingMode, int drivingAlgorithm) throws JSONException {
-        //  Prepare a stringified json object
-        String jsonString = preparePacket(leftMotorSpeed,
-                rightMotorSpeed,
-                direction,
-                drivingMode,
-                drivingAlgorithm
+                     int direction, int drivingMode, int drivingAlgorithm) {
+        this.driveState.set(leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm);
+    }
+
+    /**
+     * This method stops the motors of the remote car and keeps its direction and driving mode,
+     * except for a running trajectory, which is stopped by going back to the remote driving mode.
+     * Keepalives go on, so the car holds still instead of treating the silence as a lost link.
+     *
+     * @return Nothing.
+     */
+    void stopMotors() {
+        long state = this.driveState.get();
+
+        if (state != DriveState.EMPTY) {
+            int drivingMode = DriveState.drivingMode(state);
+
+            if (drivingMode == DrivingMode.TRAJECTORY.getDrivingMode()) {
+                drivingMode = DrivingMode.REMOTE.getDrivingMode();
+            }
+
+            this.driveState.set(0, 0, DriveState.direction(state), drivingMode, DriveState.drivingAlgorithm(state));
+        }
+    }
+
+    /**
+     * This method prepares the packet and sends it to the remote car.
+     * It is called on the sender thread only.
+     *
+     * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+     * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+     * @param drivingAlgorithm The algorithm used to drive the car.
+     * @return Nothing.
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public void transmit(int leftMotorSpeed, int rightMotorSpeed,
+                         int direction, int drivingMode, int drivingAlgorithm) throws IOException {
+        if (!this.transport.isConnected()) {
+            this.sendFailures.increment();
+            throw new IOException("The IP Address is not set");
+        }
+
+        PacketFormat format = this.packetFormat;
+        adaptRate(format, System.nanoTime());
+
+        //  Encode the command into the reused message buffer
+        ByteBuffer message = preparePacket(
+                format, leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm
+        );
+
+        int length = message.remaining();
+        long start = System.nanoTime();
+        boolean sent;
+
+        //  The acknowledgement may arrive before send returns, so the command is recorded first,
+        //  a command which is then dropped or fails counts as lost. JSON commands are never acknowledged.
+        if (format == PacketFormat.BINARY) {
+            this.linkStatistics.onSent(this.frame.sequence, start);
+        }
+
+        try {
+            sent = this.transport.send(message);
+        } catch (IOException exception) {
+            this.sendFailures.increment();
+            Log.e(exception.getMessage(), "TRANSMITTER_ERROR:transmit");
+            throw exception;
+        }
+
+        long now = System.nanoTime();
+        this.sendTimes.record(now - start);
+
+        if (!sent) {
+            this.sendsDropped.increment();
+            return;
+        }
+
+        this.commandsSent.increment();
+        this.bytesSent.add(length);
+
+        SessionRecorder sessionRecorder = this.sessionRecorder;
+
+        if (sessionRecorder != null) {
+            sessionRecorder.record(start, leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm);
+        }
+
+        if (!this.firstCommandSent) {
+            this.firstCommandSent = true;
+            StartupTrace startupTrace = this.startupTrace;
+
+            if (startupTrace != null) {
+                startupTrace.mark(StartupTrace.FIRST_COMMAND);
+            }
+        }
+    }
+
+    /**
+     * This method handles a packet received from the remote car.
+     * It is called on the receiver thread only.
+     *
+     * @param packet        The packet.
+     * @param receivedNanos The receive time in nanoseconds, from System.nanoTime().
+     * @return Nothing.
+     */
+    @Override
+    public void onPacket(ByteBuffer packet, long receivedNanos) {
+        if (this.ack.decode(packet)) {
+            //  The echoed timestamp wraps around every 71 minutes, the difference does not
+            int roundTripMicros = (int) (receivedNanos / 1000) - this.ack.timestamp;
+            this.linkStatistics.onAck(this.ack.sequence, TimeUnit.MICROSECONDS.toNanos(roundTripMicros));
+        } else if (this.telemetryFrame.decode(packet)) {
+            //  A full queue drops the frame, the receiver never waits for the user interface
+            this.telemetry.offer(this.telemetryFrame, receivedNanos);
+
+            TelemetryRing telemetrySink = this.telemetrySink;
+
+            if (telemetrySink != null) {
+                telemetrySink.offer(this.telemetryFrame, receivedNanos);
+            }
+        }
+    }
+
+    /**
+     * This method returns the sender, which counts published, coalesced and sent commands.
+     *
+     * @return The command sender.
+     */
+    CommandSender getCommandSender() {
+        return this.sender;
+    }
+
+    /**
+     * This method returns the scheduler, which holds the tick rate and tick lateness statistics.
+     *
+     * @return The command scheduler.
+     */
+    CommandScheduler getCommandScheduler() {
+        return this.scheduler;
+    }
+
+    /**
+     * This method returns the filter, which suppresses unchanged and sub-threshold commands.
+     *
+     * @return The command filter.
+     */
+    CommandFilter getCommandFilter() {
+        return this.filter;
+    }
+
+    /**
+     * This method returns the link statistics, which hold the round-trip times and the loss rate.
+     *
+     * @return The link statistics.
+     */
+    LinkStatistics getLinkStatistics() {
+        return this.linkStatistics;
+    }
+
+    /**
+     * This method returns the queue of received telemetry frames.
+     * It must be drained by a single thread, usually the main thread once per display frame.
+     *
+     * @return The telemetry queue.
+     */
+    TelemetryRing getTelemetry() {
+        return this.telemetry;
+    }
+
+    /**
+     * This method stops the scheduler, sender and receiver threads and closes the transport.
+     * The next call of getInstance() creates a new instance if this one was shared.
+     *
+     * @return Nothing.
+     */
+    void close() {
+        synchronized (CommandTransmitter.class) {
+            if (instance == this) {
+                instance = null;
+            }
+        }
+
+        try {
+            this.scheduler.stop();
+            this.sender.stop();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        //  Closing the transport first releases a receiver blocked on a blocking channel
+        try {
+            this.transport.close();
+        } catch (IOException exception) {
+            Log.e(exception.getMessage(), "TRANSMITTER_ERROR:close");
+        }
+
+        try {
+            this.receiver.stop();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method lets the rate controller take a step once per control interval
+     * and applies its rate and redundancy. It is called on the sender thread only.
+     *
+     * @param format The wire format of the commands, only binary commands are acknowledged.
+     * @param now    The current time in nanoseconds, from System.nanoTime().
+     * @return Nothing.
+     */
+    private void adaptRate(PacketFormat format, long now) {
+        RateController controller = this.rateController;
+
+        if (controller == null || format != PacketFormat.BINARY
+                || this.linkStatistics.getAcknowledgedCount() == 0) {
+            return;
+        }
+
+        long interval = controller.getControlIntervalNanos();
+        long sendErrors = this.sendFailures.get() + this.sendsDropped.get();
+
+        //  The first interval starts with the first acknowledgement, the errors before it do not count
+        if (!this.controlStarted) {
+            this.controlStarted = true;
+            this.nextControlNanos = now + interval;
+            this.previousSendErrors = sendErrors;
+            return;
+        }
+
+        if (now - this.nextControlNanos < 0) {
+            return;
+        }
+
+        RateController.Decision decision = controller.update(
+                this.linkStatistics.getLossRate(now, interval),
+                this.linkStatistics.getSmoothedRoundTrip(),
+                this.linkStatistics.getMinRoundTrip(),
+                sendErrors - this.previousSendErrors
         );
 
-        //  Send the packet
-        new SendCommandTask(this).execute(jsonString);
+        this.nextControlNanos = now + interval;
+        this.previousSendErrors = sendErrors;
+
+        switch (decision) {
+            case BACK_OFF:
+                this.rateBackOffs.increment();
+                break;
+            case RAMP_UP:
+                this.rateRampUps.increment();
+                break;
+            case REDUNDANCY_UP:
+                this.redundancyUps.increment();
+                break;
+            case REDUNDANCY_DOWN:
+                this.redundancyDowns.increment();
+                break;
+            default:
+                return;
+        }
+
+        this.scheduler.setRate(controller.getRate());
+        this.redundancy = controller.getRedundancy();
     }
 
     /**
-     * This method creates a JSON object containing the speed, direction
-     * and driving mode of the remote car
+     * This method encodes the speed, direction and driving mode of the remote car
+     * into the reused message buffer, tagged with the next sequence number and the current time.
+     * With redundancy on, binary packets also carry the previous commands.
      *
+     * @param format           The wire format of the packet.
      * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
      * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
      * @param direction        The driving direction of the car (0 is backward, 1 is forward).
-     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
      * @param drivingAlgorithm The algorithm used to drive the car.
-     * @return Stringified JSON object.
-     * @throws JSONException if parameters are of the wrong type
-     * @see JSONException
+     * @return The message buffer, ready to be read from position 0 up to its limit.
      */
-    private String preparePacket(
-            int leftMotorSpeed, int rightMotorSpeed,
-            int direction, int drivingMode, int drivingAlgorithm) throws JSONException {
+    private ByteBuffer preparePacket(
+            PacketFormat format, int leftMotorSpeed, int rightMotorSpeed,
+            int direction, int drivingMode, int drivingAlgorithm) {
 
-        JSONObject json = new JSONObject();
+        this.frame.set(leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm)
+                .stamp(this.nextSequence++, System.nanoTime() / 1000);
+
+        this.message.clear();
+        int redundancy = this.redundancy;
+
+        if (format == PacketFormat.BINARY && redundancy > 0) {
+            this.frame.encodeRedundant(this.message, this.history, redundancy);
+            //  Every sequence number enters the history, so its entries count down from the next frame's one
+            this.history.add(DriveState.pack(
+                    leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm
+            ));
+        } else {
+            this.frame.encode(this.message, format);
+            this.history.clear();
+        }
 
-        json.put("left_motor_speed", leftMotorSpeed);
-        json.put("right_motor_speed", rightMotorSpeed);
-        json.put("direction", direction);
-        json.put("driving_mode", drivingMode);
-        json.put("driving_algorithm", drivingAlgorithm);
+        this.message.flip();
 
-        return json.toString();
+        return this.message;
     }
 }
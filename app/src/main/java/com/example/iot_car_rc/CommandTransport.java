@@ -0,0 +1,76 @@
+package com.example.iot_car_rc;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Interface for the transport carrying command packets to the remote car and replies back.
+ * Sending and receiving may happen on two different threads,
+ * but each of them is only called from one thread at a time.
+ *
+ * @author Rafał Dąbrowski
+ */
+interface CommandTransport extends Closeable {
+    /**
+     * This method sets the address the packets are sent to and received from.
+     *
+     * @param address The address and port of the remote car.
+     * @return Nothing.
+     * @throws IOException if an I/O error occurs.
+     */
+    void connect(InetSocketAddress address) throws IOException;
+
+    /**
+     * This method checks if the transport has an address to send the packets to.
+     *
+     * @return True if connected, false otherwise.
+     */
+    boolean isConnected();
+
+    /**
+     * This method sends the packet, from the buffer's position up to its limit.
+     *
+     * @param message The buffer holding the packet.
+     * @return True if the packet was sent, false if it was dropped because
+     * a non-blocking transport could not send it right away.
+     * @throws IOException if an I/O error occurs.
+     */
+    boolean send(ByteBuffer message) throws IOException;
+
+    /**
+     * This method receives a single packet into the buffer, starting at the buffer's position.
+     *
+     * @param buffer    The buffer the packet is read into.
+     * @param timeoutMs The longest time to wait for a packet, 0 waits indefinitely.
+     * @return Number of bytes received, 0 if no packet arrived in time.
+     * @throws IOException if an I/O error occurs, or the transport was closed while waiting.
+     */
+    int receive(ByteBuffer buffer, long timeoutMs) throws IOException;
+
+    /**
+     * This method sends the packet to the target instead of the connected address,
+     * so a single transport can serve many cars. The transport must not be connected.
+     * A broadcast or multicast target reaches every car listening on it with one packet.
+     *
+     * @param message The buffer holding the packet.
+     * @param target  The address and port of the car, or of the group of cars.
+     * @return True if the packet was sent, false if it was dropped because
+     * a non-blocking transport could not send it right away.
+     * @throws IOException if an I/O error occurs, or the transport is connected.
+     */
+    boolean send(ByteBuffer message, InetSocketAddress target) throws IOException;
+
+    /**
+     * This method receives a single packet from any sender into the buffer,
+     * starting at the buffer's position.
+     *
+     * @param buffer    The buffer the packet is read into.
+     * @param timeoutMs The longest time to wait for a packet, 0 waits indefinitely.
+     * @return The address of the sender, null if no packet arrived in time.
+     * @throws IOException if an I/O error occurs, or the transport was closed while waiting.
+     */
+    SocketAddress receiveFrom(ByteBuffer buffer, long timeoutMs) throws IOException;
+}
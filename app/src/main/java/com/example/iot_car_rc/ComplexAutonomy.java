@@ -0,0 +1,155 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+
+/**
+ * Represents the COMPLEX obstacle avoidance algorithm. It steers like the ADVANCED one, but
+ * <ul>
+ * <li>filters the front distance with a median of the last three readings, so a single spurious echo
+ * or a lost one neither brakes nor accelerates the car,</li>
+ * <li>brakes early when the time to collision is short, estimated from the closing speed on the car's own clock,
+ * so the jitter of the link does not show up as speed,</li>
+ * <li>escapes by reversing and then pivoting when it has been blocked in front for too long, a corner for example.</li>
+ * </ul>
+ *
+ * @author Rafał Dąbrowski
+ */
+class ComplexAutonomy implements AutonomousAlgorithm {
+    static final int STOP_DISTANCE_MM = AdvancedAutonomy.STOP_DISTANCE_MM;
+    //  Closer in time than this, the car brakes harder than the clearance alone asks for
+    static final int BRAKE_TIME_MS = 800;
+    static final int STUCK_TIME_MS = 1500;
+    static final int REVERSE_TIME_MS = 400;
+    static final int PIVOT_TIME_MS = 300;
+    static final int REVERSE_THROTTLE = 60;
+
+    private static final int DRIVING = 0;
+    private static final int REVERSING = 1;
+    private static final int PIVOTING = 2;
+
+    private final int[] frontWindow = new int[3];
+    private int windowIndex;
+
+    private boolean started;
+    private long lastSequence;
+    private int lastTimestamp;
+    private int front;
+    //  Millimetres per second, smoothed, positive while approaching the obstacle in front
+    private int closingSpeed;
+
+    private boolean blocked;
+    private int blockedSince;
+    private int phase;
+    private int phaseEnd;
+    private int escapeTurn;
+
+    @Override
+    public void reset() {
+        this.started = false;
+        this.closingSpeed = 0;
+        this.blocked = false;
+        this.phase = DRIVING;
+    }
+
+    @Override
+    public void drive(TelemetryFrame telemetry, DriveMixer mixer) {
+        if (!this.started || telemetry.sequence != this.lastSequence) {
+            update(telemetry);
+        }
+
+        int now = this.lastTimestamp;
+
+        //  The escape runs to its end whatever the sensors say, the car timestamps tell its phases apart
+        if (this.phase == REVERSING) {
+            if (now - this.phaseEnd < 0) {
+                mixer.arcade(0, -REVERSE_THROTTLE);
+                return;
+            }
+
+            this.phase = PIVOTING;
+            this.phaseEnd = now + PIVOT_TIME_MS;
+        }
+
+        if (this.phase == PIVOTING) {
+            if (now - this.phaseEnd < 0) {
+                mixer.arcade(this.escapeTurn, 0);
+                return;
+            }
+
+            this.phase = DRIVING;
+            this.blocked = false;
+        }
+
+        if (this.front > STOP_DISTANCE_MM) {
+            this.blocked = false;
+        } else if (!this.blocked) {
+            this.blocked = true;
+            this.blockedSince = now;
+        } else if (now - this.blockedSince >= STUCK_TIME_MS) {
+            this.phase = REVERSING;
+            this.phaseEnd = now + REVERSE_TIME_MS;
+            this.escapeTurn = SimpleAutonomy.turnAway(telemetry.leftDistance, telemetry.rightDistance);
+            mixer.arcade(0, -REVERSE_THROTTLE);
+            return;
+        }
+
+        int throttle = AdvancedAutonomy.throttle(this.front);
+
+        if (this.closingSpeed > 0 && throttle > 0) {
+            int collisionMs = (int) ((this.front - STOP_DISTANCE_MM) * 1000L / this.closingSpeed);
+
+            if (collisionMs < BRAKE_TIME_MS) {
+                throttle = throttle * collisionMs / BRAKE_TIME_MS;
+            }
+        }
+
+        mixer.arcade(AdvancedAutonomy.turn(this.front, telemetry.leftDistance, telemetry.rightDistance), throttle);
+    }
+
+    /**
+     * This method takes in a new telemetry frame, filtering the front distance and estimating the closing speed.
+     *
+     * @param telemetry The new telemetry frame.
+     * @return Nothing.
+     */
+    private void update(TelemetryFrame telemetry) {
+        int reading = telemetry.frontDistance;
+
+        if (!this.started) {
+            this.frontWindow[0] = reading;
+            this.frontWindow[1] = reading;
+            this.frontWindow[2] = reading;
+            this.front = reading;
+            this.started = true;
+        } else {
+            this.windowIndex = (this.windowIndex + 1) % this.frontWindow.length;
+            this.frontWindow[this.windowIndex] = reading;
+            int previous = Math.min(this.front, AdvancedAutonomy.CLEAR_DISTANCE_MM);
+            this.front = median(this.frontWindow[0], this.frontWindow[1], this.frontWindow[2]);
+
+            //  The timestamps are unsigned, their difference is right across the wrap as well
+            int elapsedMs = telemetry.carTimestamp - this.lastTimestamp;
+
+            if (elapsedMs > 0) {
+                int current = Math.min(this.front, AdvancedAutonomy.CLEAR_DISTANCE_MM);
+                int speed = (int) ((previous - current) * 1000L / elapsedMs);
+                this.closingSpeed += (speed - this.closingSpeed) / 4;
+            }
+        }
+
+        this.lastSequence = telemetry.sequence;
+        this.lastTimestamp = telemetry.carTimestamp;
+    }
+
+    /**
+     * This method returns the median of three values.
+     *
+     * @param a The first value.
+     * @param b The second value.
+     * @param c The third value.
+     * @return The median.
+     */
+    private static int median(int a, int b, int c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.iot_car_rc;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.NetworkInfo;
+import android.net.wifi.WifiManager;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.support.v4.app.NotificationCompat;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Represents the service hosting the control session for the lifetime of the application.
+ * It is started by the first activity and stopped when the user finishes it,
+ * activities bind to it while they are started and attach to its session.
+ * An activity the user leaves moves the service to the foreground before it unbinds,
+ * with an ongoing notification, so the system does not stop it and the link to the car survives backgrounding.
+ * A finishing activity does not, as it stops the service.
+ * The socket is opened and connected on a background thread, so creating the service
+ * does not hold up the first frame of the activity.
+ *
+ * @author Rafał Dąbrowski
+ */
+public class ControlService extends Service {
+    private static final String CHANNEL_ID = "control";
+    private static final int NOTIFICATION_ID = 1;
+    private static final long METRICS_DUMP_INTERVAL_MS = 10_000;
+    private final String SSID = "ESP8266-ACCESS-POINT";
+    //  Cars are discovered by broadcast, the address is only used if the firmware does not answer
+    private final String BROADCAST_ADDRESS = "255.255.255.255";
+    private final String IP_ADDRESS = "192.168.1.1";
+    private final int PORT = 4210;
+
+    private final LocalBinder binder = new LocalBinder();
+    private final WiFiStateListener wiFiStateListener = new WiFiStateListener();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final StartupTrace startupTrace = StartupTrace.getDefault();
+    private ExecutorService connector;
+    private ControlSession session;
+    private MetricsDumper metricsDumper;
+    private boolean destroyed;
+
+    /**
+     * Represents the binder handed to the activities of the application, which run in the same process.
+     *
+     * @author Rafał Dąbrowski
+     */
+    class LocalBinder extends Binder {
+        /**
+         * This method returns the control session of the service.
+         *
+         * @return The control session.
+         */
+        ControlSession getSession() {
+            return session;
+        }
+
+        /**
+         * This method moves the service to the foreground until an activity binds to it again.
+         *
+         * @return Nothing.
+         */
+        void keepInForeground() {
+            startForeground(NOTIFICATION_ID, createNotification());
+        }
+    }
+
+    /**
+     * Represents a Wi-Fi state listener.
+     * It listens for changes in Wi-Fi connections and drives the session's Wi-Fi connection.
+     *
+     * @author Rafał Dąbrowski
+     */
+    public class WiFiStateListener extends BroadcastReceiver {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            String action = intent.getAction();
+            WifiConnection wifiConnection = session.getWifiConnection();
+
+            if (WifiManager.WIFI_STATE_CHANGED_ACTION.equals(action)) {
+                int wifiState = intent.getIntExtra(WifiManager.EXTRA_WIFI_STATE, WifiManager.WIFI_STATE_UNKNOWN);
+
+                if (wifiState == WifiManager.WIFI_STATE_ENABLED) {
+                    wifiConnection.onWifiEnabled();
+                } else if (wifiState == WifiManager.WIFI_STATE_DISABLED) {
+                    wifiConnection.onWifiDisabled();
+                }
+            } else if (WifiManager.NETWORK_STATE_CHANGED_ACTION.equals(action)) {
+                NetworkInfo info = intent.getParcelableExtra(WifiManager.EXTRA_NETWORK_INFO);
+                NetworkInfo.DetailedState state = info.getDetailedState();
+
+                switch (state) {
+                    case SCANNING:
+                        session.onNetworkProgress(R.string.scanning_wifi);
+                        break;
+                    case CONNECTING:
+                        session.onNetworkProgress(R.string.connecting_to_wifi);
+                        break;
+                    case OBTAINING_IPADDR:
+                        session.onNetworkProgress(R.string.obtaining_wifi_ip_address);
+                        break;
+                    case CONNECTED:
+                        wifiConnection.onNetworkConnected();
+                        break;
+                    case DISCONNECTED:
+                        wifiConnection.onNetworkDisconnected();
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * This method is called when the service is created.
+     * It starts connecting to the car's Wi-Fi, starts opening the transmitter's socket
+     * in the background and starts dumping the health metrics for offline analysis.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        int section = this.startupTrace.begin("service_create");
+
+        this.connector = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "ControlConnector");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        WifiManager wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        this.session = new ControlSession(
+                new AndroidWifiController(wifiManager),
+                SSID,
+                new HandlerScheduler(),
+                this.connector,
+                new CarConnector(
+                        new InetSocketAddress(BROADCAST_ADDRESS, PORT),
+                        new InetSocketAddress(IP_ADDRESS, PORT),
+                        metrics,
+                        this.startupTrace
+                )
+        );
+        this.connector.execute(this::openTransmitter);
+
+        IntentFilter filters = new IntentFilter();
+        filters.addAction(WifiManager.WIFI_STATE_CHANGED_ACTION);
+        filters.addAction(WifiManager.NETWORK_STATE_CHANGED_ACTION);
+        registerReceiver(this.wiFiStateListener, filters);
+
+        this.session.getWifiConnection().registerMetrics(metrics);
+        this.startupTrace.registerMetrics(metrics);
+        this.metricsDumper = new MetricsDumper(
+                metrics,
+                new File(getFilesDir(), "metrics.txt"),
+                METRICS_DUMP_INTERVAL_MS
+        );
+        this.metricsDumper.start();
+
+        this.startupTrace.end(section);
+    }
+
+    /**
+     * This method is called when the service is started. It is not restarted if the system kills it,
+     * as there would be no activity to control the car with.
+     *
+     * @param intent  The intent the service was started with.
+     * @param flags   Additional data about the start request.
+     * @param startId The identifier of the start request.
+     * @return START_NOT_STICKY.
+     */
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        return START_NOT_STICKY;
+    }
+
+    /**
+     * This method is called when the first activity binds to the service.
+     *
+     * @param intent The intent the activity bound with.
+     * @return The binder of the service.
+     */
+    @Override
+    public IBinder onBind(Intent intent) {
+        stopForeground(true);
+        return this.binder;
+    }
+
+    /**
+     * This method is called when an activity binds to the service again,
+     * which brings the service back from the foreground.
+     *
+     * @param intent The intent the activity bound with.
+     * @return Nothing.
+     */
+    @Override
+    public void onRebind(Intent intent) {
+        stopForeground(true);
+    }
+
+    /**
+     * This method is called when the last activity unbinds from the service.
+     * The activity has already moved the service to the foreground, unless it is finishing.
+     *
+     * @param intent The intent the activity bound with.
+     * @return True, so onRebind() is called when an activity binds again.
+     */
+    @Override
+    public boolean onUnbind(Intent intent) {
+        return true;
+    }
+
+    /**
+     * This method is called when the user removes the application's task, which ends the session.
+     *
+     * @param rootIntent The intent of the removed task.
+     * @return Nothing.
+     */
+    @Override
+    public void onTaskRemoved(Intent rootIntent) {
+        stopSelf();
+    }
+
+    /**
+     * This method is called before the service is destroyed.
+     * It stops connecting, closes the transmitter's socket and writes the last metrics report,
+     * both on the connector, as they join threads and write a file.
+     * A transmitter still being opened is closed once it is.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        this.destroyed = true;
+        unregisterReceiver(this.wiFiStateListener);
+        this.session.close();
+        this.connector.execute(this::stopMetricsDumper);
+        this.connector.shutdown();
+    }
+
+    /**
+     * This method stops dumping the health metrics, which writes the last report, it runs on the connector.
+     *
+     * @return Nothing.
+     */
+    private void stopMetricsDumper() {
+        try {
+            this.metricsDumper.stop();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * This method opens the transmitter's socket and starts its threads, it runs on the connector.
+     * The transmitter is handed to the session on the main thread.
+     *
+     * @return Nothing.
+     */
+    private void openTransmitter() {
+        int section = this.startupTrace.begin("transport_open");
+        CommandTransmitter transmitter;
+
+        try {
+            transmitter = CommandTransmitter.getInstance();
+        } catch (IOException exception) {
+            //  Without a socket there is nothing to control the car with, the session only connects the Wi-Fi
+            Log.e(exception.getMessage(), "TRANSMITTER_ERROR:getInstance");
+            return;
+        } finally {
+            this.startupTrace.end(section);
+        }
+
+        this.mainHandler.post(() -> {
+            if (this.destroyed) {
+                transmitter.close();
+            } else {
+                this.session.setTransmitter(transmitter);
+            }
+        });
+    }
+
+    /**
+     * This method creates the ongoing notification shown while the service runs in the foreground.
+     * Tapping it brings the application back.
+     *
+     * @return The notification.
+     */
+    private Notification createNotification() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationManager notificationManager =
+                    (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            notificationManager.createNotificationChannel(new NotificationChannel(
+                    CHANNEL_ID, getString(R.string.control_channel_name), NotificationManager.IMPORTANCE_LOW
+            ));
+        }
+
+        PendingIntent contentIntent = PendingIntent.getActivity(
+                this, 0, new Intent(this, MainActivity.class), 0
+        );
+
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.control_notification_title))
+                .setContentText(getString(R.string.control_notification_text))
+                .setContentIntent(contentIntent)
+                .setOngoing(true)
+                .setPriority(NotificationCompat.PRIORITY_LOW)
+                .build();
+    }
+}
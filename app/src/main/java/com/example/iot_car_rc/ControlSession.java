@@ -0,0 +1,279 @@
+package com.example.iot_car_rc;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+/**
+ * Represents the control session of the application, which lives as long as the application
+ * and not as long as an activity. It owns the only command transmitter, with its socket
+ * and sender thread, and the connection to the car's Wi-Fi access point.
+ * Activities attach to the session when they start and detach when they stop,
+ * so recreating or backgrounding them neither opens a new socket nor interrupts the command stream.
+ *
+ * <p>While no activity is attached the motors are stopped, but keepalives go on,
+ * so the car holds still instead of treating the silence as a lost link.
+ *
+ * <p>The session is usable right away, the transmitter joins it once its socket
+ * has been opened on a background thread. The car is discovered, asked for its capabilities
+ * and the transmitter connected to it on the connector, so no socket call ever runs on the main thread.
+ * Trajectories are compiled and uploaded, and the transmitter is closed, on the connector as well.
+ * All methods are called on the main thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class ControlSession implements WifiConnection.Listener {
+    static final long UPLOAD_TIMEOUT_MS = 200;
+    static final int UPLOAD_ATTEMPTS = 5;
+
+    /**
+     * Interface for the callbacks of an attached activity.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Listener extends WifiConnection.Listener {
+        /**
+         * This method handles the progress of the Wi-Fi network connection.
+         *
+         * @param messageId The string resource describing the progress.
+         * @return Nothing.
+         */
+        void onNetworkProgress(int messageId);
+
+        /**
+         * This method handles the transmitter being connected to the car, with its capabilities known.
+         *
+         * @return Nothing.
+         */
+        void onCarConnected();
+    }
+
+    /**
+     * Interface for the callback of a trajectory upload, which is called on the connector.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface UploadCallback {
+        /**
+         * This method handles the end of a trajectory upload.
+         *
+         * @param trajectory The uploaded trajectory, or null if it could not be compiled or uploaded.
+         * @return Nothing.
+         */
+        void onUploaded(Trajectory trajectory);
+    }
+
+    private final WifiConnection wifiConnection;
+    private final WifiConnection.Scheduler scheduler;
+    private final Executor connector;
+    private final CarConnector carConnector;
+
+    private CommandTransmitter transmitter;
+    private Listener listener;
+    private int nextTrajectoryId;
+    //  Posted from the connector once the car is connected, it runs on the main thread
+    private final Runnable carConnected = this::onCarConnected;
+
+    /**
+     * A constructor for ControlSession. It starts connecting to the car's Wi-Fi access point.
+     *
+     * @param wifi         The Wi-Fi operations.
+     * @param ssid         The SSID of the car's access point.
+     * @param scheduler    The scheduler of the Wi-Fi connection's timers, its tasks run on the main thread.
+     * @param connector    The executor the transmitter's socket is connected on, a background thread.
+     * @param carConnector The steps finding the car and connecting the transmitter to it.
+     * @return ControlSession instance.
+     */
+    ControlSession(WifiController wifi, String ssid, WifiConnection.Scheduler scheduler,
+                   Executor connector, CarConnector carConnector) {
+        this.scheduler = scheduler;
+        this.connector = connector;
+        this.carConnector = carConnector;
+        this.wifiConnection = new WifiConnection(wifi, ssid, scheduler, this);
+        this.wifiConnection.start();
+    }
+
+    /**
+     * This method hands the transmitter to the session, once its socket is open, and connects it.
+     *
+     * @param transmitter The transmitter of the commands.
+     * @return Nothing.
+     */
+    void setTransmitter(CommandTransmitter transmitter) {
+        this.transmitter = transmitter;
+        connectTransmitter();
+    }
+
+    /**
+     * This method attaches an activity, which replaces the attached one.
+     * The current connection state is reported to it right away.
+     *
+     * @param listener The callbacks of the activity.
+     * @return Nothing.
+     */
+    void attach(Listener listener) {
+        this.listener = listener;
+        listener.onStateChanged(this.wifiConnection.getState());
+    }
+
+    /**
+     * This method detaches an activity and stops the motors, unless another activity was attached since.
+     *
+     * @param listener The callbacks of the activity.
+     * @return Nothing.
+     */
+    void detach(Listener listener) {
+        if (this.listener != listener) {
+            return;
+        }
+
+        this.listener = null;
+
+        if (this.transmitter != null) {
+            this.transmitter.stopMotors();
+        }
+    }
+
+    /**
+     * This method returns if an activity is attached.
+     *
+     * @return True if an activity is attached, false otherwise.
+     */
+    boolean isAttached() {
+        return this.listener != null;
+    }
+
+    /**
+     * This method handles a change of the Wi-Fi connection state and reports it to the attached activity.
+     * The transmitter is connected again whenever the network is, as the route of its socket may have changed.
+     *
+     * @param state The new state of the connection.
+     * @return Nothing.
+     */
+    @Override
+    public void onStateChanged(WifiConnection.State state) {
+        if (state == WifiConnection.State.CONNECTED) {
+            connectTransmitter();
+        }
+
+        if (this.listener != null) {
+            this.listener.onStateChanged(state);
+        }
+    }
+
+    /**
+     * This method reports the progress of the Wi-Fi network connection to the attached activity.
+     *
+     * @param messageId The string resource describing the progress.
+     * @return Nothing.
+     */
+    void onNetworkProgress(int messageId) {
+        if (this.listener != null) {
+            this.listener.onNetworkProgress(messageId);
+        }
+    }
+
+    /**
+     * This method compiles a trajectory and uploads it to the car on the connector.
+     * The car runs it once it is sent a command in the TRAJECTORY driving mode.
+     *
+     * @param source   The source the trajectory is compiled from.
+     * @param callback The callback called once the upload is over.
+     * @return Nothing.
+     */
+    void uploadTrajectory(Trajectory.Source source, UploadCallback callback) {
+        CommandTransmitter transmitter = this.transmitter;
+        int trajectoryId = this.nextTrajectoryId++;
+
+        this.connector.execute(() -> {
+            Trajectory uploaded = null;
+            InetSocketAddress car = transmitter != null ? transmitter.getInetAddress() : null;
+
+            if (car != null && transmitter.getCapabilities().supportsTrajectories()) {
+                try (CommandTransport transport = new DatagramChannelTransport(true)) {
+                    Trajectory trajectory = source.compile();
+
+                    if (trajectory.size() > 0 && new TrajectoryUploader(transport)
+                            .upload(trajectory, trajectoryId, car, UPLOAD_TIMEOUT_MS, UPLOAD_ATTEMPTS)) {
+                        uploaded = trajectory;
+                    }
+                } catch (IOException | IllegalArgumentException exception) {
+                    Log.e(exception.getMessage(), "TRAJECTORY_ERROR:upload");
+                }
+            }
+
+            callback.onUploaded(uploaded);
+        });
+    }
+
+    /**
+     * This method returns the transmitter of the commands.
+     *
+     * @return The command transmitter, or null until its socket is open.
+     */
+    CommandTransmitter getTransmitter() {
+        return this.transmitter;
+    }
+
+    /**
+     * This method returns the connection to the car's Wi-Fi access point.
+     *
+     * @return The Wi-Fi connection.
+     */
+    WifiConnection getWifiConnection() {
+        return this.wifiConnection;
+    }
+
+    /**
+     * This method ends the session, it stops connecting and closes the transmitter on the connector,
+     * as closing joins the transmitter's threads.
+     *
+     * @return Nothing.
+     */
+    void close() {
+        this.listener = null;
+        this.wifiConnection.stop();
+
+        CommandTransmitter transmitter = this.transmitter;
+
+        if (transmitter != null) {
+            this.connector.execute(transmitter::close);
+        }
+    }
+
+    /**
+     * This method reports the connected car to the attached activity.
+     *
+     * @return Nothing.
+     */
+    private void onCarConnected() {
+        if (this.listener != null) {
+            this.listener.onCarConnected();
+        }
+    }
+
+    /**
+     * This method finds the remote car and connects the transmitter to it on the connector.
+     * The attached activity is told once it is connected, on the main thread.
+     *
+     * @return Nothing.
+     */
+    private void connectTransmitter() {
+        CommandTransmitter transmitter = this.transmitter;
+
+        if (transmitter == null) {
+            return;
+        }
+
+        this.connector.execute(() -> {
+            try {
+                this.carConnector.connect(transmitter);
+                this.scheduler.schedule(this.carConnected, 0);
+            } catch (IOException exception) {
+                Log.e(exception.getMessage(), "TRANSMITTER_ERROR:connect");
+            }
+        });
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.iot_car_rc;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+/**
+ * Represents a transport on a connected java.nio.channels.DatagramChannel.
+ * Connecting once spares the per-packet address checks of an unconnected socket,
+ * and packets are written straight from the caller's buffer, which should be direct.
+ *
+ * <p>In non-blocking mode a send which cannot be completed right away drops the packet,
+ * which suits commands where only the newest one matters, and replies are received
+ * through a Selector on the same channel.
+ *
+ * @author Rafał Dąbrowski
+ */
+class DatagramChannelTransport implements CommandTransport {
+    private final DatagramChannel channel;
+    private final Selector selector;
+
+    /**
+     * A constructor for DatagramChannelTransport
+     *
+     * @param nonBlocking True to use non-blocking writes and a Selector for receiving.
+     * @return DatagramChannelTransport instance.
+     * @throws IOException if the channel or the selector could not be opened.
+     */
+    DatagramChannelTransport(boolean nonBlocking) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+
+        if (nonBlocking) {
+            this.channel.configureBlocking(false);
+            this.selector = Selector.open();
+            this.channel.register(this.selector, SelectionKey.OP_READ);
+        } else {
+            this.selector = null;
+        }
+    }
+
+    @Override
+    public synchronized void connect(InetSocketAddress address) throws IOException {
+        if (this.channel.isConnected()) {
+            this.channel.disconnect();
+        }
+
+        this.channel.connect(address);
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.channel.isConnected();
+    }
+
+    @Override
+    public boolean send(ByteBuffer message) throws IOException {
+        if (!this.channel.isConnected()) {
+            throw new IOException("The transport is not connected");
+        }
+
+        return this.channel.write(message) > 0;
+    }
+
+    @Override
+    public int receive(ByteBuffer buffer, long timeoutMs) throws IOException {
+        if (this.selector == null) {
+            //  A blocking channel waits until a packet arrives or the channel is closed
+            return this.channel.read(buffer);
+        }
+
+        if (this.selector.select(timeoutMs) == 0) {
+            return 0;
+        }
+
+        this.selector.selectedKeys().clear();
+
+        return Math.max(0, this.channel.read(buffer));
+    }
+
+    @Override
+    public boolean send(ByteBuffer message, InetSocketAddress target) throws IOException {
+        if (this.channel.isConnected()) {
+            throw new IOException("The transport is connected");
+        }
+
+        return this.channel.send(message, target) > 0;
+    }
+
+    @Override
+    public SocketAddress receiveFrom(ByteBuffer buffer, long timeoutMs) throws IOException {
+        if (this.selector == null) {
+            //  A blocking channel waits until a packet arrives or the channel is closed
+            return this.channel.receive(buffer);
+        }
+
+        if (this.selector.select(timeoutMs) == 0) {
+            return null;
+        }
+
+        this.selector.selectedKeys().clear();
+
+        return this.channel.receive(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+
+        if (this.selector != null) {
+            this.selector.close();
+        }
+    }
+}
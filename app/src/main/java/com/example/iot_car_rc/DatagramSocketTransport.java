@@ -0,0 +1,105 @@
+package com.example.iot_car_rc;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a transport on an unconnected, blocking java.net.DatagramSocket.
+ * Every packet is copied into a reused DatagramPacket. It is kept for devices
+ * on which DatagramChannel misbehaves, DatagramChannelTransport is used by default.
+ *
+ * @author Rafał Dąbrowski
+ */
+class DatagramSocketTransport implements CommandTransport {
+    private static final int MAX_PACKET_SIZE = 1472;
+
+    private final DatagramSocket socket;
+    private final DatagramPacket sendPacket = new DatagramPacket(new byte[MAX_PACKET_SIZE], 0);
+    private final DatagramPacket receivePacket = new DatagramPacket(new byte[MAX_PACKET_SIZE], 0);
+    private volatile InetSocketAddress address;
+
+    /**
+     * A constructor for DatagramSocketTransport
+     *
+     * @return DatagramSocketTransport instance.
+     * @throws SocketException if the socket could not be opened.
+     */
+    DatagramSocketTransport() throws SocketException {
+        this.socket = new DatagramSocket();
+        this.socket.setBroadcast(true);
+    }
+
+    @Override
+    public void connect(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.address != null;
+    }
+
+    @Override
+    public boolean send(ByteBuffer message) throws IOException {
+        InetSocketAddress address = this.address;
+
+        if (address == null) {
+            throw new IOException("The transport is not connected");
+        }
+
+        int length = message.remaining();
+        message.get(this.sendPacket.getData(), 0, length);
+        this.sendPacket.setLength(length);
+        this.sendPacket.setSocketAddress(address);
+        this.socket.send(this.sendPacket);
+
+        return true;
+    }
+
+    @Override
+    public int receive(ByteBuffer buffer, long timeoutMs) throws IOException {
+        return receiveFrom(buffer, timeoutMs) == null ? 0 : this.receivePacket.getLength();
+    }
+
+    @Override
+    public boolean send(ByteBuffer message, InetSocketAddress target) throws IOException {
+        if (this.address != null) {
+            throw new IOException("The transport is connected");
+        }
+
+        int length = message.remaining();
+        message.get(this.sendPacket.getData(), 0, length);
+        this.sendPacket.setLength(length);
+        this.sendPacket.setSocketAddress(target);
+        this.socket.send(this.sendPacket);
+
+        return true;
+    }
+
+    @Override
+    public SocketAddress receiveFrom(ByteBuffer buffer, long timeoutMs) throws IOException {
+        this.receivePacket.setLength(Math.min(MAX_PACKET_SIZE, buffer.remaining()));
+        this.socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, timeoutMs));
+
+        try {
+            this.socket.receive(this.receivePacket);
+        } catch (SocketTimeoutException exception) {
+            return null;
+        }
+
+        buffer.put(this.receivePacket.getData(), 0, this.receivePacket.getLength());
+
+        return this.receivePacket.getSocketAddress();
+    }
+
+    @Override
+    public void close() {
+        this.socket.close();
+    }
+}
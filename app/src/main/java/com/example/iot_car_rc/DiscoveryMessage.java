@@ -0,0 +1,157 @@
+package com.example.iot_car_rc;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents the messages with which the application finds cars on the local network
+ * and learns what their firmware supports. A DISCOVER request is broadcast and every car
+ * listening answers with an ANNOUNCE, a HELLO request sent to a single car is answered
+ * with its CAPABILITIES. Every reply echoes the nonce of its request, so stray and late replies
+ * are told apart. The message is mutable and meant to be reused.
+ *
+ * <p>Binary layout (version 1, big-endian):
+ * <pre>
+ *  0  magic               0xCD
+ *  1  version             1
+ *  2  type                1 discover, 2 announce, 3 hello, 4 capabilities
+ *  3  nonce               unsigned 32-bit, copied from the request into the reply
+ * </pre>
+ * followed, in CAPABILITIES only, by:
+ * <pre>
+ *  7  protocol version    the highest command frame version the car understands, 0 for JSON only
+ *  8  max command rate    unsigned 16-bit, in commands per second
+ * 10  driving algorithms  bit n set if the driving algorithm of value n is supported
+ * 11  features            bit 0 acknowledgements, bit 1 telemetry, bit 2 trajectories
+ * </pre>
+ *
+ * @author Rafał Dąbrowski
+ */
+class DiscoveryMessage {
+    static final byte MAGIC = (byte) 0xCD;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 7;
+    static final int CAPABILITIES_SIZE = 12;
+
+    static final int DISCOVER = 1;
+    static final int ANNOUNCE = 2;
+    static final int HELLO = 3;
+    static final int CAPABILITIES = 4;
+
+    int type;
+    long nonce;
+    int protocolVersion;
+    int maxCommandRate;
+    int algorithms;
+    int features;
+
+    /**
+     * This method sets the type and the nonce of the message.
+     *
+     * @param type  The type of the message, e.g. DISCOVER.
+     * @param nonce The nonce, unsigned 32-bit.
+     * @return This message.
+     */
+    DiscoveryMessage set(int type, long nonce) {
+        this.type = type;
+        this.nonce = nonce;
+
+        return this;
+    }
+
+    /**
+     * This method sets the capabilities carried by a CAPABILITIES message.
+     *
+     * @param capabilities The capabilities of the car.
+     * @return This message.
+     */
+    DiscoveryMessage set(CarCapabilities capabilities) {
+        this.protocolVersion = capabilities.getProtocolVersion();
+        this.maxCommandRate = capabilities.getMaxCommandRate();
+        this.algorithms = capabilities.getAlgorithms();
+        this.features = capabilities.getFeatures();
+
+        return this;
+    }
+
+    /**
+     * This method returns the capabilities carried by a CAPABILITIES message.
+     *
+     * @return The capabilities of the car.
+     */
+    CarCapabilities toCapabilities() {
+        return new CarCapabilities(this.protocolVersion, this.maxCommandRate, this.algorithms, this.features);
+    }
+
+    /**
+     * This method writes the message into the buffer.
+     *
+     * @param buffer The buffer the message is written into.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encode(ByteBuffer buffer) {
+        if (buffer.remaining() < size()) {
+            throw new BufferOverflowException();
+        }
+
+        buffer.put(MAGIC)
+                .put(VERSION)
+                .put((byte) type)
+                .putInt((int) nonce);
+
+        if (type == CAPABILITIES) {
+            buffer.put((byte) protocolVersion)
+                    .putShort((short) maxCommandRate)
+                    .put((byte) algorithms)
+                    .put((byte) features);
+        }
+    }
+
+    /**
+     * This method reads a message from the buffer, starting at the buffer's current position.
+     * The buffer's position is only advanced if the message was read.
+     *
+     * @param buffer The buffer the message is read from.
+     * @return True if a valid message was read, false otherwise.
+     */
+    boolean decode(ByteBuffer buffer) {
+        int start = buffer.position();
+
+        if (buffer.remaining() < HEADER_SIZE
+                || buffer.get(start) != MAGIC
+                || buffer.get(start + 1) != VERSION) {
+            return false;
+        }
+
+        int type = buffer.get(start + 2);
+
+        if (type < DISCOVER || type > CAPABILITIES
+                || (type == CAPABILITIES && buffer.remaining() < CAPABILITIES_SIZE)) {
+            return false;
+        }
+
+        this.type = type;
+        this.nonce = buffer.getInt(start + 3) & 0xFFFFFFFFL;
+
+        if (type == CAPABILITIES) {
+            this.protocolVersion = buffer.get(start + 7) & 0xFF;
+            this.maxCommandRate = buffer.getShort(start + 8) & 0xFFFF;
+            this.algorithms = buffer.get(start + 10) & 0xFF;
+            this.features = buffer.get(start + 11) & 0xFF;
+        }
+
+        buffer.position(start + size());
+
+        return true;
+    }
+
+    /**
+     * This method returns the size of the message once encoded.
+     *
+     * @return Number of bytes.
+     */
+    int size() {
+        return type == CAPABILITIES ? CAPABILITIES_SIZE : HEADER_SIZE;
+    }
+}
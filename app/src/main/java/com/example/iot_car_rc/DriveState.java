@@ -0,0 +1,108 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents the current drive state of the remote car, shared between threads.
+ * The state is packed into a single long, eight bits per value,
+ * so it is updated and sampled atomically without allocating memory.
+ *
+ * @author Rafał Dąbrowski
+ */
+class DriveState {
+    //  No packed state has its upper bits set, so -1 marks a state which was never set
+    static final long EMPTY = -1L;
+
+    private volatile long state = EMPTY;
+
+    /**
+     * This method sets the drive state.
+     *
+     * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+     * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+     * @param drivingAlgorithm The algorithm used to drive the car.
+     * @return Nothing.
+     */
+    void set(int leftMotorSpeed, int rightMotorSpeed,
+             int direction, int drivingMode, int drivingAlgorithm) {
+        this.state = pack(leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm);
+    }
+
+    /**
+     * This method returns the packed drive state.
+     *
+     * @return The packed drive state or EMPTY if it was never set.
+     */
+    long get() {
+        return this.state;
+    }
+
+    /**
+     * This method packs the drive state into a single long.
+     *
+     * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+     * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+     * @param drivingAlgorithm The algorithm used to drive the car.
+     * @return The packed drive state.
+     */
+    static long pack(int leftMotorSpeed, int rightMotorSpeed,
+                     int direction, int drivingMode, int drivingAlgorithm) {
+        return (long) (leftMotorSpeed & 0xFF) << 32
+                | (long) (rightMotorSpeed & 0xFF) << 24
+                | (direction & 0xFF) << 16
+                | (drivingMode & 0xFF) << 8
+                | (drivingAlgorithm & 0xFF);
+    }
+
+    /**
+     * This method returns the left motor speed of the packed drive state.
+     *
+     * @param state The packed drive state.
+     * @return The speed of the left motor.
+     */
+    static int leftMotorSpeed(long state) {
+        return (int) (state >>> 32) & 0xFF;
+    }
+
+    /**
+     * This method returns the right motor speed of the packed drive state.
+     *
+     * @param state The packed drive state.
+     * @return The speed of the right motor.
+     */
+    static int rightMotorSpeed(long state) {
+        return (int) (state >>> 24) & 0xFF;
+    }
+
+    /**
+     * This method returns the driving direction of the packed drive state.
+     *
+     * @param state The packed drive state.
+     * @return The driving direction.
+     */
+    static int direction(long state) {
+        return (int) (state >>> 16) & 0xFF;
+    }
+
+    /**
+     * This method returns the driving mode of the packed drive state.
+     *
+     * @param state The packed drive state.
+     * @return The driving mode.
+     */
+    static int drivingMode(long state) {
+        return (int) (state >>> 8) & 0xFF;
+    }
+
+    /**
+     * This method returns the driving algorithm of the packed drive state.
+     *
+     * @param state The packed drive state.
+     * @return The driving algorithm.
+     */
+    static int drivingAlgorithm(long state) {
+        return (int) state & 0xFF;
+    }
+}
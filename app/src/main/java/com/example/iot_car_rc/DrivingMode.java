@@ -2,12 +2,15 @@ package com.example.iot_car_rc;
 
 /**
  * Represents driving modes of the remote controlled car.
+ * In the TRAJECTORY mode the car runs an uploaded trajectory on its own clock
+ * and ignores the motor speeds of the commands, see TrajectoryChunk.
  *
  * @author Rafał Dąbrowski
  */
 public enum DrivingMode {
     REMOTE(0),
-    AUTONOMOUS(1);
+    AUTONOMOUS(1),
+    TRAJECTORY(2);
 
     private int value;
 
@@ -0,0 +1,94 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents the body of a thread which runs a task on a fixed-rate tick of the monotonic clock.
+ * Ticks which were missed entirely are skipped instead of bursting to catch up.
+ * Deadlines are only ever compared by their difference to the current time,
+ * so the loop keeps ticking when System.nanoTime() wraps around.
+ *
+ * @author Rafał Dąbrowski
+ */
+class FixedRateLoop {
+    /**
+     * Interface for the task run on every tick, called on the looping thread only.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Task {
+        /**
+         * This method returns whether the loop should keep ticking.
+         *
+         * @return True if the loop should keep ticking, false if it should return.
+         */
+        boolean isTicking();
+
+        /**
+         * This method returns the period of the ticks, a change takes effect from the next tick.
+         *
+         * @return The period of the ticks in nanoseconds.
+         */
+        long getTickPeriodNanos();
+
+        /**
+         * This method handles a single tick.
+         *
+         * @param now           The time of the tick in nanoseconds, from System.nanoTime().
+         * @param latenessNanos How late the tick is in nanoseconds.
+         * @return Nothing.
+         */
+        void onTick(long now, long latenessNanos);
+
+        /**
+         * This method waits for the next tick. It may return early, e.g. when the loop is stopped.
+         *
+         * @param remainingNanos The time left until the next tick in nanoseconds.
+         * @return Nothing.
+         */
+        void awaitTick(long remainingNanos);
+    }
+
+    /**
+     * This method runs the task on every tick until it stops ticking. The first tick is due at once.
+     *
+     * @param task The task.
+     * @return Nothing.
+     */
+    static void run(Task task) {
+        long deadline = System.nanoTime();
+
+        while (task.isTicking()) {
+            long now = System.nanoTime();
+            long remaining = deadline - now;
+
+            if (remaining > 0) {
+                task.awaitTick(remaining);
+                continue;
+            }
+
+            task.onTick(now, -remaining);
+            deadline = nextDeadline(deadline, now, task.getTickPeriodNanos());
+        }
+    }
+
+    /**
+     * This method returns the deadline of the tick after the one which was due at the given deadline.
+     * If whole periods have already passed since then, it returns the next deadline
+     * of the same phase which is still ahead, instead of those of the missed ticks.
+     *
+     * @param deadline    The deadline of the current tick in nanoseconds, from System.nanoTime().
+     * @param now         The time of the current tick in nanoseconds, from System.nanoTime().
+     * @param periodNanos The period of the ticks in nanoseconds.
+     * @return The deadline of the next tick in nanoseconds.
+     */
+    static long nextDeadline(long deadline, long now, long periodNanos) {
+        long next = deadline + periodNanos;
+        long behind = now - next;
+
+        //  Skip the ticks which were missed entirely instead of bursting to catch up
+        if (behind >= periodNanos) {
+            next = now + periodNanos - behind % periodNanos;
+        }
+
+        return next;
+    }
+}
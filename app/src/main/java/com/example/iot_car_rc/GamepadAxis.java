@@ -0,0 +1,106 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents the calibration of one axis of a game controller stick.
+ * Raw values, nominally ranging from <-1, 1>, are measured from the calibrated center.
+ * Values within the inner deadzone map to 0, so a stick at rest does not creep the car,
+ * values beyond the outer deadzone map to the full offset, so a worn stick still reaches full speed.
+ * In between the offset is rescaled, so it rises smoothly from the edge of the inner deadzone.
+ * Sticks reaching further than the nominal range extend it.
+ *
+ * <p>The axis does not allocate memory and is used by a single thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class GamepadAxis {
+    static final float DEFAULT_DEADZONE = 0.1f;
+    static final float OUTER_DEADZONE = 0.05f;
+    static final float MAX_DEADZONE = 0.5f;
+    private static final int MAX_OFFSET = 100;
+
+    private float deadzone = DEFAULT_DEADZONE;
+    private float center;
+    private float min = -1;
+    private float max = 1;
+    private float lastValue;
+
+    /**
+     * This method resets the axis to the nominal range, centered at 0, with the default deadzone.
+     *
+     * @return Nothing.
+     */
+    void reset() {
+        this.deadzone = DEFAULT_DEADZONE;
+        this.center = 0;
+        this.min = -1;
+        this.max = 1;
+        this.lastValue = 0;
+    }
+
+    /**
+     * This method sets the inner deadzone of the axis.
+     *
+     * @param deadzone The part of the range around the center mapped to 0, ranges from <0, 0.5>.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the deadzone is out of range.
+     */
+    void setDeadzone(float deadzone) {
+        if (deadzone < 0 || deadzone > MAX_DEADZONE) {
+            throw new IllegalArgumentException("Deadzone out of range: " + deadzone);
+        }
+
+        this.deadzone = deadzone;
+    }
+
+    /**
+     * This method returns the inner deadzone of the axis.
+     *
+     * @return The part of the range around the center mapped to 0.
+     */
+    float getDeadzone() {
+        return this.deadzone;
+    }
+
+    /**
+     * This method takes the last raw value as the center of the axis, the stick must be at rest.
+     *
+     * @return Nothing.
+     */
+    void calibrateCenter() {
+        this.center = this.lastValue;
+    }
+
+    /**
+     * This method returns the calibrated center of the axis.
+     *
+     * @return The raw value of the stick at rest.
+     */
+    float getCenter() {
+        return this.center;
+    }
+
+    /**
+     * This method maps a raw value of the axis to an offset.
+     *
+     * @param value The raw value of the axis.
+     * @return The offset, ranges from <-100, 100>.
+     */
+    int map(float value) {
+        this.lastValue = value;
+        this.min = Math.min(this.min, value);
+        this.max = Math.max(this.max, value);
+
+        float displacement = value - this.center;
+        float range = displacement >= 0 ? this.max - this.center : this.center - this.min;
+        float magnitude = range > 0 ? Math.abs(displacement) / range : 0;
+
+        if (magnitude <= this.deadzone) {
+            return 0;
+        }
+
+        float scaled = Math.min(1, (magnitude - this.deadzone) / (1 - OUTER_DEADZONE - this.deadzone));
+        int offset = Math.round(scaled * MAX_OFFSET);
+
+        return displacement < 0 ? -offset : offset;
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.iot_car_rc;
+
+import android.view.KeyEvent;
+
+/**
+ * Represents the mapping of game controller input to the same stick offsets the joystick view reports,
+ * and of its buttons to driving mode and algorithm switches.
+ * Every axis of every controller has its own calibration, controllers are told apart by their device id.
+ * The offsets follow the controller which moved last.
+ *
+ * <p>Buttons map as follows:
+ * <pre>
+ *     START   toggles autonomous control
+ *     SELECT  takes the current position of the sticks as their center
+ *     X, Y, B select the simple, advanced and complex algorithm
+ * </pre>
+ *
+ * <p>Controllers are kept in preallocated arrays, so mapping does not allocate memory.
+ * The mapper is used by a single thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class GamepadMapper {
+    static final int MAX_DEVICES = 4;
+    static final int NO_DEVICE = -1;
+
+    //  The axes, in the order of the offsets reported to the joystick listener
+    static final int LEFT_X = 0;
+    static final int LEFT_Y = 1;
+    static final int RIGHT_X = 2;
+    static final int RIGHT_Y = 3;
+    static final int AXIS_COUNT = 4;
+
+    /**
+     * Represents the actions of the controller's buttons.
+     *
+     * @author Rafał Dąbrowski
+     */
+    enum Action {
+        NONE(null),
+        TOGGLE_DRIVING_MODE(null),
+        CALIBRATE(null),
+        SELECT_SIMPLE(DrivingAlgorithm.SIMPLE),
+        SELECT_ADVANCED(DrivingAlgorithm.ADVANCED),
+        SELECT_COMPLEX(DrivingAlgorithm.COMPLEX);
+
+        private DrivingAlgorithm drivingAlgorithm;
+
+        /**
+         * Constructor for Action enum.
+         *
+         * @param drivingAlgorithm the driving algorithm selected by the action, null if it selects none.
+         */
+        Action(DrivingAlgorithm drivingAlgorithm) {
+            this.drivingAlgorithm = drivingAlgorithm;
+        }
+
+        /**
+         * This method returns the driving algorithm selected by the action.
+         *
+         * @return The driving algorithm, null if the action selects none.
+         */
+        DrivingAlgorithm getDrivingAlgorithm() {
+            return drivingAlgorithm;
+        }
+    }
+
+    private final int[] deviceIds = new int[MAX_DEVICES];
+    private final GamepadAxis[][] axes = new GamepadAxis[MAX_DEVICES][AXIS_COUNT];
+    private final int[] offsets = new int[AXIS_COUNT];
+    private int activeDeviceId = NO_DEVICE;
+    private int nextEvicted;
+
+    /**
+     * A constructor for GamepadMapper
+     *
+     * @return GamepadMapper instance.
+     */
+    GamepadMapper() {
+        for (int slot = 0; slot < MAX_DEVICES; slot++) {
+            this.deviceIds[slot] = NO_DEVICE;
+
+            for (int axis = 0; axis < AXIS_COUNT; axis++) {
+                this.axes[slot][axis] = new GamepadAxis();
+            }
+        }
+    }
+
+    /**
+     * This method returns the action of a button.
+     *
+     * @param keyCode The key code of the button.
+     * @return The action, NONE if the button is not mapped.
+     */
+    static Action actionOf(int keyCode) {
+        switch (keyCode) {
+            case KeyEvent.KEYCODE_BUTTON_START:
+                return Action.TOGGLE_DRIVING_MODE;
+            case KeyEvent.KEYCODE_BUTTON_SELECT:
+                return Action.CALIBRATE;
+            case KeyEvent.KEYCODE_BUTTON_X:
+                return Action.SELECT_SIMPLE;
+            case KeyEvent.KEYCODE_BUTTON_Y:
+                return Action.SELECT_ADVANCED;
+            case KeyEvent.KEYCODE_BUTTON_B:
+                return Action.SELECT_COMPLEX;
+            default:
+                return Action.NONE;
+        }
+    }
+
+    /**
+     * This method checks if a controller is known to the mapper.
+     *
+     * @param deviceId The device id of the controller.
+     * @return True if the controller is known, false otherwise.
+     */
+    boolean hasDevice(int deviceId) {
+        return slotOf(deviceId) >= 0;
+    }
+
+    /**
+     * This method adds a controller, with every axis reset to the nominal range and the default deadzone.
+     * With no free slot left, the known controllers are forgotten in turn.
+     *
+     * @param deviceId The device id of the controller.
+     * @return Nothing.
+     */
+    void addDevice(int deviceId) {
+        int slot = slotOf(deviceId);
+
+        if (slot < 0) {
+            slot = slotOf(NO_DEVICE);
+        }
+
+        if (slot < 0) {
+            slot = this.nextEvicted;
+            this.nextEvicted = (this.nextEvicted + 1) % MAX_DEVICES;
+        }
+
+        this.deviceIds[slot] = deviceId;
+
+        for (GamepadAxis axis : this.axes[slot]) {
+            axis.reset();
+        }
+    }
+
+    /**
+     * This method removes a controller, e.g. when it is disconnected.
+     * If the offsets follow it, they are centered, so the car does not drive on by itself.
+     *
+     * @param deviceId The device id of the controller.
+     * @return True if the offsets were centered, false otherwise.
+     */
+    boolean removeDevice(int deviceId) {
+        int slot = slotOf(deviceId);
+
+        if (slot >= 0) {
+            this.deviceIds[slot] = NO_DEVICE;
+        }
+
+        if (deviceId != this.activeDeviceId) {
+            return false;
+        }
+
+        this.activeDeviceId = NO_DEVICE;
+
+        for (int axis = 0; axis < AXIS_COUNT; axis++) {
+            this.offsets[axis] = 0;
+        }
+
+        return true;
+    }
+
+    /**
+     * This method sets the inner deadzone of an axis of a controller, which is added if it is unknown.
+     *
+     * @param deviceId The device id of the controller.
+     * @param axis     The axis, e.g. LEFT_X.
+     * @param deadzone The part of the range around the center mapped to 0, ranges from <0, 0.5>.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the deadzone is out of range.
+     */
+    void setDeadzone(int deviceId, int axis, float deadzone) {
+        this.axes[slotOrAdd(deviceId)][axis].setDeadzone(deadzone);
+    }
+
+    /**
+     * This method takes the last position of the sticks of a controller as their center.
+     *
+     * @param deviceId The device id of the controller.
+     * @return True if the controller is known, false otherwise.
+     */
+    boolean calibrate(int deviceId) {
+        int slot = slotOf(deviceId);
+
+        if (slot < 0) {
+            return false;
+        }
+
+        for (GamepadAxis axis : this.axes[slot]) {
+            axis.calibrateCenter();
+        }
+
+        return true;
+    }
+
+    /**
+     * This method handles a sample of the sticks of a controller, which is added if it is unknown.
+     * The raw values are as the controller reports them, down is positive in the Y axes.
+     *
+     * @param deviceId The device id of the controller.
+     * @param leftX    The raw value of the left stick in the X axis.
+     * @param leftY    The raw value of the left stick in the Y axis.
+     * @param rightX   The raw value of the right stick in the X axis.
+     * @param rightY   The raw value of the right stick in the Y axis.
+     * @return True if the offsets have changed, false otherwise.
+     */
+    boolean onAxes(int deviceId, float leftX, float leftY, float rightX, float rightY) {
+        GamepadAxis[] deviceAxes = this.axes[slotOrAdd(deviceId)];
+        boolean changed = deviceId != this.activeDeviceId;
+
+        this.activeDeviceId = deviceId;
+        changed |= setOffset(LEFT_X, deviceAxes[LEFT_X].map(leftX));
+        changed |= setOffset(LEFT_Y, -deviceAxes[LEFT_Y].map(leftY));
+        changed |= setOffset(RIGHT_X, deviceAxes[RIGHT_X].map(rightX));
+        changed |= setOffset(RIGHT_Y, -deviceAxes[RIGHT_Y].map(rightY));
+
+        return changed;
+    }
+
+    /**
+     * This method returns the offset of an axis, up is positive in the Y axes.
+     *
+     * @param axis The axis, e.g. LEFT_X.
+     * @return The offset, ranges from <-100, 100>.
+     */
+    int getOffset(int axis) {
+        return this.offsets[axis];
+    }
+
+    /**
+     * This method sets the offset of an axis.
+     *
+     * @param axis   The axis.
+     * @param offset The new offset.
+     * @return True if the offset has changed, false otherwise.
+     */
+    private boolean setOffset(int axis, int offset) {
+        if (this.offsets[axis] == offset) {
+            return false;
+        }
+
+        this.offsets[axis] = offset;
+
+        return true;
+    }
+
+    /**
+     * This method returns the slot of a controller, adding the controller if it is unknown.
+     *
+     * @param deviceId The device id of the controller.
+     * @return The slot.
+     */
+    private int slotOrAdd(int deviceId) {
+        int slot = slotOf(deviceId);
+
+        if (slot < 0) {
+            addDevice(deviceId);
+            slot = slotOf(deviceId);
+        }
+
+        return slot;
+    }
+
+    /**
+     * This method returns the slot of a controller.
+     *
+     * @param deviceId The device id of the controller, NO_DEVICE for a free slot.
+     * @return The slot, or -1 if there is none.
+     */
+    private int slotOf(int deviceId) {
+        for (int slot = 0; slot < MAX_DEVICES; slot++) {
+            if (this.deviceIds[slot] == deviceId) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.iot_car_rc;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * Represents the WifiConnection scheduler running tasks on the main thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class HandlerScheduler implements WifiConnection.Scheduler {
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public long now() {
+        return SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMs) {
+        this.handler.postDelayed(task, delayMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        this.handler.removeCallbacks(task);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents the geometry of the joystick: its dimensions, the position of the knob
+ * and the displacement of the knob from the center of the base.
+ * The result of the last touch is kept in the geometry, so it does not allocate memory.
+ *
+ * @author Rafał Dąbrowski
+ */
+class JoystickGeometry {
+    //  How far from the base, in pixels, a touch still moves the knob
+    private static final float TOUCH_MARGIN = 300;
+
+    private float centerX;
+    private float centerY;
+    private float baseRadius;
+    private float knobRadius;
+
+    private float knobX;
+    private float knobY;
+    private int xDisplacement;
+    private int yDisplacement;
+
+    /**
+     * This method sets up the dimensions of the joystick and centers the knob.
+     *
+     * @param width  the width of the view.
+     * @param height the height of the view.
+     * @return Nothing.
+     */
+    void setupDimensions(int width, int height) {
+        setupDimensions(0, 0, width, height);
+    }
+
+    /**
+     * This method sets up the dimensions of a joystick taking up a region of the view and centers the knob.
+     *
+     * @param left   the x coordinate of the left edge of the region.
+     * @param top    the y coordinate of the top edge of the region.
+     * @param width  the width of the region.
+     * @param height the height of the region.
+     * @return Nothing.
+     */
+    void setupDimensions(int left, int top, int width, int height) {
+        this.centerX = left + width / 2;
+        this.centerY = top + height / 2;
+        this.baseRadius = Math.min(width, height) / 4;
+        this.knobRadius = Math.min(width, height) / 6;
+
+        center();
+    }
+
+    /**
+     * This method checks if the screen was touched close to the joystick base.
+     *
+     * @param x the x coordinate of the touch event.
+     * @param y the y coordinate of the touch event.
+     * @return True if the touch was close to the base, false otherwise.
+     */
+    boolean wasTouchedNearBase(float x, float y) {
+        float dx = x - centerX;
+        float dy = y - centerY;
+        float reach = baseRadius + TOUCH_MARGIN;
+
+        //  Compared squared, so no square root is needed
+        return dx * dx + dy * dy <= reach * reach;
+    }
+
+    /**
+     * This method moves the knob towards the touch, keeping it within the base,
+     * and computes its displacement.
+     *
+     * @param eventX the x coordinate of the touch event.
+     * @param eventY the y coordinate of the touch event.
+     * @return Nothing.
+     */
+    void moveKnob(float eventX, float eventY) {
+        float dx = eventX - centerX;
+        float dy = eventY - centerY;
+        float displacement = (float) Math.sqrt(dx * dx + dy * dy);
+
+        if (displacement < baseRadius) {
+            this.knobX = eventX;
+            this.knobY = eventY;
+        } else {
+            float ratio = baseRadius / displacement;
+            this.knobX = centerX + (eventX - centerX) * ratio;
+            this.knobY = centerY + (eventY - centerY) * ratio;
+        }
+
+        this.xDisplacement = (int) (((knobX - centerX) / baseRadius) * 100);
+        this.yDisplacement = -(int) (((knobY - centerY) / baseRadius) * 100);
+    }
+
+    /**
+     * This method moves the knob back to the center of the base.
+     *
+     * @return Nothing.
+     */
+    void center() {
+        this.knobX = centerX;
+        this.knobY = centerY;
+        this.xDisplacement = 0;
+        this.yDisplacement = 0;
+    }
+
+    /**
+     * This method returns the x coordinate of the center of the base.
+     *
+     * @return The x coordinate of the center of the base.
+     */
+    float getCenterX() {
+        return this.centerX;
+    }
+
+    /**
+     * This method returns the y coordinate of the center of the base.
+     *
+     * @return The y coordinate of the center of the base.
+     */
+    float getCenterY() {
+        return this.centerY;
+    }
+
+    /**
+     * This method returns the radius of the base.
+     *
+     * @return The radius of the base.
+     */
+    float getBaseRadius() {
+        return this.baseRadius;
+    }
+
+    /**
+     * This method returns the radius of the knob.
+     *
+     * @return The radius of the knob.
+     */
+    float getKnobRadius() {
+        return this.knobRadius;
+    }
+
+    /**
+     * This method returns the x coordinate of the knob.
+     *
+     * @return The x coordinate of the knob.
+     */
+    float getKnobX() {
+        return this.knobX;
+    }
+
+    /**
+     * This method returns the y coordinate of the knob.
+     *
+     * @return The y coordinate of the knob.
+     */
+    float getKnobY() {
+        return this.knobY;
+    }
+
+    /**
+     * This method returns the displacement of the knob in the X axis.
+     *
+     * @return The displacement, ranges between <-100, 100>.
+     */
+    int getXDisplacement() {
+        return this.xDisplacement;
+    }
+
+    /**
+     * This method returns the displacement of the knob in the Y axis, up is positive.
+     *
+     * @return The displacement, ranges between <-100, 100>.
+     */
+    int getYDisplacement() {
+        return this.yDisplacement;
+    }
+}
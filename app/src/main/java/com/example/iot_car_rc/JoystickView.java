@@ -1,33 +1,60 @@
 package com.example.iot_car_rc;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.PorterDuff;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.view.Choreographer;
 import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 import android.view.SurfaceView;
 import android.view.View;
 
-import org.json.JSONException;
-
 /**
  * Represents JoystickView.
+ * The base and the shaded knob are pre-rendered into bitmaps whenever the size of the view changes,
+ * so drawing a frame only blits them and draws the stick, without allocating memory.
+ * Touches go through the TouchPipeline, the listener gets one filtered displacement per frame.
+ *
+ * <p>The view holds one stick, or two side by side, e.g. throttle on the left and steering on the right.
+ * Every stick is held by the pointer which went down on its half of the view, tracked by its identifier,
+ * so any number of fingers can touch the view at once. The listener gets the positions of both sticks
+ * together, once per frame.
  *
  * @author Rafał Dąbrowski
  */
-public class JoystickView extends SurfaceView implements SurfaceHolder.Callback, View.OnTouchListener {
-    private float centerX;
-    private float centerY;
-    private float baseRadius;
-    private float knobRadius;
+public class JoystickView extends SurfaceView
+        implements SurfaceHolder.Callback, View.OnTouchListener, Choreographer.FrameCallback {
+    private static final int SHADING = 5;
+
+    private final JoystickGeometry[] geometries = new JoystickGeometry[PointerTracker.MAX_STICKS];
+    private final TouchPipeline[] touchPipelines = new TouchPipeline[PointerTracker.MAX_STICKS];
+    private final PointerTracker pointerTracker = new PointerTracker();
     private boolean isEnabled = true;
+    private boolean isFramePending;
+
+    //  Sprites rendered in setupDimensions, drawn on every frame
+    private final Paint paint = new Paint();
+    private Bitmap baseSprite;
+    private Bitmap knobSprite;
+    private int spriteWidth;
+    private int spriteHeight;
+
+    //  The time it takes to draw a frame, from locking the canvas to posting it
+    private final LatencyHistogram frameTimes = new LatencyHistogram();
 
     private JoystickListener joystickListener;
 
+    {
+        for (int stick = 0; stick < PointerTracker.MAX_STICKS; stick++) {
+            this.geometries[stick] = new JoystickGeometry();
+            this.touchPipelines[stick] = new TouchPipeline(this.geometries[stick]);
+        }
+    }
+
     /**
      * Constructor for JoystickView. It registers onTouch and joystick listeners.
      *
@@ -83,32 +110,34 @@ public class JoystickView extends SurfaceView implements SurfaceHolder.Callback,
      */
     public interface JoystickListener {
         /**
-         * This method handles joystick movement event.
+         * This method handles joystick movement event. With a single stick, the right stick stays centered.
          *
-         * @param xOffset the offset of the joystick knob in the X axis, ranges between <0, 100>.
-         * @param yOffset the offset of the joystick knob in the Y axis, ranges between <0, 100>.
+         * @param leftXOffset  the offset of the left knob in the X axis, ranges between <-100, 100>.
+         * @param leftYOffset  the offset of the left knob in the Y axis, ranges between <-100, 100>.
+         * @param rightXOffset the offset of the right knob in the X axis, ranges between <-100, 100>.
+         * @param rightYOffset the offset of the right knob in the Y axis, ranges between <-100, 100>.
          * @return Nothing.
-         * @throws JSONException if parameters are of the wrong type
-         * @see JSONException
          */
-        void onJoystickMoved(int xOffset, int yOffset) throws JSONException;
+        void onJoystickMoved(int leftXOffset, int leftYOffset, int rightXOffset, int rightYOffset);
     }
 
     /**
      * Handler of surfaceCreated event.
-     * It calls {@link com.example.iot_car_rc.JoystickView#setupDimensions()}
-     * and {@link com.example.iot_car_rc.JoystickView#drawJoystick(float, float)} methods.
+     * It calls {@link com.example.iot_car_rc.JoystickView#setupDimensions(int, int)}
+     * and {@link com.example.iot_car_rc.JoystickView#drawJoysticks()} methods.
      *
      * @param holder The SurfaceHolder whose surface is being created.
      */
     @Override
     public void surfaceCreated(SurfaceHolder holder) {
-        this.setupDimensions();
-        drawJoystick(centerX, centerY);
+        this.setupDimensions(this.getWidth(), this.getHeight());
+        drawJoysticks();
     }
 
     /**
-     * Handler of surfaceChanged event. This handler is not used in this application.
+     * Handler of surfaceChanged event.
+     * If the size of the surface has changed, it sets up the dimensions and the sprites again
+     * and redraws the joystick.
      *
      * @param holder the SurfaceHolder whose surface has changed.
      * @param format the new PixelFormat of the surface.
@@ -117,37 +146,31 @@ public class JoystickView extends SurfaceView implements SurfaceHolder.Callback,
      */
     @Override
     public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        if (width == this.spriteWidth && height == this.spriteHeight && this.baseSprite != null) {
+            return;
+        }
 
+        this.setupDimensions(width, height);
+        drawJoysticks();
     }
 
     /**
-     * Handler of surfaceDestroyed event. This handler is not used in this application.
+     * Handler of surfaceDestroyed event. It releases the sprites.
      *
      * @param holder the SurfaceHolder whose surface is being destroyed.
-     * @return
+     * @return Nothing.
      */
     @Override
     public void surfaceDestroyed(SurfaceHolder holder) {
-
-    }
-
-    /**
-     * This method checks if the screen was touched close to the joystick base.
-     *
-     * @param x the x coordinate of the touch event.
-     * @param y the y coordinate of the touch event.
-     * @return
-     */
-    private boolean wasTouchedNearBase(float x, float y) {
-        float hypotenuse = (float) Math.sqrt(Math.pow(x - centerX, 2) + Math.pow(y - centerY, 2));
-
-        return hypotenuse <= baseRadius + 300;
+        recycleSprites();
     }
 
     /**
      * This method is a handler of the OnTouch event.
-     * It draws the joystick at a new location and
-     * calls onJoystickMoved callback with x and y displacement
+     * It feeds every sample of the pointers holding the sticks, including the historical ones,
+     * into their touch pipelines, draws the joysticks at their new location and calls onJoystickMoved
+     * callback with the filtered x and y displacements. Until the filtered displacements settle,
+     * they are updated on every following frame.
      *
      * @param view        The view the touch event has been dispatched to.
      * @param motionEvent The MotionEvent object containing full information about the event.
@@ -156,40 +179,186 @@ public class JoystickView extends SurfaceView implements SurfaceHolder.Callback,
     @Override
     public boolean onTouch(View view, MotionEvent motionEvent) {
         if (this.isEnabled && view.equals(this)) {
-            int xDisplacement = 0;
-            int yDisplacement = 0;
-
-            if (motionEvent.getAction() != MotionEvent.ACTION_UP
-                    && wasTouchedNearBase(motionEvent.getX(), motionEvent.getY())) {
-                float eventX = motionEvent.getX();
-                float eventY = motionEvent.getY();
-                float displacement = (float) Math.sqrt(
-                        Math.pow(eventX - centerX, 2) + Math.pow(eventY - centerY, 2)
-                );
+            long eventTime = motionEvent.getEventTime() * 1_000_000;
+
+            switch (motionEvent.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    //  A new gesture, nothing is held by the pointers of the previous one
+                    releaseSticks();
+                    onPointerDown(motionEvent, eventTime);
+                    break;
+                case MotionEvent.ACTION_POINTER_DOWN:
+                    onPointerDown(motionEvent, eventTime);
+                    break;
+                case MotionEvent.ACTION_MOVE:
+                    onPointersMoved(motionEvent, eventTime);
+                    break;
+                case MotionEvent.ACTION_POINTER_UP:
+                    onPointerUp(motionEvent);
+                    break;
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    releaseSticks();
+                    break;
+            }
+
+            tickSticks(eventTime);
+            drawJoysticks();
+            notifyJoystickMoved();
+            scheduleFrame();
+        }
+
+        return true;
+    }
 
-                if (displacement < baseRadius) {
-                    xDisplacement = (int) (((eventX - centerX) / baseRadius) * 100);
-                    yDisplacement = -(int) (((eventY - centerY) / baseRadius) * 100);
+    /**
+     * This method handles a pointer going down, which takes the stick of its half of the view if it is free.
+     *
+     * @param motionEvent The event of the pointer going down.
+     * @param eventTime   The time of the event in nanoseconds, from the monotonic clock.
+     * @return Nothing.
+     */
+    private void onPointerDown(MotionEvent motionEvent, long eventTime) {
+        int index = motionEvent.getActionIndex();
+        float x = motionEvent.getX(index);
+        int stick = pointerTracker.onPointerDown(motionEvent.getPointerId(index), x);
 
-                    drawJoystick(eventX, eventY);
-                } else {
-                    float ratio = baseRadius / displacement;
-                    float x = centerX + (eventX - centerX) * ratio;
-                    float y = centerY + (eventY - centerY) * ratio;
+        if (stick != PointerTracker.NO_STICK) {
+            touchPipelines[stick].onSample(x, motionEvent.getY(index), eventTime);
+        }
+    }
 
-                    xDisplacement = (int) (((x - centerX) / baseRadius) * 100);
-                    yDisplacement = -(int) (((y - centerY) / baseRadius) * 100);
+    /**
+     * This method feeds the samples of every pointer holding a stick into the stick's touch pipeline.
+     * Pointers holding no stick are ignored.
+     *
+     * @param motionEvent The event of the pointers moving.
+     * @param eventTime   The time of the event in nanoseconds, from the monotonic clock.
+     * @return Nothing.
+     */
+    private void onPointersMoved(MotionEvent motionEvent, long eventTime) {
+        for (int stick = 0; stick < pointerTracker.getStickCount(); stick++) {
+            int pointerId = pointerTracker.getPointerId(stick);
+            int index = pointerId == PointerTracker.NO_POINTER ? -1 : motionEvent.findPointerIndex(pointerId);
 
-                    drawJoystick(x, y);
-                }
-            } else {
-                drawJoystick(centerX, centerY);
+            if (index < 0) {
+                continue;
             }
 
-            try {
-                joystickListener.onJoystickMoved(xDisplacement, yDisplacement);
-            } catch (JSONException exception) {
-                Log.e(exception.getMessage(), "JoystickView:onTouch");
+            //  Samples batched since the previous event, oldest first
+            for (int h = 0; h < motionEvent.getHistorySize(); h++) {
+                touchPipelines[stick].onSample(
+                        motionEvent.getHistoricalX(index, h),
+                        motionEvent.getHistoricalY(index, h),
+                        motionEvent.getHistoricalEventTime(h) * 1_000_000
+                );
+            }
+
+            touchPipelines[stick].onSample(motionEvent.getX(index), motionEvent.getY(index), eventTime);
+        }
+    }
+
+    /**
+     * This method handles a pointer going up while others stay down, it releases the stick the pointer held.
+     *
+     * @param motionEvent The event of the pointer going up.
+     * @return Nothing.
+     */
+    private void onPointerUp(MotionEvent motionEvent) {
+        int stick = pointerTracker.onPointerUp(motionEvent.getPointerId(motionEvent.getActionIndex()));
+
+        if (stick != PointerTracker.NO_STICK) {
+            touchPipelines[stick].release();
+        }
+    }
+
+    /**
+     * This method releases every stick.
+     *
+     * @return Nothing.
+     */
+    private void releaseSticks() {
+        pointerTracker.reset();
+
+        for (TouchPipeline touchPipeline : touchPipelines) {
+            touchPipeline.release();
+        }
+    }
+
+    /**
+     * This method takes the filtered displacements of every stick for the tick.
+     *
+     * @param now The time of the tick in nanoseconds, from the monotonic clock.
+     * @return True if any displacement has changed since the previous tick, false otherwise.
+     */
+    private boolean tickSticks(long now) {
+        boolean changed = false;
+
+        for (int stick = 0; stick < pointerTracker.getStickCount(); stick++) {
+            changed |= touchPipelines[stick].tick(now);
+        }
+
+        return changed;
+    }
+
+    /**
+     * This method calls onJoystickMoved callback with the filtered displacements of both sticks.
+     *
+     * @return Nothing.
+     */
+    private void notifyJoystickMoved() {
+        if (joystickListener == null) {
+            return;
+        }
+
+        joystickListener.onJoystickMoved(
+                touchPipelines[0].getXDisplacement(),
+                touchPipelines[0].getYDisplacement(),
+                touchPipelines[1].getXDisplacement(),
+                touchPipelines[1].getYDisplacement()
+        );
+    }
+
+    /**
+     * This method is called on every frame while the filtered displacements have not settled.
+     * It calls onJoystickMoved callback if any displacement has changed.
+     *
+     * @param frameTimeNanos The time the frame started rendering, in nanoseconds.
+     * @return Nothing.
+     */
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        this.isFramePending = false;
+
+        if (this.isEnabled && tickSticks(frameTimeNanos)) {
+            notifyJoystickMoved();
+        }
+
+        scheduleFrame();
+    }
+
+    /**
+     * This method requests a frame callback, unless the filtered displacements have settled
+     * or a callback is already pending.
+     *
+     * @return Nothing.
+     */
+    private void scheduleFrame() {
+        if (!this.isFramePending && !isSettled()) {
+            this.isFramePending = true;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    /**
+     * This method checks if the filtered displacements of every stick have settled.
+     *
+     * @return True if every stick is settled, false otherwise.
+     */
+    private boolean isSettled() {
+        for (TouchPipeline touchPipeline : touchPipelines) {
+            if (!touchPipeline.isSettled()) {
+                return false;
             }
         }
 
@@ -197,78 +366,225 @@ public class JoystickView extends SurfaceView implements SurfaceHolder.Callback,
     }
 
     /**
-     * This method sets up the dimensions of the joystick
+     * This method sets the number of sticks, side by side. It releases every stick and redraws the view.
+     *
+     * @param stickCount The number of sticks, 1 or 2.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the number of sticks is out of range.
+     */
+    public void setStickCount(int stickCount) {
+        pointerTracker.setupLayout(stickCount, this.getWidth());
+
+        if (this.getWidth() > 0 && this.getHeight() > 0) {
+            this.setupDimensions(this.getWidth(), this.getHeight());
+        }
+
+        releaseSticks();
+        drawJoysticks();
+        notifyJoystickMoved();
+    }
+
+    /**
+     * This method sets up the dimensions of the joystick and renders its sprites.
+     *
+     * @param width  the width of the surface.
+     * @param height the height of the surface.
+     * @return Nothing.
+     */
+    private void setupDimensions(int width, int height) {
+        int stickCount = pointerTracker.getStickCount();
+        int stickWidth = width / stickCount;
+
+        releaseSticks();
+        pointerTracker.setupLayout(stickCount, width);
+
+        for (int stick = 0; stick < stickCount; stick++) {
+            geometries[stick].setupDimensions(stick * stickWidth, 0, stickWidth, height);
+        }
+
+        renderSprites(width, height);
+    }
+
+    /**
+     * This method renders the base and the shaded knob into bitmaps,
+     * which are then drawn on every frame.
      *
+     * @param width  the width of the surface.
+     * @param height the height of the surface.
      * @return Nothing.
      */
-    private void setupDimensions() {
-        final int height = this.getHeight();
-        final int width = this.getWidth();
-
-        centerX = width / 2;
-        centerY = height / 2;
-        baseRadius = Math.min(width, height) / 4;
-        knobRadius = Math.min(width, height) / 6;
+    private void renderSprites(int width, int height) {
+        recycleSprites();
+
+        //  Every stick is of the same size
+        final float baseRadius = geometries[0].getBaseRadius();
+        final float knobRadius = geometries[0].getKnobRadius();
+
+        if (baseRadius <= 0 || knobRadius <= 0) {
+            return;
+        }
+
+        //  The base of the joystick
+        this.baseSprite = createSprite(baseRadius);
+        Canvas canvas = new Canvas(this.baseSprite);
+        paint.setARGB(255, 50, 50, 50);
+        canvas.drawCircle(baseRadius, baseRadius, baseRadius, paint);
+
+        //  The knob, shaded with circles getting lighter towards its center
+        this.knobSprite = createSprite(knobRadius);
+        canvas = new Canvas(this.knobSprite);
+        for (int i = 1; i <= knobRadius / SHADING; i++) {
+            int shade = (int) (i * (255 * SHADING / knobRadius));
+
+            paint.setARGB(255, shade, shade, shade);
+            canvas.drawCircle(knobRadius, knobRadius, knobRadius - (float) i * SHADING / 2, paint);
+        }
+
+        this.spriteWidth = width;
+        this.spriteHeight = height;
+    }
+
+    /**
+     * This method creates an empty square bitmap holding a circle of the radius.
+     *
+     * @param radius the radius of the circle.
+     * @return The bitmap.
+     */
+    private static Bitmap createSprite(float radius) {
+        int size = (int) Math.ceil(radius * 2);
+
+        return Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
     }
 
     /**
-     * This method draws the joystick.
+     * This method releases the sprites.
      *
-     * @param newX new X coordinate at which the joystick will be drawn.
-     * @param newY new Y coordinate at which the joystick will be drawn.
      * @return Nothing.
      */
-    private void drawJoystick(float newX, float newY) {
-        if (this.getHolder().getSurface().isValid()) {
-            Canvas canvas = this.getHolder().lockCanvas();
-            Paint paint = new Paint();
-            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
-            final int shading = 5;
-
-
-            float hypotenuse =
-                    (float) Math.sqrt(Math.pow(newX - centerX, 2) + Math.pow(newY - centerY, 2));
-            float sin = (newY - centerY) / hypotenuse;
-            float cos = (newX - centerX) / hypotenuse;
-
-            //  Draw background circle (the base of the joystick)
-            paint.setARGB(255, 50, 50, 50);
-            canvas.drawCircle(
-                    centerX,
-                    centerY,
-                    this.baseRadius,
-                    paint
-            );
-
-            //  Draw the stick
-            for (int i = 1; i <= this.baseRadius / shading; i++) {
+    private void recycleSprites() {
+        if (this.baseSprite != null) {
+            this.baseSprite.recycle();
+            this.baseSprite = null;
+        }
+
+        if (this.knobSprite != null) {
+            this.knobSprite.recycle();
+            this.knobSprite = null;
+        }
+
+        this.spriteWidth = 0;
+        this.spriteHeight = 0;
+    }
+
+    /**
+     * This method draws the joysticks at the current positions of their knobs.
+     *
+     * @return Nothing.
+     */
+    private void drawJoysticks() {
+        if (this.baseSprite == null || !this.getHolder().getSurface().isValid()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        Canvas canvas = this.getHolder().lockCanvas();
+
+        if (canvas == null) {
+            return;
+        }
+
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+        for (int stick = 0; stick < pointerTracker.getStickCount(); stick++) {
+            drawJoystick(canvas, geometries[stick]);
+        }
+
+        this.getHolder().unlockCanvasAndPost(canvas);
+        this.frameTimes.record(System.nanoTime() - start);
+    }
+
+    /**
+     * This method draws a joystick. It blits the base and knob sprites and draws the stick between them.
+     *
+     * @param canvas   the canvas the joystick is drawn on.
+     * @param geometry the geometry of the joystick.
+     * @return Nothing.
+     */
+    private void drawJoystick(Canvas canvas, JoystickGeometry geometry) {
+        final float newX = geometry.getKnobX();
+        final float newY = geometry.getKnobY();
+        final float centerX = geometry.getCenterX();
+        final float centerY = geometry.getCenterY();
+        final float baseRadius = geometry.getBaseRadius();
+        final float knobRadius = geometry.getKnobRadius();
+        final float dx = newX - centerX;
+        final float dy = newY - centerY;
+
+        //  Draw background circle (the base of the joystick)
+        canvas.drawBitmap(this.baseSprite, centerX - baseRadius, centerY - baseRadius, null);
+
+        //  Draw the stick, a trail of fading circles from the knob towards the center
+        if (dx != 0 || dy != 0) {
+            for (int i = 1; i <= baseRadius / SHADING; i++) {
                 paint.setARGB(150 / i, 0, 0, 0);
                 canvas.drawCircle(
-                        newX - cos * hypotenuse * shading / this.baseRadius * i,
-                        newY - sin * hypotenuse * shading / this.baseRadius * i,
-                        i * (knobRadius * shading / this.baseRadius),
+                        newX - dx * SHADING / baseRadius * i,
+                        newY - dy * SHADING / baseRadius * i,
+                        i * (knobRadius * SHADING / baseRadius),
                         paint
                 );
             }
+        }
 
-            //  Draw the knob
-            for (int i = 1; i <= this.knobRadius / shading; i++) {
-                paint.setARGB(
-                        255,
-                        (int) (i * (255 * shading / this.knobRadius)),
-                        (int) (i * (255 * shading / this.knobRadius)),
-                        (int) (i * (255 * shading / this.knobRadius))
-                );
+        //  Draw the knob
+        canvas.drawBitmap(this.knobSprite, newX - knobRadius, newY - knobRadius, null);
+    }
 
-                canvas.drawCircle(
-                        newX,
-                        newY,
-                        this.knobRadius - (float) i * (shading) / 2,
-                        paint);
-            }
+    /**
+     * This method returns the histogram of the time it takes to draw a frame, in nanoseconds.
+     * It can be used to compare rendering changes on a device.
+     *
+     * @return The frame time histogram.
+     */
+    LatencyHistogram getFrameTimes() {
+        return this.frameTimes;
+    }
 
-            this.getHolder().unlockCanvasAndPost(canvas);
+    /**
+     * This method registers the rendering and touch metrics.
+     *
+     * @param metrics The registry the metrics are registered in.
+     * @return Nothing.
+     */
+    void registerMetrics(MetricsRegistry metrics) {
+        metrics.register("joystick.render_ns", this.frameTimes);
+        metrics.gauge("joystick.touch_samples", this::getSampleCount);
+    }
+
+    /**
+     * This method removes the rendering and touch metrics, so the registry does not keep the view reachable.
+     *
+     * @param metrics The registry the metrics were registered in.
+     * @return Nothing.
+     */
+    void unregisterMetrics(MetricsRegistry metrics) {
+        metrics.remove("joystick.render_ns");
+        metrics.remove("joystick.touch_samples");
+    }
+
+    /**
+     * This method returns the number of touch samples handled by every stick.
+     *
+     * @return Number of samples.
+     */
+    private long getSampleCount() {
+        long sampleCount = 0;
+
+        for (TouchPipeline touchPipeline : touchPipelines) {
+            sampleCount += touchPipeline.getSampleCount();
         }
+
+        return sampleCount;
     }
 
     /**
@@ -278,6 +594,7 @@ public class JoystickView extends SurfaceView implements SurfaceHolder.Callback,
      */
     public void disableJoystick() {
         this.isEnabled = false;
+        releaseSticks();
     }
 
     /**
@@ -0,0 +1,134 @@
+package com.example.iot_car_rc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Represents a fixed-bucket histogram of non-negative values, such as latencies in nanoseconds.
+ * Every power of two is split into eight buckets, so percentiles are reported
+ * with at most 12.5% relative error. Recording is lock-free and does not allocate memory.
+ *
+ * @author Rafał Dąbrowski
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * This method records the value, negative values are recorded as 0.
+     *
+     * @param value The value to be recorded.
+     * @return Nothing.
+     */
+    void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        this.counts.incrementAndGet(bucketOf(value));
+        this.count.incrementAndGet();
+
+        long currentMax = this.max.get();
+        while (value > currentMax && !this.max.compareAndSet(currentMax, value)) {
+            currentMax = this.max.get();
+        }
+    }
+
+    /**
+     * This method returns the number of recorded values.
+     *
+     * @return Number of recorded values.
+     */
+    long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * This method returns the largest recorded value.
+     *
+     * @return The largest recorded value, 0 if nothing was recorded.
+     */
+    long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * This method returns the value below or at which the given fraction of values fall.
+     *
+     * @param fraction The fraction of values, ranges from <0, 1>, e.g. 0.99 for the 99th percentile.
+     * @return The upper bound of the bucket holding the percentile, 0 if nothing was recorded.
+     */
+    long getPercentile(double fraction) {
+        long total = this.count.get();
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += this.counts.get(bucket);
+
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(bucket), this.max.get());
+            }
+        }
+
+        return this.max.get();
+    }
+
+    /**
+     * This method clears all recorded values. Values recorded concurrently may be lost.
+     *
+     * @return Nothing.
+     */
+    void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            this.counts.set(bucket, 0);
+        }
+
+        this.count.set(0);
+        this.max.set(0);
+    }
+
+    /**
+     * This method returns the bucket of the value.
+     *
+     * @param value The non-negative value.
+     * @return Index of the bucket.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * This method returns the largest value which falls into the bucket.
+     *
+     * @param bucket Index of the bucket.
+     * @return The largest value of the bucket.
+     */
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+
+        return lowerBound + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.iot_car_rc;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the link quality seen by the transmitter, measured from acknowledged commands.
+ * It keeps the round-trip times of the last {@value #WINDOW} acknowledgements
+ * and the acknowledgement state of the last {@value #WINDOW} sent commands.
+ * A command which was not acknowledged within the acknowledgement timeout counts as lost.
+ *
+ * <p>Recording does not allocate memory. Commands are recorded by the sender thread,
+ * acknowledgements by the receiver thread, and the statistics may be queried from any thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class LinkStatistics {
+    static final int WINDOW = 1024;
+    private static final int MASK = WINDOW - 1;
+    private static final long NONE = -1;
+
+    private final long[] sentSequences = new long[WINDOW];
+    private final long[] sentNanos = new long[WINDOW];
+    private final boolean[] acknowledged = new boolean[WINDOW];
+    private final long[] roundTrips = new long[WINDOW];
+    private final long[] sortedRoundTrips = new long[WINDOW];
+
+    private final long ackTimeoutNanos;
+    private long sentCount;
+    private long acknowledgedCount;
+    private long duplicateCount;
+    private long unexpectedCount;
+
+    //  Like the TCP round-trip estimator, every new round-trip time is weighed by 1/8
+    private long smoothedRoundTrip;
+
+    /**
+     * A constructor for LinkStatistics
+     *
+     * @param ackTimeoutMs The time after which an unacknowledged command counts as lost, in milliseconds.
+     * @return LinkStatistics instance.
+     * @throws IllegalArgumentException if the timeout is not positive.
+     */
+    LinkStatistics(long ackTimeoutMs) {
+        if (ackTimeoutMs <= 0) {
+            throw new IllegalArgumentException("The acknowledgement timeout must be positive");
+        }
+
+        this.ackTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ackTimeoutMs);
+        Arrays.fill(this.sentSequences, NONE);
+    }
+
+    /**
+     * This method records a sent command.
+     *
+     * @param sequence The sequence number of the command.
+     * @param now      The send time in nanoseconds, from System.nanoTime().
+     * @return Nothing.
+     */
+    synchronized void onSent(long sequence, long now) {
+        int slot = (int) (sequence & MASK);
+
+        this.sentSequences[slot] = sequence;
+        this.sentNanos[slot] = now;
+        this.acknowledged[slot] = false;
+        this.sentCount++;
+    }
+
+    /**
+     * This method records an acknowledgement.
+     * Acknowledgements of commands which were never sent or fell out of the window are ignored.
+     *
+     * @param sequence       The acknowledged sequence number.
+     * @param roundTripNanos The round-trip time of the command in nanoseconds.
+     * @return True if the acknowledgement was recorded, false if it was ignored or a duplicate.
+     */
+    synchronized boolean onAck(long sequence, long roundTripNanos) {
+        int slot = (int) (sequence & MASK);
+
+        if (this.sentSequences[slot] != sequence || roundTripNanos < 0) {
+            this.unexpectedCount++;
+            return false;
+        }
+
+        if (this.acknowledged[slot]) {
+            this.duplicateCount++;
+            return false;
+        }
+
+        this.acknowledged[slot] = true;
+        this.roundTrips[(int) (this.acknowledgedCount & MASK)] = roundTripNanos;
+        this.smoothedRoundTrip = this.acknowledgedCount == 0
+                ? roundTripNanos
+                : this.smoothedRoundTrip + (roundTripNanos - this.smoothedRoundTrip) / 8;
+        this.acknowledgedCount++;
+
+        return true;
+    }
+
+    /**
+     * This method returns the round-trip time below or at which the given fraction
+     * of the recent round-trip times fall.
+     *
+     * @param fraction The fraction of round-trip times, ranges from <0, 1>, e.g. 0.99 for the 99th percentile.
+     * @return The percentile in nanoseconds, 0 if nothing was acknowledged.
+     */
+    synchronized long getRoundTripPercentile(double fraction) {
+        int count = (int) Math.min(this.acknowledgedCount, WINDOW);
+
+        if (count == 0) {
+            return 0;
+        }
+
+        System.arraycopy(this.roundTrips, 0, this.sortedRoundTrips, 0, count);
+        Arrays.sort(this.sortedRoundTrips, 0, count);
+
+        int rank = Math.max(1, (int) Math.ceil(fraction * count));
+
+        return this.sortedRoundTrips[Math.min(rank, count) - 1];
+    }
+
+    /**
+     * This method returns the largest recent round-trip time.
+     *
+     * @return The largest round-trip time in nanoseconds, 0 if nothing was acknowledged.
+     */
+    synchronized long getMaxRoundTrip() {
+        int count = (int) Math.min(this.acknowledgedCount, WINDOW);
+        long max = 0;
+
+        for (int index = 0; index < count; index++) {
+            max = Math.max(max, this.roundTrips[index]);
+        }
+
+        return max;
+    }
+
+    /**
+     * This method returns the exponentially smoothed round-trip time, which follows recent changes.
+     *
+     * @return The smoothed round-trip time in nanoseconds, 0 if nothing was acknowledged.
+     */
+    synchronized long getSmoothedRoundTrip() {
+        return this.smoothedRoundTrip;
+    }
+
+    /**
+     * This method returns the smallest recent round-trip time, the one of the link without queueing.
+     * Only recent round trips are taken into account, so the baseline follows a route change.
+     *
+     * @return The smallest round-trip time in nanoseconds, 0 if nothing was acknowledged.
+     */
+    synchronized long getMinRoundTrip() {
+        int count = (int) Math.min(this.acknowledgedCount, WINDOW);
+        long min = count == 0 ? 0 : Long.MAX_VALUE;
+
+        for (int index = 0; index < count; index++) {
+            min = Math.min(min, this.roundTrips[index]);
+        }
+
+        return min;
+    }
+
+    /**
+     * This method returns the fraction of recent commands which were not acknowledged in time.
+     * Commands sent less than the acknowledgement timeout ago are not taken into account.
+     *
+     * @param now The current time in nanoseconds, from System.nanoTime().
+     * @return The loss rate, ranges from <0, 1>, 0 if no command is old enough.
+     */
+    synchronized double getLossRate(long now) {
+        return getLossRate(now, Long.MAX_VALUE);
+    }
+
+    /**
+     * This method returns the fraction of the commands settled within the interval
+     * which were not acknowledged in time. A command settles once the acknowledgement timeout
+     * has passed since it was sent, so the interval lags behind the current time by the timeout.
+     *
+     * @param now            The current time in nanoseconds, from System.nanoTime().
+     * @param intervalNanos  The length of the interval in nanoseconds.
+     * @return The loss rate, ranges from <0, 1>, 0 if no command settled within the interval.
+     */
+    synchronized double getLossRate(long now, long intervalNanos) {
+        int settled = 0;
+        int lost = 0;
+
+        for (int slot = 0; slot < WINDOW; slot++) {
+            long age = now - this.sentNanos[slot];
+
+            if (this.sentSequences[slot] == NONE || age < this.ackTimeoutNanos
+                    || age - this.ackTimeoutNanos > intervalNanos) {
+                continue;
+            }
+
+            settled++;
+
+            if (!this.acknowledged[slot]) {
+                lost++;
+            }
+        }
+
+        return settled == 0 ? 0 : (double) lost / settled;
+    }
+
+    /**
+     * This method returns the number of sent commands.
+     *
+     * @return Number of sent commands.
+     */
+    synchronized long getSentCount() {
+        return this.sentCount;
+    }
+
+    /**
+     * This method returns the number of acknowledged commands.
+     *
+     * @return Number of acknowledged commands.
+     */
+    synchronized long getAcknowledgedCount() {
+        return this.acknowledgedCount;
+    }
+
+    /**
+     * This method returns the number of repeated acknowledgements of the same command.
+     *
+     * @return Number of duplicate acknowledgements.
+     */
+    synchronized long getDuplicateCount() {
+        return this.duplicateCount;
+    }
+
+    /**
+     * This method returns the number of acknowledgements of commands which were not in the window.
+     *
+     * @return Number of unexpected acknowledgements.
+     */
+    synchronized long getUnexpectedCount() {
+        return this.unexpectedCount;
+    }
+}
@@ -1,312 +1,555 @@
 package com.example.iot_car_rc;
 
 import android.app.ProgressDialog;
-import android.content.BroadcastReceiver;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
+import android.content.ServiceConnection;
 import android.content.pm.ActivityInfo;
-import android.net.NetworkInfo;
-import android.net.wifi.WifiConfiguration;
-import android.net.wifi.WifiManager;
-import android.os.AsyncTask;
+import android.hardware.input.InputManager;
 import android.os.Bundle;
+import android.os.IBinder;
 import android.support.v7.app.AppCompatActivity;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.InputDevice;
+import android.view.KeyEvent;
+import android.view.MotionEvent;
 import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
+import android.widget.Button;
 import android.widget.Spinner;
 import android.widget.Switch;
+import android.widget.TextView;
 
-import org.json.JSONException;
+import com.example.iot_car_rc.core.DriveMixer;
+import com.example.iot_car_rc.core.FloatDriveMixer;
 
-import java.lang.ref.WeakReference;
-import java.net.SocketException;
-import java.net.UnknownHostException;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Represents MainActivity of the application.
+ * The transmitter and the Wi-Fi connection belong to the control session of the ControlService,
+ * the activity attaches to it while it is started.
+ * The car is driven with the joystick view or with a game controller, both feed the same drive state.
+ * The last drive can be uploaded to the car as a trajectory, which the car then repeats on its own.
  *
  * @author Rafał Dąbrowski
  */
-public class MainActivity extends AppCompatActivity implements JoystickView.JoystickListener {
-    private final String SSID = "ESP8266-ACCESS-POINT";
-    private final String IP_ADDRESS = "192.168.1.1";
-
-    private WifiManager wifiManager;
-    private WifiConfiguration wifiConfiguration;
-    private WiFiStateListener wiFiStateListener;
-    private IntentFilter filters;
+public class MainActivity extends AppCompatActivity
+        implements JoystickView.JoystickListener, ControlSession.Listener {
+    private ControlService.LocalBinder controlService;
+    private ControlSession session;
+    private final ServiceConnection serviceConnection = new ControlServiceConnection();
 
     private Switch controlModeSwitch;
     private Spinner algorithmSpinner;
+    private Spinner stickLayoutSpinner;
+    private Button trajectoryButton;
     private JoystickView joystickView;
+    private TextView telemetryText;
     private ProgressDialog wifiConnectionProgressDialog;
 
-    private CommandTransmitter commandTransmitter;
+    //  Telemetry is drained once per display frame into reused objects, so it never allocates
+    private final TelemetrySummary telemetrySummary = new TelemetrySummary();
+    private final char[] telemetryChars = new char[TelemetrySummary.MAX_TEXT_LENGTH];
+    private final Choreographer.FrameCallback displayFrameCallback = this::onDisplayFrame;
+
+    //  Health metrics, shown in an overlay toggled by long-pressing the telemetry, the service dumps them to a file
+    private static final long OVERLAY_INTERVAL_NANOS = 500_000_000L;
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final MetricsReport metricsReport = new MetricsReport(metrics);
+    private char[] metricsChars = new char[1024];
+    private long lastOverlayNanos;
+    private TextView metricsOverlay;
+
+    //  Cold start is traced, the algorithm spinner is only set up once the first frame is on screen
+    private final StartupTrace startupTrace = StartupTrace.getDefault();
+    private boolean firstFrameShown;
+    //  Between onResume and onPause, autonomy only runs then
+    private boolean resumed;
+
+    private final DriveMixer driveMixer = new FloatDriveMixer();
     private DrivingDirection drivingDirection = DrivingDirection.FORWARD;
     private DrivingMode drivingMode = DrivingMode.REMOTE;
     private DrivingAlgorithm drivingAlgorithm = DrivingAlgorithm.SIMPLE;
+    private StickLayout stickLayout = StickLayout.SINGLE;
     private int leftMotorSpeed;
     private int rightMotorSpeed;
+    private int leftXOffset;
+    private int leftYOffset;
+    private int rightXOffset;
+    private int rightYOffset;
+
+    //  Game controller sticks, in the order of GamepadMapper axes
+    private static final int[] GAMEPAD_AXES = {
+            MotionEvent.AXIS_X, MotionEvent.AXIS_Y, MotionEvent.AXIS_Z, MotionEvent.AXIS_RZ
+    };
+    private final GamepadMapper gamepadMapper = new GamepadMapper();
+    private final InputManager.InputDeviceListener gamepadListener = new GamepadListener();
+    private InputManager inputManager;
+
+    //  Every drive is recorded by the transmitter, so latency bugs can be reproduced by replaying it
+    private static final long SESSION_WRITE_TIMEOUT_MS = 2_000;
+    private SessionRecorder sessionRecorder;
+    private ExecutorService sessionWriter;
+
+    //  The trajectory mode is left once the uploaded trajectory is over
+    private static final long TRAJECTORY_END_MARGIN_MS = 500;
+    private final Runnable trajectoryEnd = this::stopTrajectory;
+
+    //  The autonomous driving on the phone, for cars which send telemetry
+    private final AutonomousEngine autonomousEngine =
+            new AutonomousEngine(new AutonomousOutput(), this.metrics, AutonomousEngine.TICK_BUDGET_NANOS);
+    private volatile CommandTransmitter autonomousTransmitter;
 
     /**
-     * Represents an AsyncTask used to connect to Wi-Fi.
+     * Represents the connection to the ControlService.
+     * The activity attaches to the control session once it is bound to the service.
      *
      * @author Rafał Dąbrowski
      */
-    private static class WaitForWiFiTask extends AsyncTask<Void, Void, Void> {
-        //  Needed to access activity properties
-        //  and prevent memory leakage since the class is static
-        private WeakReference<MainActivity> mainActivityReference;
-
-        /**
-         * A constructor for WaitForWiFiTask
-         *
-         * @param mainActivity a main activity context
-         * @return SendCommandTask instance.
-         */
-        WaitForWiFiTask(MainActivity mainActivity) {
-            this.mainActivityReference = new WeakReference<>(mainActivity);
-        }
-
-        /**
-         * This method is called before executing the task. It shows the Wi-Fi connection dialog.
-         *
-         * @return Nothing.
-         */
+    private class ControlServiceConnection implements ServiceConnection {
+
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            controlService = (ControlService.LocalBinder) service;
+            session = controlService.getSession();
+
+            session.attach(MainActivity.this);
+            attachRecorder();
+            //  The service may connect after onResume, which found no transmitter to drive with
+            startAutonomy();
+        }
+
         @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
-            MainActivity mainActivity = this.mainActivityReference.get();
-            mainActivity.wifiConnectionProgressDialog.show();
+        public void onServiceDisconnected(ComponentName name) {
+            controlService = null;
+            session = null;
         }
+    }
+
+    /**
+     * Represents the output of the autonomous engine, called on the engine thread.
+     * The engine's commands go out in the remote driving mode, as the phone does the driving,
+     * until the engine hands the driving back to the car.
+     *
+     * @author Rafał Dąbrowski
+     */
+    private class AutonomousOutput implements AutonomousEngine.Output {
 
-        /**
-         * This method tries to connect to Wi-Fi.
-         *
-         * @return Nothing.
-         */
         @Override
-        protected Void doInBackground(Void... voids) {
-            MainActivity mainActivity = this.mainActivityReference.get();
-            mainActivity.connectToWifi();
+        public void drive(int leftMotorSpeed, int rightMotorSpeed, int direction, int drivingAlgorithm) {
+            CommandTransmitter commandTransmitter = autonomousTransmitter;
 
-            return null;
+            if (commandTransmitter != null) {
+                commandTransmitter.sendCommand(leftMotorSpeed, rightMotorSpeed, direction,
+                        DrivingMode.REMOTE.getDrivingMode(), drivingAlgorithm);
+            }
         }
 
-        /**
-         * This method is called after executing the task. It dismisses the Wi-Fi connection dialog.
-         *
-         * @return Nothing.
-         */
         @Override
-        protected void onPostExecute(Void result) {
-            super.onPostExecute(result);
-            MainActivity mainActivity = this.mainActivityReference.get();
-            mainActivity.wifiConnectionProgressDialog.dismiss();
+        public void release(int drivingAlgorithm) {
+            CommandTransmitter commandTransmitter = autonomousTransmitter;
+
+            if (commandTransmitter != null) {
+                commandTransmitter.sendCommand(0, 0, DrivingDirection.FORWARD.getDrivingDirection(),
+                        DrivingMode.AUTONOMOUS.getDrivingMode(), drivingAlgorithm);
+            }
         }
     }
 
     /**
-     * Represents a Wi-Fi state listener.
-     * It listens for changes in Wi-Fi connections and handles them.
+     * Represents the listener of game controllers being connected and disconnected.
+     * A disconnected controller which was driving the car centers the sticks, so the car stops.
      *
      * @author Rafał Dąbrowski
      */
-    public class WiFiStateListener extends BroadcastReceiver {
+    private class GamepadListener implements InputManager.InputDeviceListener {
 
         @Override
-        public void onReceive(Context context, Intent intent) {
-            String action = intent.getAction();
-
-            if (action != null && action.equals(WifiManager.NETWORK_STATE_CHANGED_ACTION)) {
-                NetworkInfo info = intent.getParcelableExtra(WifiManager.EXTRA_NETWORK_INFO);
-                NetworkInfo.DetailedState state = info.getDetailedState();
-
-                switch (state) {
-                    case SCANNING:
-                        wifiConnectionProgressDialog.setMessage(getString(R.string.scanning_wifi));
-                        break;
-                    case CONNECTING:
-                        wifiConnectionProgressDialog.setMessage(getString(R.string.connecting_to_wifi));
-                        break;
-                    case OBTAINING_IPADDR:
-                        wifiConnectionProgressDialog.setMessage(getString(R.string.obtaining_wifi_ip_address));
-                        break;
-                    case DISCONNECTED:
-                        new WaitForWiFiTask((MainActivity) context).execute();
-                        break;
-                }
+        public void onInputDeviceAdded(int deviceId) {
+        }
+
+        @Override
+        public void onInputDeviceRemoved(int deviceId) {
+            if (gamepadMapper.removeDevice(deviceId) && drivingMode == DrivingMode.REMOTE) {
+                onJoystickMoved(0, 0, 0, 0);
+            }
+        }
+
+        @Override
+        public void onInputDeviceChanged(int deviceId) {
+            if (gamepadMapper.hasDevice(deviceId)) {
+                setUpGamepad(deviceId, inputManager.getInputDevice(deviceId), InputDevice.SOURCE_JOYSTICK);
             }
         }
     }
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        int section = this.startupTrace.begin("activity_create");
         super.onCreate(savedInstanceState);
+
+        int inflateSection = this.startupTrace.begin("activity_inflate");
         setContentView(R.layout.activity_main);
+        this.startupTrace.end(inflateSection);
 
         this.joystickView = (JoystickView) findViewById(R.id.joystickView);
+        this.telemetryText = (TextView) findViewById(R.id.telemetry_text);
+        this.metricsOverlay = (TextView) findViewById(R.id.metrics_overlay);
+        this.telemetryText.setOnLongClickListener(view -> {
+            toggleMetricsOverlay();
+            return true;
+        });
 
         //  Lock the screen orientation
         setRequestedOrientation(ActivityInfo.SCREEN_ORIENTATION_LOCKED);
 
-        //  Set broadcast receiver filters
-        this.filters = new IntentFilter();
-        this.filters.addAction("android.net.wifi.WIFI_STATE_CHANGED");
-        this.filters.addAction("android.net.wifi.STATE_CHANGE");
-
-        //  Register Wi-Fi listener
-        this.wiFiStateListener = new WiFiStateListener();
-        super.registerReceiver(wiFiStateListener, filters);
-
         //  Configure Wi-Fi connection progress dialog
         this.wifiConnectionProgressDialog = new ProgressDialog(this, R.style.progressDialogTheme);
         this.wifiConnectionProgressDialog.setMessage(getString(R.string.connecting_to_wifi));
         this.wifiConnectionProgressDialog.setCancelable(false);
         this.wifiConnectionProgressDialog.setInverseBackgroundForced(false);
 
-        //  Configure Wi-Fi connection parameters
-        this.wifiManager = (WifiManager) getSystemService(Context.WIFI_SERVICE);
-        this.wifiConfiguration = new WifiConfiguration();
-        this.wifiConfiguration.SSID = String.format("\"%s\"", SSID);
-        this.wifiConfiguration.allowedKeyManagement.set(WifiConfiguration.KeyMgmt.NONE);
+        //  Game controllers are watched while the activity is in the foreground
+        this.inputManager = (InputManager) getSystemService(Context.INPUT_SERVICE);
 
-        //  Try connecting to Wi-Fi
-        new WaitForWiFiTask(this).execute();
+        //  Register the health metrics of this activity's joystick
+        this.joystickView.registerMetrics(this.metrics);
 
-        //  Get command transmitter instance and set IP Address
-        try {
-            this.commandTransmitter = CommandTransmitter.getInstance();
-        } catch (SocketException exception) {
-            Log.e(exception.getMessage(), "TRANSMITTER_ERROR:getInstance");
-        }
+        //  Session logs are written in the background, the commands are recorded on the sender thread
+        this.sessionWriter = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "SessionWriter");
+            thread.setDaemon(true);
+            return thread;
+        });
 
-        //  Set the IP Address
-        try {
-            this.commandTransmitter.setInetAddress(this.IP_ADDRESS);
-        } catch (UnknownHostException exception) {
-            Log.e(exception.getMessage(), "TRANSMITTER_ERROR:setInetAddress");
-        }
+        //  Start the control session, it outlives this activity until the user finishes it
+        startService(new Intent(this, ControlService.class));
 
         controlModeSwitch = (Switch) findViewById(R.id.control_mode_switch);
         algorithmSpinner = (Spinner) findViewById(R.id.algorithm_spinner);
-
-        //  Create an adapter for spinner view
-        ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(
-                this,
-                R.array.algorithms_entries,
-                R.layout.spinner_item
-        );
-        //  Set the spinner view resource
-        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
-        //  Set the adapter
-        algorithmSpinner.setAdapter(adapter);
-
-        //  Set up on item selected listener for algorithm spinner
-        algorithmSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
-            @Override
-            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                drivingAlgorithm = stringToDrivingAlgorithm((String) parent.getSelectedItem());
-            }
-
-            @Override
-            public void onNothingSelected(AdapterView<?> parent) {
-                drivingAlgorithm = stringToDrivingAlgorithm((String) parent.getItemAtPosition(0));
-            }
-        });
+        stickLayoutSpinner = (Spinner) findViewById(R.id.stick_layout_spinner);
+        trajectoryButton = (Button) findViewById(R.id.trajectory_button);
 
         //  Set up on checked listener for control mode switch
         controlModeSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> {
+            endTrajectory();
+
             if (isChecked) {
                 controlModeSwitch.setText(R.string.control_mode_switch_text_off);
                 drivingMode = DrivingMode.AUTONOMOUS;
                 disableJoystick();
+                startAutonomy();
             } else {
+                stopAutonomy();
                 controlModeSwitch.setText(R.string.control_mode_switch_text_on);
                 drivingMode = DrivingMode.REMOTE;
                 enableJoystick();
             }
 
-            try {
-                commandTransmitter.sendCommand(
-                        leftMotorSpeed,
-                        rightMotorSpeed,
-                        drivingDirection.getDrivingDirection(),
-                        drivingMode.getDrivingMode(),
-                        drivingAlgorithm.getDrivingAlgorithm()
-                );
-            } catch (JSONException exception) {
-                Log.e(exception.getMessage(), "TRANSMITTER_ERROR:sendCommand");
+            sendCommand();
+        });
+
+        //  Set up on click listener for trajectory button
+        trajectoryButton.setOnClickListener(view -> {
+            if (drivingMode == DrivingMode.TRAJECTORY) {
+                stopTrajectory();
+            } else {
+                runLastDrive();
             }
         });
+
+        this.startupTrace.end(section);
+    }
+
+    /**
+     * This method is called when the activity becomes visible.
+     * It binds to the ControlService, the activity attaches to its session once bound.
+     *
+     * @return Nothing.
+     */
+    @Override
+    protected void onStart() {
+        super.onStart();
+
+        bindService(new Intent(this, ControlService.class), this.serviceConnection, Context.BIND_AUTO_CREATE);
     }
 
     /**
      * This is an indicator that the activity became active and ready to receive input.
-     * It's called after onPause(). It registers the broadcast receiver.
+     * It's called after onPause(). It shows the Wi-Fi connection dialog again if the car is not connected,
+     * starts showing the telemetry, starts recording a new drive session
+     * and resumes driving autonomously on the phone.
      *
      * @return Nothing.
      */
     @Override
     protected void onResume() {
         super.onResume();
+        this.resumed = true;
+
+        if (this.session != null) {
+            onStateChanged(this.session.getWifiConnection().getState());
+        }
 
-        super.registerReceiver(wiFiStateListener, this.filters);
+        Choreographer.getInstance().postFrameCallback(this.displayFrameCallback);
+        this.inputManager.registerInputDeviceListener(this.gamepadListener, null);
+
+        startRecording();
+        startAutonomy();
     }
 
     /**
      * This method is called as part of the activity lifecycle when the user no longer
      * actively interacts with the activity, but it is still visible on screen.
-     * It dismisses the Wi-Fi connection dialog and unregisters the broadcast receiver.
+     * It dismisses the Wi-Fi connection dialog, stops showing the telemetry, stops a running trajectory
+     * and the autonomous driving on the phone and closes the session log.
      *
      * @return Nothing.
      */
     @Override
     protected void onPause() {
         super.onPause();
+        this.resumed = false;
+
+        Choreographer.getInstance().removeFrameCallback(this.displayFrameCallback);
+        this.inputManager.unregisterInputDeviceListener(this.gamepadListener);
 
+        stopTrajectory();
+        stopAutonomy();
+        stopRecording();
         wifiConnectionProgressDialog.dismiss();
-        unregisterReceiver(this.wiFiStateListener);
+    }
+
+    /**
+     * This method is called when the activity is no longer visible.
+     * It detaches from the control session, which stops the motors but keeps the link,
+     * and unbinds from the ControlService, which it moves to the foreground first if the user left the activity.
+     * A finishing activity stops the service and a recreated one binds to it again right away, so neither does.
+     *
+     * @return Nothing.
+     */
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        if (this.session != null) {
+            this.session.detach(this);
+            this.session = null;
+        }
+
+        if (this.controlService != null && !isFinishing() && !isChangingConfigurations()) {
+            this.controlService.keepInForeground();
+        }
+
+        this.controlService = null;
+        unbindService(this.serviceConnection);
+    }
+
+    /**
+     * This method is called before the activity is destroyed.
+     * The control session only ends when the user finishes the activity, not when it is recreated.
+     * The metrics of the activity's views are removed from the default registry, which outlives the activity.
+     * The session logs already closed are still written before the writer ends.
+     *
+     * @return Nothing.
+     */
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        this.joystickView.unregisterMetrics(this.metrics);
+        this.autonomousEngine.unregisterMetrics(this.metrics);
+        this.sessionWriter.shutdown();
+
+        if (isFinishing()) {
+            stopService(new Intent(this, ControlService.class));
+        }
     }
 
     /**
      * This method handles joystick movement event.
+     * Both sticks are mixed into one drive state, as the stick layout tells, and sent as one command.
+     * The session log records both sticks and the layout they were mixed with.
      *
-     * @param xOffset the offset of the joystick knob in the X axis, ranges between <0, 100>.
-     * @param yOffset the offset of the joystick knob in the Y axis, ranges between <0, 100>.
+     * @param leftXOffset  the offset of the left knob in the X axis, ranges between <-100, 100>.
+     * @param leftYOffset  the offset of the left knob in the Y axis, ranges between <-100, 100>.
+     * @param rightXOffset the offset of the right knob in the X axis, ranges between <-100, 100>.
+     * @param rightYOffset the offset of the right knob in the Y axis, ranges between <-100, 100>.
      * @return Nothing.
-     * @throws JSONException if parameters are of the wrong type
-     * @see JSONException
      */
     @Override
-    public void onJoystickMoved(int xOffset, int yOffset) throws JSONException {
-        int speed;
-        int speedOffset;
+    public void onJoystickMoved(int leftXOffset, int leftYOffset, int rightXOffset, int rightYOffset) {
+        this.leftXOffset = leftXOffset;
+        this.leftYOffset = leftYOffset;
+        this.rightXOffset = rightXOffset;
+        this.rightYOffset = rightYOffset;
+        recordSticks();
+
+        this.stickLayout.mix(this.driveMixer, leftXOffset, leftYOffset, rightXOffset, rightYOffset);
+
+        this.leftMotorSpeed = this.driveMixer.getLeftMotorSpeed();
+        this.rightMotorSpeed = this.driveMixer.getRightMotorSpeed();
+        this.drivingDirection = this.driveMixer.getDirection() == DriveMixer.FORWARD
+                ? DrivingDirection.FORWARD
+                : DrivingDirection.BACKWARD;
+
+        sendCommand();
+    }
 
-        if (yOffset < 0) {
-            speed = -map(-yOffset, 0, 100, 0, 255);
-            drivingDirection = DrivingDirection.BACKWARD;
-        } else {
-            speed = map(yOffset, 0, 100, 0, 255);
-            drivingDirection = DrivingDirection.FORWARD;
+    /**
+     * This method handles game controller stick movement. Every sample of the event, including the historical ones,
+     * is mapped and fed into the drive state as soon as it changes it, at the rate the controller reports,
+     * not once per display frame. The sticks are ignored under autonomous control.
+     *
+     * @param event The motion event.
+     * @return True if the event has been consumed, false otherwise.
+     */
+    @Override
+    public boolean onGenericMotionEvent(MotionEvent event) {
+        if ((event.getSource() & InputDevice.SOURCE_JOYSTICK) != InputDevice.SOURCE_JOYSTICK
+                || event.getActionMasked() != MotionEvent.ACTION_MOVE) {
+            return super.onGenericMotionEvent(event);
         }
 
-        if (xOffset < 0) {
-            speedOffset = map(-xOffset, 0, 100, 0, 255);
+        if (this.drivingMode != DrivingMode.REMOTE) {
+            return true;
+        }
 
-            this.rightMotorSpeed = constrainSpeedValue(Math.abs(speed) + speedOffset, 255);
-            this.leftMotorSpeed = constrainSpeedValue(Math.abs(speed) - speedOffset, 255);
-        } else {
-            speedOffset = map(xOffset, 0, 100, 0, 255);
+        int deviceId = event.getDeviceId();
+
+        if (!this.gamepadMapper.hasDevice(deviceId)) {
+            setUpGamepad(deviceId, event.getDevice(), event.getSource());
+        }
+
+        //  Samples batched since the previous event, oldest first
+        for (int h = 0; h < event.getHistorySize(); h++) {
+            if (this.gamepadMapper.onAxes(
+                    deviceId,
+                    event.getHistoricalAxisValue(MotionEvent.AXIS_X, h),
+                    event.getHistoricalAxisValue(MotionEvent.AXIS_Y, h),
+                    event.getHistoricalAxisValue(MotionEvent.AXIS_Z, h),
+                    event.getHistoricalAxisValue(MotionEvent.AXIS_RZ, h))) {
+                onGamepadMoved();
+            }
+        }
+
+        if (this.gamepadMapper.onAxes(
+                deviceId,
+                event.getAxisValue(MotionEvent.AXIS_X),
+                event.getAxisValue(MotionEvent.AXIS_Y),
+                event.getAxisValue(MotionEvent.AXIS_Z),
+                event.getAxisValue(MotionEvent.AXIS_RZ))) {
+            onGamepadMoved();
+        }
+
+        return true;
+    }
+
+    /**
+     * This method handles game controller buttons, which switch the driving mode and algorithm
+     * as the GamepadMapper maps them. Held buttons do not repeat.
+     *
+     * @param keyCode The key code of the button.
+     * @param event   The key event.
+     * @return True if the event has been consumed, false otherwise.
+     */
+    @Override
+    public boolean onKeyDown(int keyCode, KeyEvent event) {
+        GamepadMapper.Action action = GamepadMapper.actionOf(keyCode);
+
+        if ((event.getSource() & InputDevice.SOURCE_GAMEPAD) != InputDevice.SOURCE_GAMEPAD
+                || action == GamepadMapper.Action.NONE) {
+            return super.onKeyDown(keyCode, event);
+        }
+
+        if (event.getRepeatCount() > 0) {
+            return true;
+        }
+
+        switch (action) {
+            case TOGGLE_DRIVING_MODE:
+                //  The switch's listener changes the mode and sends the command
+                this.controlModeSwitch.setChecked(!this.controlModeSwitch.isChecked());
+                break;
+            case CALIBRATE:
+                this.gamepadMapper.calibrate(event.getDeviceId());
+                break;
+            default:
+                if (selectDrivingAlgorithm(action.getDrivingAlgorithm())) {
+                    sendCommand();
+                }
+                break;
+        }
+
+        return true;
+    }
+
+    /**
+     * This method feeds the sticks of the game controller into the drive state.
+     *
+     * @return Nothing.
+     */
+    private void onGamepadMoved() {
+        onJoystickMoved(
+                this.gamepadMapper.getOffset(GamepadMapper.LEFT_X),
+                this.gamepadMapper.getOffset(GamepadMapper.LEFT_Y),
+                this.gamepadMapper.getOffset(GamepadMapper.RIGHT_X),
+                this.gamepadMapper.getOffset(GamepadMapper.RIGHT_Y)
+        );
+    }
+
+    /**
+     * This method adds a game controller to the mapper. The deadzone of every stick axis is the larger
+     * of the default one and the flat range the controller reports, in which its sticks are centered at rest.
+     *
+     * @param deviceId The device id of the controller.
+     * @param device   The controller, or null if it is no longer connected.
+     * @param source   The input source the axes are reported by.
+     * @return Nothing.
+     */
+    private void setUpGamepad(int deviceId, InputDevice device, int source) {
+        this.gamepadMapper.addDevice(deviceId);
+
+        if (device == null) {
+            return;
+        }
+
+        for (int axis = 0; axis < GamepadMapper.AXIS_COUNT; axis++) {
+            InputDevice.MotionRange range = device.getMotionRange(GAMEPAD_AXES[axis], source);
+
+            if (range == null || range.getMax() <= range.getMin()) {
+                continue;
+            }
+
+            float flat = range.getFlat() * 2 / (range.getMax() - range.getMin());
+            float deadzone = Math.max(GamepadAxis.DEFAULT_DEADZONE, flat);
+
+            this.gamepadMapper.setDeadzone(deviceId, axis, Math.min(deadzone, GamepadAxis.MAX_DEADZONE));
+        }
+    }
+
+    /**
+     * This method sends the current command to the car.
+     * While the phone drives autonomously the engine sends the commands instead.
+     * The transmitter appends what it actually sends to the session log.
+     *
+     * @return Nothing.
+     */
+    private void sendCommand() {
+        CommandTransmitter commandTransmitter = getCommandTransmitter();
 
-            this.leftMotorSpeed = constrainSpeedValue(Math.abs(speed) + speedOffset, 255);
-            this.rightMotorSpeed = constrainSpeedValue(Math.abs(speed) - speedOffset, 255);
+        //  Commands given before the session's socket is open are not sent
+        if (commandTransmitter == null || this.autonomousEngine.isRunning()) {
+            return;
         }
 
-        this.commandTransmitter.sendCommand(
+        commandTransmitter.sendCommand(
                 this.leftMotorSpeed,
                 this.rightMotorSpeed,
                 this.drivingDirection.getDrivingDirection(),
@@ -316,59 +559,423 @@ public class MainActivity extends AppCompatActivity implements JoystickView.Joys
     }
 
     /**
-     * This method connects to Wi-Fi.
+     * This method handles a change of the Wi-Fi connection state.
+     * The Wi-Fi connection dialog is shown until the car's network is connected.
      *
+     * @param state The new state of the connection.
      * @return Nothing.
      */
-    private void connectToWifi() {
-        //  Wait until Wi-Fi is enabled
-        while (!wifiManager.isWifiEnabled()) ;
+    @Override
+    public void onStateChanged(WifiConnection.State state) {
+        switch (state) {
+            case CONNECTED:
+                this.wifiConnectionProgressDialog.dismiss();
+                break;
+            case WAITING_FOR_WIFI:
+                this.wifiConnectionProgressDialog.setMessage(getString(R.string.waiting_for_wifi));
+                this.wifiConnectionProgressDialog.show();
+                break;
+            case CONNECTING:
+                this.wifiConnectionProgressDialog.setMessage(getString(R.string.connecting_to_wifi));
+                this.wifiConnectionProgressDialog.show();
+                break;
+            case BACKING_OFF:
+                this.wifiConnectionProgressDialog.setMessage(getString(R.string.retrying_wifi));
+                this.wifiConnectionProgressDialog.show();
+                break;
+        }
+    }
 
-        //  Get the network ID
-        int networkID = wifiManager.addNetwork(wifiConfiguration);
+    /**
+     * This method shows the progress of the Wi-Fi network connection in the Wi-Fi connection dialog.
+     *
+     * @param messageId The string resource describing the progress.
+     * @return Nothing.
+     */
+    @Override
+    public void onNetworkProgress(int messageId) {
+        this.wifiConnectionProgressDialog.setMessage(getString(messageId));
+    }
 
-        //  Try to connect
-        wifiManager.enableNetwork(networkID, true);
-        wifiManager.reconnect();
+    /**
+     * This method resumes driving autonomously on the phone once the car is connected,
+     * as only then it is known whether the car sends the telemetry the algorithms need.
+     * If it turns out not to, the phone stops driving and the car is told to run the algorithm on board.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public void onCarConnected() {
+        CommandTransmitter commandTransmitter = getCommandTransmitter();
+        attachRecorder();
+
+        //  The car does not stream telemetry after all, it runs the algorithm on board again
+        if (this.autonomousEngine.isRunning() && commandTransmitter != null
+                && !commandTransmitter.getCapabilities().supportsTelemetry()) {
+            stopAutonomy();
+            sendCommand();
+        }
 
-        //  Wait until connection is established
-        while (wifiManager.getConnectionInfo().getNetworkId() == -1) ;
+        startAutonomy();
     }
 
     /**
-     * This method maps the value between range.
+     * This method shows the telemetry received since the last display frame,
+     * and refreshes the metrics overlay twice a second while it is visible.
+     * However fast the car sends telemetry, the text is updated at most once per display frame.
+     * On the first frame it records the milestone and leaves the rest of the set-up until the frame is drawn.
      *
-     * @param input       the value to be mapped.
-     * @param inputStart  the minimum value of input.
-     * @param inputEnd    the maximum value of input.
-     * @param outputStart the minimum value of output.
-     * @param outputEnd   the maximum value of output.
-     * @return A mapped value between outputStart and outputEnd.
+     * @param frameTimeNanos The time the frame started rendering, in nanoseconds.
+     * @return Nothing.
      */
-    private int map(int input, int inputStart, int inputEnd, int outputStart, int outputEnd) {
-        int inputRange = inputEnd - inputStart;
-        int outputRange = outputEnd - outputStart;
+    private void onDisplayFrame(long frameTimeNanos) {
+        if (!this.firstFrameShown) {
+            this.firstFrameShown = true;
+            this.startupTrace.mark(StartupTrace.FIRST_FRAME);
+            //  A posted task runs after this frame's traversal, so the joystick is drawn first
+            this.joystickView.post(this::setUpAlgorithmSpinner);
+            this.joystickView.post(this::setUpStickLayoutSpinner);
+        }
 
-        return (input - inputStart) * outputRange / inputRange + outputStart;
+        CommandTransmitter commandTransmitter = getCommandTransmitter();
+
+        if (commandTransmitter != null
+                && commandTransmitter.getTelemetry().drainTo(this.telemetrySummary) > 0) {
+            int length = this.telemetrySummary.format(this.telemetryChars);
+            this.telemetryText.setText(this.telemetryChars, 0, length);
+        }
+
+        if (this.metricsOverlay.getVisibility() == View.VISIBLE
+                && frameTimeNanos - this.lastOverlayNanos >= OVERLAY_INTERVAL_NANOS) {
+            this.lastOverlayNanos = frameTimeNanos;
+            showMetrics();
+        }
+
+        Choreographer.getInstance().postFrameCallback(this.displayFrameCallback);
+    }
+
+    /**
+     * This method returns the transmitter of the control session.
+     *
+     * @return The command transmitter, or null until the activity is attached and the session's socket is open.
+     */
+    private CommandTransmitter getCommandTransmitter() {
+        return this.session == null ? null : this.session.getTransmitter();
+    }
+
+    /**
+     * This method fills the algorithm spinner, which is not needed to start driving.
+     *
+     * @return Nothing.
+     */
+    private void setUpAlgorithmSpinner() {
+        int section = this.startupTrace.begin("algorithm_spinner");
+
+        //  Create an adapter for spinner view
+        ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(
+                this,
+                R.array.algorithms_entries,
+                R.layout.spinner_item
+        );
+        //  Set the spinner view resource
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        //  Set the adapter
+        algorithmSpinner.setAdapter(adapter);
+
+        //  Set up on item selected listener for algorithm spinner
+        algorithmSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                selectDrivingAlgorithm(stringToDrivingAlgorithm((String) parent.getSelectedItem()));
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                drivingAlgorithm = stringToDrivingAlgorithm((String) parent.getItemAtPosition(0));
+            }
+        });
+
+        this.startupTrace.end(section);
+    }
+
+    /**
+     * This method fills the stick layout spinner. Choosing a layout changes the sticks of the joystick view,
+     * which centers them.
+     *
+     * @return Nothing.
+     */
+    private void setUpStickLayoutSpinner() {
+        //  The entries are in the order of StickLayout values
+        ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(
+                this,
+                R.array.stick_layouts_entries,
+                R.layout.spinner_item
+        );
+        adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
+        stickLayoutSpinner.setAdapter(adapter);
+
+        stickLayoutSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                setStickLayout(StickLayout.values()[position]);
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+                setStickLayout(StickLayout.SINGLE);
+            }
+        });
+    }
+
+    /**
+     * This method sets the stick layout of the joystick view.
+     *
+     * @param stickLayout The stick layout.
+     * @return Nothing.
+     */
+    private void setStickLayout(StickLayout stickLayout) {
+        if (this.stickLayout == stickLayout) {
+            return;
+        }
+
+        this.stickLayout = stickLayout;
+        this.joystickView.setStickCount(stickLayout.getStickCount());
+        recordSticks();
     }
 
     /**
-     * This method constrains speed between 0 and maxSpeedValue
+     * This method selects the driving algorithm, unless the car reported it does not implement it
+     * and cannot be driven by the phone either, in which case the algorithm spinner goes back to the current one.
      *
-     * @param speed         The value of speed.
-     * @param maxSpeedValue The maximum value of speed.
-     * @return Constrained value of speed.
+     * @param drivingAlgorithm The driving algorithm.
+     * @return True if the algorithm was selected, false otherwise.
      */
-    private int constrainSpeedValue(int speed, int maxSpeedValue) {
-        if (speed > maxSpeedValue) {
-            return maxSpeedValue;
+    private boolean selectDrivingAlgorithm(DrivingAlgorithm drivingAlgorithm) {
+        CommandTransmitter commandTransmitter = getCommandTransmitter();
+        boolean supported = drivingAlgorithm != null
+                && (commandTransmitter == null || commandTransmitter.getCapabilities().supports(drivingAlgorithm)
+                || commandTransmitter.getCapabilities().supportsTelemetry());
+
+        if (supported) {
+            this.drivingAlgorithm = drivingAlgorithm;
+            this.autonomousEngine.select(drivingAlgorithm);
         }
 
-        if (speed < 0) {
-            return 0;
+        //  The spinner entries are in the order of DrivingAlgorithm values
+        if (this.algorithmSpinner.getSelectedItemPosition() != this.drivingAlgorithm.ordinal()) {
+            this.algorithmSpinner.setSelection(this.drivingAlgorithm.ordinal());
         }
 
-        return speed;
+        return supported;
+    }
+
+    /**
+     * This method shows or hides the metrics overlay.
+     *
+     * @return Nothing.
+     */
+    private void toggleMetricsOverlay() {
+        if (this.metricsOverlay.getVisibility() == View.VISIBLE) {
+            this.metricsOverlay.setVisibility(View.GONE);
+        } else {
+            showMetrics();
+            this.metricsOverlay.setVisibility(View.VISIBLE);
+        }
+    }
+
+    /**
+     * This method writes the current metrics report into the overlay.
+     *
+     * @return Nothing.
+     */
+    private void showMetrics() {
+        StringBuilder report = this.metricsReport.write(System.nanoTime());
+        int length = report.length();
+
+        if (length > this.metricsChars.length) {
+            this.metricsChars = new char[Math.max(length, this.metricsChars.length * 2)];
+        }
+
+        report.getChars(0, length, this.metricsChars, 0);
+        this.metricsOverlay.setText(this.metricsChars, 0, length);
+    }
+
+    /**
+     * This method starts recording a new drive into a session log of its own, the oldest logs are deleted.
+     * The transmitter appends the commands it sends to the log.
+     *
+     * @return Nothing.
+     */
+    private void startRecording() {
+        this.sessionRecorder = SessionRecorder.create(getFilesDir(), this.sessionWriter);
+        recordSticks();
+        attachRecorder();
+    }
+
+    /**
+     * This method stops recording the drive, its session log is closed in the background.
+     *
+     * @return Nothing.
+     */
+    private void stopRecording() {
+        if (this.sessionRecorder != null) {
+            this.sessionRecorder.close();
+            this.sessionRecorder = null;
+            attachRecorder();
+        }
+    }
+
+    /**
+     * This method hands the session log to the transmitter, or takes it away once the recording stops.
+     * It is called whenever either of them changes.
+     *
+     * @return Nothing.
+     */
+    private void attachRecorder() {
+        CommandTransmitter commandTransmitter = getCommandTransmitter();
+
+        if (commandTransmitter != null) {
+            commandTransmitter.setSessionRecorder(this.sessionRecorder);
+        }
+    }
+
+    /**
+     * This method hands the current position of the sticks to the session log,
+     * which records it with the commands sent from now on.
+     *
+     * @return Nothing.
+     */
+    private void recordSticks() {
+        if (this.sessionRecorder != null) {
+            this.sessionRecorder.setSticks(
+                    this.stickLayout, this.leftXOffset, this.leftYOffset, this.rightXOffset, this.rightYOffset
+            );
+        }
+    }
+
+    /**
+     * This method starts driving autonomously on the phone, in the autonomous driving mode,
+     * if the car sends the telemetry the algorithms need. Otherwise the car runs the algorithm on its own.
+     * The car is told to follow the engine's commands as in the remote driving mode.
+     * It is called whenever one of the conditions may have become true and does nothing while the activity is paused.
+     *
+     * @return Nothing.
+     */
+    private void startAutonomy() {
+        CommandTransmitter commandTransmitter = getCommandTransmitter();
+
+        if (!this.resumed || this.drivingMode != DrivingMode.AUTONOMOUS || commandTransmitter == null
+                || !commandTransmitter.isConfigured() || !commandTransmitter.getCapabilities().supportsTelemetry()) {
+            return;
+        }
+
+        this.autonomousTransmitter = commandTransmitter;
+        commandTransmitter.setTelemetrySink(this.autonomousEngine.getTelemetry());
+        this.autonomousEngine.select(this.drivingAlgorithm);
+        this.autonomousEngine.start();
+    }
+
+    /**
+     * This method stops driving autonomously on the phone, which stops the motors.
+     *
+     * @return Nothing.
+     */
+    private void stopAutonomy() {
+        try {
+            this.autonomousEngine.stop();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        CommandTransmitter commandTransmitter = this.autonomousTransmitter;
+
+        if (commandTransmitter != null) {
+            commandTransmitter.setTelemetrySink(null);
+            this.autonomousTransmitter = null;
+        }
+    }
+
+    /**
+     * This method uploads the drive recorded so far to the car as a trajectory and records the next drive anew.
+     * The drive is compiled and uploaded on the control session's connector,
+     * the car repeats it once the upload is over, unless the driving mode was changed meanwhile.
+     *
+     * @return Nothing.
+     */
+    private void runLastDrive() {
+        CommandTransmitter commandTransmitter = getCommandTransmitter();
+
+        if (this.drivingMode != DrivingMode.REMOTE || this.sessionRecorder == null
+                || commandTransmitter == null || !commandTransmitter.getCapabilities().supportsTrajectories()) {
+            return;
+        }
+
+        SessionRecorder drive = this.sessionRecorder;
+
+        stopRecording();
+        startRecording();
+        this.trajectoryButton.setEnabled(false);
+
+        this.session.uploadTrajectory(
+                () -> {
+                    //  The session log is complete once the writer has closed it
+                    if (!drive.awaitWritten(SESSION_WRITE_TIMEOUT_MS)) {
+                        throw new IOException("The session log was not written: " + drive.getFile());
+                    }
+
+                    try (SessionReader reader = new SessionReader(drive.getFile())) {
+                        return Trajectory.fromSession(reader);
+                    }
+                },
+                trajectory -> runOnUiThread(() -> onTrajectoryUploaded(trajectory))
+        );
+    }
+
+    /**
+     * This method switches to the trajectory driving mode once a trajectory has been uploaded,
+     * which makes the car run it, and leaves the mode again once the trajectory is over.
+     *
+     * @param trajectory The uploaded trajectory, or null if it could not be uploaded.
+     * @return Nothing.
+     */
+    private void onTrajectoryUploaded(Trajectory trajectory) {
+        this.trajectoryButton.setEnabled(true);
+
+        if (trajectory == null || this.drivingMode != DrivingMode.REMOTE) {
+            return;
+        }
+
+        this.drivingMode = DrivingMode.TRAJECTORY;
+        this.trajectoryButton.setText(R.string.trajectory_button_text_stop);
+        this.trajectoryButton.postDelayed(this.trajectoryEnd, trajectory.getDurationMs() + TRAJECTORY_END_MARGIN_MS);
+        disableJoystick();
+        sendCommand();
+    }
+
+    /**
+     * This method stops the trajectory the car is running and hands the car back to the joystick.
+     *
+     * @return Nothing.
+     */
+    private void stopTrajectory() {
+        if (this.drivingMode != DrivingMode.TRAJECTORY) {
+            return;
+        }
+
+        endTrajectory();
+        this.drivingMode = DrivingMode.REMOTE;
+        enableJoystick();
+        sendCommand();
+    }
+
+    /**
+     * This method resets the trajectory button, as the trajectory mode is left.
+     *
+     * @return Nothing.
+     */
+    private void endTrajectory() {
+        this.trajectoryButton.removeCallbacks(this.trajectoryEnd);
+        this.trajectoryButton.setText(R.string.trajectory_button_text_run);
     }
 
     /**
@@ -0,0 +1,137 @@
+package com.example.iot_car_rc;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents a background thread which appends a metrics report to a file at a fixed interval,
+ * for offline analysis. Every report starts with a "# " line holding the wall clock time
+ * in milliseconds since the epoch. Once the file grows over {@value #MAX_FILE_SIZE} bytes
+ * it is moved aside to a ".old" file, so at most two files are kept.
+ *
+ * @author Rafał Dąbrowski
+ */
+class MetricsDumper implements Runnable {
+    static final long MAX_FILE_SIZE = 1 << 20;
+
+    private final File file;
+    private final MetricsReport report;
+    private final long intervalNanos;
+
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    /**
+     * A constructor for MetricsDumper
+     *
+     * @param registry   The registry the metrics are read from.
+     * @param file       The file the reports are appended to.
+     * @param intervalMs The time between two reports in milliseconds.
+     * @return MetricsDumper instance.
+     * @throws IllegalArgumentException if the interval is not positive.
+     */
+    MetricsDumper(MetricsRegistry registry, File file, long intervalMs) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("The dump interval must be positive");
+        }
+
+        this.file = file;
+        this.report = new MetricsReport(registry);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+    }
+
+    /**
+     * This method starts the dumper thread.
+     *
+     * @return Nothing.
+     */
+    synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this, "MetricsDumper");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * This method stops the dumper thread and waits for it to write its last report.
+     *
+     * @return Nothing.
+     * @throws InterruptedException if interrupted while waiting for the thread.
+     */
+    synchronized void stop() throws InterruptedException {
+        Thread thread = this.thread;
+
+        if (thread == null) {
+            return;
+        }
+
+        this.running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        this.thread = null;
+    }
+
+    /**
+     * This method is the body of the dumper thread. It writes a report on every interval
+     * and a last one when it is stopped.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public void run() {
+        long deadline = System.nanoTime() + this.intervalNanos;
+
+        while (this.running) {
+            long now = System.nanoTime();
+
+            //  Compared by their difference, which survives the wraparound of System.nanoTime()
+            if (deadline - now > 0) {
+                LockSupport.parkNanos(this, deadline - now);
+                continue;
+            }
+
+            dump();
+            deadline = now + this.intervalNanos;
+        }
+
+        dump();
+    }
+
+    /**
+     * This method appends a single report to the file.
+     *
+     * @return True if the report was written, false otherwise.
+     */
+    boolean dump() {
+        if (this.file.length() > MAX_FILE_SIZE) {
+            File old = new File(this.file.getPath() + ".old");
+            old.delete();
+
+            if (!this.file.renameTo(old)) {
+                Log.e("Could not move " + this.file + " aside", "METRICS_ERROR:dump");
+            }
+        }
+
+        try (Writer writer = new OutputStreamWriter(
+                new FileOutputStream(this.file, true), StandardCharsets.US_ASCII)) {
+            writer.append("# ").append(Long.toString(System.currentTimeMillis())).append('\n');
+            writer.append(this.report.write(System.nanoTime()));
+            return true;
+        } catch (IOException exception) {
+            Log.e(exception.getMessage(), "METRICS_ERROR:dump");
+            return false;
+        }
+    }
+}
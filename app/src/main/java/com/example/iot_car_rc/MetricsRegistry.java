@@ -0,0 +1,246 @@
+package com.example.iot_car_rc;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a registry of named health metrics: counters, gauges and latency histograms.
+ * Metrics are registered once when a component is created, which allocates,
+ * updating them afterwards is lock-free and does not allocate memory.
+ * Gauges are only evaluated when a report is written.
+ *
+ * <p>Names are dotted and carry their unit, e.g. "transmitter.send_ns".
+ * Registering a name twice returns the metric registered first,
+ * except for gauges and histograms registered from outside, where the newer one wins.
+ * A component which does not live as long as the application removes its metrics when it is destroyed,
+ * otherwise the default registry keeps it reachable.
+ *
+ * @author Rafał Dąbrowski
+ */
+class MetricsRegistry {
+    private static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+    //  The metrics in registration order, names[i] belongs to metrics[i]
+    private String[] names = new String[0];
+    private Object[] metrics = new Object[0];
+
+    /**
+     * Represents a monotonically increasing count.
+     *
+     * @author Rafał Dąbrowski
+     */
+    static final class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        /**
+         * This method increases the count by one.
+         *
+         * @return Nothing.
+         */
+        void increment() {
+            this.value.incrementAndGet();
+        }
+
+        /**
+         * This method increases the count.
+         *
+         * @param delta The non-negative amount the count is increased by.
+         * @return Nothing.
+         */
+        void add(long delta) {
+            this.value.addAndGet(delta);
+        }
+
+        /**
+         * This method returns the count.
+         *
+         * @return The count.
+         */
+        long get() {
+            return this.value.get();
+        }
+    }
+
+    /**
+     * Interface for a value read only when a report is written, such as a queue size.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Gauge {
+        /**
+         * This method returns the current value of the gauge.
+         *
+         * @return The current value.
+         */
+        long get();
+    }
+
+    /**
+     * This method returns the registry the application's components report to.
+     *
+     * @return The default registry.
+     */
+    static MetricsRegistry getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * This method returns the counter with the name, registering it if there is none.
+     *
+     * @param name The name of the counter.
+     * @return The counter.
+     * @throws IllegalArgumentException if the name belongs to another kind of metric.
+     */
+    synchronized Counter counter(String name) {
+        return (Counter) getOrAdd(name, Counter.class);
+    }
+
+    /**
+     * This method returns the histogram with the name, registering it if there is none.
+     *
+     * @param name The name of the histogram.
+     * @return The histogram.
+     * @throws IllegalArgumentException if the name belongs to another kind of metric.
+     */
+    synchronized LatencyHistogram histogram(String name) {
+        return (LatencyHistogram) getOrAdd(name, LatencyHistogram.class);
+    }
+
+    /**
+     * This method registers a histogram kept by a component.
+     *
+     * @param name      The name of the histogram.
+     * @param histogram The histogram.
+     * @return Nothing.
+     */
+    synchronized void register(String name, LatencyHistogram histogram) {
+        put(name, histogram);
+    }
+
+    /**
+     * This method registers a gauge.
+     *
+     * @param name  The name of the gauge.
+     * @param gauge The gauge.
+     * @return Nothing.
+     */
+    synchronized void gauge(String name, Gauge gauge) {
+        put(name, gauge);
+    }
+
+    /**
+     * This method removes the metric with the name.
+     *
+     * @param name The name of the metric.
+     * @return True if the metric was removed, false if there was no metric with the name.
+     */
+    synchronized boolean remove(String name) {
+        int index = indexOf(name);
+
+        if (index < 0) {
+            return false;
+        }
+
+        String[] names = new String[this.names.length - 1];
+        Object[] metrics = new Object[this.metrics.length - 1];
+        System.arraycopy(this.names, 0, names, 0, index);
+        System.arraycopy(this.metrics, 0, metrics, 0, index);
+        System.arraycopy(this.names, index + 1, names, index, names.length - index);
+        System.arraycopy(this.metrics, index + 1, metrics, index, metrics.length - index);
+        this.names = names;
+        this.metrics = metrics;
+
+        return true;
+    }
+
+    /**
+     * This method returns the number of registered metrics.
+     *
+     * @return Number of metrics.
+     */
+    synchronized int size() {
+        return this.names.length;
+    }
+
+    /**
+     * This method returns the name of a metric.
+     *
+     * @param index The index of the metric in registration order.
+     * @return The name.
+     */
+    synchronized String getName(int index) {
+        return this.names[index];
+    }
+
+    /**
+     * This method returns a metric, a Counter, a Gauge or a LatencyHistogram.
+     *
+     * @param index The index of the metric in registration order.
+     * @return The metric.
+     */
+    synchronized Object getMetric(int index) {
+        return this.metrics[index];
+    }
+
+    /**
+     * This method returns the metric with the name, adding a new one if there is none.
+     *
+     * @param name The name of the metric.
+     * @param kind The class of the metric.
+     * @return The metric.
+     * @throws IllegalArgumentException if the name belongs to another kind of metric.
+     */
+    private Object getOrAdd(String name, Class<?> kind) {
+        int index = indexOf(name);
+
+        if (index >= 0) {
+            if (!kind.isInstance(this.metrics[index])) {
+                throw new IllegalArgumentException("The metric " + name + " is not a " + kind.getSimpleName());
+            }
+
+            return this.metrics[index];
+        }
+
+        Object metric = kind == Counter.class ? new Counter() : new LatencyHistogram();
+        put(name, metric);
+
+        return metric;
+    }
+
+    /**
+     * This method adds the metric, or replaces the metric with the same name.
+     *
+     * @param name   The name of the metric.
+     * @param metric The metric.
+     * @return Nothing.
+     */
+    private void put(String name, Object metric) {
+        int index = indexOf(name);
+
+        if (index >= 0) {
+            this.metrics[index] = metric;
+            return;
+        }
+
+        this.names = Arrays.copyOf(this.names, this.names.length + 1);
+        this.metrics = Arrays.copyOf(this.metrics, this.metrics.length + 1);
+        this.names[this.names.length - 1] = name;
+        this.metrics[this.metrics.length - 1] = metric;
+    }
+
+    /**
+     * This method returns the index of the metric with the name.
+     *
+     * @param name The name of the metric.
+     * @return The index, or -1 if there is no metric with the name.
+     */
+    private int indexOf(String name) {
+        for (int i = 0; i < this.names.length; i++) {
+            if (this.names[i].equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
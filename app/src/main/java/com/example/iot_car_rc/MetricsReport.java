@@ -0,0 +1,91 @@
+package com.example.iot_car_rc;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a plain text report of every metric in a registry, one metric per line:
+ * <pre>
+ *     transmitter.commands_sent 1520 50/s
+ *     transmitter.send_ns n=1520 p50=41000 p99=180000 max=2100000
+ *     link.loss_permille 3
+ * </pre>
+ * Counter rates are measured since the previous report written by the same instance,
+ * so the overlay and the file dump each keep their own report.
+ * The text is built in a reused StringBuilder and does not allocate memory once it has grown.
+ *
+ * @author Rafał Dąbrowski
+ */
+class MetricsReport {
+    private final MetricsRegistry registry;
+    private final StringBuilder text = new StringBuilder(1024);
+    private long[] previousCounts = new long[0];
+    //  The counters the previous counts belong to, metrics may have been removed since
+    private Object[] previousMetrics = new Object[0];
+    private long previousNanos;
+
+    /**
+     * A constructor for MetricsReport
+     *
+     * @param registry The registry the metrics are read from.
+     * @return MetricsReport instance.
+     */
+    MetricsReport(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * This method writes the current value of every metric.
+     *
+     * @param now The current time in nanoseconds, from System.nanoTime().
+     * @return The reused text of the report, valid until the next call.
+     */
+    StringBuilder write(long now) {
+        long elapsedNanos = now - this.previousNanos;
+
+        this.text.setLength(0);
+
+        //  The registry is locked, so no metric is removed while the report is written
+        synchronized (this.registry) {
+            int size = this.registry.size();
+
+            if (size > this.previousCounts.length) {
+                this.previousCounts = Arrays.copyOf(this.previousCounts, size);
+                this.previousMetrics = Arrays.copyOf(this.previousMetrics, size);
+            }
+
+            for (int i = 0; i < size; i++) {
+                Object metric = this.registry.getMetric(i);
+                this.text.append(this.registry.getName(i)).append(' ');
+
+                if (metric instanceof MetricsRegistry.Counter) {
+                    long count = ((MetricsRegistry.Counter) metric).get();
+                    this.text.append(count);
+
+                    //  Counters which appeared or moved since the previous report have no rate yet
+                    if (this.previousMetrics[i] == metric && elapsedNanos > 0) {
+                        long rate = (count - this.previousCounts[i]) * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+                        this.text.append(' ').append(rate).append("/s");
+                    }
+
+                    this.previousCounts[i] = count;
+                } else if (metric instanceof MetricsRegistry.Gauge) {
+                    this.text.append(((MetricsRegistry.Gauge) metric).get());
+                } else {
+                    LatencyHistogram histogram = (LatencyHistogram) metric;
+                    this.text.append("n=").append(histogram.getCount())
+                            .append(" p50=").append(histogram.getPercentile(0.5))
+                            .append(" p99=").append(histogram.getPercentile(0.99))
+                            .append(" max=").append(histogram.getMax());
+                }
+
+                this.previousMetrics[i] = metric;
+                this.text.append('\n');
+            }
+        }
+
+        this.previousNanos = now;
+
+        return this.text;
+    }
+}
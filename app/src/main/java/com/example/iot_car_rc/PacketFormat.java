@@ -0,0 +1,13 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents the wire formats of the commands sent to the remote car.
+ *
+ * @author Rafał Dąbrowski
+ */
+public enum PacketFormat {
+    //  Compact fixed-size frame, see CommandFrame
+    BINARY,
+    //  Stringified JSON object understood by older ESP8266 firmware
+    JSON
+}
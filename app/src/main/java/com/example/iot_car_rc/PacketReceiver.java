@@ -0,0 +1,126 @@
+package com.example.iot_car_rc;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents a long-lived receiver thread reading the packets the remote car sends back.
+ * Every packet is handed to the listener in the same reused buffer,
+ * so receiving does not allocate memory.
+ *
+ * @author Rafał Dąbrowski
+ */
+class PacketReceiver implements Runnable {
+    private static final int MAX_PACKET_SIZE = 1472;
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final CommandTransport transport;
+    private final Listener listener;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+
+    private volatile Thread thread;
+    private volatile boolean running;
+
+    /**
+     * Interface for handling received packets, called on the receiver thread only.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Listener {
+        /**
+         * This method handles a received packet. The buffer is only valid until the method returns.
+         *
+         * @param packet        The packet, between the buffer's position and limit.
+         * @param receivedNanos The receive time in nanoseconds, from System.nanoTime().
+         * @return Nothing.
+         */
+        void onPacket(ByteBuffer packet, long receivedNanos);
+    }
+
+    /**
+     * A constructor for PacketReceiver
+     *
+     * @param transport The transport the packets are received from.
+     * @param listener  The listener the packets are handed to.
+     * @return PacketReceiver instance.
+     */
+    PacketReceiver(CommandTransport transport, Listener listener) {
+        this.transport = transport;
+        this.listener = listener;
+    }
+
+    /**
+     * This method starts the receiver thread.
+     *
+     * @return Nothing.
+     */
+    synchronized void start() {
+        if (this.thread != null) {
+            return;
+        }
+
+        this.running = true;
+        this.thread = new Thread(this, "PacketReceiver");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * This method stops the receiver thread and waits for it to finish.
+     * It takes at most one poll interval, unless the transport blocks on receiving,
+     * in which case the transport has to be closed first.
+     *
+     * @return Nothing.
+     * @throws InterruptedException if interrupted while waiting for the thread.
+     */
+    synchronized void stop() throws InterruptedException {
+        Thread thread = this.thread;
+
+        if (thread == null) {
+            return;
+        }
+
+        this.running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        this.thread = null;
+    }
+
+    /**
+     * This method is the body of the receiver thread. It waits for the transport to be connected
+     * and then polls it for packets.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public void run() {
+        while (this.running) {
+            if (!this.transport.isConnected()) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MS));
+                continue;
+            }
+
+            try {
+                this.buffer.clear();
+
+                if (this.transport.receive(this.buffer, POLL_INTERVAL_MS) > 0) {
+                    long now = System.nanoTime();
+                    this.buffer.flip();
+                    this.listener.onPacket(this.buffer, now);
+                }
+            } catch (IOException exception) {
+                //  The transport was closed before stopping the receiver
+                if (!this.running || !this.transport.isConnected()) {
+                    continue;
+                }
+
+                Log.e(exception.getMessage(), "RECEIVER_ERROR:run");
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL_MS));
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents the bookkeeping of the pointers holding the sticks of the joystick view.
+ * The view is split into vertical strips, one per stick, and a pointer going down
+ * takes the stick of the strip it went down in, unless another pointer holds it already.
+ * The stick is then held by that pointer, wherever it moves, until it goes up.
+ * Other pointers never move it, so a second finger cannot corrupt the input of the first.
+ *
+ * <p>Pointers are kept in preallocated arrays, so tracking them does not allocate memory.
+ * The tracker is used by a single thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class PointerTracker {
+    static final int MAX_STICKS = 2;
+    static final int NO_STICK = -1;
+    static final int NO_POINTER = -1;
+
+    private final int[] pointerIds = new int[MAX_STICKS];
+    private int stickCount = 1;
+    private float width;
+
+    /**
+     * A constructor for PointerTracker
+     *
+     * @return PointerTracker instance.
+     */
+    PointerTracker() {
+        reset();
+    }
+
+    /**
+     * This method sets up the number of sticks and the width of the view. It releases every stick.
+     *
+     * @param stickCount The number of sticks, side by side, ranges from <1, MAX_STICKS>.
+     * @param width      The width of the view.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the number of sticks is out of range.
+     */
+    void setupLayout(int stickCount, float width) {
+        if (stickCount < 1 || stickCount > MAX_STICKS) {
+            throw new IllegalArgumentException("Stick count out of range: " + stickCount);
+        }
+
+        this.stickCount = stickCount;
+        this.width = width;
+        reset();
+    }
+
+    /**
+     * This method handles a pointer going down.
+     *
+     * @param pointerId The identifier of the pointer.
+     * @param x         The x coordinate of the pointer.
+     * @return The stick taken by the pointer, NO_STICK if the stick of its strip is already held.
+     */
+    int onPointerDown(int pointerId, float x) {
+        int stick = stickAt(x);
+
+        if (this.pointerIds[stick] != NO_POINTER) {
+            return NO_STICK;
+        }
+
+        this.pointerIds[stick] = pointerId;
+
+        return stick;
+    }
+
+    /**
+     * This method handles a pointer going up.
+     *
+     * @param pointerId The identifier of the pointer.
+     * @return The stick released by the pointer, NO_STICK if it held none.
+     */
+    int onPointerUp(int pointerId) {
+        int stick = getStick(pointerId);
+
+        if (stick != NO_STICK) {
+            this.pointerIds[stick] = NO_POINTER;
+        }
+
+        return stick;
+    }
+
+    /**
+     * This method releases every stick, e.g. when the last pointer goes up or the gesture is cancelled.
+     *
+     * @return Nothing.
+     */
+    void reset() {
+        for (int stick = 0; stick < MAX_STICKS; stick++) {
+            this.pointerIds[stick] = NO_POINTER;
+        }
+    }
+
+    /**
+     * This method returns the pointer holding a stick.
+     *
+     * @param stick The stick.
+     * @return The identifier of the pointer, NO_POINTER if the stick is not held.
+     */
+    int getPointerId(int stick) {
+        return this.pointerIds[stick];
+    }
+
+    /**
+     * This method returns the stick held by a pointer.
+     *
+     * @param pointerId The identifier of the pointer.
+     * @return The stick, NO_STICK if the pointer holds none.
+     */
+    int getStick(int pointerId) {
+        for (int stick = 0; stick < this.stickCount; stick++) {
+            if (this.pointerIds[stick] == pointerId) {
+                return stick;
+            }
+        }
+
+        return NO_STICK;
+    }
+
+    /**
+     * This method returns the number of sticks.
+     *
+     * @return The number of sticks.
+     */
+    int getStickCount() {
+        return this.stickCount;
+    }
+
+    /**
+     * This method returns the stick of the strip at the x coordinate.
+     *
+     * @param x The x coordinate.
+     * @return The stick.
+     */
+    private int stickAt(float x) {
+        if (this.stickCount == 1 || this.width <= 0) {
+            return 0;
+        }
+
+        int stick = (int) (x * this.stickCount / this.width);
+
+        //  Pointers may go down on the very edge of the view, or past it while it scrolls
+        return Math.max(0, Math.min(this.stickCount - 1, stick));
+    }
+}
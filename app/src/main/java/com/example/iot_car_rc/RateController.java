@@ -0,0 +1,173 @@
+package com.example.iot_car_rc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a controller adapting the command rate and redundancy to the measured link quality.
+ * Once per control interval it is given the loss rate, the round-trip times and the number of
+ * send errors of the interval, and takes at most one step:
+ * <ul>
+ *     <li>A queueing link, with the smoothed round-trip time well above the smallest one,
+ *     or a socket refusing packets halves the rate, as sending more only adds to the queue.</li>
+ *     <li>A lossy link repeats one more previous command in every packet,
+ *     or lowers the rate once the redundancy is at its maximum.</li>
+ *     <li>A clean link raises the rate by a fixed step, and after {@value #CLEAN_INTERVALS}
+ *     clean intervals in a row repeats one previous command less.</li>
+ * </ul>
+ * Halving and adding back in steps, like TCP does, keeps the controller from oscillating.
+ * Used by the sender thread only, it does not allocate memory.
+ *
+ * @author Rafał Dąbrowski
+ */
+class RateController {
+    static final double HIGH_LOSS_RATE = 0.05;
+    static final double LOW_LOSS_RATE = 0.01;
+    static final int CLEAN_INTERVALS = 3;
+    private static final long QUEUEING_SLACK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * Represents the step taken by the controller.
+     *
+     * @author Rafał Dąbrowski
+     */
+    enum Decision {
+        HOLD,
+        BACK_OFF,
+        RAMP_UP,
+        REDUNDANCY_UP,
+        REDUNDANCY_DOWN
+    }
+
+    private final int minRate;
+    private final int maxRate;
+    private final int rateStep;
+    private final int maxRedundancy;
+    private final long controlIntervalNanos;
+
+    private int rate;
+    private int redundancy;
+    private int cleanIntervals;
+
+    /**
+     * A constructor for RateController. It starts at the maximum rate without redundancy.
+     *
+     * @param minRate           The smallest rate in commands per second.
+     * @param maxRate           The largest rate in commands per second.
+     * @param maxRedundancy     The largest number of previous commands repeated in every packet.
+     * @param controlIntervalMs The time between two steps in milliseconds.
+     * @return RateController instance.
+     * @throws IllegalArgumentException if a bound is out of range or the interval is not positive.
+     */
+    RateController(int minRate, int maxRate, int maxRedundancy, long controlIntervalMs) {
+        if (minRate <= 0 || maxRate < minRate) {
+            throw new IllegalArgumentException("The rates must be positive and the maximum not below the minimum");
+        }
+
+        if (maxRedundancy < 0 || maxRedundancy > CommandFrame.MAX_REDUNDANCY) {
+            throw new IllegalArgumentException("The redundancy must range from 0 to " + CommandFrame.MAX_REDUNDANCY);
+        }
+
+        if (controlIntervalMs <= 0) {
+            throw new IllegalArgumentException("The control interval must be positive");
+        }
+
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        this.rateStep = Math.max(1, maxRate / 10);
+        this.maxRedundancy = maxRedundancy;
+        this.controlIntervalNanos = TimeUnit.MILLISECONDS.toNanos(controlIntervalMs);
+        this.rate = maxRate;
+    }
+
+    /**
+     * This method takes a step from the link quality measured over the last control interval.
+     *
+     * @param lossRate           The fraction of commands which were not acknowledged in time.
+     * @param smoothedRoundTrip  The smoothed round-trip time in nanoseconds.
+     * @param minRoundTrip       The smallest recent round-trip time in nanoseconds, 0 if unknown.
+     * @param sendErrors         The number of packets the socket refused or failed to send.
+     * @return The step taken.
+     */
+    Decision update(double lossRate, long smoothedRoundTrip, long minRoundTrip, long sendErrors) {
+        boolean queueing = minRoundTrip > 0 && smoothedRoundTrip
+                > Math.max(2 * minRoundTrip, minRoundTrip + QUEUEING_SLACK_NANOS);
+
+        if (sendErrors > 0 || queueing) {
+            this.cleanIntervals = 0;
+            return backOff(this.rate / 2);
+        }
+
+        if (lossRate > HIGH_LOSS_RATE) {
+            this.cleanIntervals = 0;
+
+            if (this.redundancy < this.maxRedundancy) {
+                this.redundancy++;
+                return Decision.REDUNDANCY_UP;
+            }
+
+            return backOff(this.rate - this.rateStep);
+        }
+
+        if (lossRate >= LOW_LOSS_RATE) {
+            this.cleanIntervals = 0;
+            return Decision.HOLD;
+        }
+
+        this.cleanIntervals++;
+
+        if (this.redundancy > 0 && this.cleanIntervals >= CLEAN_INTERVALS) {
+            this.redundancy--;
+            this.cleanIntervals = 0;
+            return Decision.REDUNDANCY_DOWN;
+        }
+
+        if (this.rate < this.maxRate) {
+            this.rate = Math.min(this.maxRate, this.rate + this.rateStep);
+            return Decision.RAMP_UP;
+        }
+
+        return Decision.HOLD;
+    }
+
+    /**
+     * This method returns the rate the commands should be sent at.
+     *
+     * @return The rate in commands per second.
+     */
+    int getRate() {
+        return this.rate;
+    }
+
+    /**
+     * This method returns the number of previous commands which should be repeated in every packet.
+     *
+     * @return The redundancy.
+     */
+    int getRedundancy() {
+        return this.redundancy;
+    }
+
+    /**
+     * This method returns the time between two steps.
+     *
+     * @return The control interval in nanoseconds.
+     */
+    long getControlIntervalNanos() {
+        return this.controlIntervalNanos;
+    }
+
+    /**
+     * This method lowers the rate, never below the minimum one.
+     *
+     * @param rate The lowered rate in commands per second.
+     * @return BACK_OFF if the rate was lowered, HOLD if it already is the minimum one.
+     */
+    private Decision backOff(int rate) {
+        if (this.rate == this.minRate) {
+            return Decision.HOLD;
+        }
+
+        this.rate = Math.max(this.minRate, rate);
+        return Decision.BACK_OFF;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.iot_car_rc;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Represents a reader of session logs written by the SessionRecorder.
+ * The log is read through a reused direct buffer, reading a record does not allocate memory.
+ *
+ * @author Rafał Dąbrowski
+ */
+class SessionReader implements Closeable {
+    private static final int RECORDS_PER_READ = 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(SessionRecord.SIZE * RECORDS_PER_READ);
+    private final long startTimeMillis;
+    private boolean endOfFile;
+
+    /**
+     * A constructor for SessionReader. It opens the session log and checks its header.
+     *
+     * @param file The session log.
+     * @return SessionReader instance.
+     * @throws IOException if the file could not be read or is not a session log.
+     */
+    SessionReader(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            this.buffer.flip();
+            fill();
+
+            if (this.buffer.remaining() < SessionRecorder.HEADER_SIZE
+                    || this.buffer.getInt() != SessionRecorder.MAGIC
+                    || this.buffer.getShort() != SessionRecorder.VERSION
+                    || this.buffer.getShort() != SessionRecord.SIZE) {
+                throw new IOException("Not a session log: " + file);
+            }
+
+            this.startTimeMillis = this.buffer.getLong();
+        } catch (IOException exception) {
+            this.channel.close();
+            throw exception;
+        }
+    }
+
+    /**
+     * This method returns the time the session started.
+     *
+     * @return The start time in milliseconds since the epoch.
+     */
+    long getStartTimeMillis() {
+        return this.startTimeMillis;
+    }
+
+    /**
+     * This method reads the next record. A record cut short by a crash while recording is skipped.
+     *
+     * @param record The record the next one is read into.
+     * @return True if a record was read, false at the end of the session log.
+     * @throws IOException if the file could not be read.
+     */
+    boolean next(SessionRecord record) throws IOException {
+        if (this.buffer.remaining() < SessionRecord.SIZE) {
+            fill();
+        }
+
+        return record.decode(this.buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * This method moves the unread bytes to the front of the buffer and reads the file until it is full.
+     *
+     * @return Nothing.
+     * @throws IOException if the file could not be read.
+     */
+    private void fill() throws IOException {
+        this.buffer.compact();
+
+        while (!this.endOfFile && this.buffer.hasRemaining()) {
+            if (this.channel.read(this.buffer) < 0) {
+                this.endOfFile = true;
+            }
+        }
+
+        this.buffer.flip();
+    }
+}
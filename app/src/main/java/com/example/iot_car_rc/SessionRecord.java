@@ -0,0 +1,135 @@
+package com.example.iot_car_rc;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a single record of a drive session, a command handed to the transmitter
+ * together with the stick offsets it was mixed from and the time it was sent.
+ * The record is mutable and meant to be reused, neither encoding nor decoding allocates memory.
+ *
+ * <p>Both sticks are recorded as they were, the stick layout tells how they were mixed:
+ * <ul>
+ * <li>SINGLE - the left stick steers in the X axis and sets the throttle in the Y axis, the right one is unused.</li>
+ * <li>SPLIT - the left stick sets the throttle in the Y axis, the right one steers in the X axis.</li>
+ * <li>TANK - the left stick drives the left motor and the right one the right motor, both in the Y axis.</li>
+ * </ul>
+ *
+ * <p>Binary layout ({@value #SIZE} bytes, big-endian):
+ * <pre>
+ *  0  time              signed 64-bit nanoseconds since the session started
+ *  8  left x offset     signed 16-bit offset of the left stick in the X axis
+ * 10  left y offset     signed 16-bit offset of the left stick in the Y axis
+ * 12  right x offset    signed 16-bit offset of the right stick in the X axis
+ * 14  right y offset    signed 16-bit offset of the right stick in the Y axis
+ * 16  left motor speed  0..255
+ * 17  right motor speed 0..255
+ * 18  direction         0 is backward, 1 is forward
+ * 19  driving mode      0 is remote, 1 is autonomous, 2 follows a trajectory
+ * 20  driving algorithm see DrivingAlgorithm
+ * 21  stick layout      the ordinal of StickLayout, 0 is single, 1 is split, 2 is tank
+ * </pre>
+ *
+ * @author Rafał Dąbrowski
+ */
+class SessionRecord {
+    static final int SIZE = 22;
+
+    long timeNanos;
+    int stickLayout;
+    int leftXOffset;
+    int leftYOffset;
+    int rightXOffset;
+    int rightYOffset;
+    int leftMotorSpeed;
+    int rightMotorSpeed;
+    int direction;
+    int drivingMode;
+    int drivingAlgorithm;
+
+    /**
+     * This method sets the content of the record.
+     *
+     * @param timeNanos        The time since the session started, in nanoseconds.
+     * @param stickLayout      The ordinal of the stick layout the offsets were mixed with.
+     * @param leftXOffset      The offset of the left stick in the X axis, ranges from <-100, 100>.
+     * @param leftYOffset      The offset of the left stick in the Y axis, ranges from <-100, 100>.
+     * @param rightXOffset     The offset of the right stick in the X axis, ranges from <-100, 100>.
+     * @param rightYOffset     The offset of the right stick in the Y axis, ranges from <-100, 100>.
+     * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+     * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+     * @param drivingAlgorithm The algorithm used to drive the car.
+     * @return This record.
+     */
+    SessionRecord set(long timeNanos, int stickLayout,
+                      int leftXOffset, int leftYOffset, int rightXOffset, int rightYOffset,
+                      int leftMotorSpeed, int rightMotorSpeed, int direction, int drivingMode, int drivingAlgorithm) {
+        this.timeNanos = timeNanos;
+        this.stickLayout = stickLayout;
+        this.leftXOffset = leftXOffset;
+        this.leftYOffset = leftYOffset;
+        this.rightXOffset = rightXOffset;
+        this.rightYOffset = rightYOffset;
+        this.leftMotorSpeed = leftMotorSpeed;
+        this.rightMotorSpeed = rightMotorSpeed;
+        this.direction = direction;
+        this.drivingMode = drivingMode;
+        this.drivingAlgorithm = drivingAlgorithm;
+
+        return this;
+    }
+
+    /**
+     * This method writes the record into the buffer.
+     *
+     * @param buffer The buffer the record is written into.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encode(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE) {
+            throw new BufferOverflowException();
+        }
+
+        buffer.putLong(timeNanos)
+                .putShort((short) leftXOffset)
+                .putShort((short) leftYOffset)
+                .putShort((short) rightXOffset)
+                .putShort((short) rightYOffset)
+                .put((byte) leftMotorSpeed)
+                .put((byte) rightMotorSpeed)
+                .put((byte) direction)
+                .put((byte) drivingMode)
+                .put((byte) drivingAlgorithm)
+                .put((byte) stickLayout);
+    }
+
+    /**
+     * This method reads a record from the buffer, starting at the buffer's current position.
+     * The buffer's position is only advanced if the record was read.
+     *
+     * @param buffer The buffer the record is read from.
+     * @return True if a whole record was read, false otherwise.
+     */
+    boolean decode(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE) {
+            return false;
+        }
+
+        this.timeNanos = buffer.getLong();
+        this.leftXOffset = buffer.getShort();
+        this.leftYOffset = buffer.getShort();
+        this.rightXOffset = buffer.getShort();
+        this.rightYOffset = buffer.getShort();
+        this.leftMotorSpeed = buffer.get() & 0xFF;
+        this.rightMotorSpeed = buffer.get() & 0xFF;
+        this.direction = buffer.get() & 0xFF;
+        this.drivingMode = buffer.get() & 0xFF;
+        this.drivingAlgorithm = buffer.get() & 0xFF;
+        this.stickLayout = buffer.get() & 0xFF;
+
+        return true;
+    }
+}
@@ -0,0 +1,330 @@
+package com.example.iot_car_rc;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a recorder of drive sessions, it appends every command the transmitter sends to a binary session log,
+ * together with the latest position of the sticks.
+ * Records are encoded into one of two reused direct buffers. A full buffer is handed to the writer,
+ * a background executor, which writes it to the file channel while the other buffer fills up,
+ * so recording a command does not allocate memory and never touches the file.
+ * The session log is opened, written and closed on the writer only.
+ *
+ * <p>Session log layout, a {@value #HEADER_SIZE} byte header followed by SessionRecords:
+ * <pre>
+ *  0  magic             "RCSS"
+ *  4  version           unsigned 16-bit, 2, version 1 records had a single stick
+ *  6  record size       unsigned 16-bit, SessionRecord.SIZE
+ *  8  start time        signed 64-bit milliseconds since the epoch
+ * </pre>
+ * An I/O error stops the recording, the drive goes on.
+ * Session logs are named after their start time, so only the newest {@value #MAX_SESSIONS} of them are kept.
+ *
+ * @author Rafał Dąbrowski
+ */
+class SessionRecorder implements Closeable {
+    static final int MAGIC = 0x52435353;
+    static final short VERSION = 2;
+    static final int HEADER_SIZE = 16;
+    static final int MAX_SESSIONS = 20;
+    static final String PREFIX = "session-";
+    static final String SUFFIX = ".rcs";
+    private static final int RECORDS_PER_WRITE = 1024;
+
+    private final File file;
+    private final Executor writer;
+    private final SessionRecord record = new SessionRecord();
+    private final long startNanos;
+    private final CountDownLatch written = new CountDownLatch(1);
+
+    //  Set on the main thread, read by the transmitter's sender thread under the lock of the recorder
+    private StickLayout stickLayout = StickLayout.SINGLE;
+    private int leftXOffset;
+    private int leftYOffset;
+    private int rightXOffset;
+    private int rightYOffset;
+
+    //  The buffer being filled and the one handed back by the writer, null while it is being written
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(SessionRecord.SIZE * RECORDS_PER_WRITE);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(SessionRecord.SIZE * RECORDS_PER_WRITE);
+    private long recordCount;
+    private long droppedCount;
+    private boolean closed;
+
+    //  Used by the writer only
+    private FileChannel channel;
+    private volatile boolean failed;
+
+    /**
+     * A constructor for SessionRecorder. The session log is created on the writer,
+     * replacing any existing file, once the first records are written.
+     *
+     * @param file   The session log.
+     * @param writer The executor the session log is written on, a single background thread.
+     * @return SessionRecorder instance.
+     */
+    SessionRecorder(File file, Executor writer) {
+        this.file = file;
+        this.writer = writer;
+        this.startNanos = System.nanoTime();
+
+        this.buffer.putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort((short) SessionRecord.SIZE)
+                .putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * This method sets the position of the sticks recorded with the next commands.
+     *
+     * @param stickLayout  The stick layout the offsets are mixed with.
+     * @param leftXOffset  The offset of the left stick in the X axis, ranges from <-100, 100>.
+     * @param leftYOffset  The offset of the left stick in the Y axis, ranges from <-100, 100>.
+     * @param rightXOffset The offset of the right stick in the X axis, ranges from <-100, 100>.
+     * @param rightYOffset The offset of the right stick in the Y axis, ranges from <-100, 100>.
+     * @return Nothing.
+     */
+    synchronized void setSticks(StickLayout stickLayout,
+                                int leftXOffset, int leftYOffset, int rightXOffset, int rightYOffset) {
+        this.stickLayout = stickLayout;
+        this.leftXOffset = leftXOffset;
+        this.leftYOffset = leftYOffset;
+        this.rightXOffset = rightXOffset;
+        this.rightYOffset = rightYOffset;
+    }
+
+    /**
+     * This method appends a sent command to the session log, it is called by the transmitter.
+     * If the writer has not written the previous buffer yet, the command is dropped.
+     *
+     * @param now              The send time in nanoseconds, from System.nanoTime().
+     * @param leftMotorSpeed   The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed  The speed of the right motor, ranges from <0, 255>.
+     * @param direction        The driving direction of the car (0 is backward, 1 is forward).
+     * @param drivingMode      The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+     * @param drivingAlgorithm The algorithm used to drive the car.
+     * @return Nothing.
+     */
+    synchronized void record(long now, int leftMotorSpeed, int rightMotorSpeed,
+                             int direction, int drivingMode, int drivingAlgorithm) {
+        if (this.closed || this.failed) {
+            return;
+        }
+
+        if (this.buffer.remaining() < SessionRecord.SIZE && !submit()) {
+            this.droppedCount++;
+            return;
+        }
+
+        this.record.set(now - this.startNanos, this.stickLayout.ordinal(),
+                this.leftXOffset, this.leftYOffset, this.rightXOffset, this.rightYOffset,
+                leftMotorSpeed, rightMotorSpeed, direction, drivingMode, drivingAlgorithm).encode(this.buffer);
+        this.recordCount++;
+    }
+
+    /**
+     * This method creates the session log of a drive starting now in the directory.
+     * The oldest session logs beyond MAX_SESSIONS are deleted on the writer.
+     *
+     * @param directory The directory of the session logs.
+     * @param writer    The executor the session log is written on, a single background thread.
+     * @return SessionRecorder instance.
+     */
+    static SessionRecorder create(File directory, Executor writer) {
+        writer.execute(() -> deleteOldSessions(directory, MAX_SESSIONS - 1));
+
+        return new SessionRecorder(new File(directory, PREFIX + System.currentTimeMillis() + SUFFIX), writer);
+    }
+
+    /**
+     * This method deletes all but the newest session logs in the directory.
+     *
+     * @param directory The directory of the session logs.
+     * @param keep      The number of session logs kept.
+     * @return Number of deleted session logs.
+     */
+    static int deleteOldSessions(File directory, int keep) {
+        File[] sessions = directory.listFiles(
+                (dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX)
+        );
+
+        if (sessions == null || sessions.length <= keep) {
+            return 0;
+        }
+
+        //  The start times have the same number of digits, the names sort by age
+        Arrays.sort(sessions);
+        int deleted = 0;
+
+        for (int i = 0; i < sessions.length - keep; i++) {
+            if (sessions[i].delete()) {
+                deleted++;
+            } else {
+                Log.e("Could not delete " + sessions[i], "RECORDER_ERROR:deleteOldSessions");
+            }
+        }
+
+        return deleted;
+    }
+
+    /**
+     * This method hands the buffered records to the writer, unless it is still writing the previous ones.
+     *
+     * @return Nothing.
+     */
+    synchronized void flush() {
+        if (!this.closed) {
+            submit();
+        }
+    }
+
+    /**
+     * This method returns the session log.
+     *
+     * @return The session log.
+     */
+    File getFile() {
+        return this.file;
+    }
+
+    /**
+     * This method returns the number of recorded commands.
+     *
+     * @return Number of records.
+     */
+    synchronized long getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * This method returns the number of commands dropped because the writer fell behind.
+     *
+     * @return Number of dropped commands.
+     */
+    synchronized long getDroppedCount() {
+        return this.droppedCount;
+    }
+
+    /**
+     * This method stops the recording. The buffered records are written
+     * and the session log is closed on the writer, this method does not wait for it.
+     *
+     * @return Nothing.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        ByteBuffer last = this.buffer;
+
+        this.writer.execute(() -> {
+            write(last);
+            closeChannel();
+            this.written.countDown();
+        });
+    }
+
+    /**
+     * This method waits until the recording is stopped and the whole session log has been written.
+     *
+     * @param timeoutMs The longest time to wait in milliseconds.
+     * @return True if the session log was written completely, false if it failed or the time ran out.
+     */
+    boolean awaitWritten(long timeoutMs) {
+        try {
+            return this.written.await(timeoutMs, TimeUnit.MILLISECONDS) && !this.failed;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * This method hands the buffer being filled to the writer and carries on with the spare one.
+     *
+     * @return True if the buffer was handed over, false if the writer has not handed back the spare one yet.
+     */
+    private boolean submit() {
+        ByteBuffer full = this.buffer;
+
+        if (this.spare == null) {
+            return false;
+        }
+
+        this.buffer = this.spare;
+        this.spare = null;
+        this.writer.execute(() -> {
+            write(full);
+
+            synchronized (this) {
+                full.clear();
+                this.spare = full;
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * This method writes the buffer to the session log, creating it first if needed, it runs on the writer.
+     * On an I/O error the recording is stopped.
+     *
+     * @param full The buffer of records.
+     * @return Nothing.
+     */
+    private void write(ByteBuffer full) {
+        if (this.failed) {
+            return;
+        }
+
+        full.flip();
+
+        try {
+            if (this.channel == null) {
+                this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            }
+
+            while (full.hasRemaining()) {
+                this.channel.write(full);
+            }
+        } catch (IOException exception) {
+            Log.e(exception.getMessage(), "RECORDER_ERROR:write");
+            this.failed = true;
+            closeChannel();
+        }
+    }
+
+    /**
+     * This method closes the session log, it runs on the writer.
+     *
+     * @return Nothing.
+     */
+    private void closeChannel() {
+        if (this.channel == null) {
+            return;
+        }
+
+        try {
+            this.channel.close();
+        } catch (IOException exception) {
+            Log.e(exception.getMessage(), "RECORDER_ERROR:close");
+        }
+
+        this.channel = null;
+    }
+}
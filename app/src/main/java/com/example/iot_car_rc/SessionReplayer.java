@@ -0,0 +1,128 @@
+package com.example.iot_car_rc;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Represents a replayer of recorded drive sessions.
+ * It hands every recorded command to the transmitter at its original time,
+ * scaled by the replay speed, and measures how far from that time each command went out.
+ * Waits are parked until shortly before the deadline and spun for the rest,
+ * so the deviation stays well below the resolution of the scheduler.
+ * The app has no replay screen, session logs are replayed by the tests or uploaded to the car as trajectories.
+ *
+ * @author Rafał Dąbrowski
+ */
+class SessionReplayer {
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final CommandTransmitter transmitter;
+    private final SessionRecord record = new SessionRecord();
+    private final LatencyHistogram deviation = new LatencyHistogram();
+
+    private volatile long replayedCount;
+    private volatile boolean cancelled;
+
+    /**
+     * A constructor for SessionReplayer
+     *
+     * @param transmitter The transmitter the recorded commands are sent through.
+     * @return SessionReplayer instance.
+     */
+    SessionReplayer(CommandTransmitter transmitter) {
+        this.transmitter = transmitter;
+    }
+
+    /**
+     * This method replays the session on the calling thread and returns when it is over or cancelled.
+     *
+     * @param reader The reader of the session log.
+     * @param speed  The replay speed, 1 is the original timing and 4 replays four times faster.
+     * @return Number of replayed commands.
+     * @throws IOException              if the session log could not be read.
+     * @throws IllegalArgumentException if the speed is not positive.
+     */
+    long replay(SessionReader reader, double speed) throws IOException {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("The replay speed must be positive");
+        }
+
+        this.cancelled = false;
+        long start = System.nanoTime();
+        long count = 0;
+        long firstTime = Long.MIN_VALUE;
+
+        while (!this.cancelled && reader.next(this.record)) {
+            if (firstTime == Long.MIN_VALUE) {
+                firstTime = this.record.timeNanos;
+            }
+
+            long deadline = start + (long) ((this.record.timeNanos - firstTime) / speed);
+            long now = waitUntil(deadline);
+
+            this.transmitter.sendCommand(
+                    this.record.leftMotorSpeed,
+                    this.record.rightMotorSpeed,
+                    this.record.direction,
+                    this.record.drivingMode,
+                    this.record.drivingAlgorithm
+            );
+
+            this.deviation.record(now - deadline);
+            this.replayedCount = ++count;
+        }
+
+        return count;
+    }
+
+    /**
+     * This method stops a replay running on another thread after its current command.
+     *
+     * @return Nothing.
+     */
+    void cancel() {
+        this.cancelled = true;
+    }
+
+    /**
+     * This method returns the histogram of how late the commands were replayed, in nanoseconds.
+     *
+     * @return The timing deviation histogram.
+     */
+    LatencyHistogram getDeviation() {
+        return this.deviation;
+    }
+
+    /**
+     * This method returns the number of commands replayed by the current or last replay.
+     *
+     * @return Number of replayed commands.
+     */
+    long getReplayedCount() {
+        return this.replayedCount;
+    }
+
+    /**
+     * This method waits until the deadline.
+     *
+     * @param deadline The deadline in nanoseconds, from System.nanoTime().
+     * @return The time the wait ended, in nanoseconds.
+     */
+    private long waitUntil(long deadline) {
+        long now = System.nanoTime();
+
+        //  Compared by their difference, which survives the wraparound of System.nanoTime()
+        while (deadline - now > 0 && !this.cancelled) {
+            long remaining = deadline - now;
+
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(this, remaining - SPIN_NANOS);
+            }
+
+            now = System.nanoTime();
+        }
+
+        return now;
+    }
+}
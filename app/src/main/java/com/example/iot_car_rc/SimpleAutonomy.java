@@ -0,0 +1,47 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+
+/**
+ * Represents the SIMPLE obstacle avoidance algorithm. It drives straight ahead at a constant speed
+ * and, with an obstacle in front or right beside the car, stops and pivots towards the side with more room
+ * until the way is clear.
+ * It keeps no state, so it is the fallback when the richer algorithms overrun the engine's budget.
+ *
+ * @author Rafał Dąbrowski
+ */
+class SimpleAutonomy implements AutonomousAlgorithm {
+    static final int STOP_DISTANCE_MM = 300;
+    //  Closer than this, a wall beside the car is about to be scraped
+    static final int SIDE_STOP_DISTANCE_MM = 150;
+    static final int CRUISE_THROTTLE = 60;
+    //  The left side must have this much more room to be chosen, a near tie keeps the car turning one way
+    static final int SIDE_MARGIN_MM = 100;
+
+    @Override
+    public void reset() {
+    }
+
+    @Override
+    public void drive(TelemetryFrame telemetry, DriveMixer mixer) {
+        if (telemetry.frontDistance > STOP_DISTANCE_MM
+                && telemetry.leftDistance > SIDE_STOP_DISTANCE_MM
+                && telemetry.rightDistance > SIDE_STOP_DISTANCE_MM) {
+            mixer.arcade(0, CRUISE_THROTTLE);
+        } else {
+            mixer.arcade(turnAway(telemetry.leftDistance, telemetry.rightDistance), 0);
+        }
+    }
+
+    /**
+     * This method returns the full turn towards the side with more room. It turns right unless the left side
+     * has clearly more room, otherwise the readings would flip the side on every turn of the car.
+     *
+     * @param leftDistance  The distance to the obstacle on the left, in millimetres.
+     * @param rightDistance The distance to the obstacle on the right, in millimetres.
+     * @return The turn offset, -100 or 100.
+     */
+    static int turnAway(int leftDistance, int rightDistance) {
+        return leftDistance > rightDistance + SIDE_MARGIN_MM ? -DriveMixer.MAX_INPUT : DriveMixer.MAX_INPUT;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.iot_car_rc;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a trace of the application's cold start: named sections with their start and
+ * duration, and milestones such as the first display frame and the first command sent to the car.
+ * Times are measured from the start of the process, so they include what happens before any of
+ * the application's code runs. Sections are also passed to android.os.Trace, so they show up in systrace.
+ *
+ * <p>Once metrics are registered, every section and milestone is reported as a gauge:
+ * <pre>
+ *     startup.transport_open_ms 12
+ *     startup.first_frame_ms 540
+ *     startup.first_command_ms 610
+ * </pre>
+ * At most {@value #MAX_SECTIONS} sections and milestones are kept, later ones are only passed to systrace.
+ * Sections and milestones may be recorded from any thread, a section must end on the thread which began it.
+ *
+ * @author Rafał Dąbrowski
+ */
+class StartupTrace {
+    static final int MAX_SECTIONS = 64;
+    static final String FIRST_FRAME = "first_frame";
+    static final String FIRST_COMMAND = "first_command";
+    static final int NO_SECTION = -1;
+    private static final long NONE = -1;
+    private static final StartupTrace DEFAULT = new StartupTrace(System.nanoTime()
+            - TimeUnit.MILLISECONDS.toNanos(SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()));
+
+    private final long originNanos;
+    private final String[] names = new String[MAX_SECTIONS];
+    private final long[] startNanos = new long[MAX_SECTIONS];
+    private final long[] endNanos = new long[MAX_SECTIONS];
+    private final boolean[] milestones = new boolean[MAX_SECTIONS];
+    private int count;
+    private MetricsRegistry metrics;
+
+    /**
+     * This method returns the trace of the application's process.
+     *
+     * @return The default trace.
+     */
+    static StartupTrace getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * A constructor for StartupTrace
+     *
+     * @param originNanos The time every section is measured from, from System.nanoTime().
+     * @return StartupTrace instance.
+     */
+    StartupTrace(long originNanos) {
+        this.originNanos = originNanos;
+    }
+
+    /**
+     * This method begins a section.
+     *
+     * @param name The name of the section, e.g. "transport_open".
+     * @return The identifier of the section, passed to end(), NO_SECTION if the trace is full.
+     */
+    int begin(String name) {
+        Trace.beginSection(name);
+
+        synchronized (this) {
+            if (this.count == MAX_SECTIONS) {
+                return NO_SECTION;
+            }
+
+            this.names[this.count] = name;
+            this.startNanos[this.count] = System.nanoTime();
+            this.endNanos[this.count] = NONE;
+            this.milestones[this.count] = false;
+
+            return this.count++;
+        }
+    }
+
+    /**
+     * This method ends a section, on the thread which began it.
+     *
+     * @param section The identifier returned by begin().
+     * @return Nothing.
+     */
+    void end(int section) {
+        long now = System.nanoTime();
+        Trace.endSection();
+
+        synchronized (this) {
+            if (section == NO_SECTION || this.endNanos[section] != NONE) {
+                return;
+            }
+
+            this.endNanos[section] = now;
+            registerGauge(section);
+        }
+    }
+
+    /**
+     * This method records a milestone, unless it was recorded before.
+     *
+     * @param name The name of the milestone, e.g. FIRST_COMMAND.
+     * @return True if the milestone was recorded, false if it was recorded before or the trace is full.
+     */
+    synchronized boolean mark(String name) {
+        if (this.count == MAX_SECTIONS || indexOf(name) >= 0) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+        this.names[this.count] = name;
+        this.startNanos[this.count] = now;
+        this.endNanos[this.count] = now;
+        this.milestones[this.count] = true;
+        registerGauge(this.count++);
+
+        return true;
+    }
+
+    /**
+     * This method returns the time from the start of the process to the end of a section or a milestone.
+     *
+     * @param name The name of the section or milestone.
+     * @return The time in nanoseconds, -1 if it has not ended yet.
+     */
+    synchronized long getElapsedNanos(String name) {
+        int index = indexOf(name);
+
+        return index < 0 || this.endNanos[index] == NONE ? NONE : this.endNanos[index] - this.originNanos;
+    }
+
+    /**
+     * This method returns the duration of a section.
+     *
+     * @param name The name of the section.
+     * @return The duration in nanoseconds, 0 for a milestone, -1 if the section has not ended yet.
+     */
+    synchronized long getDurationNanos(String name) {
+        int index = indexOf(name);
+
+        return index < 0 || this.endNanos[index] == NONE ? NONE : this.endNanos[index] - this.startNanos[index];
+    }
+
+    /**
+     * This method registers a gauge for every section and milestone, including those recorded later.
+     * Sections report their duration, milestones the time since the start of the process, in milliseconds.
+     *
+     * @param metrics The registry the gauges are registered in.
+     * @return Nothing.
+     */
+    synchronized void registerMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+
+        for (int index = 0; index < this.count; index++) {
+            if (this.endNanos[index] != NONE) {
+                registerGauge(index);
+            }
+        }
+    }
+
+    /**
+     * This method registers the gauge of an ended section or a milestone, if metrics are registered.
+     *
+     * @param index The index of the section.
+     * @return Nothing.
+     */
+    private void registerGauge(int index) {
+        if (this.metrics == null) {
+            return;
+        }
+
+        long value = this.milestones[index]
+                ? this.endNanos[index] - this.originNanos
+                : this.endNanos[index] - this.startNanos[index];
+        long millis = TimeUnit.NANOSECONDS.toMillis(value);
+
+        this.metrics.gauge("startup." + this.names[index] + "_ms", () -> millis);
+    }
+
+    /**
+     * This method returns the index of the first section or milestone with the name.
+     *
+     * @param name The name of the section or milestone.
+     * @return The index, or -1 if there is none.
+     */
+    private int indexOf(String name) {
+        for (int index = 0; index < this.count; index++) {
+            if (this.names[index].equals(name)) {
+                return index;
+            }
+        }
+
+        return NO_SECTION;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+
+/**
+ * Represents layouts of the joystick view's sticks and how their positions are mixed into motor speeds.
+ *
+ * @author Rafał Dąbrowski
+ */
+public enum StickLayout {
+    //  One stick, arcade style
+    SINGLE(1),
+    //  Throttle on the left stick, steering on the right one
+    SPLIT(2),
+    //  One stick per motor
+    TANK(2);
+
+    private int stickCount;
+
+    /**
+     * Constructor for StickLayout enum.
+     *
+     * @param stickCount the number of sticks of the layout.
+     */
+    StickLayout(int stickCount) {
+        this.stickCount = stickCount;
+    }
+
+    /**
+     * This method returns the number of sticks of the layout.
+     *
+     * @return The number of sticks.
+     */
+    public int getStickCount() {
+        return stickCount;
+    }
+
+    /**
+     * This method mixes the positions of the sticks into the drive state of the mixer.
+     * The right stick is ignored in the single stick layout.
+     *
+     * @param driveMixer   The mixer the drive state is kept in.
+     * @param leftXOffset  The offset of the left stick in the X axis, ranges from <-100, 100>.
+     * @param leftYOffset  The offset of the left stick in the Y axis, ranges from <-100, 100>.
+     * @param rightXOffset The offset of the right stick in the X axis, ranges from <-100, 100>.
+     * @param rightYOffset The offset of the right stick in the Y axis, ranges from <-100, 100>.
+     * @return Nothing.
+     */
+    public void mix(DriveMixer driveMixer, int leftXOffset, int leftYOffset, int rightXOffset, int rightYOffset) {
+        switch (this) {
+            case SINGLE:
+                driveMixer.arcade(leftXOffset, leftYOffset);
+                break;
+            case SPLIT:
+                driveMixer.arcade(rightXOffset, leftYOffset);
+                break;
+            case TANK:
+                driveMixer.tank(leftYOffset, rightYOffset);
+                break;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.iot_car_rc;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents a single telemetry frame the remote car sends back to the phone.
+ * It carries the obstacle sensor readings, the motor state and the battery voltage.
+ * The frame is mutable and meant to be reused, neither encoding nor decoding allocates memory.
+ *
+ * <p>Binary layout (version 1, {@value #SIZE} bytes, big-endian):
+ * <pre>
+ *  0  magic             0xCC
+ *  1  version           1
+ *  2  sequence number   unsigned 32-bit, counted by the car
+ *  6  car timestamp     unsigned 32-bit milliseconds since the car booted
+ * 10  front distance    unsigned 16-bit millimetres, 0xFFFF if there is no echo
+ * 12  left distance     unsigned 16-bit millimetres, 0xFFFF if there is no echo
+ * 14  right distance    unsigned 16-bit millimetres, 0xFFFF if there is no echo
+ * 16  left motor speed  0..255
+ * 17  right motor speed 0..255
+ * 18  direction         0 is backward, 1 is forward
+ * 19  driving mode      0 is remote, 1 is autonomous, 2 follows a trajectory
+ * 20  battery voltage   unsigned 16-bit millivolts
+ * </pre>
+ *
+ * @author Rafał Dąbrowski
+ */
+class TelemetryFrame {
+    static final byte MAGIC = (byte) 0xCC;
+    static final byte VERSION = 1;
+    static final int SIZE = 22;
+    //  The distance reported by a sensor which did not receive an echo
+    static final int NO_READING = 0xFFFF;
+
+    long sequence;
+    int carTimestamp;
+    int frontDistance;
+    int leftDistance;
+    int rightDistance;
+    int leftMotorSpeed;
+    int rightMotorSpeed;
+    int direction;
+    int drivingMode;
+    int batteryMillivolts;
+
+    /**
+     * This method sets the sensor readings of the frame.
+     *
+     * @param frontDistance     The distance to the obstacle in front, in millimetres.
+     * @param leftDistance      The distance to the obstacle on the left, in millimetres.
+     * @param rightDistance     The distance to the obstacle on the right, in millimetres.
+     * @param batteryMillivolts The battery voltage in millivolts.
+     * @return This frame.
+     */
+    TelemetryFrame setSensors(int frontDistance, int leftDistance, int rightDistance, int batteryMillivolts) {
+        this.frontDistance = frontDistance;
+        this.leftDistance = leftDistance;
+        this.rightDistance = rightDistance;
+        this.batteryMillivolts = batteryMillivolts;
+
+        return this;
+    }
+
+    /**
+     * This method sets the motor state of the frame.
+     *
+     * @param leftMotorSpeed  The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed The speed of the right motor, ranges from <0, 255>.
+     * @param direction       The driving direction of the car (0 is backward, 1 is forward).
+     * @param drivingMode     The driving mode of the car (0 is remote, 1 is autonomous, 2 follows a trajectory).
+     * @return This frame.
+     */
+    TelemetryFrame setMotors(int leftMotorSpeed, int rightMotorSpeed, int direction, int drivingMode) {
+        this.leftMotorSpeed = leftMotorSpeed;
+        this.rightMotorSpeed = rightMotorSpeed;
+        this.direction = direction;
+        this.drivingMode = drivingMode;
+
+        return this;
+    }
+
+    /**
+     * This method sets the sequence number and the car timestamp of the frame.
+     *
+     * @param sequence     The sequence number, only the lower 32 bits are kept.
+     * @param carTimestamp The milliseconds since the car booted, only the lower 32 bits are kept.
+     * @return This frame.
+     */
+    TelemetryFrame stamp(long sequence, long carTimestamp) {
+        this.sequence = sequence & 0xFFFFFFFFL;
+        this.carTimestamp = (int) carTimestamp;
+
+        return this;
+    }
+
+    /**
+     * This method copies the content of another frame into this one.
+     *
+     * @param other The frame to be copied.
+     * @return This frame.
+     */
+    TelemetryFrame set(TelemetryFrame other) {
+        this.sequence = other.sequence;
+        this.carTimestamp = other.carTimestamp;
+        this.frontDistance = other.frontDistance;
+        this.leftDistance = other.leftDistance;
+        this.rightDistance = other.rightDistance;
+        this.leftMotorSpeed = other.leftMotorSpeed;
+        this.rightMotorSpeed = other.rightMotorSpeed;
+        this.direction = other.direction;
+        this.drivingMode = other.drivingMode;
+        this.batteryMillivolts = other.batteryMillivolts;
+
+        return this;
+    }
+
+    /**
+     * This method writes the frame into the buffer, it is used by the car simulator.
+     *
+     * @param buffer The buffer the frame is written into.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encode(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE) {
+            throw new BufferOverflowException();
+        }
+
+        buffer.put(MAGIC)
+                .put(VERSION)
+                .putInt((int) sequence)
+                .putInt(carTimestamp)
+                .putShort((short) frontDistance)
+                .putShort((short) leftDistance)
+                .putShort((short) rightDistance)
+                .put((byte) leftMotorSpeed)
+                .put((byte) rightMotorSpeed)
+                .put((byte) direction)
+                .put((byte) drivingMode)
+                .putShort((short) batteryMillivolts);
+    }
+
+    /**
+     * This method reads a frame from the buffer, starting at the buffer's current position.
+     * The buffer's position is only advanced if the frame was read.
+     *
+     * @param buffer The buffer the frame is read from.
+     * @return True if a valid frame was read, false otherwise.
+     */
+    boolean decode(ByteBuffer buffer) {
+        int start = buffer.position();
+
+        if (buffer.remaining() < SIZE
+                || buffer.get(start) != MAGIC
+                || buffer.get(start + 1) != VERSION) {
+            return false;
+        }
+
+        this.sequence = buffer.getInt(start + 2) & 0xFFFFFFFFL;
+        this.carTimestamp = buffer.getInt(start + 6);
+        this.frontDistance = buffer.getShort(start + 10) & 0xFFFF;
+        this.leftDistance = buffer.getShort(start + 12) & 0xFFFF;
+        this.rightDistance = buffer.getShort(start + 14) & 0xFFFF;
+        this.leftMotorSpeed = buffer.get(start + 16) & 0xFF;
+        this.rightMotorSpeed = buffer.get(start + 17) & 0xFF;
+        this.direction = buffer.get(start + 18) & 0xFF;
+        this.drivingMode = buffer.get(start + 19) & 0xFF;
+        this.batteryMillivolts = buffer.getShort(start + 20) & 0xFFFF;
+        buffer.position(start + SIZE);
+
+        return true;
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.iot_car_rc;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Represents a bounded single-producer, single-consumer queue of telemetry frames.
+ * The slots are allocated up front and frames are copied in and out of them,
+ * so neither offering nor polling allocates memory or takes a lock.
+ * A frame offered while the queue is full is dropped and counted as an overrun,
+ * the receiver thread never waits for the user interface.
+ *
+ * <p>Only the receiver thread may offer frames and only one consumer thread,
+ * usually the main thread, may poll them. The counters may be read from any thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class TelemetryRing {
+    private final TelemetryFrame[] frames;
+    private final long[] receivedNanos;
+    private final int mask;
+
+    //  The producer publishes the head and the consumer the tail, each only reads the other's
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong overrunCount = new AtomicLong();
+
+    //  The last tail seen by the producer, it spares a volatile read on most offers
+    private long cachedTail;
+
+    /**
+     * A constructor for TelemetryRing
+     *
+     * @param capacity The number of slots, a power of two.
+     * @return TelemetryRing instance.
+     * @throws IllegalArgumentException if the capacity is not a positive power of two.
+     */
+    TelemetryRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("The capacity must be a positive power of two");
+        }
+
+        this.frames = new TelemetryFrame[capacity];
+        this.receivedNanos = new long[capacity];
+        this.mask = capacity - 1;
+
+        for (int i = 0; i < capacity; i++) {
+            this.frames[i] = new TelemetryFrame();
+        }
+    }
+
+    /**
+     * This method copies the frame into the queue. Called on the producer thread only.
+     *
+     * @param frame         The received frame.
+     * @param receivedNanos The receive time in nanoseconds, from System.nanoTime().
+     * @return True if the frame was queued, false if the queue was full and the frame was dropped.
+     */
+    boolean offer(TelemetryFrame frame, long receivedNanos) {
+        long head = this.head.get();
+
+        if (head - this.cachedTail > this.mask) {
+            this.cachedTail = this.tail.get();
+
+            if (head - this.cachedTail > this.mask) {
+                this.overrunCount.incrementAndGet();
+                return false;
+            }
+        }
+
+        int slot = (int) (head & this.mask);
+        this.frames[slot].set(frame);
+        this.receivedNanos[slot] = receivedNanos;
+
+        //  The ordered write publishes the slot before the consumer can see the new head
+        this.head.lazySet(head + 1);
+
+        return true;
+    }
+
+    /**
+     * This method copies the oldest queued frame out of the queue. Called on the consumer thread only.
+     *
+     * @param frame The frame the oldest queued frame is copied into.
+     * @return The receive time of the frame in nanoseconds, or -1 if the queue is empty.
+     */
+    long poll(TelemetryFrame frame) {
+        long tail = this.tail.get();
+
+        if (tail == this.head.get()) {
+            return -1;
+        }
+
+        int slot = (int) (tail & this.mask);
+        frame.set(this.frames[slot]);
+        long receivedNanos = this.receivedNanos[slot];
+
+        //  The slot may be overwritten as soon as the producer sees the new tail
+        this.tail.lazySet(tail + 1);
+
+        return receivedNanos;
+    }
+
+    /**
+     * This method polls every queued frame into the summary, which is reset first.
+     * It is how the user interface downsamples the telemetry to its own frame rate.
+     * Called on the consumer thread only.
+     *
+     * @param summary The summary of the drained frames.
+     * @return Number of drained frames.
+     */
+    int drainTo(TelemetrySummary summary) {
+        summary.reset();
+
+        //  Frames arriving while draining are left for the next call, so the drain always ends
+        long end = this.head.get();
+        int count = 0;
+
+        while (this.tail.get() != end) {
+            summary.add(summary.scratch, poll(summary.scratch));
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * This method returns the number of queued frames.
+     *
+     * @return Number of queued frames.
+     */
+    int size() {
+        return (int) (this.head.get() - this.tail.get());
+    }
+
+    /**
+     * This method returns the number of slots.
+     *
+     * @return The capacity of the queue.
+     */
+    int capacity() {
+        return this.frames.length;
+    }
+
+    /**
+     * This method returns the number of frames dropped because the queue was full.
+     *
+     * @return Number of overruns.
+     */
+    long getOverrunCount() {
+        return this.overrunCount.get();
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents the telemetry frames received during one frame of the user interface.
+ * Obstacle distances are kept as the nearest reading of the interval, so a short-lived
+ * obstacle is not hidden by downsampling, everything else as the latest reading.
+ * Telemetry frames lost on the way are counted from the gaps in their sequence numbers.
+ *
+ * <p>The summary is reused by a single consumer thread and formats itself
+ * into a character array, so updating the user interface does not allocate memory.
+ *
+ * @author Rafał Dąbrowski
+ */
+class TelemetrySummary {
+    private static final char[] FRONT = "F ".toCharArray();
+    private static final char[] LEFT = "L ".toCharArray();
+    private static final char[] RIGHT = " R ".toCharArray();
+    private static final char[] CENTIMETRES = " cm  ".toCharArray();
+    private static final char[] VOLTS = " V".toCharArray();
+    private static final char[] NONE = "--".toCharArray();
+
+    //  The longest formatted summary, three distances of "6553" and a voltage of "65.53"
+    static final int MAX_TEXT_LENGTH = 64;
+
+    final TelemetryFrame latest = new TelemetryFrame();
+    final TelemetryFrame scratch = new TelemetryFrame();
+
+    int sampleCount;
+    int nearestFrontDistance;
+    int nearestLeftDistance;
+    int nearestRightDistance;
+    long latestReceivedNanos;
+
+    private long lastSequence = -1;
+    private long lostCount;
+
+    /**
+     * A constructor for TelemetrySummary
+     *
+     * @return TelemetrySummary instance.
+     */
+    TelemetrySummary() {
+        reset();
+    }
+
+    /**
+     * This method clears the readings of the interval. The lost frame count is kept.
+     *
+     * @return Nothing.
+     */
+    void reset() {
+        this.sampleCount = 0;
+        this.nearestFrontDistance = TelemetryFrame.NO_READING;
+        this.nearestLeftDistance = TelemetryFrame.NO_READING;
+        this.nearestRightDistance = TelemetryFrame.NO_READING;
+    }
+
+    /**
+     * This method adds a frame to the interval.
+     *
+     * @param frame         The received frame.
+     * @param receivedNanos The receive time in nanoseconds, from System.nanoTime().
+     * @return Nothing.
+     */
+    void add(TelemetryFrame frame, long receivedNanos) {
+        this.sampleCount++;
+        this.nearestFrontDistance = Math.min(this.nearestFrontDistance, frame.frontDistance);
+        this.nearestLeftDistance = Math.min(this.nearestLeftDistance, frame.leftDistance);
+        this.nearestRightDistance = Math.min(this.nearestRightDistance, frame.rightDistance);
+        this.latestReceivedNanos = receivedNanos;
+
+        //  A frame older than the last one was reordered and already counted as lost
+        if (this.lastSequence >= 0 && frame.sequence > this.lastSequence + 1) {
+            this.lostCount += frame.sequence - this.lastSequence - 1;
+        }
+
+        if (frame.sequence > this.lastSequence) {
+            this.lastSequence = frame.sequence;
+            this.latest.set(frame);
+        }
+    }
+
+    /**
+     * This method returns the number of telemetry frames which never arrived.
+     *
+     * @return Number of lost frames.
+     */
+    long getLostCount() {
+        return this.lostCount;
+    }
+
+    /**
+     * This method writes the nearest obstacle distances and the battery voltage into the array,
+     * e.g. "F 35 L 120 R -- cm  7.42 V".
+     *
+     * @param text The array of at least MAX_TEXT_LENGTH characters the summary is written into.
+     * @return The number of characters written.
+     */
+    int format(char[] text) {
+        int length = 0;
+
+        length = append(text, length, FRONT);
+        length = appendDistance(text, length, this.nearestFrontDistance);
+        text[length++] = ' ';
+        length = append(text, length, LEFT);
+        length = appendDistance(text, length, this.nearestLeftDistance);
+        length = append(text, length, RIGHT);
+        length = appendDistance(text, length, this.nearestRightDistance);
+        length = append(text, length, CENTIMETRES);
+
+        int millivolts = this.latest.batteryMillivolts;
+        length = appendNumber(text, length, millivolts / 1000);
+        text[length++] = '.';
+        text[length++] = (char) ('0' + millivolts / 100 % 10);
+        text[length++] = (char) ('0' + millivolts / 10 % 10);
+        length = append(text, length, VOLTS);
+
+        return length;
+    }
+
+    /**
+     * This method writes a distance in whole centimetres, or "--" if there was no reading.
+     *
+     * @param text     The array the distance is written into.
+     * @param length   The number of characters already written.
+     * @param distance The distance in millimetres.
+     * @return The number of characters written so far.
+     */
+    private static int appendDistance(char[] text, int length, int distance) {
+        if (distance == TelemetryFrame.NO_READING) {
+            return append(text, length, NONE);
+        }
+
+        return appendNumber(text, length, distance / 10);
+    }
+
+    /**
+     * This method writes a non-negative number in decimal.
+     *
+     * @param text   The array the number is written into.
+     * @param length The number of characters already written.
+     * @param number The non-negative number.
+     * @return The number of characters written so far.
+     */
+    private static int appendNumber(char[] text, int length, int number) {
+        int digits = 1;
+        for (int rest = number / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+
+        for (int i = length + digits - 1; i >= length; i--) {
+            text[i] = (char) ('0' + number % 10);
+            number /= 10;
+        }
+
+        return length + digits;
+    }
+
+    /**
+     * This method copies a constant into the array.
+     *
+     * @param text   The array the constant is written into.
+     * @param length The number of characters already written.
+     * @param source The constant.
+     * @return The number of characters written so far.
+     */
+    private static int append(char[] text, int length, char[] source) {
+        System.arraycopy(source, 0, text, length, source.length);
+
+        return length + source.length;
+    }
+}
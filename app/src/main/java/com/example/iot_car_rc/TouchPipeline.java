@@ -0,0 +1,158 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.OneEuroFilter;
+
+/**
+ * Represents the touch input pipeline between the joystick view and the joystick listener.
+ * Every touch sample, including the historical ones batched into a MotionEvent, moves the knob
+ * and feeds the knob displacement into a One Euro filter with the sample's timestamp.
+ * The filtered displacement is taken once per tick. While the finger rests, ticks keep feeding
+ * the last displacement, so the output settles even though no new samples arrive.
+ * Releasing the knob is never smoothed, it centers the output at once.
+ *
+ * <p>The pipeline does not allocate memory and is used by a single thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class TouchPipeline {
+    //  Tuned for displacements ranging from <-100, 100>
+    static final float MIN_CUTOFF_HZ = 2;
+    static final float BETA = 0.05f;
+    static final float DERIVATIVE_CUTOFF_HZ = 1;
+
+    private final JoystickGeometry geometry;
+    private final OneEuroFilter xFilter;
+    private final OneEuroFilter yFilter;
+
+    private boolean touching;
+    private long lastSampleNanos;
+    private long sampleCount;
+    private int xDisplacement;
+    private int yDisplacement;
+
+    /**
+     * A constructor for TouchPipeline
+     *
+     * @param geometry The geometry of the joystick, moved by every sample.
+     * @return TouchPipeline instance.
+     */
+    TouchPipeline(JoystickGeometry geometry) {
+        this(geometry,
+                new OneEuroFilter(MIN_CUTOFF_HZ, BETA, DERIVATIVE_CUTOFF_HZ),
+                new OneEuroFilter(MIN_CUTOFF_HZ, BETA, DERIVATIVE_CUTOFF_HZ));
+    }
+
+    /**
+     * A constructor for TouchPipeline
+     *
+     * @param geometry The geometry of the joystick, moved by every sample.
+     * @param xFilter  The filter of the displacement in the X axis.
+     * @param yFilter  The filter of the displacement in the Y axis.
+     * @return TouchPipeline instance.
+     */
+    TouchPipeline(JoystickGeometry geometry, OneEuroFilter xFilter, OneEuroFilter yFilter) {
+        this.geometry = geometry;
+        this.xFilter = xFilter;
+        this.yFilter = yFilter;
+    }
+
+    /**
+     * This method handles a touch sample. A touch away from the base releases the knob,
+     * like lifting the finger does.
+     *
+     * @param x         the x coordinate of the touch.
+     * @param y         the y coordinate of the touch.
+     * @param timeNanos the time of the touch in nanoseconds, from the monotonic clock.
+     * @return Nothing.
+     */
+    void onSample(float x, float y, long timeNanos) {
+        if (!this.geometry.wasTouchedNearBase(x, y)) {
+            release();
+            return;
+        }
+
+        this.geometry.moveKnob(x, y);
+        this.xFilter.filter(this.geometry.getXDisplacement(), timeNanos);
+        this.yFilter.filter(this.geometry.getYDisplacement(), timeNanos);
+        this.touching = true;
+        this.lastSampleNanos = timeNanos;
+        this.sampleCount++;
+    }
+
+    /**
+     * This method releases the knob. It centers the knob and the output at once.
+     *
+     * @return Nothing.
+     */
+    void release() {
+        this.geometry.center();
+        this.xFilter.reset();
+        this.yFilter.reset();
+        this.touching = false;
+        this.xDisplacement = 0;
+        this.yDisplacement = 0;
+    }
+
+    /**
+     * This method takes the filtered displacement for the tick.
+     *
+     * @param now The time of the tick in nanoseconds, from the monotonic clock.
+     * @return True if the displacement has changed since the previous tick, false otherwise.
+     */
+    boolean tick(long now) {
+        int lastX = this.xDisplacement;
+        int lastY = this.yDisplacement;
+
+        if (this.touching) {
+            //  With no newer sample, the knob is held where the last one left it
+            if (now > this.lastSampleNanos) {
+                this.xFilter.filter(this.geometry.getXDisplacement(), now);
+                this.yFilter.filter(this.geometry.getYDisplacement(), now);
+            }
+
+            this.xDisplacement = Math.round(this.xFilter.getValue());
+            this.yDisplacement = Math.round(this.yFilter.getValue());
+        }
+
+        return this.xDisplacement != lastX || this.yDisplacement != lastY;
+    }
+
+    /**
+     * This method checks if the filtered displacement has reached the knob displacement,
+     * so further ticks would not change it.
+     *
+     * @return True if the output is settled, false otherwise.
+     */
+    boolean isSettled() {
+        return !this.touching
+                || (this.xDisplacement == this.geometry.getXDisplacement()
+                && this.yDisplacement == this.geometry.getYDisplacement());
+    }
+
+    /**
+     * This method returns the filtered displacement in the X axis of the last tick.
+     *
+     * @return The displacement, ranges from <-100, 100>.
+     */
+    int getXDisplacement() {
+        return this.xDisplacement;
+    }
+
+    /**
+     * This method returns the filtered displacement in the Y axis of the last tick.
+     *
+     * @return The displacement, ranges from <-100, 100>.
+     */
+    int getYDisplacement() {
+        return this.yDisplacement;
+    }
+
+    /**
+     * This method returns the number of touch samples handled.
+     *
+     * @return Number of samples.
+     */
+    long getSampleCount() {
+        return this.sampleCount;
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents a precomputed manoeuvre, a sequence of motor setpoints timed from its start,
+ * which is uploaded to the car at once and run there on the car's own clock,
+ * so no step of it waits for the Wi-Fi link. The car holds every setpoint until the next one
+ * and the last one until the trajectory is stopped, compiled trajectories therefore end with the motors stopped.
+ *
+ * <p>Setpoints which do not change the motors are left out, unless the car would otherwise
+ * wait longer than MAX_GAP_MS for the next one, the longest gap the wire format carries.
+ *
+ * @author Rafał Dąbrowski
+ */
+class Trajectory {
+    static final int MAX_SETPOINTS = TrajectoryChunk.MAX_CHUNKS * TrajectoryChunk.MAX_SETPOINTS;
+    static final int MAX_GAP_MS = 0xFFFF;
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * Interface for parametric paths, the joystick offsets to drive with over time.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Path {
+        /**
+         * This method returns the offset of the joystick knob in the X axis, which turns the car.
+         *
+         * @param timeMs The time since the start of the path, in milliseconds.
+         * @return The offset, ranges from <-100, 100>.
+         */
+        int turn(int timeMs);
+
+        /**
+         * This method returns the offset of the joystick knob in the Y axis, which drives the car forward or backward.
+         *
+         * @param timeMs The time since the start of the path, in milliseconds.
+         * @return The offset, ranges from <-100, 100>.
+         */
+        int throttle(int timeMs);
+    }
+
+    /**
+     * Interface for the sources of a trajectory, which compile it when it is about to be uploaded,
+     * off the main thread.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Source {
+        /**
+         * This method compiles the trajectory.
+         *
+         * @return The trajectory.
+         * @throws IOException if the data the trajectory is compiled from could not be read.
+         */
+        Trajectory compile() throws IOException;
+    }
+
+    private int[] timesMs = new int[INITIAL_CAPACITY];
+    private int[] leftMotorSpeeds = new int[INITIAL_CAPACITY];
+    private int[] rightMotorSpeeds = new int[INITIAL_CAPACITY];
+    private int[] directions = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * This method compiles a recorded drive into a trajectory. Only the commands given
+     * in the remote driving mode are kept, and the motors are stopped after the last one.
+     *
+     * @param reader The reader of the session log.
+     * @return The trajectory.
+     * @throws IOException              if the session log could not be read.
+     * @throws IllegalArgumentException if the drive is too long to be uploaded.
+     */
+    static Trajectory fromSession(SessionReader reader) throws IOException {
+        Trajectory trajectory = new Trajectory();
+        SessionRecord record = new SessionRecord();
+        long firstTime = Long.MIN_VALUE;
+        int timeMs = 0;
+
+        while (reader.next(record)) {
+            if (record.drivingMode != DrivingMode.REMOTE.getDrivingMode()) {
+                continue;
+            }
+
+            if (firstTime == Long.MIN_VALUE) {
+                firstTime = record.timeNanos;
+            }
+
+            timeMs = (int) TimeUnit.NANOSECONDS.toMillis(record.timeNanos - firstTime);
+            trajectory.add(timeMs, record.leftMotorSpeed, record.rightMotorSpeed, record.direction);
+        }
+
+        if (trajectory.size() > 0) {
+            trajectory.add(timeMs, 0, 0, DrivingDirection.FORWARD.getDrivingDirection());
+        }
+
+        return trajectory;
+    }
+
+    /**
+     * This method compiles a parametric path into a trajectory, mixing its offsets like the joystick's.
+     * The motors are stopped at the end of the path.
+     *
+     * @param mixer      The mixer turning the offsets into motor speeds.
+     * @param path       The path.
+     * @param durationMs The duration of the path, in milliseconds.
+     * @param stepMs     The time between two samples of the path, in milliseconds.
+     * @return The trajectory.
+     * @throws IllegalArgumentException if the step is not positive or the path is too long to be uploaded.
+     */
+    static Trajectory fromPath(DriveMixer mixer, Path path, int durationMs, int stepMs) {
+        if (stepMs <= 0) {
+            throw new IllegalArgumentException("The step must be positive");
+        }
+
+        Trajectory trajectory = new Trajectory();
+
+        for (int timeMs = 0; timeMs < durationMs; timeMs += stepMs) {
+            mixer.arcade(path.turn(timeMs), path.throttle(timeMs));
+            trajectory.add(timeMs, mixer.getLeftMotorSpeed(), mixer.getRightMotorSpeed(), mixer.getDirection());
+        }
+
+        trajectory.add(Math.max(0, durationMs), 0, 0, DrivingDirection.FORWARD.getDrivingDirection());
+
+        return trajectory;
+    }
+
+    /**
+     * This method appends a setpoint, unless it does not change the motors.
+     *
+     * @param timeMs          The time since the start of the trajectory, in milliseconds.
+     * @param leftMotorSpeed  The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed The speed of the right motor, ranges from <0, 255>.
+     * @param direction       The driving direction of the car (0 is backward, 1 is forward).
+     * @return This trajectory.
+     * @throws IllegalArgumentException if the time is negative or before the last setpoint, or the trajectory is full.
+     */
+    Trajectory add(int timeMs, int leftMotorSpeed, int rightMotorSpeed, int direction) {
+        //  The gap of the first setpoint is counted from the start, the car is held still until then
+        if (this.size == 0 && timeMs > MAX_GAP_MS) {
+            append(0, 0, 0, DrivingDirection.FORWARD.getDrivingDirection());
+        }
+
+        int last = this.size - 1;
+
+        if (timeMs < (last >= 0 ? this.timesMs[last] : 0)) {
+            throw new IllegalArgumentException("The setpoints must be added in the order of their time");
+        }
+
+        //  A long hold is repeated, so the car never waits longer than the wire format carries
+        while (last >= 0 && timeMs - this.timesMs[last] > MAX_GAP_MS) {
+            append(this.timesMs[last] + MAX_GAP_MS,
+                    this.leftMotorSpeeds[last], this.rightMotorSpeeds[last], this.directions[last]);
+            last++;
+        }
+
+        if (last >= 0
+                && this.leftMotorSpeeds[last] == leftMotorSpeed
+                && this.rightMotorSpeeds[last] == rightMotorSpeed
+                && this.directions[last] == direction) {
+            return this;
+        }
+
+        append(timeMs, leftMotorSpeed, rightMotorSpeed, direction);
+
+        return this;
+    }
+
+    /**
+     * This method returns the number of setpoints.
+     *
+     * @return Number of setpoints.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * This method returns the time of a setpoint.
+     *
+     * @param index The index of the setpoint.
+     * @return The time since the start of the trajectory, in milliseconds.
+     */
+    int getTimeMs(int index) {
+        return this.timesMs[index];
+    }
+
+    /**
+     * This method returns the speed of the left motor of a setpoint.
+     *
+     * @param index The index of the setpoint.
+     * @return The left motor speed.
+     */
+    int getLeftMotorSpeed(int index) {
+        return this.leftMotorSpeeds[index];
+    }
+
+    /**
+     * This method returns the speed of the right motor of a setpoint.
+     *
+     * @param index The index of the setpoint.
+     * @return The right motor speed.
+     */
+    int getRightMotorSpeed(int index) {
+        return this.rightMotorSpeeds[index];
+    }
+
+    /**
+     * This method returns the driving direction of a setpoint.
+     *
+     * @param index The index of the setpoint.
+     * @return The driving direction.
+     */
+    int getDirection(int index) {
+        return this.directions[index];
+    }
+
+    /**
+     * This method returns the time of the last setpoint.
+     *
+     * @return The duration of the trajectory, in milliseconds.
+     */
+    int getDurationMs() {
+        return this.size == 0 ? 0 : this.timesMs[this.size - 1];
+    }
+
+    /**
+     * This method appends a setpoint, growing the arrays if needed.
+     *
+     * @param timeMs          The time since the start of the trajectory, in milliseconds.
+     * @param leftMotorSpeed  The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed The speed of the right motor, ranges from <0, 255>.
+     * @param direction       The driving direction of the car (0 is backward, 1 is forward).
+     * @return Nothing.
+     * @throws IllegalArgumentException if the trajectory is full.
+     */
+    private void append(int timeMs, int leftMotorSpeed, int rightMotorSpeed, int direction) {
+        if (this.size == MAX_SETPOINTS) {
+            throw new IllegalArgumentException("The trajectory is longer than " + MAX_SETPOINTS + " setpoints");
+        }
+
+        if (this.size == this.timesMs.length) {
+            int capacity = Math.min(MAX_SETPOINTS, this.size * 2);
+
+            this.timesMs = Arrays.copyOf(this.timesMs, capacity);
+            this.leftMotorSpeeds = Arrays.copyOf(this.leftMotorSpeeds, capacity);
+            this.rightMotorSpeeds = Arrays.copyOf(this.rightMotorSpeeds, capacity);
+            this.directions = Arrays.copyOf(this.directions, capacity);
+        }
+
+        this.timesMs[this.size] = timeMs;
+        this.leftMotorSpeeds[this.size] = leftMotorSpeed;
+        this.rightMotorSpeeds[this.size] = rightMotorSpeed;
+        this.directions[this.size] = direction;
+        this.size++;
+    }
+}
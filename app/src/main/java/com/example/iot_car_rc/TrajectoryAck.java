@@ -0,0 +1,84 @@
+package com.example.iot_car_rc;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Represents the acknowledgement the remote car sends back for every trajectory chunk it receives intact.
+ * It carries all the chunks of the trajectory received so far, so a single acknowledgement
+ * which makes it back is enough, however many were lost before it.
+ * The acknowledgement is mutable and meant to be reused.
+ *
+ * <p>Binary layout (version 1, {@value #SIZE} bytes, big-endian):
+ * <pre>
+ *  0  magic             0xCF
+ *  1  version           1
+ *  2  trajectory id     unsigned 16-bit, copied from the chunk
+ *  4  received chunks   bit n set if the chunk n was received
+ * </pre>
+ *
+ * @author Rafał Dąbrowski
+ */
+class TrajectoryAck {
+    static final byte MAGIC = (byte) 0xCF;
+    static final byte VERSION = 1;
+    static final int SIZE = 8;
+
+    int trajectoryId;
+    int receivedChunks;
+
+    /**
+     * This method sets the content of the acknowledgement.
+     *
+     * @param trajectoryId   The id of the upload.
+     * @param receivedChunks The bit mask of the received chunks.
+     * @return This acknowledgement.
+     */
+    TrajectoryAck set(int trajectoryId, int receivedChunks) {
+        this.trajectoryId = trajectoryId;
+        this.receivedChunks = receivedChunks;
+
+        return this;
+    }
+
+    /**
+     * This method writes the acknowledgement into the buffer.
+     *
+     * @param buffer The buffer the acknowledgement is written into.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encode(ByteBuffer buffer) {
+        if (buffer.remaining() < SIZE) {
+            throw new BufferOverflowException();
+        }
+
+        buffer.put(MAGIC)
+                .put(VERSION)
+                .putShort((short) trajectoryId)
+                .putInt(receivedChunks);
+    }
+
+    /**
+     * This method reads an acknowledgement from the buffer, starting at the buffer's current position.
+     * The buffer's position is only advanced if the acknowledgement was read.
+     *
+     * @param buffer The buffer the acknowledgement is read from.
+     * @return True if a valid acknowledgement was read, false otherwise.
+     */
+    boolean decode(ByteBuffer buffer) {
+        int start = buffer.position();
+
+        if (buffer.remaining() < SIZE
+                || buffer.get(start) != MAGIC
+                || buffer.get(start + 1) != VERSION) {
+            return false;
+        }
+
+        this.trajectoryId = buffer.getShort(start + 2) & 0xFFFF;
+        this.receivedChunks = buffer.getInt(start + 4);
+        buffer.position(start + SIZE);
+
+        return true;
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.iot_car_rc;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Represents a chunk of a trajectory uploaded to the car. A trajectory is split into
+ * up to {@value #MAX_CHUNKS} chunks of up to {@value #MAX_SETPOINTS} setpoints, each of which
+ * fits in a single datagram and is checked on its own, so a lost or damaged chunk is the only one sent again.
+ * The car answers every chunk with a TrajectoryAck of all the chunks it has received.
+ *
+ * <p>Once the car has every chunk it waits for a command in the TRAJECTORY driving mode,
+ * then runs the trajectory on its own clock, ignoring the motor speeds of the commands,
+ * until a command in another driving mode stops it.
+ * The chunk is mutable and meant to be reused.
+ *
+ * <p>Binary layout (version 1, big-endian):
+ * <pre>
+ *  0  magic             0xCE
+ *  1  version           1
+ *  2  trajectory id     unsigned 16-bit, chosen by the phone for every upload
+ *  4  chunk index       0..chunk count - 1
+ *  5  chunk count       1..32
+ *  6  first setpoint    unsigned 16-bit index of the first setpoint of the chunk in the trajectory
+ *  8  setpoint count    1..96
+ *  9  setpoints         5 bytes each:
+ *                         unsigned 16-bit milliseconds since the previous setpoint, or the start for the first one
+ *                         left motor speed 0..255
+ *                         right motor speed 0..255
+ *                         direction 0 is backward, 1 is forward
+ *  9 + 5n  checksum     unsigned 32-bit CRC-32 of all the bytes before it
+ * </pre>
+ *
+ * @author Rafał Dąbrowski
+ */
+class TrajectoryChunk {
+    static final byte MAGIC = (byte) 0xCE;
+    static final byte VERSION = 1;
+    static final int MAX_CHUNKS = 32;
+    static final int MAX_SETPOINTS = 96;
+    static final int HEADER_SIZE = 9;
+    static final int SETPOINT_SIZE = 5;
+    static final int CHECKSUM_SIZE = 4;
+    static final int MAX_SIZE = HEADER_SIZE + MAX_SETPOINTS * SETPOINT_SIZE + CHECKSUM_SIZE;
+
+    int trajectoryId;
+    int chunkIndex;
+    int chunkCount;
+    int firstSetpoint;
+    int setpointCount;
+    final int[] gapsMs = new int[MAX_SETPOINTS];
+    final int[] leftMotorSpeeds = new int[MAX_SETPOINTS];
+    final int[] rightMotorSpeeds = new int[MAX_SETPOINTS];
+    final int[] directions = new int[MAX_SETPOINTS];
+
+    private final CRC32 checksum = new CRC32();
+
+    /**
+     * This method returns the number of chunks a trajectory is split into.
+     *
+     * @param trajectory The trajectory.
+     * @return Number of chunks.
+     */
+    static int chunkCount(Trajectory trajectory) {
+        return Math.max(1, (trajectory.size() + MAX_SETPOINTS - 1) / MAX_SETPOINTS);
+    }
+
+    /**
+     * This method sets the content of the chunk from a part of a trajectory.
+     *
+     * @param trajectoryId The id of the upload, only the lower 16 bits are kept.
+     * @param trajectory   The trajectory.
+     * @param chunkIndex   The index of the chunk.
+     * @return This chunk.
+     * @throws IllegalArgumentException if the trajectory has no setpoints or no such chunk.
+     */
+    TrajectoryChunk set(int trajectoryId, Trajectory trajectory, int chunkIndex) {
+        int chunkCount = chunkCount(trajectory);
+
+        if (trajectory.size() == 0 || chunkIndex < 0 || chunkIndex >= chunkCount) {
+            throw new IllegalArgumentException("The trajectory has no chunk " + chunkIndex);
+        }
+
+        this.trajectoryId = trajectoryId & 0xFFFF;
+        this.chunkIndex = chunkIndex;
+        this.chunkCount = chunkCount;
+        this.firstSetpoint = chunkIndex * MAX_SETPOINTS;
+        this.setpointCount = Math.min(MAX_SETPOINTS, trajectory.size() - this.firstSetpoint);
+
+        int previousMs = this.firstSetpoint == 0 ? 0 : trajectory.getTimeMs(this.firstSetpoint - 1);
+
+        for (int i = 0; i < this.setpointCount; i++) {
+            int index = this.firstSetpoint + i;
+
+            this.gapsMs[i] = trajectory.getTimeMs(index) - previousMs;
+            this.leftMotorSpeeds[i] = trajectory.getLeftMotorSpeed(index);
+            this.rightMotorSpeeds[i] = trajectory.getRightMotorSpeed(index);
+            this.directions[i] = trajectory.getDirection(index);
+            previousMs = trajectory.getTimeMs(index);
+        }
+
+        return this;
+    }
+
+    /**
+     * This method writes the chunk into the buffer.
+     *
+     * @param buffer The buffer the chunk is written into.
+     * @return Nothing.
+     * @throws BufferOverflowException if there is not enough space left in the buffer.
+     */
+    void encode(ByteBuffer buffer) {
+        if (buffer.remaining() < size()) {
+            throw new BufferOverflowException();
+        }
+
+        int start = buffer.position();
+
+        buffer.put(MAGIC)
+                .put(VERSION)
+                .putShort((short) trajectoryId)
+                .put((byte) chunkIndex)
+                .put((byte) chunkCount)
+                .putShort((short) firstSetpoint)
+                .put((byte) setpointCount);
+
+        for (int i = 0; i < setpointCount; i++) {
+            buffer.putShort((short) gapsMs[i])
+                    .put((byte) leftMotorSpeeds[i])
+                    .put((byte) rightMotorSpeeds[i])
+                    .put((byte) directions[i]);
+        }
+
+        buffer.putInt((int) checksum(buffer, start, buffer.position() - start));
+    }
+
+    /**
+     * This method reads a chunk from the buffer, starting at the buffer's current position.
+     * The buffer's position is only advanced if the chunk was read.
+     *
+     * @param buffer The buffer the chunk is read from.
+     * @return True if a valid chunk with a matching checksum was read, false otherwise.
+     */
+    boolean decode(ByteBuffer buffer) {
+        int start = buffer.position();
+
+        if (buffer.remaining() < HEADER_SIZE + SETPOINT_SIZE + CHECKSUM_SIZE
+                || buffer.get(start) != MAGIC
+                || buffer.get(start + 1) != VERSION) {
+            return false;
+        }
+
+        int chunkIndex = buffer.get(start + 4) & 0xFF;
+        int chunkCount = buffer.get(start + 5) & 0xFF;
+        int setpointCount = buffer.get(start + 8) & 0xFF;
+        int length = HEADER_SIZE + setpointCount * SETPOINT_SIZE;
+
+        if (chunkCount < 1 || chunkCount > MAX_CHUNKS || chunkIndex >= chunkCount
+                || setpointCount < 1 || setpointCount > MAX_SETPOINTS
+                || buffer.remaining() < length + CHECKSUM_SIZE
+                || (buffer.getInt(start + length) & 0xFFFFFFFFL) != checksum(buffer, start, length)) {
+            return false;
+        }
+
+        this.trajectoryId = buffer.getShort(start + 2) & 0xFFFF;
+        this.chunkIndex = chunkIndex;
+        this.chunkCount = chunkCount;
+        this.firstSetpoint = buffer.getShort(start + 6) & 0xFFFF;
+        this.setpointCount = setpointCount;
+
+        for (int i = 0; i < setpointCount; i++) {
+            int offset = start + HEADER_SIZE + i * SETPOINT_SIZE;
+
+            this.gapsMs[i] = buffer.getShort(offset) & 0xFFFF;
+            this.leftMotorSpeeds[i] = buffer.get(offset + 2) & 0xFF;
+            this.rightMotorSpeeds[i] = buffer.get(offset + 3) & 0xFF;
+            this.directions[i] = buffer.get(offset + 4) & 0xFF;
+        }
+
+        buffer.position(start + length + CHECKSUM_SIZE);
+
+        return true;
+    }
+
+    /**
+     * This method returns the size of the chunk once encoded.
+     *
+     * @return Number of bytes.
+     */
+    int size() {
+        return HEADER_SIZE + setpointCount * SETPOINT_SIZE + CHECKSUM_SIZE;
+    }
+
+    /**
+     * This method computes the CRC-32 of a part of the buffer, without moving its position.
+     *
+     * @param buffer The buffer.
+     * @param start  The index of the first byte.
+     * @param length The number of bytes.
+     * @return The checksum, unsigned 32-bit.
+     */
+    private long checksum(ByteBuffer buffer, int start, int length) {
+        this.checksum.reset();
+
+        for (int i = start; i < start + length; i++) {
+            this.checksum.update(buffer.get(i));
+        }
+
+        return this.checksum.getValue();
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.iot_car_rc;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Represents the upload of a trajectory to a car, over an unconnected transport of its own,
+ * so the acknowledgements never reach the command transmitter's receiver.
+ * Every attempt sends the chunks the car has not acknowledged yet and waits for their acknowledgements,
+ * so a lossy link costs a few more datagrams, never a restart. See TrajectoryChunk for the wire format.
+ *
+ * <p>The uploader is used by a single thread and blocks it, it must not run on the main thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+class TrajectoryUploader {
+    private static final int MAX_PACKET_SIZE = 1472;
+
+    private final CommandTransport transport;
+    private final TrajectoryChunk chunk = new TrajectoryChunk();
+    private final TrajectoryAck ack = new TrajectoryAck();
+    private final ByteBuffer chunkBuffer = ByteBuffer.allocate(TrajectoryChunk.MAX_SIZE);
+    private final ByteBuffer ackBuffer = ByteBuffer.allocate(MAX_PACKET_SIZE);
+
+    private int sentCount;
+
+    /**
+     * A constructor for TrajectoryUploader
+     *
+     * @param transport The unconnected transport the chunks are sent and the acknowledgements received on.
+     * @return TrajectoryUploader instance.
+     */
+    TrajectoryUploader(CommandTransport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * This method uploads a trajectory and returns once the car has acknowledged every chunk or the attempts ran out.
+     *
+     * @param trajectory   The trajectory.
+     * @param trajectoryId The id of the upload, which tells its acknowledgements apart from those of earlier ones.
+     * @param car          The address of the car.
+     * @param timeoutMs    The longest time to wait for the acknowledgements of every attempt, in milliseconds.
+     * @param attempts     The number of attempts.
+     * @return True if the car has the whole trajectory, false otherwise.
+     * @throws IOException              if a chunk could not be sent or an acknowledgement received.
+     * @throws IllegalArgumentException if the trajectory has no setpoints.
+     */
+    boolean upload(Trajectory trajectory, int trajectoryId, InetSocketAddress car, long timeoutMs, int attempts)
+            throws IOException {
+        int chunkCount = TrajectoryChunk.chunkCount(trajectory);
+        int allChunks = (int) ((1L << chunkCount) - 1);
+        int received = 0;
+
+        trajectoryId &= 0xFFFF;
+        this.sentCount = 0;
+
+        for (int attempt = 0; attempt < attempts; attempt++) {
+            for (int index = 0; index < chunkCount; index++) {
+                if ((received & (1 << index)) == 0) {
+                    send(trajectoryId, trajectory, index, car);
+                }
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+            while (received != allChunks && receive(trajectoryId, car, deadline)) {
+                received |= this.ack.receivedChunks & allChunks;
+            }
+
+            if (received == allChunks) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * This method returns the number of chunks sent by the last upload, retransmissions included.
+     *
+     * @return Number of sent chunks.
+     */
+    int getSentCount() {
+        return this.sentCount;
+    }
+
+    /**
+     * This method sends a chunk.
+     *
+     * @param trajectoryId The id of the upload.
+     * @param trajectory   The trajectory.
+     * @param index        The index of the chunk.
+     * @param car          The address of the car.
+     * @return Nothing.
+     * @throws IOException if the chunk could not be sent.
+     */
+    private void send(int trajectoryId, Trajectory trajectory, int index, InetSocketAddress car) throws IOException {
+        this.chunkBuffer.clear();
+        this.chunk.set(trajectoryId, trajectory, index).encode(this.chunkBuffer);
+        this.chunkBuffer.flip();
+        this.sentCount++;
+
+        if (!this.transport.send(this.chunkBuffer, car)) {
+            Log.e("The chunk was dropped", "TRAJECTORY_ERROR:send");
+        }
+    }
+
+    /**
+     * This method waits for an acknowledgement of the upload, skipping any other packet.
+     *
+     * @param trajectoryId The id of the upload.
+     * @param car          The address of the car, the acknowledgement must come from it.
+     * @param deadline     The time after which it stops waiting, from System.nanoTime().
+     * @return True if an acknowledgement arrived in time, false otherwise.
+     * @throws IOException if an acknowledgement could not be received.
+     */
+    private boolean receive(int trajectoryId, InetSocketAddress car, long deadline) throws IOException {
+        while (true) {
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+
+            if (remainingMs <= 0) {
+                return false;
+            }
+
+            this.ackBuffer.clear();
+            SocketAddress sender = this.transport.receiveFrom(this.ackBuffer, remainingMs);
+
+            //  Nothing arrived, or the selector woke up without a packet
+            if (sender == null) {
+                continue;
+            }
+
+            this.ackBuffer.flip();
+
+            if (this.ack.decode(this.ackBuffer)
+                    && this.ack.trajectoryId == trajectoryId
+                    && car.equals(sender)) {
+                return true;
+            }
+        }
+    }
+}
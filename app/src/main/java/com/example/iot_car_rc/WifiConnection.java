@@ -0,0 +1,359 @@
+package com.example.iot_car_rc;
+
+/**
+ * Represents the connection to the car's Wi-Fi access point as a state machine.
+ * It is driven by Wi-Fi broadcasts and by timers instead of polling:
+ * <pre>
+ *     IDLE ---start---&gt; WAITING_FOR_WIFI ---Wi-Fi enabled---&gt; CONNECTING
+ *     CONNECTING ---network connected---&gt; CONNECTED
+ *     CONNECTING ---connect timeout---&gt; BACKING_OFF ---back-off elapsed---&gt; CONNECTING
+ *     CONNECTED ---network disconnected---&gt; CONNECTING
+ *     any ---Wi-Fi disabled---&gt; WAITING_FOR_WIFI
+ * </pre>
+ * The back-off doubles with every failed attempt, up to a maximum.
+ * The time from starting, or from losing the connection, until being connected is recorded.
+ *
+ * <p>All methods are called on a single thread, the one the scheduler runs its tasks on.
+ *
+ * @author Rafał Dąbrowski
+ */
+class WifiConnection {
+    static final long CONNECT_TIMEOUT_MS = 10_000;
+    static final long INITIAL_BACKOFF_MS = 1_000;
+    static final long MAX_BACKOFF_MS = 16_000;
+
+    /**
+     * Represents the state of the connection.
+     *
+     * @author Rafał Dąbrowski
+     */
+    enum State {
+        IDLE,
+        WAITING_FOR_WIFI,
+        CONNECTING,
+        BACKING_OFF,
+        CONNECTED
+    }
+
+    /**
+     * Interface for running delayed tasks, on Android backed by a Handler of the main thread.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Scheduler {
+        /**
+         * This method returns the current time of a monotonic clock.
+         *
+         * @return The current time in milliseconds.
+         */
+        long now();
+
+        /**
+         * This method runs the task after the delay.
+         *
+         * @param task    The task.
+         * @param delayMs The delay in milliseconds.
+         * @return Nothing.
+         */
+        void schedule(Runnable task, long delayMs);
+
+        /**
+         * This method cancels the task if it has not run yet.
+         *
+         * @param task The task.
+         * @return Nothing.
+         */
+        void cancel(Runnable task);
+    }
+
+    /**
+     * Interface for connection state changes callbacks.
+     *
+     * @author Rafał Dąbrowski
+     */
+    interface Listener {
+        /**
+         * This method handles a change of the connection state.
+         *
+         * @param state The new state.
+         * @return Nothing.
+         */
+        void onStateChanged(State state);
+    }
+
+    private final WifiController controller;
+    private final String ssid;
+    private final Scheduler scheduler;
+    private final Listener listener;
+
+    //  Created once, so they can be cancelled
+    private final Runnable connectTimeout = this::onConnectTimeout;
+    private final Runnable retry = this::connect;
+
+    private State state = State.IDLE;
+    private int networkId = WifiController.NO_NETWORK;
+    private int failedAttempts;
+    private long connectStartMs;
+
+    private final LatencyHistogram connectTimes = new LatencyHistogram();
+    private long attemptCount;
+    private long disconnectCount;
+    private long lastConnectTimeMs = -1;
+
+    /**
+     * A constructor for WifiConnection
+     *
+     * @param controller The Wi-Fi operations.
+     * @param ssid       The SSID of the car's access point.
+     * @param scheduler  The scheduler of the timers.
+     * @param listener   The listener of state changes.
+     * @return WifiConnection instance.
+     */
+    WifiConnection(WifiController controller, String ssid, Scheduler scheduler, Listener listener) {
+        this.controller = controller;
+        this.ssid = ssid;
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    /**
+     * This method starts connecting. It does nothing unless the connection is idle.
+     *
+     * @return Nothing.
+     */
+    void start() {
+        if (this.state != State.IDLE) {
+            return;
+        }
+
+        this.connectStartMs = this.scheduler.now();
+        this.failedAttempts = 0;
+
+        if (this.controller.isWifiEnabled()) {
+            connect();
+        } else {
+            setState(State.WAITING_FOR_WIFI);
+        }
+    }
+
+    /**
+     * This method stops connecting and cancels the timers. The network stays as it is.
+     *
+     * @return Nothing.
+     */
+    void stop() {
+        cancelTimers();
+        setState(State.IDLE);
+    }
+
+    /**
+     * This method handles Wi-Fi being enabled.
+     *
+     * @return Nothing.
+     */
+    void onWifiEnabled() {
+        if (this.state == State.WAITING_FOR_WIFI) {
+            connect();
+        }
+    }
+
+    /**
+     * This method handles Wi-Fi being disabled.
+     *
+     * @return Nothing.
+     */
+    void onWifiDisabled() {
+        if (this.state == State.IDLE || this.state == State.WAITING_FOR_WIFI) {
+            return;
+        }
+
+        if (this.state == State.CONNECTED) {
+            onConnectionLost();
+        }
+
+        cancelTimers();
+        setState(State.WAITING_FOR_WIFI);
+    }
+
+    /**
+     * This method handles a network being connected. Only the car's network completes the connection.
+     *
+     * @return Nothing.
+     */
+    void onNetworkConnected() {
+        if (this.state != State.CONNECTING && this.state != State.BACKING_OFF) {
+            return;
+        }
+
+        if (this.networkId == WifiController.NO_NETWORK
+                || this.controller.getConnectedNetworkId() != this.networkId) {
+            return;
+        }
+
+        cancelTimers();
+        this.failedAttempts = 0;
+        this.lastConnectTimeMs = this.scheduler.now() - this.connectStartMs;
+        this.connectTimes.record(this.lastConnectTimeMs);
+        setState(State.CONNECTED);
+    }
+
+    /**
+     * This method handles the network being disconnected. A lost connection is retried at once,
+     * disconnections while connecting are part of connecting and are left to the timeout.
+     *
+     * @return Nothing.
+     */
+    void onNetworkDisconnected() {
+        if (this.state != State.CONNECTED) {
+            return;
+        }
+
+        onConnectionLost();
+        connect();
+    }
+
+    /**
+     * This method returns the state of the connection.
+     *
+     * @return The state.
+     */
+    State getState() {
+        return this.state;
+    }
+
+    /**
+     * This method returns the histogram of the times it took to connect, in milliseconds.
+     *
+     * @return The connect time histogram.
+     */
+    LatencyHistogram getConnectTimes() {
+        return this.connectTimes;
+    }
+
+    /**
+     * This method returns the time the last connection took.
+     *
+     * @return The connect time in milliseconds, -1 if never connected.
+     */
+    long getLastConnectTimeMs() {
+        return this.lastConnectTimeMs;
+    }
+
+    /**
+     * This method returns the number of connection attempts.
+     *
+     * @return Number of attempts.
+     */
+    long getAttemptCount() {
+        return this.attemptCount;
+    }
+
+    /**
+     * This method returns the number of times an established connection was lost.
+     *
+     * @return Number of disconnections.
+     */
+    long getDisconnectCount() {
+        return this.disconnectCount;
+    }
+
+    /**
+     * This method registers the connection metrics.
+     *
+     * @param metrics The registry the metrics are registered in.
+     * @return Nothing.
+     */
+    void registerMetrics(MetricsRegistry metrics) {
+        metrics.register("wifi.connect_ms", this.connectTimes);
+        metrics.gauge("wifi.attempts", this::getAttemptCount);
+        metrics.gauge("wifi.disconnects", this::getDisconnectCount);
+        metrics.gauge("wifi.state", () -> this.state.ordinal());
+    }
+
+    /**
+     * This method makes a connection attempt and arms the connect timeout.
+     *
+     * @return Nothing.
+     */
+    private void connect() {
+        if (!this.controller.isWifiEnabled()) {
+            setState(State.WAITING_FOR_WIFI);
+            return;
+        }
+
+        this.attemptCount++;
+
+        if (this.networkId == WifiController.NO_NETWORK) {
+            this.networkId = this.controller.addNetwork(this.ssid);
+        }
+
+        this.controller.connect(this.networkId);
+        setState(State.CONNECTING);
+        this.scheduler.schedule(this.connectTimeout, CONNECT_TIMEOUT_MS);
+
+        //  The broadcast does not come again if the network is already connected
+        onNetworkConnected();
+    }
+
+    /**
+     * This method handles an attempt which did not connect in time. It schedules the next attempt.
+     *
+     * @return Nothing.
+     */
+    private void onConnectTimeout() {
+        if (this.state != State.CONNECTING) {
+            return;
+        }
+
+        this.failedAttempts++;
+        setState(State.BACKING_OFF);
+        this.scheduler.schedule(this.retry, getBackoffMs(this.failedAttempts));
+    }
+
+    /**
+     * This method returns the back-off after the failed attempts.
+     *
+     * @param failedAttempts The number of failed attempts in a row, at least 1.
+     * @return The back-off in milliseconds.
+     */
+    static long getBackoffMs(int failedAttempts) {
+        int doublings = Math.min(Math.max(failedAttempts - 1, 0), 30);
+
+        return Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << doublings);
+    }
+
+    /**
+     * This method counts a lost connection and starts timing the next one.
+     *
+     * @return Nothing.
+     */
+    private void onConnectionLost() {
+        this.disconnectCount++;
+        this.connectStartMs = this.scheduler.now();
+    }
+
+    /**
+     * This method cancels the connect timeout and the pending retry.
+     *
+     * @return Nothing.
+     */
+    private void cancelTimers() {
+        this.scheduler.cancel(this.connectTimeout);
+        this.scheduler.cancel(this.retry);
+    }
+
+    /**
+     * This method sets the state and notifies the listener if it has changed.
+     *
+     * @param state The new state.
+     * @return Nothing.
+     */
+    private void setState(State state) {
+        if (this.state == state) {
+            return;
+        }
+
+        this.state = state;
+        this.listener.onStateChanged(state);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.iot_car_rc;
+
+/**
+ * Interface for the Wi-Fi operations the connection needs, so the connection
+ * can be driven by a fake in unit tests instead of the WifiManager.
+ *
+ * @author Rafał Dąbrowski
+ */
+interface WifiController {
+    //  Returned for a network which could not be added, or when no network is connected
+    int NO_NETWORK = -1;
+
+    /**
+     * This method checks if Wi-Fi is enabled.
+     *
+     * @return True if Wi-Fi is enabled, false otherwise.
+     */
+    boolean isWifiEnabled();
+
+    /**
+     * This method adds an open network to the configured networks.
+     *
+     * @param ssid The SSID of the network.
+     * @return The ID of the network, or NO_NETWORK if it could not be added.
+     */
+    int addNetwork(String ssid);
+
+    /**
+     * This method enables the network, disabling all others, and asks to reconnect.
+     *
+     * @param networkId The ID of the network.
+     * @return True if the request was accepted, false otherwise.
+     */
+    boolean connect(int networkId);
+
+    /**
+     * This method returns the ID of the connected network.
+     *
+     * @return The ID of the network, or NO_NETWORK if none is connected.
+     */
+    int getConnectedNetworkId();
+}
@@ -0,0 +1,253 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the autonomous driving algorithms on synthetic sensor traces,
+ * and of the engine's budget, fallback and stale telemetry handling.
+ */
+public class AutonomousEngineTest {
+    private static final int TICK_MS = 1000 / AutonomousEngine.TICK_RATE;
+    private static final int BACKWARD = DrivingDirection.BACKWARD.getDrivingDirection();
+
+    @Test
+    public void wallAhead_everyAlgorithmTurnsAwayBeforeIt() {
+        for (DrivingAlgorithm drivingAlgorithm : DrivingAlgorithm.values()) {
+            SensorTrace trace = new SensorTrace(1, 3_000, 2_500).place(0, 500, 0);
+            AutonomousEngine engine = engine(trace, drivingAlgorithm);
+
+            trace.run(engine, 6_000, TICK_MS);
+
+            assertFalse(drivingAlgorithm.name(), trace.hasCollided());
+            assertTrue(drivingAlgorithm.name(), trace.getDistanceMm() > 2_500);
+            assertTrue(drivingAlgorithm.name(), Math.abs(trace.getHeadingDegrees()) > 45);
+            assertEquals(drivingAlgorithm.getDrivingAlgorithm(), trace.getDrivingAlgorithm());
+        }
+    }
+
+    @Test
+    public void narrowCorridor_isFollowedWithoutTouchingTheWalls() {
+        for (DrivingAlgorithm drivingAlgorithm : new DrivingAlgorithm[]{
+                DrivingAlgorithm.ADVANCED, DrivingAlgorithm.COMPLEX}) {
+            //  Close to the left wall and heading into it
+            SensorTrace trace = new SensorTrace(2, 800, 50_000).place(-200, 500, -15);
+            AutonomousEngine engine = engine(trace, drivingAlgorithm);
+
+            trace.run(engine, 10_000, TICK_MS);
+
+            assertFalse(drivingAlgorithm.name(), trace.hasCollided());
+            assertTrue(drivingAlgorithm.name(), trace.getY() > 5_000);
+        }
+    }
+
+    @Test
+    public void noisyEchoes_areFilteredByTheComplexAlgorithm() {
+        SensorTrace trace = new SensorTrace(3, 3_000, 3_000).place(0, 500, 0).noise(30, 0.15);
+        AutonomousEngine engine = engine(trace, DrivingAlgorithm.COMPLEX);
+
+        trace.run(engine, 3_000, TICK_MS);
+
+        assertFalse(trace.hasCollided());
+        assertTrue(trace.getMinClearance() > SensorTrace.RADIUS_MM + 50);
+    }
+
+    @Test
+    public void blockedForTooLong_complexAlgorithmReversesAndPivots() {
+        SensorTrace trace = new SensorTrace(4, 1, 1);
+        AutonomousEngine engine = engine(trace, DrivingAlgorithm.COMPLEX);
+        TelemetryFrame frame = new TelemetryFrame();
+        long start = System.nanoTime();
+        int reversedAtMs = -1;
+        int pivotedAtMs = -1;
+
+        //  A corner, with more room on the right
+        for (int timeMs = 0; timeMs < 3_000 && pivotedAtMs < 0; timeMs += TICK_MS) {
+            frame.sequence = timeMs;
+            frame.carTimestamp = timeMs;
+            frame.setSensors(200, 250, 900, 7400);
+            engine.getTelemetry().offer(frame, start + ms(timeMs));
+            assertTrue(engine.tick(start + ms(timeMs)));
+
+            if (reversedAtMs < 0 && trace.getDirection() == BACKWARD) {
+                reversedAtMs = timeMs;
+            } else if (reversedAtMs >= 0 && trace.getDirection() != BACKWARD) {
+                pivotedAtMs = timeMs;
+                assertTrue(trace.getLeftMotorSpeed() > trace.getRightMotorSpeed());
+            }
+        }
+
+        assertEquals(ComplexAutonomy.STUCK_TIME_MS, reversedAtMs);
+        assertEquals(reversedAtMs + ComplexAutonomy.REVERSE_TIME_MS, pivotedAtMs);
+    }
+
+    @Test
+    public void staleTelemetry_stopsTheMotors() {
+        SensorTrace trace = new SensorTrace(5, 3_000, 30_000).place(0, 500, 0);
+        AutonomousEngine engine = engine(trace, DrivingAlgorithm.ADVANCED);
+        long start = System.nanoTime();
+
+        //  Nothing received yet
+        assertFalse(engine.tick(start));
+        assertEquals(0, trace.getLeftMotorSpeed());
+
+        engine.getTelemetry().offer(trace.sample(0, new TelemetryFrame()), start);
+        assertTrue(engine.tick(start));
+        assertTrue(trace.getLeftMotorSpeed() > 0);
+
+        //  The same frame is acted on until it gets too old
+        assertTrue(engine.tick(start + AutonomousEngine.STALE_TELEMETRY_NANOS));
+        assertFalse(engine.tick(start + AutonomousEngine.STALE_TELEMETRY_NANOS + 1));
+        assertEquals(0, trace.getLeftMotorSpeed());
+        assertEquals(0, trace.getRightMotorSpeed());
+        assertEquals(2, engine.getStaleCount());
+    }
+
+    @Test
+    public void telemetryStaleForLong_handsTheDrivingBackToTheCar() {
+        SensorTrace trace = new SensorTrace(10, 3_000, 30_000).place(0, 500, 0);
+        AutonomousEngine engine = engine(trace, DrivingAlgorithm.COMPLEX);
+        long start = System.nanoTime();
+
+        engine.getTelemetry().offer(trace.sample(0, new TelemetryFrame()), start);
+        assertTrue(engine.tick(start));
+
+        //  Zeros while the telemetry may come back, then the car drives on its own
+        long stale = start + AutonomousEngine.STALE_TELEMETRY_NANOS + 1;
+        assertFalse(engine.tick(stale));
+        assertEquals(0, trace.getLeftMotorSpeed());
+        assertEquals(0, trace.getReleaseCount());
+        assertFalse(engine.tick(stale + AutonomousEngine.RELEASE_NANOS));
+        assertEquals(1, trace.getReleaseCount());
+        assertFalse(engine.tick(stale + AutonomousEngine.RELEASE_NANOS + ms(TICK_MS)));
+        assertEquals(1, trace.getReleaseCount());
+        assertEquals(1, engine.getReleaseCount());
+
+        //  Fresh telemetry takes the driving over again
+        long fresh = stale + AutonomousEngine.RELEASE_NANOS + ms(2 * TICK_MS);
+        engine.getTelemetry().offer(trace.sample(0, new TelemetryFrame()), fresh);
+        assertTrue(engine.tick(fresh));
+        assertTrue(trace.getLeftMotorSpeed() > 0);
+    }
+
+    @Test
+    public void overrunningAlgorithms_fallBackToTheSimplestOne() {
+        SensorTrace trace = new SensorTrace(6, 3_000, 30_000).place(0, 500, 0);
+        AutonomousEngine engine = new AutonomousEngine(trace, new MetricsRegistry(), ms(1));
+        SlowAlgorithm complex = new SlowAlgorithm(new ComplexAutonomy(), ms(3));
+        SlowAlgorithm advanced = new SlowAlgorithm(new AdvancedAutonomy(), ms(3));
+
+        engine.setAlgorithm(DrivingAlgorithm.COMPLEX, complex);
+        engine.setAlgorithm(DrivingAlgorithm.ADVANCED, advanced);
+        engine.select(DrivingAlgorithm.COMPLEX);
+        trace.run(engine, 3 * TICK_MS, TICK_MS);
+
+        //  The late decisions were still sent, each tick by one algorithm lower
+        assertEquals(1, complex.driveCount);
+        assertEquals(1, advanced.driveCount);
+        assertEquals(DrivingAlgorithm.SIMPLE.getDrivingAlgorithm(), engine.getEffectiveAlgorithm());
+        assertEquals(DrivingAlgorithm.SIMPLE.getDrivingAlgorithm(), trace.getDrivingAlgorithm());
+        assertEquals(2, engine.getFallbackCount());
+        assertTrue(engine.getOverrunCount() >= 2);
+        assertTrue(engine.getTickTimes().getMax() >= ms(3));
+    }
+
+    @Test
+    public void cleanTicks_recoverTheSelectedAlgorithm() {
+        SensorTrace trace = new SensorTrace(7, 3_000, 1_000_000).place(0, 500, 0);
+        //  A generous budget, so only the slow algorithm overruns it
+        AutonomousEngine engine = new AutonomousEngine(trace, new MetricsRegistry(), ms(50));
+        SlowAlgorithm complex = new SlowAlgorithm(new ComplexAutonomy(), ms(60));
+
+        engine.setAlgorithm(DrivingAlgorithm.COMPLEX, complex);
+        engine.select(DrivingAlgorithm.COMPLEX);
+        trace.run(engine, TICK_MS, TICK_MS);
+        assertEquals(DrivingAlgorithm.ADVANCED.getDrivingAlgorithm(), engine.getEffectiveAlgorithm());
+
+        complex.delayNanos = 0;
+        trace.run(engine, (AutonomousEngine.RECOVERY_TICKS - 1) * TICK_MS, TICK_MS);
+        assertEquals(DrivingAlgorithm.ADVANCED.getDrivingAlgorithm(), engine.getEffectiveAlgorithm());
+
+        trace.run(engine, TICK_MS, TICK_MS);
+        assertEquals(DrivingAlgorithm.COMPLEX.getDrivingAlgorithm(), engine.getEffectiveAlgorithm());
+        assertEquals(1, engine.getRecoveryCount());
+        //  Once when selected, once when recovered
+        assertEquals(2, complex.resetCount);
+
+        //  A lower selection takes effect at once
+        engine.select(DrivingAlgorithm.SIMPLE);
+        trace.run(engine, TICK_MS, TICK_MS);
+        assertEquals(DrivingAlgorithm.SIMPLE.getDrivingAlgorithm(), trace.getDrivingAlgorithm());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void budget_mustBePositive() {
+        new AutonomousEngine(new SensorTrace(8, 1, 1), new MetricsRegistry(), 0);
+    }
+
+    @Test
+    public void unregisteredEngine_leavesOnlyItsCounters() {
+        MetricsRegistry metrics = new MetricsRegistry();
+        AutonomousEngine engine = new AutonomousEngine(new SensorTrace(9, 1, 1), metrics, ms(1));
+        int size = metrics.size();
+
+        engine.unregisterMetrics(metrics);
+
+        //  Only the gauge reads the engine
+        assertEquals(size - 1, metrics.size());
+
+        for (int i = 0; i < metrics.size(); i++) {
+            assertFalse(metrics.getMetric(i) instanceof MetricsRegistry.Gauge);
+        }
+    }
+
+    private static AutonomousEngine engine(SensorTrace trace, DrivingAlgorithm drivingAlgorithm) {
+        //  No budget to speak of, the algorithms are compared on their decisions only
+        AutonomousEngine engine = new AutonomousEngine(trace, new MetricsRegistry(), TimeUnit.SECONDS.toNanos(1));
+        engine.select(drivingAlgorithm);
+
+        return engine;
+    }
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * An algorithm which spins for a while before deciding, like a heavy one on a slow phone.
+     */
+    private static class SlowAlgorithm implements AutonomousAlgorithm {
+        private final AutonomousAlgorithm algorithm;
+        volatile long delayNanos;
+        int driveCount;
+        int resetCount;
+
+        SlowAlgorithm(AutonomousAlgorithm algorithm, long delayNanos) {
+            this.algorithm = algorithm;
+            this.delayNanos = delayNanos;
+        }
+
+        @Override
+        public void reset() {
+            resetCount++;
+            algorithm.reset();
+        }
+
+        @Override
+        public void drive(TelemetryFrame telemetry, DriveMixer mixer) {
+            long end = System.nanoTime() + delayNanos;
+
+            while (System.nanoTime() < end) {
+                //  Busy, as the computation would be
+            }
+
+            driveCount++;
+            algorithm.drive(telemetry, mixer);
+        }
+    }
+}
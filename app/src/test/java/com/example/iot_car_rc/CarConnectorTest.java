@@ -0,0 +1,150 @@
+package com.example.iot_car_rc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the discovery, the capability handshake and the transmitter configuration, against simulated cars.
+ */
+public class CarConnectorTest {
+    private CarSimulator simulator;
+    private CommandTransmitter transmitter;
+    private MetricsRegistry metrics;
+    private CarConnector connector;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new CarSimulator(0);
+        transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+        metrics = new MetricsRegistry();
+        connector = new CarConnector(simulator.getAddress(), simulator.getAddress(), metrics, null);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transmitter.close();
+        simulator.close();
+    }
+
+    @Test
+    public void message_survivesTheRoundTrip() {
+        DiscoveryMessage message = new DiscoveryMessage();
+        ByteBuffer buffer = ByteBuffer.allocate(DiscoveryMessage.CAPABILITIES_SIZE);
+
+        message.set(DiscoveryMessage.CAPABILITIES, 0xFEEDBEEFL)
+                .set(new CarCapabilities(3, 400, 0b101, CarCapabilities.TELEMETRY))
+                .encode(buffer);
+        buffer.flip();
+
+        DiscoveryMessage decoded = new DiscoveryMessage();
+        assertTrue(decoded.decode(buffer));
+        assertEquals(DiscoveryMessage.CAPABILITIES_SIZE, buffer.position());
+        assertEquals(0xFEEDBEEFL, decoded.nonce);
+
+        CarCapabilities capabilities = decoded.toCapabilities();
+        assertEquals(400, capabilities.getMaxCommandRate());
+        assertTrue(capabilities.supports(DrivingAlgorithm.SIMPLE));
+        assertFalse(capabilities.supports(DrivingAlgorithm.ADVANCED));
+        assertTrue(capabilities.supportsTelemetry());
+        assertFalse(capabilities.supportsAcknowledgements());
+
+        //  A truncated message is rejected without moving the buffer
+        buffer.position(0).limit(DiscoveryMessage.CAPABILITIES_SIZE - 1);
+        assertFalse(decoded.decode(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void discovery_findsEveryCarInOneRoundTrip() throws Exception {
+        CarSimulator other = new CarSimulator(0);
+
+        try (CommandTransport transport = new DatagramChannelTransport(true)) {
+            CarDiscovery discovery = new CarDiscovery(transport);
+            List<InetSocketAddress> cars = new ArrayList<>();
+
+            //  Loopback has no broadcast, one request is sent to each car instead
+            assertEquals(1, discovery.discover(simulator.getAddress(), 1_000, 1, cars));
+            assertEquals(1, discovery.discover(other.getAddress(), 1_000, 1, cars));
+            assertEquals(2, cars.size());
+            assertEquals(simulator.getPort(), cars.get(0).getPort());
+            assertEquals(other.getPort(), cars.get(1).getPort());
+            assertEquals(1, other.getDiscoveryCount());
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void handshake_configuresTheTransmitter() throws Exception {
+        simulator.setCapabilities(new CarCapabilities(
+                CommandFrame.VERSION_3, 30, 0b011, CarCapabilities.ACKNOWLEDGEMENTS
+        ));
+
+        CarCapabilities capabilities = connector.connect(transmitter);
+
+        assertSame(capabilities, transmitter.getCapabilities());
+        assertEquals(30, capabilities.getMaxCommandRate());
+        assertTrue(capabilities.supportsRedundancy());
+        assertFalse(capabilities.supports(DrivingAlgorithm.COMPLEX));
+        assertTrue(transmitter.getCommandScheduler().getRate() <= 30);
+        assertEquals(2, simulator.getDiscoveryCount());
+
+        transmitter.sendCommand(120, 120, 1, 0, 0);
+        assertTrue(simulator.awaitReceived(1, 2_000));
+        assertEquals(0, simulator.getJsonCount());
+        //  The handshake is not counted as commands
+        assertEquals(0, simulator.getMalformedCount());
+
+        assertEquals(1, metrics.counter("connect.discovered").get());
+        assertEquals(1, connector.getConnectTimes().getCount());
+    }
+
+    @Test
+    public void jsonOnlyCar_isSentJsonAtItsRate() throws Exception {
+        simulator.setCapabilities(new CarCapabilities(0, 20, 0b001, 0));
+
+        connector.connect(transmitter);
+        transmitter.sendCommand(120, 120, 1, 0, 0);
+
+        assertTrue(simulator.awaitReceived(1, 2_000));
+        assertEquals(0, simulator.getBinaryCount());
+        assertEquals(20, transmitter.getCommandScheduler().getRate());
+    }
+
+    @Test
+    public void legacyFirmware_fallsBackToTheConfiguredAddress() throws Exception {
+        simulator.setCapabilities(null);
+
+        CarCapabilities capabilities = connector.connect(transmitter);
+
+        assertSame(CarCapabilities.LEGACY, capabilities);
+        assertEquals(0, simulator.getDiscoveryCount());
+        assertEquals(1, metrics.counter("connect.legacy").get());
+        assertEquals(0, metrics.counter("connect.discovered").get());
+
+        transmitter.sendCommand(120, 120, 1, 0, 0);
+        assertTrue(simulator.awaitReceived(1, 2_000));
+        assertEquals(0, simulator.getBinaryCount());
+    }
+
+    @Test
+    public void silentCar_isSentJsonWithoutAcknowledgements() throws Exception {
+        simulator.setCapabilities(null);
+
+        connector.connect(transmitter);
+
+        //  The original firmware neither reads binary frames nor acknowledges or streams anything
+        assertEquals(PacketFormat.JSON, transmitter.getPacketFormat());
+        assertFalse(transmitter.getCapabilities().supportsAcknowledgements());
+        assertFalse(transmitter.getCapabilities().supportsTelemetry());
+        assertEquals(CarCapabilities.LEGACY.getMaxCommandRate(), transmitter.getCommandScheduler().getRate());
+    }
+}
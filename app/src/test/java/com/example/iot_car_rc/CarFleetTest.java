@@ -0,0 +1,144 @@
+package com.example.iot_car_rc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the car fleet against a set of local car simulators.
+ */
+public class CarFleetTest {
+    private static final int CARS = 24;
+    private static final long TIMEOUT_MS = 5_000;
+
+    private final List<CarSimulator> simulators = new ArrayList<>();
+    private CarFleet fleet;
+
+    @Before
+    public void setUp() throws IOException {
+        fleet = new CarFleet(new DatagramChannelTransport(true), 50);
+
+        for (int i = 0; i < CARS; i++) {
+            simulators.add(new CarSimulator(0));
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        fleet.close();
+
+        for (CarSimulator simulator : simulators) {
+            simulator.close();
+        }
+    }
+
+    @Test
+    public void everyCar_receivesItsOwnCommand() throws Exception {
+        int[] ids = addCars(CARS);
+        fleet.start();
+
+        for (int i = 0; i < CARS; i++) {
+            fleet.sendCommand(ids[i], i * 10, 255 - i * 10, i % 2, 0, i % 3);
+        }
+
+        for (int i = 0; i < CARS; i++) {
+            CarSimulator simulator = simulators.get(i);
+            int expected = i * 10;
+
+            //  The first car is expected to stop its left motor, which it does before any command
+            assertTrue(CarSimulator.await(() -> simulator.getLeftMotorSpeed() == expected
+                    && simulator.getRightMotorSpeed() == 255 - expected, TIMEOUT_MS));
+            assertEquals(i % 2, simulator.getDirection());
+            assertEquals(i % 3, simulator.getDrivingAlgorithm());
+        }
+    }
+
+    @Test
+    public void everyCar_keepsItsOwnStatistics() throws Exception {
+        int[] ids = addCars(CARS);
+        fleet.start();
+
+        //  Only the first half of the fleet is driven, the others must stay silent
+        for (int i = 0; i < CARS / 2; i++) {
+            fleet.sendCommand(ids[i], 100, 100, 1, 0, 0);
+        }
+
+        for (int i = 0; i < CARS / 2; i++) {
+            LinkStatistics statistics = fleet.getCar(ids[i]).getLinkStatistics();
+
+            assertTrue(CarSimulator.await(() -> statistics.getAcknowledgedCount() > 0, TIMEOUT_MS));
+            assertEquals(0, statistics.getUnexpectedCount());
+            assertTrue(fleet.getCar(ids[i]).getSentCount() > 0);
+        }
+
+        for (int i = CARS / 2; i < CARS; i++) {
+            assertEquals(0, fleet.getCar(ids[i]).getSentCount());
+            assertEquals(0, simulators.get(i).getReceivedCount());
+        }
+    }
+
+    @Test
+    public void unicastGroup_setsEveryMember() throws Exception {
+        int[] ids = addCars(8);
+        int group = fleet.addGroup(ids);
+        fleet.start();
+
+        fleet.sendCommand(group, 200, 150, 1, 0, 2);
+
+        for (int i = 0; i < 8; i++) {
+            CarSimulator simulator = simulators.get(i);
+
+            assertTrue(CarSimulator.await(() -> simulator.getLeftMotorSpeed() == 200, TIMEOUT_MS));
+            assertEquals(150, simulator.getRightMotorSpeed());
+        }
+
+        assertTrue(fleet.getCar(group).isGroup());
+        assertEquals(0, fleet.getCar(group).getSentCount());
+    }
+
+    @Test
+    public void addressedGroup_sendsOneFrame() throws Exception {
+        addCars(2);
+        CarSimulator groupListener = simulators.get(2);
+        int group = fleet.addGroup(groupListener.getAddress());
+        fleet.start();
+
+        fleet.sendCommand(group, 180, 180, 1, 0, 0);
+
+        assertTrue(CarSimulator.await(() -> groupListener.getLeftMotorSpeed() == 180, TIMEOUT_MS));
+        assertEquals(0, simulators.get(0).getReceivedCount());
+        assertEquals(0, simulators.get(1).getReceivedCount());
+
+        //  Acknowledgements of group frames are not attributed to a car
+        assertEquals(0, fleet.getCar(group).getLinkStatistics().getSentCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addCar_twice_fails() throws IOException {
+        fleet.addCar(simulators.get(0).getAddress());
+        fleet.addCar(simulators.get(0).getAddress());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addGroup_ofGroup_fails() throws IOException {
+        int[] ids = addCars(2);
+        int group = fleet.addGroup(ids);
+        fleet.addGroup(ids[0], group);
+    }
+
+    private int[] addCars(int count) throws IOException {
+        int[] ids = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            ids[i] = fleet.addCar(simulators.get(i).getAddress());
+        }
+
+        return ids;
+    }
+}
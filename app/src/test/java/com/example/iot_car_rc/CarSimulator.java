@@ -0,0 +1,953 @@
+package com.example.iot_car_rc;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Represents a headless stand-in for the ESP8266 firmware of the remote car.
+ * It listens for command packets on a local UDP port, decodes both the JSON and the binary
+ * formats, and keeps the motor state of the car. For every packet it records the arrival time
+ * and the inter-arrival jitter, and, for packets carrying a sequence number, reordering and drops.
+ * Sequenced binary frames are acknowledged like the firmware does, so it doubles as the UDP echo
+ * the transmitter measures round-trip times and loss against.
+ * Telemetry frames can be sent back to whoever sent the last command.
+ * Commands of lost packets which a later redundant frame repeats are counted as recovered.
+ * Discovery and capability requests are answered like the firmware does, with the capabilities set,
+ * or ignored like older firmware, and are left out of the statistics.
+ * Uploaded trajectories are reassembled and acknowledged, and run on the simulator's own clock
+ * on the first command in the TRAJECTORY driving mode, and the run can be verified against the trajectory,
+ * setpoint by setpoint, for content and timing. Trajectory chunks are left out of the statistics as well.
+ * Loss, in bursts or not, and delay can be injected on the receiving side
+ * to benchmark the transmitter end to end.
+ *
+ * <p>Run {@link #main(String[])} to use it from the command line.
+ */
+class CarSimulator implements Closeable {
+    private static final int MAX_PACKET_SIZE = 1472;
+    private static final int MAX_RECORDED_ARRIVALS = 1 << 16;
+
+    private final DatagramChannel channel;
+    private final Thread receiver;
+    private final ScheduledExecutorService delayer = Executors.newSingleThreadScheduledExecutor();
+    private final Random random = new Random(42);
+    private final CommandFrame frame = new CommandFrame();
+    private final CommandAck ack = new CommandAck();
+    private final ByteBuffer ackBuffer = ByteBuffer.allocate(CommandAck.SIZE);
+    private final ByteBuffer telemetryBuffer = ByteBuffer.allocate(TelemetryFrame.SIZE);
+    private final DiscoveryMessage discoveryMessage = new DiscoveryMessage();
+    private final ByteBuffer discoveryBuffer = ByteBuffer.allocate(DiscoveryMessage.CAPABILITIES_SIZE);
+    private final TrajectoryChunk trajectoryChunk = new TrajectoryChunk();
+    private final TrajectoryAck trajectoryAck = new TrajectoryAck();
+    private final ByteBuffer trajectoryAckBuffer = ByteBuffer.allocate(TrajectoryAck.SIZE);
+    private volatile SocketAddress lastSender;
+    //  The error which stopped the receiver thread, it is thrown by close()
+    private volatile IOException failure;
+
+    private volatile double lossRate;
+    private volatile int maxLossBurst = 1;
+    private volatile long minDelayMs;
+    private volatile long maxDelayMs;
+    private volatile boolean ackEnabled = true;
+    private volatile CarCapabilities capabilities = new CarCapabilities(
+            CommandFrame.VERSION_3, 50, 0b111,
+            CarCapabilities.ACKNOWLEDGEMENTS | CarCapabilities.TELEMETRY | CarCapabilities.TRAJECTORIES
+    );
+
+    //  The state of the car, as set by the last command
+    private volatile int leftMotorSpeed;
+    private volatile int rightMotorSpeed;
+    private volatile int direction;
+    private volatile int drivingMode;
+    private volatile int drivingAlgorithm;
+
+    //  Statistics, written under the lock of this simulator
+    private final long[] arrivalNanos = new long[MAX_RECORDED_ARRIVALS];
+    private final LatencyHistogram interArrival = new LatencyHistogram();
+    private long receivedCount;
+    private long injectedLossCount;
+    private long malformedCount;
+    private long jsonCount;
+    private long binaryCount;
+    private long lastArrivalNanos;
+    private long lastInterArrivalNanos = -1;
+    private double jitterNanos;
+    private long highestSequence = -1;
+    private long sequencedCount;
+    private long reorderedCount;
+    private long duplicateCount;
+    private long recoveredCount;
+    private long discoveryCount;
+    private final BitSet seenSequences = new BitSet();
+
+    //  The uploaded trajectory and its run, written under the lock of this simulator
+    private final int[] trajectoryTimesMs = new int[Trajectory.MAX_SETPOINTS];
+    private final int[] trajectoryLeftMotorSpeeds = new int[Trajectory.MAX_SETPOINTS];
+    private final int[] trajectoryRightMotorSpeeds = new int[Trajectory.MAX_SETPOINTS];
+    private final int[] trajectoryDirections = new int[Trajectory.MAX_SETPOINTS];
+    private final long[] trajectoryRunNanos = new long[Trajectory.MAX_SETPOINTS];
+    private final LatencyHistogram trajectoryDeviation = new LatencyHistogram();
+    private int trajectoryId = -1;
+    private int trajectoryChunkCount;
+    private int receivedChunks;
+    private int trajectorySize;
+    private int trajectoryGeneration;
+    private boolean trajectoryStarted;
+    private boolean trajectoryRunning;
+    private long trajectoryStartNanos;
+    private int trajectoryRunCount;
+
+    /**
+     * A constructor for CarSimulator. It binds the loopback interface and starts receiving.
+     *
+     * @param port The local port, 0 picks a free one.
+     * @return CarSimulator instance.
+     * @throws IOException if the port could not be bound.
+     */
+    CarSimulator(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * A constructor for CarSimulator. It binds the address and starts receiving.
+     *
+     * @param address The local address to listen on.
+     * @return CarSimulator instance.
+     * @throws IOException if the address could not be bound.
+     */
+    CarSimulator(InetSocketAddress address) throws IOException {
+        this.channel = DatagramChannel.open();
+        //  Keeps bursts from overflowing the socket, only injected loss should drop packets
+        this.channel.setOption(StandardSocketOptions.SO_RCVBUF, 1 << 20);
+        this.channel.bind(address);
+        this.receiver = new Thread(this::receive, "CarSimulator");
+        this.receiver.setDaemon(true);
+        this.receiver.start();
+    }
+
+    /**
+     * This method returns the port the simulator listens on.
+     *
+     * @return The local port.
+     * @throws IOException if the channel is closed.
+     */
+    int getPort() throws IOException {
+        return ((InetSocketAddress) this.channel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * This method returns the loopback address the simulator listens on.
+     *
+     * @return The local address.
+     * @throws IOException if the channel is closed.
+     */
+    InetSocketAddress getAddress() throws IOException {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), getPort());
+    }
+
+    /**
+     * This method sets the fraction of packets dropped on arrival.
+     *
+     * @param lossRate The loss rate, ranges from <0, 1>.
+     * @return Nothing.
+     */
+    void setLossRate(double lossRate) {
+        this.lossRate = lossRate;
+    }
+
+    /**
+     * This method sets the longest burst of packets dropped together.
+     * Every loss drops a burst of one up to this many packets, so the loss rate
+     * becomes the rate at which bursts start, like on a congested soft access point.
+     *
+     * @param maxLossBurst The longest burst, 1 drops single packets, which is the default.
+     * @return Nothing.
+     */
+    void setMaxLossBurst(int maxLossBurst) {
+        this.maxLossBurst = Math.max(1, maxLossBurst);
+    }
+
+    /**
+     * This method sets the range of the delay added to every packet which is not dropped.
+     * Packets delayed by different amounts may be processed out of order.
+     *
+     * @param minDelayMs The smallest delay in milliseconds.
+     * @param maxDelayMs The largest delay in milliseconds.
+     * @return Nothing.
+     */
+    void setDelay(long minDelayMs, long maxDelayMs) {
+        this.minDelayMs = minDelayMs;
+        this.maxDelayMs = Math.max(minDelayMs, maxDelayMs);
+    }
+
+    /**
+     * This method sets if sequenced binary frames are acknowledged, they are by default.
+     *
+     * @param ackEnabled True to send acknowledgements, false to stay silent like older firmware.
+     * @return Nothing.
+     */
+    void setAckEnabled(boolean ackEnabled) {
+        this.ackEnabled = ackEnabled;
+    }
+
+    /**
+     * This method sets the capabilities reported in the handshake.
+     * By default the simulator understands redundant frames, takes 50 commands per second,
+     * implements every algorithm, acknowledges commands, sends telemetry and runs trajectories.
+     *
+     * @param capabilities The capabilities, null to ignore discovery and capability requests like older firmware.
+     * @return Nothing.
+     */
+    void setCapabilities(CarCapabilities capabilities) {
+        this.capabilities = capabilities;
+    }
+
+    /**
+     * This method is the body of the receiver thread.
+     *
+     * @return Nothing.
+     */
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_PACKET_SIZE);
+        int burstRemaining = 0;
+
+        try {
+            while (true) {
+                buffer.clear();
+                SocketAddress from = this.channel.receive(buffer);
+                buffer.flip();
+
+                if (burstRemaining == 0 && this.random.nextDouble() < this.lossRate) {
+                    burstRemaining = 1 + this.random.nextInt(this.maxLossBurst);
+                }
+
+                if (burstRemaining > 0) {
+                    burstRemaining--;
+                    synchronized (this) {
+                        this.injectedLossCount++;
+                    }
+                    continue;
+                }
+
+                long delay = this.minDelayMs;
+                if (this.maxDelayMs > this.minDelayMs) {
+                    delay += (long) (this.random.nextDouble() * (this.maxDelayMs - this.minDelayMs));
+                }
+
+                if (delay == 0) {
+                    onPacket(buffer, from);
+                } else {
+                    ByteBuffer copy = ByteBuffer.allocate(buffer.remaining()).put(buffer);
+                    copy.flip();
+                    this.delayer.schedule(() -> onPacket(copy, from), delay, TimeUnit.MILLISECONDS);
+                }
+            }
+        } catch (ClosedChannelException exception) {
+            //  The simulator was closed
+        } catch (IOException exception) {
+            this.failure = exception;
+        }
+    }
+
+    /**
+     * This method handles a packet which made it through the injected loss and delay.
+     *
+     * @param packet The packet.
+     * @param from   The address the packet was sent from.
+     * @return Nothing.
+     */
+    synchronized void onPacket(ByteBuffer packet, SocketAddress from) {
+        if (packet.remaining() > 0 && packet.get(packet.position()) == DiscoveryMessage.MAGIC) {
+            answerDiscovery(packet, from);
+            return;
+        }
+
+        if (packet.remaining() > 0 && packet.get(packet.position()) == TrajectoryChunk.MAGIC) {
+            receiveTrajectoryChunk(packet, from);
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        if (this.receivedCount < MAX_RECORDED_ARRIVALS) {
+            this.arrivalNanos[(int) this.receivedCount] = now;
+        }
+
+        if (this.receivedCount > 0) {
+            long interArrivalNanos = now - this.lastArrivalNanos;
+            this.interArrival.record(interArrivalNanos);
+
+            //  Smoothed variation of the inter-arrival time, like the RFC 3550 jitter
+            if (this.lastInterArrivalNanos >= 0) {
+                long variation = Math.abs(interArrivalNanos - this.lastInterArrivalNanos);
+                this.jitterNanos += (variation - this.jitterNanos) / 16;
+            }
+            this.lastInterArrivalNanos = interArrivalNanos;
+        }
+
+        this.lastArrivalNanos = now;
+        this.receivedCount++;
+
+        if (from != null) {
+            this.lastSender = from;
+        }
+
+        if (!decode(packet, from)) {
+            this.malformedCount++;
+        }
+    }
+
+    /**
+     * This method decodes the packet in any of the known formats and applies it to the car.
+     *
+     * @param packet The packet.
+     * @param from   The address the packet was sent from, acknowledgements are sent back to it.
+     * @return True if the packet was decoded, false otherwise.
+     */
+    private boolean decode(ByteBuffer packet, SocketAddress from) {
+        if (packet.remaining() > 0 && packet.get(packet.position()) == CommandFrame.MAGIC) {
+            if (!this.frame.decodeBinary(packet)) {
+                return false;
+            }
+
+            this.binaryCount++;
+            apply(this.frame.leftMotorSpeed, this.frame.rightMotorSpeed,
+                    this.frame.direction, this.frame.drivingMode, this.frame.drivingAlgorithm);
+
+            if (this.frame.sequence != CommandFrame.NO_SEQUENCE) {
+                recover(this.frame);
+                onSequence(this.frame.sequence);
+                acknowledge(from);
+            }
+
+            return true;
+        }
+
+        try {
+            String string = StandardCharsets.US_ASCII.decode(packet).toString();
+            JSONObject json = new JSONObject(string);
+
+            this.jsonCount++;
+            apply(json.getInt("left_motor_speed"),
+                    json.getInt("right_motor_speed"),
+                    json.getInt("direction"),
+                    json.getInt("driving_mode"),
+                    json.getInt("driving_algorithm"));
+
+            return true;
+        } catch (JSONException exception) {
+            return false;
+        }
+    }
+
+    /**
+     * This method answers a discovery request with an announcement and a capability request
+     * with the capabilities, unless they are not set.
+     *
+     * @param packet The request.
+     * @param from   The address the request was sent from, the answer is sent back to it.
+     * @return Nothing.
+     */
+    private void answerDiscovery(ByteBuffer packet, SocketAddress from) {
+        CarCapabilities capabilities = this.capabilities;
+
+        if (capabilities == null || from == null || !this.discoveryMessage.decode(packet)) {
+            return;
+        }
+
+        if (this.discoveryMessage.type == DiscoveryMessage.DISCOVER) {
+            this.discoveryMessage.set(DiscoveryMessage.ANNOUNCE, this.discoveryMessage.nonce);
+        } else if (this.discoveryMessage.type == DiscoveryMessage.HELLO) {
+            this.discoveryMessage.set(DiscoveryMessage.CAPABILITIES, this.discoveryMessage.nonce).set(capabilities);
+        } else {
+            return;
+        }
+
+        this.discoveryCount++;
+        this.discoveryBuffer.clear();
+        this.discoveryMessage.encode(this.discoveryBuffer);
+        this.discoveryBuffer.flip();
+
+        try {
+            this.channel.send(this.discoveryBuffer, from);
+        } catch (IOException exception) {
+            //  The phone is gone, like a real car the simulator keeps going
+        }
+    }
+
+    /**
+     * This method stores a trajectory chunk and acknowledges all the chunks of its trajectory received so far,
+     * unless trajectories are not supported. A chunk of another trajectory replaces the stored one.
+     *
+     * @param packet The chunk.
+     * @param from   The address the chunk was sent from, the acknowledgement is sent back to it.
+     * @return Nothing.
+     */
+    private void receiveTrajectoryChunk(ByteBuffer packet, SocketAddress from) {
+        CarCapabilities capabilities = this.capabilities;
+        TrajectoryChunk chunk = this.trajectoryChunk;
+
+        if (capabilities == null || !capabilities.supportsTrajectories() || from == null || !chunk.decode(packet)) {
+            return;
+        }
+
+        if (chunk.trajectoryId != this.trajectoryId) {
+            stopTrajectory();
+            this.trajectoryId = chunk.trajectoryId;
+            this.trajectoryChunkCount = chunk.chunkCount;
+            this.receivedChunks = 0;
+            this.trajectorySize = 0;
+            this.trajectoryStarted = false;
+        }
+
+        //  The gaps are kept until the trajectory is started, which turns them into times
+        if (chunk.chunkCount == this.trajectoryChunkCount
+                && chunk.firstSetpoint + chunk.setpointCount <= Trajectory.MAX_SETPOINTS) {
+            System.arraycopy(chunk.gapsMs, 0, this.trajectoryTimesMs, chunk.firstSetpoint, chunk.setpointCount);
+            System.arraycopy(chunk.leftMotorSpeeds, 0,
+                    this.trajectoryLeftMotorSpeeds, chunk.firstSetpoint, chunk.setpointCount);
+            System.arraycopy(chunk.rightMotorSpeeds, 0,
+                    this.trajectoryRightMotorSpeeds, chunk.firstSetpoint, chunk.setpointCount);
+            System.arraycopy(chunk.directions, 0, this.trajectoryDirections, chunk.firstSetpoint, chunk.setpointCount);
+            this.receivedChunks |= 1 << chunk.chunkIndex;
+            this.trajectorySize = Math.max(this.trajectorySize, chunk.firstSetpoint + chunk.setpointCount);
+        }
+
+        this.trajectoryAckBuffer.clear();
+        this.trajectoryAck.set(this.trajectoryId, this.receivedChunks).encode(this.trajectoryAckBuffer);
+        this.trajectoryAckBuffer.flip();
+
+        try {
+            this.channel.send(this.trajectoryAckBuffer, from);
+        } catch (IOException exception) {
+            //  The phone is gone, like a real car the simulator keeps going
+        }
+    }
+
+    /**
+     * This method checks if every chunk of the stored trajectory was received.
+     *
+     * @return True if the trajectory is complete, false otherwise.
+     */
+    private boolean isTrajectoryComplete() {
+        return this.trajectoryId >= 0 && this.receivedChunks == (int) ((1L << this.trajectoryChunkCount) - 1);
+    }
+
+    /**
+     * This method starts running the stored trajectory, every setpoint is scheduled at its time from now.
+     *
+     * @return Nothing.
+     */
+    private void startTrajectory() {
+        int generation = ++this.trajectoryGeneration;
+        long now = System.nanoTime();
+        int timeMs = 0;
+
+        this.trajectoryStarted = true;
+        this.trajectoryRunning = true;
+        this.trajectoryStartNanos = now;
+        this.trajectoryRunCount = 0;
+        Arrays.fill(this.trajectoryRunNanos, 0, this.trajectorySize, -1);
+
+        for (int i = 0; i < this.trajectorySize; i++) {
+            timeMs += this.trajectoryTimesMs[i];
+            this.trajectoryTimesMs[i] = timeMs;
+
+            int index = i;
+            long delay = now + TimeUnit.MILLISECONDS.toNanos(timeMs) - System.nanoTime();
+            this.delayer.schedule(() -> runSetpoint(generation, index), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * This method stops the running trajectory, the setpoints which have not run yet never will.
+     *
+     * @return Nothing.
+     */
+    private void stopTrajectory() {
+        this.trajectoryGeneration++;
+        this.trajectoryRunning = false;
+    }
+
+    /**
+     * This method applies a setpoint of the running trajectory and records when it ran.
+     *
+     * @param generation The run the setpoint was scheduled by.
+     * @param index      The index of the setpoint.
+     * @return Nothing.
+     */
+    private synchronized void runSetpoint(int generation, int index) {
+        if (generation != this.trajectoryGeneration || !this.trajectoryRunning) {
+            return;
+        }
+
+        long runNanos = System.nanoTime() - this.trajectoryStartNanos;
+        long timeNanos = TimeUnit.MILLISECONDS.toNanos(this.trajectoryTimesMs[index]);
+
+        this.trajectoryRunNanos[index] = runNanos;
+        this.trajectoryDeviation.record(Math.abs(runNanos - timeNanos));
+        this.leftMotorSpeed = this.trajectoryLeftMotorSpeeds[index];
+        this.rightMotorSpeed = this.trajectoryRightMotorSpeeds[index];
+        this.direction = this.trajectoryDirections[index];
+
+        //  The car holds the last setpoint once the trajectory is over
+        if (++this.trajectoryRunCount == this.trajectorySize) {
+            this.trajectoryRunning = false;
+        }
+    }
+
+    /**
+     * This method sends the acknowledgement of the last decoded frame, unless acknowledgements are disabled.
+     *
+     * @param to The address the acknowledgement is sent to.
+     * @return Nothing.
+     */
+    private void acknowledge(SocketAddress to) {
+        if (!this.ackEnabled || to == null) {
+            return;
+        }
+
+        this.ackBuffer.clear();
+        this.ack.set(this.frame).encode(this.ackBuffer);
+        this.ackBuffer.flip();
+
+        try {
+            this.channel.send(this.ackBuffer, to);
+        } catch (IOException exception) {
+            //  The phone is gone, like a real car the simulator keeps going
+        }
+    }
+
+    /**
+     * This method sends a telemetry frame to whoever sent the last command.
+     *
+     * @param telemetry The telemetry frame.
+     * @return True if the frame was sent, false if no command has arrived yet.
+     * @throws IOException if the frame could not be sent.
+     */
+    synchronized boolean sendTelemetry(TelemetryFrame telemetry) throws IOException {
+        SocketAddress to = this.lastSender;
+
+        if (to == null) {
+            return false;
+        }
+
+        this.telemetryBuffer.clear();
+        telemetry.encode(this.telemetryBuffer);
+        this.telemetryBuffer.flip();
+        this.channel.send(this.telemetryBuffer, to);
+
+        return true;
+    }
+
+    /**
+     * This method sets the motor state of the car. In the TRAJECTORY driving mode
+     * the complete trajectory is started instead, if it has not been yet, and any other mode stops it.
+     *
+     * @return Nothing.
+     */
+    private void apply(int leftMotorSpeed, int rightMotorSpeed,
+                       int direction, int drivingMode, int drivingAlgorithm) {
+        if (drivingMode == DrivingMode.TRAJECTORY.getDrivingMode()) {
+            if (!this.trajectoryStarted && isTrajectoryComplete()) {
+                startTrajectory();
+            }
+
+            //  The motors follow the trajectory, not the commands
+            this.drivingMode = drivingMode;
+            this.drivingAlgorithm = drivingAlgorithm;
+            return;
+        }
+
+        if (this.trajectoryRunning) {
+            stopTrajectory();
+        }
+
+        this.leftMotorSpeed = leftMotorSpeed;
+        this.rightMotorSpeed = rightMotorSpeed;
+        this.direction = direction;
+        this.drivingMode = drivingMode;
+        this.drivingAlgorithm = drivingAlgorithm;
+    }
+
+    /**
+     * This method counts the commands of a redundant frame's history which were not seen before.
+     *
+     * @param frame The decoded frame.
+     * @return Nothing.
+     */
+    private void recover(CommandFrame frame) {
+        for (int age = 0; age < frame.historyCount; age++) {
+            long sequence = frame.sequence - 1 - age;
+
+            if (sequence >= 0 && !this.seenSequences.get((int) sequence)) {
+                this.seenSequences.set((int) sequence);
+                this.recoveredCount++;
+            }
+        }
+    }
+
+    /**
+     * This method records the sequence number of a packet, to detect reordering and drops.
+     * A packet older than the newest one seen so far counts as reordered,
+     * a repeated sequence number as a duplicate.
+     *
+     * @param sequence The sequence number of the packet.
+     * @return Nothing.
+     */
+    synchronized void onSequence(long sequence) {
+        this.sequencedCount++;
+        this.seenSequences.set((int) sequence);
+
+        if (sequence > this.highestSequence) {
+            this.highestSequence = sequence;
+        } else if (sequence == this.highestSequence) {
+            this.duplicateCount++;
+        } else {
+            this.reorderedCount++;
+        }
+    }
+
+    /**
+     * This method returns the number of sequenced packets which never arrived,
+     * assuming the first sequence number is 0.
+     *
+     * @return Number of lost packets.
+     */
+    synchronized long getLostCount() {
+        return Math.max(0, this.highestSequence + 1 - (this.sequencedCount - this.duplicateCount));
+    }
+
+    /**
+     * This method returns the number of commands of lost packets recovered from redundant frames.
+     *
+     * @return Number of recovered commands.
+     */
+    synchronized long getRecoveredCount() {
+        return this.recoveredCount;
+    }
+
+    /**
+     * This method returns the number of commands the car never learned of,
+     * neither from their own packet nor from a redundant frame, assuming the first sequence number is 0.
+     *
+     * @return Number of missed commands.
+     */
+    synchronized long getMissedCount() {
+        return Math.max(0, this.highestSequence + 1 - this.seenSequences.cardinality());
+    }
+
+    /**
+     * This method returns the number of sequenced packets which arrived after a newer one.
+     *
+     * @return Number of reordered packets.
+     */
+    synchronized long getReorderedCount() {
+        return this.reorderedCount;
+    }
+
+    /**
+     * This method returns the number of discovery and capability requests answered.
+     *
+     * @return Number of answered requests.
+     */
+    synchronized long getDiscoveryCount() {
+        return this.discoveryCount;
+    }
+
+    /**
+     * This method returns the number of packets which made it through the injected loss.
+     *
+     * @return Number of received packets.
+     */
+    synchronized long getReceivedCount() {
+        return this.receivedCount;
+    }
+
+    /**
+     * This method returns the number of packets dropped by the injected loss.
+     *
+     * @return Number of dropped packets.
+     */
+    synchronized long getInjectedLossCount() {
+        return this.injectedLossCount;
+    }
+
+    /**
+     * This method returns the number of packets which could not be decoded.
+     *
+     * @return Number of malformed packets.
+     */
+    synchronized long getMalformedCount() {
+        return this.malformedCount;
+    }
+
+    /**
+     * This method returns the number of decoded JSON packets.
+     *
+     * @return Number of JSON packets.
+     */
+    synchronized long getJsonCount() {
+        return this.jsonCount;
+    }
+
+    /**
+     * This method returns the number of decoded binary packets.
+     *
+     * @return Number of binary packets.
+     */
+    synchronized long getBinaryCount() {
+        return this.binaryCount;
+    }
+
+    /**
+     * This method returns the smoothed inter-arrival jitter.
+     *
+     * @return The jitter in nanoseconds.
+     */
+    synchronized long getJitterNanos() {
+        return (long) this.jitterNanos;
+    }
+
+    /**
+     * This method returns the histogram of the time between two received packets, in nanoseconds.
+     *
+     * @return The inter-arrival histogram.
+     */
+    LatencyHistogram getInterArrival() {
+        return this.interArrival;
+    }
+
+    /**
+     * This method returns the arrival times of the first packets.
+     *
+     * @return Arrival times in nanoseconds, from System.nanoTime().
+     */
+    synchronized long[] getArrivalNanos() {
+        return Arrays.copyOf(this.arrivalNanos, (int) Math.min(this.receivedCount, MAX_RECORDED_ARRIVALS));
+    }
+
+    /**
+     * This method returns the speed of the left motor set by the last command.
+     *
+     * @return The left motor speed.
+     */
+    int getLeftMotorSpeed() {
+        return this.leftMotorSpeed;
+    }
+
+    /**
+     * This method returns the speed of the right motor set by the last command.
+     *
+     * @return The right motor speed.
+     */
+    int getRightMotorSpeed() {
+        return this.rightMotorSpeed;
+    }
+
+    /**
+     * This method returns the driving direction set by the last command.
+     *
+     * @return The driving direction.
+     */
+    int getDirection() {
+        return this.direction;
+    }
+
+    /**
+     * This method returns the driving mode set by the last command.
+     *
+     * @return The driving mode.
+     */
+    int getDrivingMode() {
+        return this.drivingMode;
+    }
+
+    /**
+     * This method returns the driving algorithm set by the last command.
+     *
+     * @return The driving algorithm.
+     */
+    int getDrivingAlgorithm() {
+        return this.drivingAlgorithm;
+    }
+
+    /**
+     * This method returns the histogram of how far from their time the setpoints of the trajectories ran,
+     * in nanoseconds.
+     *
+     * @return The timing deviation histogram.
+     */
+    synchronized LatencyHistogram getTrajectoryDeviation() {
+        return this.trajectoryDeviation;
+    }
+
+    /**
+     * This method returns the number of setpoints the last trajectory ran.
+     *
+     * @return Number of run setpoints.
+     */
+    synchronized int getTrajectoryRunCount() {
+        return this.trajectoryRunCount;
+    }
+
+    /**
+     * This method checks if a trajectory is running.
+     *
+     * @return True if a trajectory is running, false otherwise.
+     */
+    synchronized boolean isTrajectoryRunning() {
+        return this.trajectoryRunning;
+    }
+
+    /**
+     * This method verifies the last run of a trajectory against the trajectory which was uploaded:
+     * every setpoint must have arrived unchanged and run within the tolerance of its time.
+     *
+     * @param trajectory  The uploaded trajectory.
+     * @param toleranceMs The largest acceptable timing deviation, in milliseconds.
+     * @return Number of setpoints which arrived changed, ran too early or too late, or never ran, 0 for a faithful run.
+     */
+    synchronized int verifyTrajectory(Trajectory trajectory, long toleranceMs) {
+        long toleranceNanos = TimeUnit.MILLISECONDS.toNanos(toleranceMs);
+        int count = Math.min(trajectory.size(), this.trajectorySize);
+        int faults = Math.abs(trajectory.size() - this.trajectorySize);
+
+        for (int i = 0; i < count; i++) {
+            long deviation = this.trajectoryRunNanos[i] - TimeUnit.MILLISECONDS.toNanos(trajectory.getTimeMs(i));
+
+            if (!this.trajectoryStarted
+                    || this.trajectoryRunNanos[i] < 0
+                    || Math.abs(deviation) > toleranceNanos
+                    || this.trajectoryTimesMs[i] != trajectory.getTimeMs(i)
+                    || this.trajectoryLeftMotorSpeeds[i] != trajectory.getLeftMotorSpeed(i)
+                    || this.trajectoryRightMotorSpeeds[i] != trajectory.getRightMotorSpeed(i)
+                    || this.trajectoryDirections[i] != trajectory.getDirection(i)) {
+                faults++;
+            }
+        }
+
+        return faults;
+    }
+
+    /**
+     * This method waits until the last trajectory has run every setpoint.
+     *
+     * @param timeoutMs The longest time to wait in milliseconds.
+     * @return True if the trajectory was over in time, false otherwise.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean awaitTrajectory(long timeoutMs) throws InterruptedException {
+        return await(this::isTrajectoryOver, timeoutMs);
+    }
+
+    /**
+     * This method checks if the last trajectory has run every setpoint.
+     *
+     * @return True if the trajectory is over, false otherwise.
+     */
+    private synchronized boolean isTrajectoryOver() {
+        return this.trajectoryStarted && this.trajectorySize > 0 && this.trajectoryRunCount == this.trajectorySize;
+    }
+
+    /**
+     * This method waits until the number of received packets reaches the expected one.
+     *
+     * @param expected  The expected number of received packets.
+     * @param timeoutMs The longest time to wait in milliseconds.
+     * @return True if the packets arrived in time, false otherwise.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean awaitReceived(long expected, long timeoutMs) throws InterruptedException {
+        return await(() -> getReceivedCount() >= expected, timeoutMs);
+    }
+
+    /**
+     * This method polls the condition until it holds, for the tests which wait on the simulator.
+     *
+     * @param condition The condition to wait for.
+     * @param timeoutMs The longest time to wait in milliseconds.
+     * @return True if the condition held in time, false otherwise.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    static boolean await(BooleanSupplier condition, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+        this.delayer.shutdownNow();
+
+        try {
+            this.receiver.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.failure != null) {
+            throw new IOException("The simulator stopped receiving", this.failure);
+        }
+    }
+
+    /**
+     * This method runs the simulator until it is killed, printing its statistics every second.
+     *
+     * @param args The port, 4210 by default, the loss rate and the largest delay in milliseconds.
+     * @throws Exception if the simulator could not be started.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 4210;
+
+        try (CarSimulator simulator = new CarSimulator(new InetSocketAddress(port))) {
+            if (args.length > 1) {
+                simulator.setLossRate(Double.parseDouble(args[1]));
+            }
+            if (args.length > 2) {
+                simulator.setDelay(0, Long.parseLong(args[2]));
+            }
+
+            System.out.println("Listening on port " + simulator.getPort());
+
+            while (true) {
+                Thread.sleep(1_000);
+                System.out.printf(
+                        "received %d (json %d, binary %d, malformed %d), injected loss %d, "
+                                + "jitter %.2f ms, motors %d/%d, direction %d, mode %d, algorithm %d%n",
+                        simulator.getReceivedCount(), simulator.getJsonCount(),
+                        simulator.getBinaryCount(), simulator.getMalformedCount(),
+                        simulator.getInjectedLossCount(), simulator.getJitterNanos() / 1e6,
+                        simulator.getLeftMotorSpeed(), simulator.getRightMotorSpeed(),
+                        simulator.getDirection(), simulator.getDrivingMode(),
+                        simulator.getDrivingAlgorithm()
+                );
+            }
+        }
+    }
+}
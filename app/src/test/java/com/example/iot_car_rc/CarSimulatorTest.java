@@ -0,0 +1,241 @@
+package com.example.iot_car_rc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the car simulator, and of the transmitter end to end against it.
+ */
+public class CarSimulatorTest {
+    private CarSimulator simulator;
+    private DatagramChannel phone;
+    private final CommandFrame frame = new CommandFrame();
+    private final ByteBuffer packet = ByteBuffer.allocate(CommandFrame.MAX_JSON_SIZE);
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = new CarSimulator(0);
+        phone = DatagramChannel.open();
+        phone.connect(simulator.getAddress());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        phone.close();
+        simulator.close();
+    }
+
+    @Test
+    public void decodesBothFormats() throws Exception {
+        send(PacketFormat.JSON, 10, 20, 1, 0, 1);
+        assertTrue(simulator.awaitReceived(1, 1_000));
+        assertEquals(10, simulator.getLeftMotorSpeed());
+        assertEquals(20, simulator.getRightMotorSpeed());
+        assertEquals(1, simulator.getDrivingAlgorithm());
+
+        send(PacketFormat.BINARY, 255, 0, 0, 1, 2);
+        assertTrue(simulator.awaitReceived(2, 1_000));
+        assertEquals(255, simulator.getLeftMotorSpeed());
+        assertEquals(0, simulator.getDirection());
+        assertEquals(1, simulator.getDrivingMode());
+        assertEquals(2, simulator.getDrivingAlgorithm());
+
+        assertEquals(1, simulator.getJsonCount());
+        assertEquals(1, simulator.getBinaryCount());
+        assertEquals(0, simulator.getMalformedCount());
+        assertEquals(2, simulator.getArrivalNanos().length);
+    }
+
+    @Test
+    public void garbage_isCountedAsMalformed() throws Exception {
+        phone.write(ByteBuffer.wrap(new byte[]{'n', 'o', 'p', 'e'}));
+
+        assertTrue(simulator.awaitReceived(1, 1_000));
+        assertEquals(1, simulator.getMalformedCount());
+    }
+
+    @Test
+    public void injectedLoss_dropsPackets() throws Exception {
+        simulator.setLossRate(0.5);
+
+        for (int i = 0; i < 1_000; i++) {
+            send(PacketFormat.BINARY, i & 0xFF, 0, 1, 0, 0);
+
+            //  Paced so the kernel does not drop packets on top of the injected loss
+            if (i % 50 == 0) {
+                Thread.sleep(1);
+            }
+        }
+        waitForQuiet();
+
+        assertEquals(1_000, simulator.getReceivedCount() + simulator.getInjectedLossCount());
+        assertTrue(simulator.getInjectedLossCount() > 350);
+        assertTrue(simulator.getInjectedLossCount() < 650);
+    }
+
+    @Test
+    public void sequenceNumbers_revealReorderingAndLoss() {
+        long[] sequences = {0, 1, 3, 2, 5, 5, 6};
+
+        for (long sequence : sequences) {
+            simulator.onSequence(sequence);
+        }
+
+        assertEquals(1, simulator.getReorderedCount());
+        assertEquals(1, simulator.getLostCount());
+    }
+
+    @Test
+    public void transmitter_reachesSimulator() throws Exception {
+        CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(false));
+
+        try {
+            transmitter.setInetAddress("127.0.0.1", simulator.getPort());
+            transmitter.sendCommand(200, 180, 1, 0, 1);
+
+            assertTrue(simulator.awaitReceived(1, 1_000));
+            assertEquals(200, simulator.getLeftMotorSpeed());
+            assertEquals(180, simulator.getRightMotorSpeed());
+            assertEquals(1, simulator.getBinaryCount());
+
+            //  The unchanged command is repeated as a keepalive
+            assertTrue(simulator.awaitReceived(3, 2_000));
+        } finally {
+            transmitter.close();
+        }
+    }
+
+    @Test
+    public void acknowledgements_measureRoundTripAndLoss() throws Exception {
+        simulator.setLossRate(0.2);
+        simulator.setDelay(5, 10);
+        CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+
+        try {
+            transmitter.setInetAddress("127.0.0.1", simulator.getPort());
+
+            //  A moving joystick, so a command goes out on every tick
+            for (int i = 0; i < 150; i++) {
+                transmitter.sendCommand(20 + i * 7 % 200, 100, 1, 0, 0);
+                Thread.sleep(10);
+            }
+            Thread.sleep(700);
+
+            LinkStatistics statistics = transmitter.getLinkStatistics();
+            double lossRate = statistics.getLossRate(System.nanoTime());
+
+            assertTrue(statistics.getSentCount() > 50);
+            assertTrue(lossRate > 0.05 && lossRate < 0.35);
+            assertEquals(simulator.getBinaryCount(), statistics.getAcknowledgedCount());
+            assertTrue(statistics.getRoundTripPercentile(0.5) >= TimeUnit.MILLISECONDS.toNanos(4));
+            assertTrue(statistics.getRoundTripPercentile(0.99) <= statistics.getMaxRoundTrip());
+            assertTrue(statistics.getMaxRoundTrip() < TimeUnit.MILLISECONDS.toNanos(500));
+        } finally {
+            transmitter.close();
+        }
+    }
+
+    @Test
+    public void redundancy_ridesThroughBurstLoss() throws Exception {
+        long plainBytes = sendRedundant(0);
+        long plainMissed = simulator.getMissedCount();
+        long lost = simulator.getInjectedLossCount();
+
+        tearDown();
+        setUp();
+
+        long redundantBytes = sendRedundant(3);
+        long redundantMissed = simulator.getMissedCount();
+
+        //  Without redundancy every lost packet is a missed command
+        assertEquals(lost, plainMissed);
+        assertTrue(plainMissed > 100);
+        assertEquals(0, simulator.getRecoveredCount() + redundantMissed - simulator.getInjectedLossCount());
+
+        //  Single bursts of up to three packets are recovered entirely, only back-to-back bursts are not
+        assertTrue(redundantMissed * 10 < plainMissed);
+
+        //  A slowly moving joystick changes one value per command, which costs two bytes per repeat
+        double overhead = (double) redundantBytes / plainBytes - 1;
+        assertTrue(overhead > 0.3 && overhead < 0.5);
+    }
+
+    @Test
+    public void transmitter_withRedundancy_recoversLostCommands() throws Exception {
+        simulator.setLossRate(0.2);
+        CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+
+        try {
+            transmitter.setRedundancy(4);
+            transmitter.setInetAddress("127.0.0.1", simulator.getPort());
+
+            for (int i = 0; i < 150; i++) {
+                transmitter.sendCommand(20 + i * 7 % 200, 100, 1, 0, 0);
+                Thread.sleep(10);
+            }
+            waitForQuiet();
+
+            assertTrue(simulator.getInjectedLossCount() > 5);
+            assertTrue(simulator.getRecoveredCount() > 0);
+            assertTrue(simulator.getMissedCount() < simulator.getInjectedLossCount());
+            assertEquals(0, simulator.getMalformedCount());
+        } finally {
+            transmitter.close();
+        }
+    }
+
+    /**
+     * Sends 2000 sequenced commands of a slowly moving joystick through 10% loss in bursts of up to 3.
+     *
+     * @return The number of bytes sent.
+     */
+    private long sendRedundant(int redundancy) throws Exception {
+        CommandHistory history = new CommandHistory(CommandFrame.MAX_REDUNDANCY);
+        simulator.setLossRate(0.1);
+        simulator.setMaxLossBurst(3);
+        long bytes = 0;
+
+        for (int sequence = 0; sequence < 2_000; sequence++) {
+            int speed = sequence % 256;
+
+            packet.clear();
+            frame.set(speed, 100, 1, 0, 0).stamp(sequence, 0).encodeRedundant(packet, history, redundancy);
+            history.add(DriveState.pack(speed, 100, 1, 0, 0));
+            packet.flip();
+            bytes += phone.write(packet);
+
+            if (sequence % 100 == 99) {
+                Thread.sleep(1);
+            }
+        }
+
+        waitForQuiet();
+
+        return bytes;
+    }
+
+    private void send(PacketFormat format, int left, int right,
+                      int direction, int mode, int algorithm) throws IOException {
+        packet.clear();
+        frame.set(left, right, direction, mode, algorithm).encode(packet, format);
+        packet.flip();
+        phone.write(packet);
+    }
+
+    private void waitForQuiet() throws InterruptedException {
+        long last = -1;
+
+        while (last != simulator.getReceivedCount() + simulator.getInjectedLossCount()) {
+            last = simulator.getReceivedCount() + simulator.getInjectedLossCount();
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.iot_car_rc;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the quantization and deadband command filter.
+ */
+public class CommandFilterTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void emptyState_isNotOffered() {
+        CommandFilter filter = new CommandFilter(1, 3, 250);
+
+        assertEquals(DriveState.EMPTY, filter.filter(DriveState.EMPTY, 0));
+        assertEquals(0, filter.getOfferedCount());
+    }
+
+    @Test
+    public void duplicatesAndJitter_areSuppressed() {
+        CommandFilter filter = new CommandFilter(1, 3, 250);
+
+        long first = DriveState.pack(100, 100, 1, 0, 0);
+        assertEquals(first, filter.filter(first, 0));
+        assertEquals(DriveState.EMPTY, filter.filter(first, 10 * MS));
+        assertEquals(DriveState.EMPTY, filter.filter(DriveState.pack(103, 97, 1, 0, 0), 20 * MS));
+
+        long moved = DriveState.pack(104, 100, 1, 0, 0);
+        assertEquals(moved, filter.filter(moved, 30 * MS));
+
+        assertEquals(4, filter.getOfferedCount());
+        assertEquals(2, filter.getSuppressedCount());
+        assertEquals(0.5, filter.getSuppressionRatio(), 1e-9);
+    }
+
+    @Test
+    public void jitter_isComparedWithLastSentState() {
+        CommandFilter filter = new CommandFilter(1, 3, 250);
+
+        filter.filter(DriveState.pack(100, 100, 1, 0, 0), 0);
+        assertEquals(DriveState.EMPTY, filter.filter(DriveState.pack(102, 100, 1, 0, 0), MS));
+        assertEquals(DriveState.EMPTY, filter.filter(DriveState.pack(103, 100, 1, 0, 0), 2 * MS));
+        assertNotEquals(DriveState.EMPTY, filter.filter(DriveState.pack(104, 100, 1, 0, 0), 3 * MS));
+    }
+
+    @Test
+    public void modeChangesAndStops_areNeverSuppressed() {
+        CommandFilter filter = new CommandFilter(1, 10, 250);
+
+        filter.filter(DriveState.pack(5, 5, 1, 0, 0), 0);
+
+        assertNotEquals(DriveState.EMPTY, filter.filter(DriveState.pack(5, 5, 0, 0, 0), MS));
+        assertNotEquals(DriveState.EMPTY, filter.filter(DriveState.pack(5, 5, 0, 1, 0), 2 * MS));
+        assertNotEquals(DriveState.EMPTY, filter.filter(DriveState.pack(5, 5, 0, 1, 2), 3 * MS));
+        assertNotEquals(DriveState.EMPTY, filter.filter(DriveState.pack(0, 5, 0, 1, 2), 4 * MS));
+        assertEquals(0, filter.getSuppressedCount());
+    }
+
+    @Test
+    public void suppressedState_isRefreshedAfterMaxSilence() {
+        CommandFilter filter = new CommandFilter(1, 3, 250);
+
+        filter.filter(DriveState.pack(100, 100, 1, 0, 0), 0);
+        assertEquals(DriveState.EMPTY, filter.filter(DriveState.pack(101, 100, 1, 0, 0), 249 * MS));
+
+        long refreshed = filter.filter(DriveState.pack(101, 100, 1, 0, 0), 250 * MS);
+        assertEquals(DriveState.pack(101, 100, 1, 0, 0), refreshed);
+        assertEquals(1, filter.getRefreshCount());
+    }
+
+    @Test
+    public void speeds_areQuantized() {
+        CommandFilter filter = new CommandFilter(10, 0, 250);
+
+        long quantized = filter.filter(DriveState.pack(255, 14, 1, 0, 0), 0);
+
+        assertEquals(255, DriveState.leftMotorSpeed(quantized));
+        assertEquals(10, DriveState.rightMotorSpeed(quantized));
+        assertEquals(DriveState.EMPTY, filter.filter(DriveState.pack(255, 6, 1, 0, 0), MS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroQuantizationStep_isRejected() {
+        new CommandFilter(0, 0, 250);
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.iot_car_rc;
+
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the command frame encoding.
+ */
+public class CommandFrameTest {
+    @Test
+    public void binaryFrame_roundTrips() {
+        ByteBuffer buffer = ByteBuffer.allocate(CommandFrame.SIZE);
+        new CommandFrame().set(255, 17, 1, 0, 2).encodeBinary(buffer);
+        buffer.flip();
+
+        CommandFrame decoded = new CommandFrame();
+        assertTrue(decoded.decodeBinary(buffer));
+        assertEquals(CommandFrame.SIZE, buffer.position());
+        assertEquals(255, decoded.leftMotorSpeed);
+        assertEquals(17, decoded.rightMotorSpeed);
+        assertEquals(1, decoded.direction);
+        assertEquals(0, decoded.drivingMode);
+        assertEquals(2, decoded.drivingAlgorithm);
+        assertEquals(0, decoded.flags);
+    }
+
+    @Test
+    public void binaryFrame_carriesSequenceAndTimestamp() {
+        ByteBuffer buffer = ByteBuffer.allocate(CommandFrame.SIZE);
+        new CommandFrame().set(1, 2, 1, 0, 0).stamp(0x1_0000_0005L, 0xFFFF_FFFEL).encodeBinary(buffer);
+        buffer.flip();
+
+        CommandFrame decoded = new CommandFrame();
+        assertTrue(decoded.decodeBinary(buffer));
+        assertEquals(5, decoded.sequence);
+        assertEquals(-2, decoded.timestamp);
+    }
+
+    @Test
+    public void version1Frame_isDecodedWithoutSequence() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[]{
+                CommandFrame.MAGIC, CommandFrame.VERSION_1, 0, (byte) 200, 100, 1, 0, 2
+        });
+
+        CommandFrame decoded = new CommandFrame();
+        assertTrue(decoded.decodeBinary(buffer));
+        assertEquals(CommandFrame.VERSION_1_SIZE, buffer.position());
+        assertEquals(200, decoded.leftMotorSpeed);
+        assertEquals(100, decoded.rightMotorSpeed);
+        assertEquals(2, decoded.drivingAlgorithm);
+        assertEquals(CommandFrame.NO_SEQUENCE, decoded.sequence);
+    }
+
+    @Test
+    public void ack_echoesSequenceAndTimestamp() {
+        CommandFrame frame = new CommandFrame().set(0, 0, 1, 0, 0).stamp(42, 123_456);
+        ByteBuffer buffer = ByteBuffer.allocate(CommandAck.SIZE);
+        new CommandAck().set(frame).encode(buffer);
+        buffer.flip();
+
+        CommandAck ack = new CommandAck();
+        assertFalse(frame.decodeBinary(buffer));
+        assertTrue(ack.decode(buffer));
+        assertEquals(42, ack.sequence);
+        assertEquals(123_456, ack.timestamp);
+        assertFalse(ack.decode(ByteBuffer.allocate(CommandAck.SIZE)));
+    }
+
+    @Test
+    public void binaryFrame_hasFixedSize() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        CommandFrame frame = new CommandFrame();
+
+        frame.set(0, 0, 0, 0, 0).encode(buffer, PacketFormat.BINARY);
+        assertEquals(CommandFrame.SIZE, buffer.position());
+
+        buffer.clear();
+        frame.set(255, 255, 1, 1, 2).encode(buffer, PacketFormat.BINARY);
+        assertEquals(CommandFrame.SIZE, buffer.position());
+    }
+
+    @Test
+    public void decodeBinary_rejectsForeignAndShortPackets() {
+        CommandFrame frame = new CommandFrame();
+
+        ByteBuffer json = ByteBuffer.wrap("{\"left_motor_speed\":0}".getBytes(StandardCharsets.US_ASCII));
+        assertFalse(frame.decodeBinary(json));
+        assertEquals(0, json.position());
+
+        ByteBuffer wrongVersion = ByteBuffer.allocate(CommandFrame.SIZE);
+        new CommandFrame().encodeBinary(wrongVersion);
+        wrongVersion.put(1, (byte) (CommandFrame.VERSION + 1)).flip();
+        assertFalse(frame.decodeBinary(wrongVersion));
+
+        ByteBuffer truncated = ByteBuffer.allocate(CommandFrame.SIZE - 1);
+        truncated.put(CommandFrame.MAGIC).put(CommandFrame.VERSION).flip();
+        assertFalse(frame.decodeBinary(truncated));
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void encodeBinary_failsWithoutRoom() {
+        new CommandFrame().encodeBinary(ByteBuffer.allocate(CommandFrame.SIZE - 1));
+    }
+
+    @Test
+    public void jsonFrame_keepsTheKeyOrderOfOlderFirmware() {
+        ByteBuffer buffer = ByteBuffer.allocate(CommandFrame.MAX_JSON_SIZE);
+
+        new CommandFrame().set(9, 100, 1, 0, 2).encodeJson(buffer);
+        buffer.flip();
+
+        assertEquals("{\"left_motor_speed\":9,\"right_motor_speed\":100,\"direction\":1,"
+                        + "\"driving_mode\":0,\"driving_algorithm\":2}",
+                StandardCharsets.US_ASCII.decode(buffer).toString());
+    }
+
+    @Test
+    public void jsonFrame_parsesAsJsonObject() throws Exception {
+        int[][] commands = {
+                {0, 0, 0, 0, 0},
+                {255, 255, 1, 1, 2},
+                {9, 10, 1, 0, 1},
+                {99, 100, 0, 1, 0},
+        };
+        ByteBuffer buffer = ByteBuffer.allocate(CommandFrame.MAX_JSON_SIZE);
+        CommandFrame frame = new CommandFrame();
+
+        //  The key order of JSONObject.toString() differs between org.json builds, the fields do not
+        for (int[] command : commands) {
+            buffer.clear();
+            frame.set(command[0], command[1], command[2], command[3], command[4]).encodeJson(buffer);
+            buffer.flip();
+
+            JSONObject json = new JSONObject(StandardCharsets.US_ASCII.decode(buffer).toString());
+            assertEquals(5, json.length());
+            assertEquals(command[0], json.getInt("left_motor_speed"));
+            assertEquals(command[1], json.getInt("right_motor_speed"));
+            assertEquals(command[2], json.getInt("direction"));
+            assertEquals(command[3], json.getInt("driving_mode"));
+            assertEquals(command[4], json.getInt("driving_algorithm"));
+        }
+    }
+
+    @Test
+    public void jsonFrame_fitsMaximumSize() {
+        ByteBuffer buffer = ByteBuffer.allocate(CommandFrame.MAX_JSON_SIZE);
+
+        new CommandFrame()
+                .set(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE,
+                        Integer.MIN_VALUE, Integer.MIN_VALUE)
+                .encodeJson(buffer);
+
+        assertEquals(CommandFrame.MAX_JSON_SIZE, buffer.position());
+    }
+
+    @Test
+    public void redundantFrame_carriesDeltaCompressedHistory() {
+        CommandHistory history = new CommandHistory(CommandFrame.MAX_REDUNDANCY);
+        history.add(DriveState.pack(90, 90, 1, 0, 0));
+        history.add(DriveState.pack(100, 90, 1, 0, 0));
+        history.add(DriveState.pack(100, 90, 1, 0, 0));
+
+        ByteBuffer buffer = ByteBuffer.allocate(CommandFrame.MAX_REDUNDANT_SIZE);
+        new CommandFrame().set(100, 110, 0, 0, 0).stamp(7, 1234).encodeRedundant(buffer, history, 3);
+
+        //  Right speed and direction changed, nothing changed, left speed changed
+        assertEquals(CommandFrame.SIZE + 1 + 3 + 1 + 2, buffer.position());
+        buffer.flip();
+
+        CommandFrame decoded = new CommandFrame();
+        assertTrue(decoded.decodeBinary(buffer));
+        assertFalse(buffer.hasRemaining());
+        assertEquals(110, decoded.rightMotorSpeed);
+        assertEquals(7, decoded.sequence);
+        assertEquals(1234, decoded.timestamp);
+        assertEquals(3, decoded.historyCount);
+        assertEquals(DriveState.pack(100, 90, 1, 0, 0), decoded.history[0]);
+        assertEquals(DriveState.pack(100, 90, 1, 0, 0), decoded.history[1]);
+        assertEquals(DriveState.pack(90, 90, 1, 0, 0), decoded.history[2]);
+    }
+
+    @Test
+    public void redundantFrame_withTruncatedHistory_isRejected() {
+        CommandHistory history = new CommandHistory(2);
+        history.add(DriveState.pack(1, 2, 0, 1, 2));
+        history.add(DriveState.pack(3, 4, 1, 0, 1));
+
+        ByteBuffer buffer = ByteBuffer.allocate(CommandFrame.MAX_REDUNDANT_SIZE);
+        new CommandFrame().set(5, 6, 0, 0, 0).stamp(2, 0).encodeRedundant(buffer, history, 2);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+
+        CommandFrame decoded = new CommandFrame();
+        assertFalse(decoded.decodeBinary(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void history_forgetsTheOldestCommand() {
+        CommandHistory history = new CommandHistory(2);
+        history.add(1);
+        history.add(2);
+        history.add(3);
+
+        assertEquals(2, history.size());
+        assertEquals(3, history.get(0));
+        assertEquals(2, history.get(1));
+
+        history.clear();
+        assertEquals(0, history.size());
+    }
+}
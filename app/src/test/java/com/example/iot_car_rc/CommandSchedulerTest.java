@@ -0,0 +1,93 @@
+package com.example.iot_car_rc;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the fixed-rate command scheduler.
+ * Ticks are driven by hand, the sender is not started so published commands stay in its mailbox.
+ */
+public class CommandSchedulerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final DriveState driveState = new DriveState();
+    private final CommandSender sender = new CommandSender((l, r, d, m, a) -> { });
+    private final CommandFilter filter = new CommandFilter(1, 0, 200);
+    private final CommandScheduler scheduler = new CommandScheduler(driveState, sender, filter, 50);
+
+    @Test
+    public void noStateSet_publishesNothing() {
+        assertFalse(scheduler.onTick(0));
+        assertFalse(scheduler.onTick(1_000 * MS));
+        assertEquals(0, sender.getPublishedCount());
+    }
+
+    @Test
+    public void changedState_isPublishedOnNextTick() {
+        driveState.set(100, 50, 1, 0, 0);
+        assertTrue(scheduler.onTick(0));
+
+        driveState.set(120, 50, 1, 0, 0);
+        assertTrue(scheduler.onTick(20 * MS));
+
+        assertEquals(0, filter.getSuppressedCount());
+        assertEquals(2, sender.getPublishedCount());
+    }
+
+    @Test
+    public void unchangedState_isOnlyRepeatedAsKeepalive() {
+        driveState.set(100, 50, 1, 0, 0);
+
+        int published = 0;
+        for (long tick = 0; tick <= 1_000; tick += 20) {
+            if (scheduler.onTick(tick * MS)) {
+                published++;
+            }
+        }
+
+        //  The first command and a keepalive at 200, 400, 600, 800 and 1000 ms
+        assertEquals(6, published);
+        assertEquals(5, filter.getRefreshCount());
+        assertEquals(45, filter.getSuppressedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroRate_isRejected() {
+        scheduler.setRate(0);
+    }
+
+    @Test
+    public void runningScheduler_recordsTickLateness() throws InterruptedException {
+        scheduler.setRate(100);
+        scheduler.start();
+        Thread.sleep(200);
+        scheduler.stop();
+
+        LatencyHistogram lateness = scheduler.getTickLateness();
+        assertTrue(lateness.getCount() >= 10);
+        assertTrue(lateness.getPercentile(0.5) <= lateness.getMax());
+    }
+
+    @Test
+    public void onTimeTick_isFollowedOnePeriodLater() {
+        assertEquals(20 * MS, FixedRateLoop.nextDeadline(0, 3 * MS, 20 * MS));
+    }
+
+    @Test
+    public void missedTicks_areSkippedInPhase() {
+        //  Ticks due at 20, 40 and 60 ms were missed entirely by a tick run at 75 ms
+        assertEquals(80 * MS, FixedRateLoop.nextDeadline(0, 75 * MS, 20 * MS));
+    }
+
+    @Test
+    public void deadlines_surviveTheWraparoundOfTheClock() {
+        long deadline = Long.MAX_VALUE - 5 * MS;
+
+        //  A late tick just past the wraparound is still only one period behind
+        assertEquals(deadline + 20 * MS, FixedRateLoop.nextDeadline(deadline, deadline + 30 * MS, 20 * MS));
+        assertEquals(deadline + 80 * MS, FixedRateLoop.nextDeadline(deadline, deadline + 75 * MS, 20 * MS));
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.iot_car_rc;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the latest-wins command sender.
+ */
+public class CommandSenderTest {
+    private CommandSender sender;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (sender != null) {
+            sender.stop();
+        }
+    }
+
+    @Test
+    public void publish_sendsCommandValues() throws Exception {
+        int[] received = new int[5];
+        CountDownLatch sent = new CountDownLatch(1);
+
+        sender = new CommandSender((left, right, direction, mode, algorithm) -> {
+            received[0] = left;
+            received[1] = right;
+            received[2] = direction;
+            received[3] = mode;
+            received[4] = algorithm;
+            sent.countDown();
+        });
+        sender.start();
+        sender.publish(255, 128, 1, 1, 2);
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertArrayEquals(new int[]{255, 128, 1, 1, 2}, received);
+    }
+
+    @Test
+    public void publish_whileSending_keepsOnlyLatestCommand() throws Exception {
+        CountDownLatch firstStarted = new CountDownLatch(1);
+        CountDownLatch releaseFirst = new CountDownLatch(1);
+        CountDownLatch secondSent = new CountDownLatch(1);
+        int[] lastLeft = new int[1];
+
+        sender = new CommandSender((left, right, direction, mode, algorithm) -> {
+            if (firstStarted.getCount() > 0) {
+                firstStarted.countDown();
+                await(releaseFirst);
+            } else {
+                lastLeft[0] = left;
+                secondSent.countDown();
+            }
+        });
+        sender.start();
+
+        sender.publish(1, 0, 1, 0, 0);
+        assertTrue(firstStarted.await(5, TimeUnit.SECONDS));
+
+        //  The sender is busy, all but the last of these are superseded
+        for (int left = 2; left <= 100; left++) {
+            sender.publish(left, 0, 1, 0, 0);
+        }
+        releaseFirst.countDown();
+
+        assertTrue(secondSent.await(5, TimeUnit.SECONDS));
+        sender.stop();
+
+        assertEquals(100, lastLeft[0]);
+        assertEquals(100, sender.getPublishedCount());
+        assertEquals(98, sender.getCoalescedCount());
+        assertEquals(2, sender.getSentCount());
+        assertEquals(0, sender.getFailedCount());
+    }
+
+    @Test
+    public void transmissionFailure_isCountedAndSenderKeepsRunning() throws Exception {
+        CountDownLatch sent = new CountDownLatch(1);
+
+        sender = new CommandSender((left, right, direction, mode, algorithm) -> {
+            if (left == 0) {
+                throw new IOException("unreachable");
+            }
+            sent.countDown();
+        });
+        sender.start();
+
+        sender.publish(0, 0, 1, 0, 0);
+        while (sender.getFailedCount() == 0) {
+            Thread.sleep(1);
+        }
+        sender.publish(1, 0, 1, 0, 0);
+
+        assertTrue(sent.await(5, TimeUnit.SECONDS));
+        assertEquals(1, sender.getFailedCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.iot_car_rc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the command transports over the loopback interface.
+ */
+public class CommandTransportTest {
+    private DatagramChannel car;
+    private InetSocketAddress carAddress;
+
+    @Before
+    public void setUp() throws IOException {
+        car = DatagramChannel.open();
+        car.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        carAddress = (InetSocketAddress) car.getLocalAddress();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        car.close();
+    }
+
+    @Test
+    public void blockingChannel_sendsAndReceives() throws IOException {
+        try (CommandTransport transport = new DatagramChannelTransport(false)) {
+            assertRoundTrip(transport);
+        }
+    }
+
+    @Test
+    public void nonBlockingChannel_sendsAndReceives() throws IOException {
+        try (CommandTransport transport = new DatagramChannelTransport(true)) {
+            assertRoundTrip(transport);
+            assertEquals(0, transport.receive(ByteBuffer.allocate(16), 10));
+        }
+    }
+
+    @Test
+    public void socket_sendsAndReceives() throws IOException {
+        try (CommandTransport transport = new DatagramSocketTransport()) {
+            assertRoundTrip(transport);
+            assertEquals(0, transport.receive(ByteBuffer.allocate(16), 10));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void send_beforeConnect_fails() throws IOException {
+        try (CommandTransport transport = new DatagramChannelTransport(false)) {
+            assertFalse(transport.isConnected());
+            transport.send(ByteBuffer.allocateDirect(CommandFrame.SIZE));
+        }
+    }
+
+    @Test
+    public void nonBlockingChannel_sendsToAnyAddress() throws IOException {
+        try (CommandTransport transport = new DatagramChannelTransport(true)) {
+            assertUnconnectedRoundTrip(transport);
+            assertNull(transport.receiveFrom(ByteBuffer.allocate(16), 10));
+        }
+    }
+
+    @Test
+    public void socket_sendsToAnyAddress() throws IOException {
+        try (CommandTransport transport = new DatagramSocketTransport()) {
+            assertUnconnectedRoundTrip(transport);
+            assertNull(transport.receiveFrom(ByteBuffer.allocate(16), 10));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void sendToAddress_whenConnected_fails() throws IOException {
+        try (CommandTransport transport = new DatagramChannelTransport(false)) {
+            transport.connect(carAddress);
+            transport.send(ByteBuffer.allocateDirect(CommandFrame.SIZE), carAddress);
+        }
+    }
+
+    private void assertUnconnectedRoundTrip(CommandTransport transport) throws IOException {
+        ByteBuffer message = ByteBuffer.allocateDirect(CommandFrame.SIZE);
+        new CommandFrame().set(120, 80, 0, 0, 1).encodeBinary(message);
+        message.flip();
+        assertTrue(transport.send(message, carAddress));
+
+        ByteBuffer received = ByteBuffer.allocate(64);
+        InetSocketAddress sender = (InetSocketAddress) car.receive(received);
+        received.flip();
+        CommandFrame frame = new CommandFrame();
+        assertTrue(frame.decodeBinary(received));
+        assertEquals(120, frame.leftMotorSpeed);
+
+        car.send(ByteBuffer.wrap(new byte[]{1, 2, 3}), sender);
+        ByteBuffer reply = ByteBuffer.allocate(16);
+        assertEquals(carAddress, transport.receiveFrom(reply, 1_000));
+        assertEquals(3, reply.position());
+    }
+
+    private void assertRoundTrip(CommandTransport transport) throws IOException {
+        transport.connect(carAddress);
+        assertTrue(transport.isConnected());
+
+        ByteBuffer message = ByteBuffer.allocateDirect(CommandFrame.SIZE);
+        new CommandFrame().set(200, 100, 1, 0, 2).encodeBinary(message);
+        message.flip();
+        assertTrue(transport.send(message));
+
+        ByteBuffer received = ByteBuffer.allocate(64);
+        InetSocketAddress sender = (InetSocketAddress) car.receive(received);
+        received.flip();
+        CommandFrame frame = new CommandFrame();
+        assertTrue(frame.decodeBinary(received));
+        assertEquals(200, frame.leftMotorSpeed);
+
+        //  The car replies to wherever the command came from
+        car.send(ByteBuffer.wrap(new byte[]{1, 2, 3}), sender);
+        ByteBuffer reply = ByteBuffer.allocate(16);
+        assertEquals(3, transport.receive(reply, 1_000));
+        assertEquals(3, reply.position());
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.iot_car_rc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the control session, with activities attaching and detaching while commands flow to the simulated car.
+ */
+public class ControlSessionTest {
+    private CarSimulator simulator;
+    private ControlSession session;
+    private FakeWifi wifi;
+    private ManualScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        simulator = new CarSimulator(0);
+        wifi = new FakeWifi();
+        scheduler = new ManualScheduler();
+        session = new ControlSession(
+                wifi,
+                "ESP8266-ACCESS-POINT",
+                scheduler,
+                Runnable::run,
+                connectorOf(simulator)
+        );
+        session.setTransmitter(new CommandTransmitter(new DatagramChannelTransport(true)));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        session.close();
+        simulator.close();
+    }
+
+    @Test
+    public void attachedActivity_getsTheCurrentStateAndItsChanges() {
+        RecordingActivity activity = new RecordingActivity();
+
+        session.attach(activity);
+        assertEquals(WifiConnection.State.CONNECTING, activity.states.get(0));
+
+        wifi.connectedNetworkId = wifi.networkId;
+        session.getWifiConnection().onNetworkConnected();
+        session.onNetworkProgress(R.string.obtaining_wifi_ip_address);
+
+        assertEquals(WifiConnection.State.CONNECTED, activity.states.get(1));
+        assertEquals(1, activity.progress.size());
+
+        session.detach(activity);
+        session.getWifiConnection().onNetworkDisconnected();
+        assertEquals(2, activity.states.size());
+    }
+
+    @Test
+    public void connectedCar_isReportedToTheAttachedActivity() {
+        RecordingActivity activity = new RecordingActivity();
+
+        //  The transmitter connected in setUp, the report waits for the main thread
+        session.attach(activity);
+        assertEquals(0, activity.carConnections);
+        scheduler.runPosted();
+        assertEquals(1, activity.carConnections);
+
+        //  A reconnect is reported again, but not to a detached activity
+        wifi.connectedNetworkId = wifi.networkId;
+        session.getWifiConnection().onNetworkConnected();
+        scheduler.runPosted();
+        assertEquals(2, activity.carConnections);
+
+        session.getWifiConnection().onNetworkDisconnected();
+        session.getWifiConnection().onNetworkConnected();
+        session.detach(activity);
+        scheduler.runPosted();
+        assertEquals(2, activity.carConnections);
+    }
+
+    @Test
+    public void recreatedActivity_keepsTheTransmitterAndTheCommandStream() throws Exception {
+        CommandTransmitter transmitter = session.getTransmitter();
+        RecordingActivity first = new RecordingActivity();
+        RecordingActivity second = new RecordingActivity();
+
+        session.attach(first);
+        transmitter.sendCommand(200, 180, 1, 0, 0);
+        assertTrue(simulator.awaitReceived(1, 2_000));
+
+        //  The new activity attaches before the old one is done detaching, which must not stop the car
+        session.attach(second);
+        session.detach(first);
+
+        assertSame(transmitter, session.getTransmitter());
+        assertTrue(session.isAttached());
+        long received = simulator.getReceivedCount();
+        assertTrue(simulator.awaitReceived(received + 2, 2_000));
+        assertEquals(200, simulator.getLeftMotorSpeed());
+        assertEquals(0, simulator.getReorderedCount());
+    }
+
+    @Test
+    public void backgroundedSession_stopsTheMotorsAndKeepsSending() throws Exception {
+        RecordingActivity activity = new RecordingActivity();
+
+        session.attach(activity);
+        session.getTransmitter().sendCommand(200, 180, 1, 0, 0);
+        assertTrue(simulator.awaitReceived(1, 2_000));
+
+        session.detach(activity);
+        assertFalse(session.isAttached());
+
+        //  Keepalives carry on every 250 ms
+        long received = simulator.getReceivedCount();
+        assertTrue(simulator.awaitReceived(received + 3, 2_000));
+        assertEquals(0, simulator.getLeftMotorSpeed());
+        assertEquals(0, simulator.getRightMotorSpeed());
+        assertEquals(1, simulator.getDirection());
+    }
+
+    @Test
+    public void transmitter_joinsASessionWhichIsAlreadyInUse() throws Exception {
+        List<Runnable> connects = new ArrayList<>();
+        ControlSession early = new ControlSession(
+                new FakeWifi(), "ESP8266-ACCESS-POINT", new ManualScheduler(), connects::add,
+                connectorOf(simulator)
+        );
+        RecordingActivity activity = new RecordingActivity();
+
+        try {
+            early.attach(activity);
+            early.detach(activity);
+            assertNull(early.getTransmitter());
+            assertTrue(connects.isEmpty());
+
+            CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+            early.setTransmitter(transmitter);
+
+            //  The socket is only connected on the connector
+            assertEquals(1, connects.size());
+            connects.get(0).run();
+
+            transmitter.sendCommand(120, 120, 1, 0, 0);
+            assertTrue(simulator.awaitReceived(1, 2_000));
+        } finally {
+            int queued = connects.size();
+            early.close();
+            connects.subList(queued, connects.size()).forEach(Runnable::run);
+        }
+    }
+
+    @Test
+    public void closedSession_closesTheTransmitterOnTheConnector() throws Exception {
+        List<Runnable> connects = new ArrayList<>();
+        ControlSession closing = new ControlSession(
+                new FakeWifi(), "ESP8266-ACCESS-POINT", new ManualScheduler(), connects::add,
+                connectorOf(simulator)
+        );
+        DatagramChannelTransport transport = new DatagramChannelTransport(true);
+
+        closing.setTransmitter(new CommandTransmitter(transport));
+        connects.get(0).run();
+        assertTrue(transport.isConnected());
+
+        //  Closing joins the transmitter's threads, which the main thread must not wait for
+        closing.close();
+        assertTrue(transport.isConnected());
+        assertEquals(2, connects.size());
+
+        connects.get(1).run();
+        assertFalse(transport.isConnected());
+    }
+
+    @Test
+    public void sharedTransmitter_isCreatedOnceUntilClosed() throws Exception {
+        CommandTransmitter first = CommandTransmitter.getInstance();
+
+        try {
+            assertSame(first, CommandTransmitter.getInstance());
+        } finally {
+            first.close();
+        }
+
+        CommandTransmitter second = CommandTransmitter.getInstance();
+        second.close();
+        assertNotSame(first, second);
+    }
+
+    /**
+     * An activity recording what the session reports to it.
+     */
+    private static class RecordingActivity implements ControlSession.Listener {
+        final List<WifiConnection.State> states = new ArrayList<>();
+        final List<Integer> progress = new ArrayList<>();
+        int carConnections;
+
+        @Override
+        public void onStateChanged(WifiConnection.State state) {
+            states.add(state);
+        }
+
+        @Override
+        public void onNetworkProgress(int messageId) {
+            progress.add(messageId);
+        }
+
+        @Override
+        public void onCarConnected() {
+            carConnections++;
+        }
+    }
+
+    /**
+     * A Wi-Fi which is always enabled and connects when told to.
+     */
+    private static class FakeWifi implements WifiController {
+        final int networkId = 3;
+        int connectedNetworkId = NO_NETWORK;
+
+        @Override
+        public boolean isWifiEnabled() {
+            return true;
+        }
+
+        @Override
+        public int addNetwork(String ssid) {
+            return networkId;
+        }
+
+        @Override
+        public boolean connect(int networkId) {
+            return true;
+        }
+
+        @Override
+        public int getConnectedNetworkId() {
+            return connectedNetworkId;
+        }
+    }
+
+    /**
+     * A scheduler whose timers never fire, the tests drive the connection and run the posted tasks themselves.
+     */
+    private static class ManualScheduler implements WifiConnection.Scheduler {
+        //  The tasks posted without a delay, the timers never fire
+        final List<Runnable> posted = new ArrayList<>();
+
+        @Override
+        public long now() {
+            return 0;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            if (delayMs == 0) {
+                posted.add(task);
+            }
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+        }
+
+        void runPosted() {
+            List<Runnable> tasks = new ArrayList<>(posted);
+            posted.clear();
+
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
+    private static CarConnector connectorOf(CarSimulator simulator) throws IOException {
+        InetSocketAddress address = simulator.getAddress();
+
+        return new CarConnector(address, address, new MetricsRegistry(), null);
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.iot_car_rc;
+
+import android.view.KeyEvent;
+
+import com.example.iot_car_rc.core.DriveMixer;
+import com.example.iot_car_rc.core.FloatDriveMixer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the game controller mapping, replaying synthetic axis streams on the JVM.
+ */
+public class GamepadMapperTest {
+    private static final int PAD = 7;
+    private static final int OTHER_PAD = 9;
+
+    private GamepadMapper mapper;
+
+    @Before
+    public void setUp() {
+        mapper = new GamepadMapper();
+    }
+
+    @Test
+    public void restingStick_staysCenteredWithinTheDeadzone() {
+        //  A noisy stick at rest, drifting up to 8% of its range
+        for (int i = 0; i < 200; i++) {
+            float noise = (float) Math.sin(i * 0.7) * 0.08f;
+
+            mapper.onAxes(PAD, noise, -noise, noise / 2, noise);
+
+            for (int axis = 0; axis < GamepadMapper.AXIS_COUNT; axis++) {
+                assertEquals(0, mapper.getOffset(axis));
+            }
+        }
+    }
+
+    @Test
+    public void sweep_risesSmoothlyFromTheDeadzoneToFullOffset() {
+        int last = 0;
+
+        for (int i = 0; i <= 100; i++) {
+            mapper.onAxes(PAD, i / 100f, 0, 0, 0);
+            int offset = mapper.getOffset(GamepadMapper.LEFT_X);
+
+            assertTrue(offset >= last);
+            //  No jump at the edge of the deadzone
+            assertTrue(offset - last <= 2);
+            last = offset;
+        }
+
+        //  A stick just short of the end of its range reaches full offset
+        mapper.onAxes(PAD, 0.96f, 0, 0, 0);
+        assertEquals(100, mapper.getOffset(GamepadMapper.LEFT_X));
+        mapper.onAxes(PAD, -1, 0, 0, 0);
+        assertEquals(-100, mapper.getOffset(GamepadMapper.LEFT_X));
+    }
+
+    @Test
+    public void yAxes_areUpPositive() {
+        mapper.onAxes(PAD, 0, -1, 0, 1);
+
+        assertEquals(100, mapper.getOffset(GamepadMapper.LEFT_Y));
+        assertEquals(-100, mapper.getOffset(GamepadMapper.RIGHT_Y));
+    }
+
+    @Test
+    public void deadzones_arePerDevice() {
+        mapper.setDeadzone(PAD, GamepadMapper.LEFT_X, 0.3f);
+
+        mapper.onAxes(PAD, 0.2f, 0, 0, 0);
+        assertEquals(0, mapper.getOffset(GamepadMapper.LEFT_X));
+
+        mapper.onAxes(OTHER_PAD, 0.2f, 0, 0, 0);
+        assertTrue(mapper.getOffset(GamepadMapper.LEFT_X) > 0);
+    }
+
+    @Test
+    public void calibration_recentersAnOffCenterStick() {
+        //  A worn stick resting at 0.2
+        assertTrue(mapper.onAxes(PAD, 0.2f, 0, 0, 0));
+        assertTrue(mapper.getOffset(GamepadMapper.LEFT_X) > 0);
+
+        assertTrue(mapper.calibrate(PAD));
+        mapper.onAxes(PAD, 0.21f, 0, 0, 0);
+        assertEquals(0, mapper.getOffset(GamepadMapper.LEFT_X));
+
+        //  Both ends are still reached
+        mapper.onAxes(PAD, 1, 0, 0, 0);
+        assertEquals(100, mapper.getOffset(GamepadMapper.LEFT_X));
+        mapper.onAxes(PAD, -1, 0, 0, 0);
+        assertEquals(-100, mapper.getOffset(GamepadMapper.LEFT_X));
+        assertFalse(mapper.calibrate(OTHER_PAD));
+    }
+
+    @Test
+    public void unchangedSamples_areNotReported() {
+        assertTrue(mapper.onAxes(PAD, 0.5f, 0, 0, 0));
+        assertFalse(mapper.onAxes(PAD, 0.5f, 0, 0, 0));
+        assertFalse(mapper.onAxes(PAD, 0.5f, 0.01f, 0, 0));
+    }
+
+    @Test
+    public void disconnectedController_centersTheSticks() {
+        mapper.onAxes(PAD, 0, -1, 0, 0);
+        mapper.onAxes(OTHER_PAD, 0, -1, 0, 0);
+
+        //  Only the controller the offsets follow centers them
+        assertFalse(mapper.removeDevice(PAD));
+        assertEquals(100, mapper.getOffset(GamepadMapper.LEFT_Y));
+        assertTrue(mapper.removeDevice(OTHER_PAD));
+        assertEquals(0, mapper.getOffset(GamepadMapper.LEFT_Y));
+        assertFalse(mapper.hasDevice(OTHER_PAD));
+    }
+
+    @Test
+    public void controllers_beyondTheSlotsReuseThem() {
+        for (int deviceId = 0; deviceId < GamepadMapper.MAX_DEVICES * 2; deviceId++) {
+            mapper.onAxes(deviceId, 1, 0, 0, 0);
+            assertEquals(100, mapper.getOffset(GamepadMapper.LEFT_X));
+        }
+
+        assertTrue(mapper.hasDevice(GamepadMapper.MAX_DEVICES * 2 - 1));
+        assertFalse(mapper.hasDevice(0));
+    }
+
+    @Test
+    public void buttons_mapToModeAndAlgorithmSwitches() {
+        assertEquals(GamepadMapper.Action.TOGGLE_DRIVING_MODE, GamepadMapper.actionOf(KeyEvent.KEYCODE_BUTTON_START));
+        assertEquals(GamepadMapper.Action.CALIBRATE, GamepadMapper.actionOf(KeyEvent.KEYCODE_BUTTON_SELECT));
+        assertEquals(DrivingAlgorithm.SIMPLE,
+                GamepadMapper.actionOf(KeyEvent.KEYCODE_BUTTON_X).getDrivingAlgorithm());
+        assertEquals(DrivingAlgorithm.ADVANCED,
+                GamepadMapper.actionOf(KeyEvent.KEYCODE_BUTTON_Y).getDrivingAlgorithm());
+        assertEquals(DrivingAlgorithm.COMPLEX,
+                GamepadMapper.actionOf(KeyEvent.KEYCODE_BUTTON_B).getDrivingAlgorithm());
+        assertEquals(GamepadMapper.Action.NONE, GamepadMapper.actionOf(KeyEvent.KEYCODE_DPAD_UP));
+    }
+
+    @Test
+    public void tankStream_drivesTheMixerLikeTheJoystickView() {
+        DriveMixer mixer = new FloatDriveMixer();
+
+        //  Both sticks pushed forward, the right one half way
+        mapper.onAxes(PAD, 0, -1, 0, -0.5f);
+        StickLayout.TANK.mix(
+                mixer,
+                mapper.getOffset(GamepadMapper.LEFT_X),
+                mapper.getOffset(GamepadMapper.LEFT_Y),
+                mapper.getOffset(GamepadMapper.RIGHT_X),
+                mapper.getOffset(GamepadMapper.RIGHT_Y)
+        );
+
+        assertEquals(DriveMixer.FORWARD, mixer.getDirection());
+        assertTrue(mixer.getLeftMotorSpeed() > mixer.getRightMotorSpeed());
+        assertTrue(mixer.getRightMotorSpeed() > 0);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.iot_car_rc;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the fixed-bucket latency histogram.
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void emptyHistogram_reportsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.99));
+    }
+
+    @Test
+    public void smallValues_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int value = 1; value <= 15; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(15, histogram.getCount());
+        assertEquals(8, histogram.getPercentile(0.5));
+        assertEquals(15, histogram.getPercentile(1.0));
+        assertEquals(1, histogram.getPercentile(0.0));
+    }
+
+    @Test
+    public void percentiles_stayWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (long value = 1; value <= 100_000; value++) {
+            histogram.record(value * 1_000);
+        }
+
+        assertEquals(100_000_000, histogram.getMax());
+        assertEquals(50_000_000, histogram.getPercentile(0.50), 50_000_000 * 0.125);
+        assertEquals(95_000_000, histogram.getPercentile(0.95), 95_000_000 * 0.125);
+        assertEquals(99_000_000, histogram.getPercentile(0.99), 99_000_000 * 0.125);
+        assertTrue(histogram.getPercentile(0.99) >= 99_000_000);
+        assertEquals(100_000_000, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void negativeValues_areRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-5);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(1.0));
+    }
+
+    @Test
+    public void largestValue_isSupported() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(0.5));
+    }
+
+    @Test
+    public void reset_clearsValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(1_000);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(0.5));
+    }
+}
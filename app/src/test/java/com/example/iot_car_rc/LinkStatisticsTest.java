@@ -0,0 +1,118 @@
+package com.example.iot_car_rc;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the link statistics.
+ */
+public class LinkStatisticsTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void percentiles_comeFromRecentRoundTrips() {
+        LinkStatistics statistics = new LinkStatistics(100);
+
+        for (int sequence = 0; sequence < 100; sequence++) {
+            statistics.onSent(sequence, 0);
+            statistics.onAck(sequence, (sequence + 1) * MS);
+        }
+
+        assertEquals(50 * MS, statistics.getRoundTripPercentile(0.5));
+        assertEquals(95 * MS, statistics.getRoundTripPercentile(0.95));
+        assertEquals(99 * MS, statistics.getRoundTripPercentile(0.99));
+        assertEquals(100 * MS, statistics.getMaxRoundTrip());
+    }
+
+    @Test
+    public void oldRoundTrips_leaveTheWindow() {
+        LinkStatistics statistics = new LinkStatistics(100);
+
+        for (int sequence = 0; sequence < LinkStatistics.WINDOW * 2; sequence++) {
+            statistics.onSent(sequence, 0);
+            statistics.onAck(sequence, sequence < LinkStatistics.WINDOW ? 500 * MS : MS);
+        }
+
+        assertEquals(MS, statistics.getMaxRoundTrip());
+    }
+
+    @Test
+    public void unacknowledgedCommands_countAsLostAfterTimeout() {
+        LinkStatistics statistics = new LinkStatistics(100);
+
+        for (int sequence = 0; sequence < 10; sequence++) {
+            statistics.onSent(sequence, 0);
+
+            if (sequence % 4 != 0) {
+                statistics.onAck(sequence, MS);
+            }
+        }
+
+        //  Nothing is settled before the timeout elapses
+        assertEquals(0, statistics.getLossRate(50 * MS), 0);
+        assertEquals(0.3, statistics.getLossRate(100 * MS), 1e-9);
+        assertEquals(7, statistics.getAcknowledgedCount());
+    }
+
+    @Test
+    public void smoothedRoundTrip_followsADelayWithinAFewDozenAcks() {
+        LinkStatistics statistics = new LinkStatistics(100);
+
+        for (int sequence = 0; sequence < 100; sequence++) {
+            statistics.onSent(sequence, 0);
+            statistics.onAck(sequence, MS);
+        }
+
+        assertEquals(MS, statistics.getSmoothedRoundTrip());
+
+        for (int sequence = 100; sequence < 140; sequence++) {
+            statistics.onSent(sequence, 0);
+            statistics.onAck(sequence, 51 * MS);
+        }
+
+        assertTrue(statistics.getSmoothedRoundTrip() > 49 * MS);
+        assertEquals(MS, statistics.getMinRoundTrip());
+    }
+
+    @Test
+    public void lossRate_canBeLimitedToRecentlySettledCommands() {
+        LinkStatistics statistics = new LinkStatistics(100);
+
+        //  Every command sent in the first second is lost, none of those sent in the next one
+        for (int sequence = 0; sequence < 20; sequence++) {
+            statistics.onSent(sequence, sequence * 100 * MS);
+
+            if (sequence >= 10) {
+                statistics.onAck(sequence, MS);
+            }
+        }
+
+        long now = 2_100 * MS;
+
+        assertEquals(0.5, statistics.getLossRate(now), 1e-9);
+        assertEquals(0, statistics.getLossRate(now, 500 * MS), 0);
+    }
+
+    @Test
+    public void duplicateAndUnknownAcks_areIgnored() {
+        LinkStatistics statistics = new LinkStatistics(100);
+
+        statistics.onSent(7, 0);
+        assertTrue(statistics.onAck(7, MS));
+        assertFalse(statistics.onAck(7, 2 * MS));
+        assertFalse(statistics.onAck(8, MS));
+
+        assertEquals(1, statistics.getAcknowledgedCount());
+        assertEquals(1, statistics.getDuplicateCount());
+        assertEquals(1, statistics.getUnexpectedCount());
+        assertEquals(MS, statistics.getMaxRoundTrip());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void timeout_mustBePositive() {
+        new LinkStatistics(0);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.iot_car_rc;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the metrics registry, report and dumper.
+ */
+public class MetricsTest {
+
+    @Test
+    public void registry_returnsTheSameMetricForAName() {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        MetricsRegistry.Counter counter = registry.counter("a.count");
+        counter.increment();
+        counter.add(4);
+
+        assertSame(counter, registry.counter("a.count"));
+        assertEquals(5, registry.counter("a.count").get());
+        assertSame(registry.histogram("a.time_ns"), registry.histogram("a.time_ns"));
+        assertEquals(2, registry.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void registry_rejectsAnotherKindOfMetric() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("a.count");
+        registry.histogram("a.count");
+    }
+
+    @Test
+    public void report_writesEveryMetricWithCounterRates() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Counter counter = registry.counter("a.count");
+        registry.gauge("a.gauge", () -> 42);
+        LatencyHistogram histogram = registry.histogram("a.time_ns");
+        histogram.record(100);
+
+        MetricsReport report = new MetricsReport(registry);
+        long now = 1_000_000_000L;
+
+        assertEquals("a.count 0\na.gauge 42\na.time_ns n=1 p50=100 p99=100 max=100\n",
+                report.write(now).toString());
+
+        counter.add(25);
+        assertEquals("a.count 25 50/s\na.gauge 42\na.time_ns n=1 p50=100 p99=100 max=100\n",
+                report.write(now + TimeUnit.MILLISECONDS.toNanos(500)).toString());
+    }
+
+    @Test
+    public void removedMetric_leavesTheReport() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.gauge("a.gauge", () -> 42);
+        MetricsRegistry.Counter first = registry.counter("a.count");
+        MetricsRegistry.Counter second = registry.counter("b.count");
+
+        MetricsReport report = new MetricsReport(registry);
+        long now = 1_000_000_000L;
+        first.add(10);
+        report.write(now);
+
+        assertTrue(registry.remove("a.gauge"));
+        assertFalse(registry.remove("a.gauge"));
+        assertEquals(2, registry.size());
+
+        //  The counters moved up a line, they are not given the rates of their new neighbours
+        second.add(5);
+        assertEquals("a.count 10\nb.count 5\n", report.write(now + TimeUnit.SECONDS.toNanos(1)).toString());
+        assertEquals("a.count 10 0/s\nb.count 5 0/s\n",
+                report.write(now + TimeUnit.SECONDS.toNanos(2)).toString());
+        assertSame(first, registry.counter("a.count"));
+    }
+
+    @Test
+    public void dumper_appendsReportsAndMovesLargeFilesAside() throws IOException {
+        File file = File.createTempFile("metrics", ".txt");
+        File old = new File(file.getPath() + ".old");
+
+        try {
+            MetricsRegistry registry = new MetricsRegistry();
+            registry.counter("a.count").increment();
+            MetricsDumper dumper = new MetricsDumper(registry, file, 1_000);
+
+            assertTrue(dumper.dump());
+            assertTrue(dumper.dump());
+
+            String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+            assertEquals(2, text.split("# ").length - 1);
+            assertTrue(text.contains("a.count 1\n"));
+
+            try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+                raw.setLength(MetricsDumper.MAX_FILE_SIZE + 1);
+            }
+
+            assertTrue(dumper.dump());
+            assertEquals(MetricsDumper.MAX_FILE_SIZE + 1, old.length());
+            assertTrue(file.length() < 100);
+        } finally {
+            file.delete();
+            old.delete();
+        }
+    }
+
+    @Test
+    public void transmitter_countsSentCommandsAndBytes() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        try (CarSimulator simulator = new CarSimulator(0)) {
+            CommandTransmitter transmitter =
+                    new CommandTransmitter(new DatagramChannelTransport(true), registry);
+
+            try {
+                transmitter.setInetAddress("127.0.0.1", simulator.getPort());
+                transmitter.sendCommand(100, 100, 1, 0, 0);
+                assertTrue(simulator.awaitReceived(3, 2_000));
+            } finally {
+                transmitter.close();
+            }
+        }
+
+        long sent = registry.counter("transmitter.commands_sent").get();
+        assertTrue(sent >= 3);
+        assertEquals(sent * CommandFrame.SIZE, registry.counter("transmitter.bytes_sent").get());
+        assertEquals(sent, registry.histogram("transmitter.send_ns").getCount());
+        assertEquals(0, registry.counter("transmitter.send_failures").get());
+    }
+}
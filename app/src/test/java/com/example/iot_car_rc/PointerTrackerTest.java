@@ -0,0 +1,96 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+import com.example.iot_car_rc.core.FloatDriveMixer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the pointer tracker, with fingers holding the sticks of a 2000 x 1000 pixels dual-stick view.
+ */
+public class PointerTrackerTest {
+    private PointerTracker tracker;
+
+    @Before
+    public void setUp() {
+        tracker = new PointerTracker();
+        tracker.setupLayout(2, 2000);
+    }
+
+    @Test
+    public void pointers_takeTheStickOfTheirHalf() {
+        assertEquals(0, tracker.onPointerDown(0, 300));
+        assertEquals(1, tracker.onPointerDown(1, 1700));
+
+        assertEquals(0, tracker.getPointerId(0));
+        assertEquals(1, tracker.getPointerId(1));
+        assertEquals(1, tracker.getStick(1));
+    }
+
+    @Test
+    public void secondFingerOnAHeldStick_isIgnored() {
+        tracker.onPointerDown(0, 300);
+
+        assertEquals(PointerTracker.NO_STICK, tracker.onPointerDown(1, 700));
+        assertEquals(PointerTracker.NO_STICK, tracker.onPointerUp(1));
+        assertEquals(0, tracker.getPointerId(0));
+    }
+
+    @Test
+    public void liftingOneFinger_keepsTheOtherStickHeld() {
+        tracker.onPointerDown(5, 300);
+        tracker.onPointerDown(8, 1700);
+
+        assertEquals(0, tracker.onPointerUp(5));
+        assertEquals(PointerTracker.NO_POINTER, tracker.getPointerId(0));
+        assertEquals(8, tracker.getPointerId(1));
+
+        //  The freed stick is taken by the next finger on its half
+        assertEquals(0, tracker.onPointerDown(2, 100));
+    }
+
+    @Test
+    public void singleStick_takesEveryPointerOnTheView() {
+        tracker.setupLayout(1, 2000);
+
+        assertEquals(0, tracker.onPointerDown(3, 1900));
+        assertEquals(PointerTracker.NO_STICK, tracker.onPointerDown(4, 100));
+    }
+
+    @Test
+    public void pointersPastTheEdges_takeTheOuterSticks() {
+        assertEquals(0, tracker.onPointerDown(0, -5));
+        assertEquals(1, tracker.onPointerDown(1, 2000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stickCount_mustBeSupported() {
+        tracker.setupLayout(3, 2000);
+    }
+
+    @Test
+    public void layouts_mixBothSticksIntoOneDriveState() {
+        DriveMixer mixer = new FloatDriveMixer();
+
+        //  Throttle on the left stick, steering on the right one
+        StickLayout.SPLIT.mix(mixer, 100, 100, 0, -100);
+        assertEquals(DriveMixer.FORWARD, mixer.getDirection());
+        assertEquals(mixer.getLeftMotorSpeed(), mixer.getRightMotorSpeed());
+
+        StickLayout.SPLIT.mix(mixer, 0, 100, 100, 0);
+        assertTrue(mixer.getLeftMotorSpeed() > mixer.getRightMotorSpeed());
+
+        //  One stick per motor
+        StickLayout.TANK.mix(mixer, 0, 100, 0, 50);
+        assertTrue(mixer.getLeftMotorSpeed() > mixer.getRightMotorSpeed());
+        assertTrue(mixer.getRightMotorSpeed() > 0);
+
+        //  The right stick is ignored with a single stick
+        StickLayout.SINGLE.mix(mixer, 0, 0, 100, 100);
+        assertEquals(0, mixer.getLeftMotorSpeed());
+        assertEquals(0, mixer.getRightMotorSpeed());
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.iot_car_rc;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the rate controller, alone and adapting a transmitter to the simulated car.
+ */
+public class RateControllerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void queueingLink_halvesTheRateDownToTheMinimum() {
+        RateController controller = new RateController(10, 50, 4, 1_000);
+
+        assertEquals(RateController.Decision.BACK_OFF, controller.update(0, 40 * MS, MS, 0));
+        assertEquals(25, controller.getRate());
+        assertEquals(RateController.Decision.BACK_OFF, controller.update(0, 40 * MS, MS, 0));
+        assertEquals(RateController.Decision.BACK_OFF, controller.update(0, 40 * MS, MS, 0));
+        assertEquals(10, controller.getRate());
+        assertEquals(RateController.Decision.HOLD, controller.update(0, 40 * MS, MS, 0));
+
+        //  A smoothed round trip within the slack of the smallest one is not queueing
+        RateController other = new RateController(10, 50, 4, 1_000);
+        assertEquals(RateController.Decision.HOLD, other.update(0, 3 * MS, MS, 0));
+    }
+
+    @Test
+    public void sendErrors_backOff() {
+        RateController controller = new RateController(10, 50, 4, 1_000);
+
+        assertEquals(RateController.Decision.BACK_OFF, controller.update(0, MS, MS, 1));
+        assertEquals(25, controller.getRate());
+    }
+
+    @Test
+    public void lossyLink_addsRedundancyThenLowersTheRate() {
+        RateController controller = new RateController(10, 50, 2, 1_000);
+
+        assertEquals(RateController.Decision.REDUNDANCY_UP, controller.update(0.2, MS, MS, 0));
+        assertEquals(RateController.Decision.REDUNDANCY_UP, controller.update(0.2, MS, MS, 0));
+        assertEquals(2, controller.getRedundancy());
+        assertEquals(RateController.Decision.BACK_OFF, controller.update(0.2, MS, MS, 0));
+        assertEquals(45, controller.getRate());
+
+        //  Some loss between the thresholds changes nothing
+        assertEquals(RateController.Decision.HOLD, controller.update(0.03, MS, MS, 0));
+    }
+
+    @Test
+    public void cleanLink_rampsUpAndDropsRedundancySlowly() {
+        RateController controller = new RateController(10, 50, 4, 1_000);
+        controller.update(0.2, MS, MS, 0);
+        controller.update(0, 40 * MS, MS, 0);
+
+        assertEquals(1, controller.getRedundancy());
+        assertEquals(25, controller.getRate());
+
+        assertEquals(RateController.Decision.RAMP_UP, controller.update(0, MS, MS, 0));
+        assertEquals(RateController.Decision.RAMP_UP, controller.update(0, MS, MS, 0));
+        assertEquals(35, controller.getRate());
+        assertEquals(RateController.Decision.REDUNDANCY_DOWN, controller.update(0, MS, MS, 0));
+        assertEquals(0, controller.getRedundancy());
+
+        for (int interval = 0; interval < 10; interval++) {
+            controller.update(0, MS, MS, 0);
+        }
+
+        assertEquals(50, controller.getRate());
+        assertEquals(RateController.Decision.HOLD, controller.update(0, MS, MS, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bounds_mustBeOrdered() {
+        new RateController(50, 10, 0, 1_000);
+    }
+
+    @Test
+    public void transmitter_adaptsToInjectedLossAndDelay() throws Exception {
+        MetricsRegistry metrics = new MetricsRegistry();
+
+        try (CarSimulator simulator = new CarSimulator(0)) {
+            CommandTransmitter transmitter =
+                    new CommandTransmitter(new DatagramChannelTransport(true), metrics);
+
+            try {
+                transmitter.setRateController(new RateController(10, 50, 4, 200));
+                transmitter.setInetAddress("127.0.0.1", simulator.getPort());
+
+                simulator.setLossRate(0.3);
+                assertTrue(drive(transmitter, () -> metrics.counter("rate.redundancy_ups").get() > 0));
+                assertTrue(drive(transmitter, () -> simulator.getRecoveredCount() > 0));
+
+                simulator.setLossRate(0);
+                simulator.setDelay(30, 40);
+                assertTrue(drive(transmitter, () -> transmitter.getCommandScheduler().getRate() == 10));
+                assertTrue(metrics.counter("rate.back_offs").get() >= 2);
+
+                simulator.setDelay(0, 0);
+                assertTrue(drive(transmitter, () -> transmitter.getCommandScheduler().getRate() > 20));
+                assertTrue(metrics.counter("rate.ramp_ups").get() > 0);
+            } finally {
+                transmitter.close();
+            }
+        }
+    }
+
+    /**
+     * Moves the joystick every few milliseconds, so every tick sends a command, until the condition holds.
+     *
+     * @return True if the condition held within ten seconds, false otherwise.
+     */
+    private static boolean drive(CommandTransmitter transmitter, BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        for (int i = 0; System.nanoTime() < deadline; i++) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+
+            transmitter.sendCommand(20 + i * 7 % 200, 100, 1, 0, 0);
+            Thread.sleep(5);
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.iot_car_rc;
+
+import java.util.Random;
+
+/**
+ * Represents a synthetic sensor trace, the telemetry a car would send while driving in a walled corridor.
+ * The corridor runs along the y axis between x = -width / 2 and x = width / 2, from y = 0 to y = length.
+ * The three sensors are rays cast forward, to the left and to the right of the car, reading NO_READING
+ * past their range. Gaussian noise and lost echoes may be added, seeded so a trace is repeatable.
+ *
+ * <p>The trace is closed-loop: it is the output of the engine, and the motor speeds the engine decides on
+ * move the car, differential drive style, so the next frames see the walls from where the algorithm took it.
+ */
+class SensorTrace implements AutonomousEngine.Output {
+    static final int MAX_RANGE_MM = 4000;
+    //  The speed of a motor at full speed, and the distance between the wheels
+    static final double MAX_WHEEL_SPEED_MM_PER_S = 1000;
+    static final double TRACK_MM = 150;
+    //  The distance from the middle of the car to its bumpers
+    static final double RADIUS_MM = 100;
+
+    private final double halfWidth;
+    private final double length;
+    private final Random random;
+    private double noiseMm;
+    private double dropoutRate;
+
+    private double x;
+    private double y;
+    //  Radians, 0 is along the corridor, positive to the right
+    private double heading;
+    private long sequence;
+    private boolean collided;
+    private double minClearance = Double.MAX_VALUE;
+    private double distanceMm;
+
+    //  The last command of the engine
+    private int leftMotorSpeed;
+    private int rightMotorSpeed;
+    private int direction = DrivingDirection.FORWARD.getDrivingDirection();
+    private int drivingAlgorithm;
+    private int releaseCount;
+
+    /**
+     * A constructor for SensorTrace
+     *
+     * @param seed     The seed of the noise.
+     * @param widthMm  The width of the corridor.
+     * @param lengthMm The length of the corridor.
+     * @return SensorTrace instance.
+     */
+    SensorTrace(long seed, int widthMm, int lengthMm) {
+        this.random = new Random(seed);
+        this.halfWidth = widthMm / 2.0;
+        this.length = lengthMm;
+    }
+
+    /**
+     * This method places the car in the corridor.
+     *
+     * @param xMm            The position across the corridor, 0 is the middle.
+     * @param yMm            The position along the corridor.
+     * @param headingDegrees The heading, 0 is along the corridor, positive to the right.
+     * @return This trace.
+     */
+    SensorTrace place(double xMm, double yMm, double headingDegrees) {
+        this.x = xMm;
+        this.y = yMm;
+        this.heading = Math.toRadians(headingDegrees);
+
+        return this;
+    }
+
+    /**
+     * This method adds noise to the readings.
+     *
+     * @param noiseMm     The standard deviation of the Gaussian noise.
+     * @param dropoutRate The probability of a lost echo, which reads NO_READING.
+     * @return This trace.
+     */
+    SensorTrace noise(double noiseMm, double dropoutRate) {
+        this.noiseMm = noiseMm;
+        this.dropoutRate = dropoutRate;
+
+        return this;
+    }
+
+    /**
+     * This method reads the sensors from where the car is into the frame, numbering it.
+     *
+     * @param timeMs The car timestamp of the frame.
+     * @param frame  The frame.
+     * @return The frame.
+     */
+    TelemetryFrame sample(int timeMs, TelemetryFrame frame) {
+        frame.sequence = this.sequence++;
+        frame.carTimestamp = timeMs;
+
+        return frame.setSensors(read(this.heading), read(this.heading - Math.PI / 2),
+                read(this.heading + Math.PI / 2), 7400);
+    }
+
+    /**
+     * This method moves the car and notes how close it came to the walls.
+     *
+     * @param leftMotorSpeed  The speed of the left motor, ranges from <0, 255>.
+     * @param rightMotorSpeed The speed of the right motor, ranges from <0, 255>.
+     * @param direction       The driving direction of the car (0 is backward, 1 is forward).
+     * @param elapsedMs       How long the car drives with the speeds.
+     * @return Nothing.
+     */
+    void move(int leftMotorSpeed, int rightMotorSpeed, int direction, int elapsedMs) {
+        double sign = direction == DrivingDirection.FORWARD.getDrivingDirection() ? 1 : -1;
+        double left = sign * leftMotorSpeed * MAX_WHEEL_SPEED_MM_PER_S / 255;
+        double right = sign * rightMotorSpeed * MAX_WHEEL_SPEED_MM_PER_S / 255;
+        double seconds = elapsedMs / 1000.0;
+        double speed = (left + right) / 2;
+
+        this.distanceMm += Math.abs(speed) * seconds;
+        this.heading += (left - right) / TRACK_MM * seconds;
+        this.x += speed * Math.sin(this.heading) * seconds;
+        this.y += speed * Math.cos(this.heading) * seconds;
+
+        double clearance = Math.min(Math.min(this.halfWidth - this.x, this.halfWidth + this.x),
+                Math.min(this.length - this.y, this.y));
+        this.minClearance = Math.min(this.minClearance, clearance);
+
+        if (clearance < RADIUS_MM) {
+            this.collided = true;
+        }
+    }
+
+    @Override
+    public void drive(int leftMotorSpeed, int rightMotorSpeed, int direction, int drivingAlgorithm) {
+        this.leftMotorSpeed = leftMotorSpeed;
+        this.rightMotorSpeed = rightMotorSpeed;
+        this.direction = direction;
+        this.drivingAlgorithm = drivingAlgorithm;
+    }
+
+    @Override
+    public void release(int drivingAlgorithm) {
+        this.releaseCount++;
+        this.drivingAlgorithm = drivingAlgorithm;
+    }
+
+    /**
+     * This method drives the car with the engine, which has the trace as its output, for a while.
+     * A telemetry frame is offered before every tick, as the receiver thread would,
+     * and the car moves with the decided speeds until the next tick.
+     *
+     * @param engine     The engine.
+     * @param durationMs How long to drive.
+     * @param tickMs     The time between two ticks.
+     * @return Nothing.
+     */
+    void run(AutonomousEngine engine, int durationMs, int tickMs) {
+        TelemetryFrame frame = new TelemetryFrame();
+        long start = System.nanoTime();
+
+        for (int timeMs = 0; timeMs < durationMs; timeMs += tickMs) {
+            long now = start + timeMs * 1_000_000L;
+
+            engine.getTelemetry().offer(sample(timeMs, frame), now);
+            engine.tick(now);
+            move(this.leftMotorSpeed, this.rightMotorSpeed, this.direction, tickMs);
+        }
+    }
+
+    boolean hasCollided() {
+        return this.collided;
+    }
+
+    double getMinClearance() {
+        return this.minClearance;
+    }
+
+    double getDistanceMm() {
+        return this.distanceMm;
+    }
+
+    double getY() {
+        return this.y;
+    }
+
+    double getHeadingDegrees() {
+        return Math.toDegrees(this.heading);
+    }
+
+    int getLeftMotorSpeed() {
+        return this.leftMotorSpeed;
+    }
+
+    int getRightMotorSpeed() {
+        return this.rightMotorSpeed;
+    }
+
+    int getDirection() {
+        return this.direction;
+    }
+
+    int getDrivingAlgorithm() {
+        return this.drivingAlgorithm;
+    }
+
+    int getReleaseCount() {
+        return this.releaseCount;
+    }
+
+    private int read(double angle) {
+        double sin = Math.sin(angle);
+        double cos = Math.cos(angle);
+        double distance = Double.MAX_VALUE;
+
+        //  The ray hits the nearest of the four walls it points at
+        if (sin > 1e-9) {
+            distance = Math.min(distance, (this.halfWidth - this.x) / sin);
+        } else if (sin < -1e-9) {
+            distance = Math.min(distance, (this.halfWidth + this.x) / -sin);
+        }
+
+        if (cos > 1e-9) {
+            distance = Math.min(distance, (this.length - this.y) / cos);
+        } else if (cos < -1e-9) {
+            distance = Math.min(distance, this.y / -cos);
+        }
+
+        distance += this.random.nextGaussian() * this.noiseMm;
+
+        if (distance > MAX_RANGE_MM || this.random.nextDouble() < this.dropoutRate) {
+            return TelemetryFrame.NO_READING;
+        }
+
+        return (int) Math.max(0, Math.round(distance));
+    }
+}
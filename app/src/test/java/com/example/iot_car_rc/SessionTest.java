@@ -0,0 +1,244 @@
+package com.example.iot_car_rc;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the session recorder, reader and replayer.
+ */
+public class SessionTest {
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("session", ".rcs");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void recordedSession_readsBack() throws IOException {
+        final int records = 3_000;
+        long start = System.nanoTime();
+
+        try (SessionRecorder recorder = new SessionRecorder(file, Runnable::run)) {
+            for (int i = 0; i < records; i++) {
+                recorder.setSticks(StickLayout.TANK, i % 201 - 100, -(i % 101), i % 51, -(i % 7));
+                recorder.record(start + i * 1_000L, i % 256, 255 - i % 256, i % 2, 0, i % 3);
+            }
+            assertEquals(records, recorder.getRecordCount());
+        }
+
+        assertEquals(SessionRecorder.HEADER_SIZE + records * SessionRecord.SIZE, file.length());
+
+        try (SessionReader reader = new SessionReader(file)) {
+            assertTrue(Math.abs(System.currentTimeMillis() - reader.getStartTimeMillis()) < 60_000);
+
+            SessionRecord record = new SessionRecord();
+            long lastTime = Long.MIN_VALUE;
+
+            for (int i = 0; i < records; i++) {
+                assertTrue(reader.next(record));
+                assertTrue(record.timeNanos > lastTime);
+                lastTime = record.timeNanos;
+                assertEquals(StickLayout.TANK.ordinal(), record.stickLayout);
+                assertEquals(i % 201 - 100, record.leftXOffset);
+                assertEquals(-(i % 101), record.leftYOffset);
+                assertEquals(i % 51, record.rightXOffset);
+                assertEquals(-(i % 7), record.rightYOffset);
+                assertEquals(i % 256, record.leftMotorSpeed);
+                assertEquals(255 - i % 256, record.rightMotorSpeed);
+                assertEquals(i % 2, record.direction);
+                assertEquals(i % 3, record.drivingAlgorithm);
+            }
+
+            assertFalse(reader.next(record));
+        }
+    }
+
+    @Test
+    public void truncatedRecord_isSkipped() throws IOException {
+        try (SessionRecorder recorder = new SessionRecorder(file, Runnable::run)) {
+            recorder.record(System.nanoTime(), 10, 10, 1, 0, 0);
+            recorder.record(System.nanoTime(), 20, 20, 1, 0, 0);
+        }
+
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(raw.length() - 5);
+        }
+
+        try (SessionReader reader = new SessionReader(file)) {
+            SessionRecord record = new SessionRecord();
+            assertTrue(reader.next(record));
+            assertEquals(10, record.leftMotorSpeed);
+            assertFalse(reader.next(record));
+        }
+    }
+
+    @Test
+    public void busyWriter_dropsRecordsInsteadOfBlocking() throws IOException {
+        List<Runnable> writes = new ArrayList<>();
+        SessionRecorder recorder = new SessionRecorder(file, writes::add);
+
+        //  The header and the records fill the first buffer, the second one and spill into a third one
+        for (int i = 0; i < 2 * 1024 + 1; i++) {
+            recorder.record(System.nanoTime(), 10, 10, 1, 0, 0);
+        }
+
+        assertEquals(1, writes.size());
+        assertTrue(recorder.getDroppedCount() > 0);
+        assertEquals(2 * 1024 + 1, recorder.getRecordCount() + recorder.getDroppedCount());
+        assertEquals(0, file.length());
+
+        recorder.close();
+        assertFalse(recorder.awaitWritten(0));
+        writes.forEach(Runnable::run);
+        assertTrue(recorder.awaitWritten(0));
+
+        long records = 0;
+        try (SessionReader reader = new SessionReader(file)) {
+            SessionRecord record = new SessionRecord();
+            while (reader.next(record)) {
+                records++;
+            }
+        }
+        assertEquals(recorder.getRecordCount(), records);
+    }
+
+    @Test
+    public void transmitter_recordsTheCommandsItSends() throws Exception {
+        SessionRecorder recorder = new SessionRecorder(file, Runnable::run);
+        recorder.setSticks(StickLayout.SPLIT, 40, 80, -30, 0);
+
+        try (CarSimulator simulator = new CarSimulator(0)) {
+            CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+
+            try {
+                transmitter.setSessionRecorder(recorder);
+
+                //  Commands which never reach the socket are not recorded
+                transmitter.sendCommand(10, 10, 1, 0, 0);
+                Thread.sleep(100);
+                assertEquals(0, recorder.getRecordCount());
+
+                transmitter.setInetAddress("127.0.0.1", simulator.getPort());
+                transmitter.sendCommand(150, 60, 1, 0, 2);
+                assertTrue(simulator.awaitReceived(1, 2_000));
+            } finally {
+                transmitter.close();
+            }
+        }
+
+        recorder.close();
+        assertTrue(recorder.getRecordCount() > 0);
+
+        try (SessionReader reader = new SessionReader(file)) {
+            SessionRecord record = new SessionRecord();
+            assertTrue(reader.next(record));
+            assertEquals(150, record.leftMotorSpeed);
+            assertEquals(60, record.rightMotorSpeed);
+            assertEquals(2, record.drivingAlgorithm);
+            assertEquals(StickLayout.SPLIT.ordinal(), record.stickLayout);
+            assertEquals(80, record.leftYOffset);
+            assertEquals(-30, record.rightXOffset);
+        }
+    }
+
+    @Test
+    public void oldSessions_areDeleted() throws IOException {
+        File directory = new File(file.getParentFile(), "sessions-" + System.nanoTime());
+        assertTrue(directory.mkdir());
+
+        try {
+            File other = new File(directory, "metrics.txt");
+            assertTrue(other.createNewFile());
+
+            for (long startTime = 1_600_000_000_000L; startTime < 1_600_000_000_005L; startTime++) {
+                assertTrue(new File(directory, SessionRecorder.PREFIX + startTime + SessionRecorder.SUFFIX)
+                        .createNewFile());
+            }
+
+            assertEquals(3, SessionRecorder.deleteOldSessions(directory, 2));
+            assertEquals(0, SessionRecorder.deleteOldSessions(directory, 2));
+            assertTrue(new File(directory, "session-1600000000003.rcs").exists());
+            assertTrue(new File(directory, "session-1600000000004.rcs").exists());
+            assertTrue(other.exists());
+
+            try (SessionRecorder recorder = SessionRecorder.create(directory, Runnable::run)) {
+                assertEquals(directory, recorder.getFile().getParentFile());
+            }
+
+            assertEquals(4, directory.list().length);
+        } finally {
+            for (File child : directory.listFiles()) {
+                child.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFile_isRejected() throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.writeBytes("{\"left_motor_speed\":100}");
+        }
+
+        new SessionReader(file).close();
+    }
+
+    @Test
+    public void replay_keepsTimingAndReachesTheCar() throws Exception {
+        final int records = 50;
+        final long intervalNanos = TimeUnit.MILLISECONDS.toNanos(4);
+        long start = System.nanoTime();
+
+        try (SessionRecorder recorder = new SessionRecorder(file, Runnable::run)) {
+            for (int i = 0; i < records; i++) {
+                recorder.record(start + i * intervalNanos, i * 5, i * 5, 1, 0, 0);
+            }
+        }
+
+        try (CarSimulator simulator = new CarSimulator(0);
+             SessionReader reader = new SessionReader(file)) {
+            CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+
+            try {
+                transmitter.setInetAddress("127.0.0.1", simulator.getPort());
+                SessionReplayer replayer = new SessionReplayer(transmitter);
+
+                long replayStart = System.nanoTime();
+                assertEquals(records, replayer.replay(reader, 2));
+                long elapsed = System.nanoTime() - replayStart;
+
+                //  Twice as fast, the last command is due after 49 * 2 ms
+                assertTrue(elapsed >= (records - 1) * intervalNanos / 2);
+                assertEquals(records, replayer.getDeviation().getCount());
+                assertTrue(replayer.getDeviation().getPercentile(0.5) < TimeUnit.MILLISECONDS.toNanos(1));
+
+                //  The scheduler sends the last drive state on its next tick
+                CarSimulator.await(() -> simulator.getLeftMotorSpeed() == (records - 1) * 5, 2_000);
+                assertEquals((records - 1) * 5, simulator.getLeftMotorSpeed());
+            } finally {
+                transmitter.close();
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void replay_rejectsZeroSpeed() throws IOException {
+        new SessionReplayer(null).replay(null, 0);
+    }
+}
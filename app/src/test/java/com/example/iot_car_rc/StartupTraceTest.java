@@ -0,0 +1,90 @@
+package com.example.iot_car_rc;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the startup trace.
+ */
+public class StartupTraceTest {
+
+    @Test
+    public void sections_recordTheirDurationAndEndFromTheOrigin() throws Exception {
+        long origin = System.nanoTime();
+        StartupTrace trace = new StartupTrace(origin - TimeUnit.MILLISECONDS.toNanos(100));
+
+        int section = trace.begin("transport_open");
+        assertEquals(-1, trace.getDurationNanos("transport_open"));
+        Thread.sleep(20);
+        trace.end(section);
+
+        long duration = trace.getDurationNanos("transport_open");
+        assertTrue(duration >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(trace.getElapsedNanos("transport_open") >= TimeUnit.MILLISECONDS.toNanos(120));
+        assertEquals(-1, trace.getElapsedNanos("unknown"));
+    }
+
+    @Test
+    public void milestones_areRecordedOnce() {
+        StartupTrace trace = new StartupTrace(System.nanoTime());
+
+        assertTrue(trace.mark(StartupTrace.FIRST_FRAME));
+        long first = trace.getElapsedNanos(StartupTrace.FIRST_FRAME);
+        assertFalse(trace.mark(StartupTrace.FIRST_FRAME));
+
+        assertEquals(first, trace.getElapsedNanos(StartupTrace.FIRST_FRAME));
+        assertEquals(0, trace.getDurationNanos(StartupTrace.FIRST_FRAME));
+    }
+
+    @Test
+    public void fullTrace_dropsLaterSections() {
+        StartupTrace trace = new StartupTrace(System.nanoTime());
+
+        for (int i = 0; i < StartupTrace.MAX_SECTIONS; i++) {
+            trace.mark("milestone_" + i);
+        }
+
+        assertEquals(StartupTrace.NO_SECTION, trace.begin("late"));
+        trace.end(StartupTrace.NO_SECTION);
+        assertFalse(trace.mark("later"));
+    }
+
+    @Test
+    public void metrics_reportSectionsInMilliseconds() {
+        long origin = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(250);
+        StartupTrace trace = new StartupTrace(origin);
+        MetricsRegistry metrics = new MetricsRegistry();
+
+        trace.end(trace.begin("activity_create"));
+        trace.registerMetrics(metrics);
+        trace.mark(StartupTrace.FIRST_FRAME);
+
+        assertEquals(2, metrics.size());
+        assertEquals("startup.activity_create_ms", metrics.getName(0));
+        assertEquals("startup.first_frame_ms", metrics.getName(1));
+        assertTrue(((MetricsRegistry.Gauge) metrics.getMetric(1)).get() >= 250);
+    }
+
+    @Test
+    public void transmitter_marksTheFirstCommandSent() throws Exception {
+        StartupTrace trace = new StartupTrace(System.nanoTime());
+
+        try (CarSimulator simulator = new CarSimulator(0)) {
+            CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+
+            try {
+                transmitter.setStartupTrace(trace);
+                transmitter.setInetAddress("127.0.0.1", simulator.getPort());
+                transmitter.sendCommand(100, 100, 1, 0, 0);
+                assertTrue(simulator.awaitReceived(1, 2_000));
+            } finally {
+                transmitter.close();
+            }
+        }
+
+        assertTrue(trace.getElapsedNanos(StartupTrace.FIRST_COMMAND) > 0);
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.iot_car_rc;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the telemetry frame, queue and summary.
+ */
+public class TelemetryTest {
+
+    @Test
+    public void frame_encodesAndDecodes() {
+        TelemetryFrame frame = new TelemetryFrame()
+                .setSensors(350, TelemetryFrame.NO_READING, 60_000, 7_420)
+                .setMotors(200, 10, 1, 1)
+                .stamp(0xFFFFFFFFL, 123_456);
+
+        ByteBuffer buffer = ByteBuffer.allocate(TelemetryFrame.SIZE);
+        frame.encode(buffer);
+        buffer.flip();
+
+        TelemetryFrame decoded = new TelemetryFrame();
+        assertTrue(decoded.decode(buffer));
+        assertEquals(TelemetryFrame.SIZE, buffer.position());
+        assertEquals(0xFFFFFFFFL, decoded.sequence);
+        assertEquals(123_456, decoded.carTimestamp);
+        assertEquals(350, decoded.frontDistance);
+        assertEquals(TelemetryFrame.NO_READING, decoded.leftDistance);
+        assertEquals(60_000, decoded.rightDistance);
+        assertEquals(200, decoded.leftMotorSpeed);
+        assertEquals(10, decoded.rightMotorSpeed);
+        assertEquals(1, decoded.direction);
+        assertEquals(1, decoded.drivingMode);
+        assertEquals(7_420, decoded.batteryMillivolts);
+    }
+
+    @Test
+    public void frame_rejectsAcknowledgement() {
+        ByteBuffer buffer = ByteBuffer.allocate(TelemetryFrame.SIZE);
+        new CommandAck().encode(buffer);
+        buffer.position(0);
+
+        assertFalse(new TelemetryFrame().decode(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void ring_keepsOrderAndCountsOverruns() {
+        TelemetryRing ring = new TelemetryRing(4);
+        TelemetryFrame frame = new TelemetryFrame();
+
+        for (int i = 0; i < 6; i++) {
+            ring.offer(frame.stamp(i, 0), i);
+        }
+
+        assertEquals(4, ring.size());
+        assertEquals(2, ring.getOverrunCount());
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, ring.poll(frame));
+            assertEquals(i, frame.sequence);
+        }
+
+        assertEquals(-1, ring.poll(frame));
+        assertTrue(ring.offer(frame.stamp(6, 0), 6));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ring_rejectsCapacityOtherThanPowerOfTwo() {
+        new TelemetryRing(100);
+    }
+
+    @Test
+    public void ring_handsOverEveryFrameBetweenThreads() throws InterruptedException {
+        final int frames = 1_000_000;
+        TelemetryRing ring = new TelemetryRing(64);
+
+        Thread producer = new Thread(() -> {
+            TelemetryFrame frame = new TelemetryFrame();
+
+            for (int i = 0; i < frames; i++) {
+                frame.setSensors(i & 0xFFFF, 0, 0, 0).stamp(i, i);
+                while (!ring.offer(frame, i)) {
+                    Thread.yield();
+                }
+            }
+        });
+        producer.start();
+
+        TelemetryFrame frame = new TelemetryFrame();
+        for (int i = 0; i < frames; i++) {
+            long receivedNanos;
+            while ((receivedNanos = ring.poll(frame)) < 0) {
+                Thread.yield();
+            }
+
+            assertEquals(i, receivedNanos);
+            assertEquals(i, frame.sequence);
+            assertEquals(i, frame.carTimestamp);
+            assertEquals(i & 0xFFFF, frame.frontDistance);
+        }
+
+        producer.join();
+    }
+
+    @Test
+    public void summary_keepsNearestObstacleAndLatestState() {
+        TelemetryRing ring = new TelemetryRing(16);
+        TelemetrySummary summary = new TelemetrySummary();
+        TelemetryFrame frame = new TelemetryFrame();
+
+        ring.offer(frame.setSensors(900, 400, TelemetryFrame.NO_READING, 7_500).stamp(0, 0), 0);
+        ring.offer(frame.setSensors(120, 450, TelemetryFrame.NO_READING, 7_480).stamp(1, 0), 1);
+        //  Frames 2 and 3 were lost on the way
+        ring.offer(frame.setSensors(300, 500, TelemetryFrame.NO_READING, 7_420).stamp(4, 0), 4);
+
+        assertEquals(3, ring.drainTo(summary));
+        assertEquals(3, summary.sampleCount);
+        assertEquals(120, summary.nearestFrontDistance);
+        assertEquals(400, summary.nearestLeftDistance);
+        assertEquals(TelemetryFrame.NO_READING, summary.nearestRightDistance);
+        assertEquals(7_420, summary.latest.batteryMillivolts);
+        assertEquals(4, summary.latestReceivedNanos);
+        assertEquals(2, summary.getLostCount());
+
+        char[] text = new char[TelemetrySummary.MAX_TEXT_LENGTH];
+        assertEquals("F 12 L 40 R -- cm  7.42 V", new String(text, 0, summary.format(text)));
+
+        assertEquals(0, ring.drainTo(summary));
+        assertEquals(0, summary.sampleCount);
+    }
+
+    @Test
+    public void transmitter_queuesTelemetryFromTheCar() throws Exception {
+        try (CarSimulator simulator = new CarSimulator(0)) {
+            CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+
+            try {
+                transmitter.setInetAddress("127.0.0.1", simulator.getPort());
+                transmitter.sendCommand(100, 100, 1, 0, 0);
+                assertTrue(simulator.awaitReceived(1, 1_000));
+
+                TelemetryFrame frame = new TelemetryFrame();
+                for (int i = 0; i < 100; i++) {
+                    assertTrue(simulator.sendTelemetry(frame.setSensors(1_000 - i, 500, 500, 7_400).stamp(i, i)));
+                }
+
+                TelemetryRing telemetry = transmitter.getTelemetry();
+                CarSimulator.await(() -> telemetry.size() == 100, 2_000);
+
+                TelemetrySummary summary = new TelemetrySummary();
+                assertEquals(100, telemetry.drainTo(summary));
+                assertEquals(901, summary.nearestFrontDistance);
+                assertEquals(99, summary.latest.sequence);
+                assertEquals(0, telemetry.getOverrunCount());
+
+                //  Telemetry must not be mistaken for acknowledgements
+                assertEquals(0, transmitter.getLinkStatistics().getUnexpectedCount());
+            } finally {
+                transmitter.close();
+            }
+        }
+    }
+}
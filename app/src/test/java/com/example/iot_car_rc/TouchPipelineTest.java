@@ -0,0 +1,152 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.OneEuroFilter;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the touch pipeline, replaying touch traces on the JVM.
+ * The joystick is 1000 x 1000 pixels, so its center is at (500, 500) and 250 pixels make 100%.
+ */
+public class TouchPipelineTest {
+    private static final long MS = 1_000_000;
+    private static final long FRAME = 16_666_667;
+
+    private JoystickGeometry geometry;
+    private TouchPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        geometry = new JoystickGeometry();
+        geometry.setupDimensions(1000, 1000);
+        pipeline = new TouchPipeline(geometry);
+    }
+
+    @Test
+    public void heldFinger_losesItsJitter() {
+        TouchTrace trace = TouchTrace.synthetic(8, 4, 0, 600, 400, 1000, 600, 400);
+
+        double filtered = variance(trace, pipeline);
+        double raw = variance(trace, unfiltered());
+
+        assertTrue(filtered * 4 < raw);
+    }
+
+    @Test
+    public void swipe_settlesQuickly() {
+        TouchTrace trace = TouchTrace.synthetic(8, 0,
+                0, 500, 500, 200, 500, 500, 250, 700, 500, 800, 700, 500);
+        long[] settledAt = {-1};
+
+        trace.replay(pipeline, FRAME, 0, (time, x, y) -> {
+            if (settledAt[0] < 0 && x == 80) {
+                settledAt[0] = time;
+            }
+        });
+
+        assertTrue(settledAt[0] > 0);
+        assertTrue(settledAt[0] - 250 * MS < 100 * MS);
+        assertTrue(pipeline.isSettled());
+    }
+
+    @Test
+    public void release_centersAtOnce() throws Exception {
+        TouchTrace trace = TouchTrace.parse(new StringReader(
+                "# time_ms,action,x,y\n"
+                        + "0,DOWN,500,500\n"
+                        + "8,MOVE,700,300\n"
+                        + "16,MOVE,750,250\n"
+                        + "24,UP,750,250\n"));
+        int[] last = new int[2];
+
+        assertEquals(4, trace.size());
+        trace.replay(pipeline, 8 * MS, 0, (time, x, y) -> {
+            last[0] = x;
+            last[1] = y;
+        });
+
+        assertEquals(0, last[0]);
+        assertEquals(0, last[1]);
+        assertEquals(geometry.getCenterX(), geometry.getKnobX(), 0);
+    }
+
+    @Test
+    public void touchAwayFromTheBase_releasesTheKnob() {
+        pipeline.onSample(700, 500, 0);
+        pipeline.tick(0);
+        assertEquals(80, pipeline.getXDisplacement());
+
+        pipeline.onSample(0, 0, 8 * MS);
+        pipeline.tick(8 * MS);
+        assertEquals(0, pipeline.getXDisplacement());
+    }
+
+    @Test
+    public void historicalSamples_areAllConsumed() {
+        TouchTrace trace = TouchTrace.synthetic(4, 1, 0, 520, 520, 500, 650, 450);
+
+        trace.replay(pipeline, FRAME, 0, (time, x, y) -> { });
+
+        //  Every sample but the lift of the finger
+        assertEquals(trace.size() - 1, pipeline.getSampleCount());
+    }
+
+    @Test
+    public void pipeline_doesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        feed(0);
+        long before = threads.getThreadAllocatedBytes(thread);
+        feed(1_000_000 * MS);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private void feed(long start) {
+        for (int i = 0; i < 10_000; i++) {
+            long time = start + i * 8 * MS;
+            pipeline.onSample(500 + i % 200, 500 - i % 100, time);
+
+            if (i % 2 == 0) {
+                pipeline.tick(time + MS);
+            }
+        }
+        pipeline.release();
+    }
+
+    private TouchPipeline unfiltered() {
+        JoystickGeometry geometry = new JoystickGeometry();
+        geometry.setupDimensions(1000, 1000);
+
+        return new TouchPipeline(geometry,
+                new OneEuroFilter(10_000, 0, 1), new OneEuroFilter(10_000, 0, 1));
+    }
+
+    /**
+     * This method returns the variance of the output in the X axis, after the first 300 ms.
+     */
+    private static double variance(TouchTrace trace, TouchPipeline pipeline) {
+        double[] sums = new double[3];
+
+        trace.replay(pipeline, FRAME, 0, (time, x, y) -> {
+            if (time > 300 * MS && time < 950 * MS) {
+                sums[0]++;
+                sums[1] += x;
+                sums[2] += (double) x * x;
+            }
+        });
+
+        double mean = sums[1] / sums[0];
+
+        return sums[2] / sums[0] - mean * mean;
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.iot_car_rc;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Represents a touch trace, the samples of a single finger with their timestamps,
+ * as logged from the MotionEvents on a phone, historical samples included.
+ * Traces are kept as CSV, one sample per line:
+ * <pre>
+ *     # time_ms,action,x,y
+ *     0,DOWN,540.0,960.0
+ *     8,MOVE,541.5,958.2
+ *     ...
+ *     400,UP,600.0,900.0
+ * </pre>
+ * Replaying a trace feeds the samples into a TouchPipeline and ticks it at the frame rate,
+ * like JoystickView does.
+ */
+class TouchTrace {
+    static final int DOWN = 0;
+    static final int MOVE = 1;
+    static final int UP = 2;
+
+    private long[] timesNanos = new long[64];
+    private int[] actions = new int[64];
+    private float[] xs = new float[64];
+    private float[] ys = new float[64];
+    private int size;
+
+    /**
+     * Receives the output of the pipeline on every tick.
+     */
+    interface TickListener {
+        void onTick(long timeNanos, int xDisplacement, int yDisplacement);
+    }
+
+    /**
+     * This method parses a trace in the CSV format, lines starting with '#' are comments.
+     *
+     * @param reader The reader of the trace.
+     * @return The trace.
+     * @throws IOException if the trace could not be read.
+     */
+    static TouchTrace parse(Reader reader) throws IOException {
+        TouchTrace trace = new TouchTrace();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split(",");
+            int action = fields[1].equals("DOWN") ? DOWN : fields[1].equals("UP") ? UP : MOVE;
+
+            trace.add((long) (Double.parseDouble(fields[0]) * 1_000_000), action,
+                    Float.parseFloat(fields[2]), Float.parseFloat(fields[3]));
+        }
+
+        return trace;
+    }
+
+    /**
+     * This method generates a trace of a finger moving along straight segments
+     * with Gaussian jitter, at the touch sampling rate of the phone.
+     *
+     * @param sampleIntervalMs The time between two samples.
+     * @param jitter           The standard deviation of the jitter in pixels.
+     * @param points           Pairs of (time in ms, x, y) the finger passes, the first one touches down
+     *                         and the last one lifts the finger.
+     * @return The trace.
+     */
+    static TouchTrace synthetic(long sampleIntervalMs, double jitter, float... points) {
+        Random random = new Random(42);
+        StringBuilder csv = new StringBuilder("# time_ms,action,x,y\n");
+        float end = points[points.length - 3];
+
+        for (long time = 0; time <= end; time += sampleIntervalMs) {
+            int segment = 0;
+            while (segment + 3 < points.length - 3 && points[segment + 3] <= time) {
+                segment += 3;
+            }
+
+            float t0 = points[segment];
+            float t1 = points[segment + 3];
+            float fraction = t1 > t0 ? Math.min(1, (time - t0) / (t1 - t0)) : 1;
+            double x = points[segment + 1] + (points[segment + 4] - points[segment + 1]) * fraction;
+            double y = points[segment + 2] + (points[segment + 5] - points[segment + 2]) * fraction;
+            String action = time == 0 ? "DOWN" : time + sampleIntervalMs > end ? "UP" : "MOVE";
+
+            csv.append(time).append(',').append(action).append(',')
+                    .append(x + random.nextGaussian() * jitter).append(',')
+                    .append(y + random.nextGaussian() * jitter).append('\n');
+        }
+
+        try {
+            return parse(new StringReader(csv.toString()));
+        } catch (IOException exception) {
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * This method replays the trace into the pipeline. Samples between two frames are delivered
+     * together at the next frame, like Android batches them into one MotionEvent.
+     *
+     * @param pipeline        The pipeline.
+     * @param frameIntervalNs The time between two frames in nanoseconds.
+     * @param tailNanos       How long to keep ticking after the last sample.
+     * @param listener        The listener of every tick.
+     * @return Nothing.
+     */
+    void replay(TouchPipeline pipeline, long frameIntervalNs, long tailNanos, TickListener listener) {
+        int next = 0;
+        long end = this.timesNanos[this.size - 1] + tailNanos;
+
+        for (long frame = this.timesNanos[0]; next < this.size || frame <= end; frame += frameIntervalNs) {
+            while (next < this.size && this.timesNanos[next] <= frame) {
+                if (this.actions[next] == UP) {
+                    pipeline.release();
+                } else {
+                    pipeline.onSample(this.xs[next], this.ys[next], this.timesNanos[next]);
+                }
+                next++;
+            }
+
+            pipeline.tick(frame);
+            listener.onTick(frame, pipeline.getXDisplacement(), pipeline.getYDisplacement());
+        }
+    }
+
+    /**
+     * This method returns the number of samples.
+     *
+     * @return Number of samples.
+     */
+    int size() {
+        return this.size;
+    }
+
+    private void add(long timeNanos, int action, float x, float y) {
+        if (this.size == this.timesNanos.length) {
+            int capacity = this.size * 2;
+            this.timesNanos = Arrays.copyOf(this.timesNanos, capacity);
+            this.actions = Arrays.copyOf(this.actions, capacity);
+            this.xs = Arrays.copyOf(this.xs, capacity);
+            this.ys = Arrays.copyOf(this.ys, capacity);
+        }
+
+        this.timesNanos[this.size] = timeNanos;
+        this.actions[this.size] = action;
+        this.xs[this.size] = x;
+        this.ys[this.size] = y;
+        this.size++;
+    }
+}
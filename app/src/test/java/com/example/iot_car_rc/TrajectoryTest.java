@@ -0,0 +1,229 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.FloatDriveMixer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of trajectory compilation, the chunked upload and the run on the simulated car's own clock.
+ */
+public class TrajectoryTest {
+    private static final int FORWARD = DrivingDirection.FORWARD.getDrivingDirection();
+    private static final int TRAJECTORY = DrivingMode.TRAJECTORY.getDrivingMode();
+
+    private CarSimulator simulator;
+    private CommandTransport uploadTransport;
+
+    @Before
+    public void setUp() throws IOException {
+        simulator = new CarSimulator(0);
+        uploadTransport = new DatagramChannelTransport(true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        uploadTransport.close();
+        simulator.close();
+    }
+
+    @Test
+    public void path_compilesIntoTheSetpointsWhichChangeTheMotors() {
+        //  Straight ahead, then a turn half way
+        Trajectory trajectory = Trajectory.fromPath(new FloatDriveMixer(), new Trajectory.Path() {
+            @Override
+            public int turn(int timeMs) {
+                return timeMs < 500 ? 0 : 50;
+            }
+
+            @Override
+            public int throttle(int timeMs) {
+                return 80;
+            }
+        }, 1_000, 20);
+
+        assertEquals(3, trajectory.size());
+        assertEquals(0, trajectory.getTimeMs(0));
+        assertEquals(trajectory.getLeftMotorSpeed(0), trajectory.getRightMotorSpeed(0));
+        assertEquals(500, trajectory.getTimeMs(1));
+        assertNotEquals(trajectory.getLeftMotorSpeed(1), trajectory.getRightMotorSpeed(1));
+        assertEquals(1_000, trajectory.getDurationMs());
+        assertEquals(0, trajectory.getLeftMotorSpeed(2));
+        assertEquals(0, trajectory.getRightMotorSpeed(2));
+    }
+
+    @Test
+    public void recordedDrive_keepsTheRemoteCommands() throws IOException {
+        File file = File.createTempFile("session", ".rcs");
+        long start = System.nanoTime();
+
+        try {
+            try (SessionRecorder recorder = new SessionRecorder(file, Runnable::run)) {
+                recorder.record(start + ms(100), 200, 200, FORWARD, 0, 0);
+                recorder.record(start + ms(150), 200, 200, FORWARD, 0, 0);
+                recorder.record(start + ms(300), 200, 120, FORWARD, 0, 0);
+                recorder.record(start + ms(400), 0, 0, FORWARD, 1, 0);
+                recorder.record(start + ms(700), 0, 0, FORWARD, 0, 0);
+            }
+
+            Trajectory trajectory;
+            try (SessionReader reader = new SessionReader(file)) {
+                trajectory = Trajectory.fromSession(reader);
+            }
+
+            //  The repeated command and the autonomous one are left out
+            assertEquals(3, trajectory.size());
+            assertEquals(0, trajectory.getTimeMs(0));
+            assertEquals(200, trajectory.getTimeMs(1));
+            assertEquals(120, trajectory.getRightMotorSpeed(1));
+            assertEquals(600, trajectory.getDurationMs());
+            assertEquals(0, trajectory.getLeftMotorSpeed(2));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void longHold_isRepeatedWithinTheLongestGap() {
+        Trajectory trajectory = new Trajectory()
+                .add(0, 100, 100, FORWARD)
+                .add(200_000, 0, 0, FORWARD);
+
+        assertEquals(5, trajectory.size());
+
+        for (int i = 1; i < trajectory.size(); i++) {
+            assertTrue(trajectory.getTimeMs(i) - trajectory.getTimeMs(i - 1) <= Trajectory.MAX_GAP_MS);
+        }
+
+        assertEquals(100, trajectory.getLeftMotorSpeed(3));
+        assertEquals(200_000, trajectory.getDurationMs());
+
+        try {
+            trajectory.add(100, 0, 0, FORWARD);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            //  Setpoints are added in order
+        }
+    }
+
+    @Test
+    public void chunks_surviveTheRoundTripAndRejectDamage() {
+        Trajectory trajectory = sweep(2_000, 10);
+        TrajectoryChunk chunk = new TrajectoryChunk();
+        TrajectoryChunk decoded = new TrajectoryChunk();
+        ByteBuffer buffer = ByteBuffer.allocate(TrajectoryChunk.MAX_SIZE);
+        int chunkCount = TrajectoryChunk.chunkCount(trajectory);
+        int setpoints = 0;
+
+        assertTrue(trajectory.size() > TrajectoryChunk.MAX_SETPOINTS);
+
+        for (int index = 0; index < chunkCount; index++) {
+            buffer.clear();
+            chunk.set(513, trajectory, index).encode(buffer);
+            buffer.flip();
+
+            assertTrue(decoded.decode(buffer));
+            assertFalse(buffer.hasRemaining());
+            assertEquals(513, decoded.trajectoryId);
+            assertEquals(index, decoded.chunkIndex);
+            assertEquals(setpoints, decoded.firstSetpoint);
+
+            for (int i = 0; i < decoded.setpointCount; i++) {
+                assertEquals(trajectory.getLeftMotorSpeed(setpoints + i), decoded.leftMotorSpeeds[i]);
+            }
+
+            setpoints += decoded.setpointCount;
+        }
+
+        assertEquals(trajectory.size(), setpoints);
+
+        //  A flipped bit anywhere fails the checksum, and the buffer is not moved
+        buffer.position(0);
+        buffer.put(20, (byte) (buffer.get(20) ^ 0x10));
+        assertFalse(decoded.decode(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void lossyUpload_runsOnTheCarsClock() throws Exception {
+        Trajectory trajectory = sweep(1_500, 10);
+        CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+        TrajectoryUploader uploader = new TrajectoryUploader(uploadTransport);
+
+        simulator.setLossRate(0.3);
+
+        try {
+            assertTrue(uploader.upload(trajectory, 7, simulator.getAddress(), 200, 20));
+            assertTrue(uploader.getSentCount() >= TrajectoryChunk.chunkCount(trajectory));
+
+            //  Commands in the trajectory mode start it, however late one of them makes it
+            transmitter.setInetAddress(simulator.getAddress());
+            transmitter.sendCommand(255, 0, FORWARD, TRAJECTORY, 0);
+
+            assertTrue(simulator.awaitTrajectory(5_000));
+            assertEquals(0, simulator.verifyTrajectory(trajectory, 30));
+            assertEquals(0, simulator.getLeftMotorSpeed());
+            assertEquals(TRAJECTORY, simulator.getDrivingMode());
+        } finally {
+            transmitter.close();
+        }
+    }
+
+    @Test
+    public void stoppedMotors_stopTheTrajectory() throws Exception {
+        Trajectory trajectory = new Trajectory()
+                .add(0, 200, 200, FORWARD)
+                .add(5_000, 0, 0, FORWARD);
+        CommandTransmitter transmitter = new CommandTransmitter(new DatagramChannelTransport(true));
+
+        try {
+            assertTrue(new TrajectoryUploader(uploadTransport).upload(trajectory, 1, simulator.getAddress(), 200, 5));
+            transmitter.setInetAddress(simulator.getAddress());
+            transmitter.sendCommand(0, 0, FORWARD, TRAJECTORY, 0);
+
+            assertTrue(CarSimulator.await(() -> simulator.getLeftMotorSpeed() == 200, 5_000));
+            transmitter.stopMotors();
+
+            assertTrue(CarSimulator.await(() -> !simulator.isTrajectoryRunning(), 5_000));
+            assertEquals(1, simulator.getTrajectoryRunCount());
+            assertEquals(DrivingMode.REMOTE.getDrivingMode(), simulator.getDrivingMode());
+            assertEquals(0, simulator.getLeftMotorSpeed());
+        } finally {
+            transmitter.close();
+        }
+    }
+
+    @Test
+    public void carWithoutTrajectories_neverAcknowledges() throws Exception {
+        simulator.setCapabilities(new CarCapabilities(CommandFrame.VERSION_3, 50, 0b111, 0));
+
+        assertFalse(new TrajectoryUploader(uploadTransport).upload(sweep(100, 10), 1, simulator.getAddress(), 50, 2));
+    }
+
+    private static Trajectory sweep(int durationMs, int stepMs) {
+        //  A turn which changes at every step, so no setpoint is left out
+        return Trajectory.fromPath(new FloatDriveMixer(), new Trajectory.Path() {
+            @Override
+            public int turn(int timeMs) {
+                return timeMs / stepMs % 100 - 50;
+            }
+
+            @Override
+            public int throttle(int timeMs) {
+                return 100;
+            }
+        }, durationMs, stepMs);
+    }
+
+    private static long ms(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
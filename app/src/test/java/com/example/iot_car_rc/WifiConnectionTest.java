@@ -0,0 +1,234 @@
+package com.example.iot_car_rc;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.iot_car_rc.WifiConnection.State.*;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the Wi-Fi connection state machine, against a fake Wi-Fi and a fake clock.
+ */
+public class WifiConnectionTest {
+    private FakeWifi wifi;
+    private FakeScheduler scheduler;
+    private final List<WifiConnection.State> states = new ArrayList<>();
+    private WifiConnection connection;
+
+    @Before
+    public void setUp() {
+        wifi = new FakeWifi();
+        scheduler = new FakeScheduler();
+        connection = new WifiConnection(wifi, "ESP8266-ACCESS-POINT", scheduler, states::add);
+    }
+
+    @Test
+    public void waitsForWifi_thenConnects() {
+        wifi.enabled = false;
+        connection.start();
+        assertEquals(WAITING_FOR_WIFI, connection.getState());
+        assertEquals(0, wifi.connectCount);
+
+        scheduler.advance(3_000);
+        wifi.enabled = true;
+        connection.onWifiEnabled();
+        assertEquals(CONNECTING, connection.getState());
+        assertEquals("ESP8266-ACCESS-POINT", wifi.addedSsid);
+
+        scheduler.advance(1_500);
+        wifi.connectedNetworkId = wifi.networkId;
+        connection.onNetworkConnected();
+
+        assertEquals(CONNECTED, connection.getState());
+        assertEquals(4_500, connection.getLastConnectTimeMs());
+        assertEquals(1, connection.getConnectTimes().getCount());
+        assertEquals(1, connection.getAttemptCount());
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test
+    public void failedAttempts_backOffExponentially() {
+        connection.start();
+        assertEquals(1, wifi.connectCount);
+
+        long[] expectedBackoffs = {1_000, 2_000, 4_000, 8_000, 16_000, 16_000};
+        for (long backoff : expectedBackoffs) {
+            scheduler.advance(WifiConnection.CONNECT_TIMEOUT_MS);
+            assertEquals(BACKING_OFF, connection.getState());
+
+            int attempts = wifi.connectCount;
+            scheduler.advance(backoff - 1);
+            assertEquals(attempts, wifi.connectCount);
+            scheduler.advance(1);
+            assertEquals(attempts + 1, wifi.connectCount);
+            assertEquals(CONNECTING, connection.getState());
+        }
+
+        assertEquals(7, connection.getAttemptCount());
+    }
+
+    @Test
+    public void otherNetworks_doNotCompleteTheConnection() {
+        connection.start();
+
+        wifi.connectedNetworkId = 99;
+        connection.onNetworkConnected();
+        assertEquals(CONNECTING, connection.getState());
+
+        //  Disconnections while connecting are left to the timeout
+        connection.onNetworkDisconnected();
+        assertEquals(CONNECTING, connection.getState());
+    }
+
+    @Test
+    public void lostConnection_isRetriedAtOnce() {
+        wifi.connectedNetworkId = 7;
+        wifi.networkId = 7;
+        connection.start();
+        assertEquals(CONNECTED, connection.getState());
+        assertEquals(0, connection.getLastConnectTimeMs());
+
+        wifi.connectedNetworkId = WifiController.NO_NETWORK;
+        connection.onNetworkDisconnected();
+        assertEquals(CONNECTING, connection.getState());
+        assertEquals(1, connection.getDisconnectCount());
+        assertEquals(2, wifi.connectCount);
+
+        //  The network is only added once
+        assertEquals(1, wifi.addCount);
+
+        scheduler.advance(800);
+        wifi.connectedNetworkId = 7;
+        connection.onNetworkConnected();
+        assertEquals(CONNECTED, connection.getState());
+        assertEquals(800, connection.getLastConnectTimeMs());
+    }
+
+    @Test
+    public void disabledWifi_cancelsTheTimers() {
+        connection.start();
+        scheduler.advance(WifiConnection.CONNECT_TIMEOUT_MS);
+        assertEquals(BACKING_OFF, connection.getState());
+
+        wifi.enabled = false;
+        connection.onWifiDisabled();
+        assertEquals(WAITING_FOR_WIFI, connection.getState());
+        assertEquals(0, scheduler.pending());
+
+        connection.stop();
+        assertEquals(IDLE, connection.getState());
+        assertEquals(IDLE, states.get(states.size() - 1));
+    }
+
+    @Test
+    public void listener_getsEveryChangeOnce() {
+        connection.start();
+        connection.start();
+        wifi.connectedNetworkId = wifi.networkId;
+        connection.onNetworkConnected();
+        connection.onNetworkConnected();
+
+        assertEquals(2, states.size());
+        assertEquals(CONNECTING, states.get(0));
+        assertEquals(CONNECTED, states.get(1));
+    }
+
+    @Test
+    public void backoff_isCapped() {
+        assertEquals(1_000, WifiConnection.getBackoffMs(1));
+        assertEquals(WifiConnection.MAX_BACKOFF_MS, WifiConnection.getBackoffMs(1_000));
+    }
+
+    /**
+     * A Wi-Fi which connects only when told to.
+     */
+    private static class FakeWifi implements WifiController {
+        boolean enabled = true;
+        int networkId = 3;
+        int connectedNetworkId = NO_NETWORK;
+        String addedSsid;
+        int addCount;
+        int connectCount;
+
+        @Override
+        public boolean isWifiEnabled() {
+            return enabled;
+        }
+
+        @Override
+        public int addNetwork(String ssid) {
+            addedSsid = ssid;
+            addCount++;
+            return networkId;
+        }
+
+        @Override
+        public boolean connect(int networkId) {
+            connectCount++;
+            return true;
+        }
+
+        @Override
+        public int getConnectedNetworkId() {
+            return connectedNetworkId;
+        }
+    }
+
+    /**
+     * A scheduler with a manually advanced clock.
+     */
+    private static class FakeScheduler implements WifiConnection.Scheduler {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final List<Long> deadlines = new ArrayList<>();
+        private long now = 1_000_000;
+
+        @Override
+        public long now() {
+            return now;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            tasks.add(task);
+            deadlines.add(now + delayMs);
+        }
+
+        @Override
+        public void cancel(Runnable task) {
+            int index;
+            while ((index = tasks.indexOf(task)) >= 0) {
+                tasks.remove(index);
+                deadlines.remove(index);
+            }
+        }
+
+        void advance(long ms) {
+            long end = now + ms;
+
+            while (true) {
+                int next = -1;
+                for (int i = 0; i < tasks.size(); i++) {
+                    if (deadlines.get(i) <= end && (next < 0 || deadlines.get(i) < deadlines.get(next))) {
+                        next = i;
+                    }
+                }
+
+                if (next < 0) {
+                    break;
+                }
+
+                now = deadlines.remove(next);
+                tasks.remove(next).run();
+            }
+
+            now = end;
+        }
+
+        int pending() {
+            return tasks.size();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.iot_car_rc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks of a tick of the autonomous engine for every driving algorithm,
+ * on noisy telemetry frames with lost echoes, to compare with AutonomousEngine.TICK_BUDGET_NANOS.
+ */
+@State(Scope.Thread)
+public class AutonomousTickBenchmark {
+    private static final int FRAMES = 1024;
+    private static final int TICK_MS = 1000 / AutonomousEngine.TICK_RATE;
+
+    @Param({"SIMPLE", "ADVANCED", "COMPLEX"})
+    public DrivingAlgorithm drivingAlgorithm;
+
+    private final TelemetryFrame[] frames = new TelemetryFrame[FRAMES];
+    private AutonomousEngine engine;
+    private long now;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < FRAMES; i++) {
+            frames[i] = new TelemetryFrame().setSensors(
+                    reading(random, 200 + i * 37 % 2500),
+                    reading(random, 100 + random.nextInt(1400)),
+                    reading(random, 100 + random.nextInt(1400)),
+                    7400
+            );
+        }
+
+        //  The budget is never enforced, so every tick runs the measured algorithm
+        engine = new AutonomousEngine(new AutonomousEngine.Output() {
+            @Override
+            public void drive(int leftMotorSpeed, int rightMotorSpeed, int direction, int drivingAlgorithm) {
+            }
+
+            @Override
+            public void release(int drivingAlgorithm) {
+            }
+        }, new MetricsRegistry(), Long.MAX_VALUE);
+        engine.select(drivingAlgorithm);
+        now = System.nanoTime();
+    }
+
+    @Benchmark
+    public boolean tick() {
+        TelemetryFrame frame = frames[counter & (FRAMES - 1)];
+
+        //  The frames are numbered and timed as the car would, 50 per second
+        frame.sequence = counter;
+        frame.carTimestamp = counter * TICK_MS;
+        counter++;
+        now += TICK_MS * 1_000_000L;
+
+        engine.getTelemetry().offer(frame, now);
+
+        return engine.tick(now);
+    }
+
+    private static int reading(Random random, int distance) {
+        if (random.nextInt(20) == 0) {
+            return TelemetryFrame.NO_READING;
+        }
+
+        return Math.max(0, distance + (int) (random.nextGaussian() * 20));
+    }
+}
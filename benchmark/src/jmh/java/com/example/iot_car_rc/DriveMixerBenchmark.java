@@ -0,0 +1,72 @@
+package com.example.iot_car_rc;
+
+import com.example.iot_car_rc.core.DriveMixer;
+import com.example.iot_car_rc.core.FixedPointDriveMixer;
+import com.example.iot_car_rc.core.FloatDriveMixer;
+import com.example.iot_car_rc.core.ResponseCurve;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks of the joystick-to-motor mixing done for every joystick event
+ * in MainActivity.onJoystickMoved, in floating and in fixed point.
+ */
+@State(Scope.Thread)
+public class DriveMixerBenchmark {
+    private static final int OFFSETS = 1024;
+
+    @Param({"0", "0.4"})
+    public float expo;
+
+    private DriveMixer floatMixer;
+    private DriveMixer fixedMixer;
+    private final int[] xOffsets = new int[OFFSETS];
+    private final int[] yOffsets = new int[OFFSETS];
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        for (int i = 0; i < OFFSETS; i++) {
+            xOffsets[i] = random.nextInt(201) - 100;
+            yOffsets[i] = random.nextInt(201) - 100;
+        }
+
+        floatMixer = new FloatDriveMixer(ResponseCurve.expo(expo), DriveMixer.MAX_SPEED);
+        fixedMixer = new FixedPointDriveMixer(ResponseCurve.expo(expo), DriveMixer.MAX_SPEED);
+    }
+
+    @Benchmark
+    public int arcadeFloat() {
+        int i = counter++ & (OFFSETS - 1);
+
+        floatMixer.arcade(xOffsets[i], yOffsets[i]);
+
+        return floatMixer.getLeftMotorSpeed() + floatMixer.getRightMotorSpeed();
+    }
+
+    @Benchmark
+    public int arcadeFixedPoint() {
+        int i = counter++ & (OFFSETS - 1);
+
+        fixedMixer.arcade(xOffsets[i], yOffsets[i]);
+
+        return fixedMixer.getLeftMotorSpeed() + fixedMixer.getRightMotorSpeed();
+    }
+
+    @Benchmark
+    public int tankFixedPoint() {
+        int i = counter++ & (OFFSETS - 1);
+
+        fixedMixer.tank(xOffsets[i], yOffsets[i]);
+
+        return fixedMixer.getLeftMotorSpeed() + fixedMixer.getRightMotorSpeed();
+    }
+}
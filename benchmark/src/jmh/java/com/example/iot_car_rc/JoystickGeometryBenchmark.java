@@ -0,0 +1,46 @@
+package com.example.iot_car_rc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Benchmarks of the displacement geometry done for every touch event in JoystickView.onTouch.
+ */
+@State(Scope.Thread)
+public class JoystickGeometryBenchmark {
+    private static final int EVENTS = 1024;
+
+    private final JoystickGeometry geometry = new JoystickGeometry();
+    private final float[] eventX = new float[EVENTS];
+    private final float[] eventY = new float[EVENTS];
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+
+        geometry.setupDimensions(1080, 1500);
+
+        for (int i = 0; i < EVENTS; i++) {
+            eventX[i] = random.nextFloat() * 1080;
+            eventY[i] = random.nextFloat() * 1500;
+        }
+    }
+
+    @Benchmark
+    public int onTouch() {
+        int i = counter++ & (EVENTS - 1);
+
+        if (geometry.wasTouchedNearBase(eventX[i], eventY[i])) {
+            geometry.moveKnob(eventX[i], eventY[i]);
+        } else {
+            geometry.center();
+        }
+
+        return geometry.getXDisplacement() + geometry.getYDisplacement();
+    }
+}
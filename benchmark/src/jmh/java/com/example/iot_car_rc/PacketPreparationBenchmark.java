@@ -0,0 +1,54 @@
+package com.example.iot_car_rc;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Benchmarks of CommandTransmitter.preparePacket, which sets the reused frame
+ * and encodes it into the reused buffer, against the JSONObject it replaced.
+ */
+@State(Scope.Thread)
+public class PacketPreparationBenchmark {
+    private final CommandFrame frame = new CommandFrame();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(CommandFrame.MAX_JSON_SIZE);
+    private int counter;
+
+    @Benchmark
+    public int binary() {
+        return prepare(PacketFormat.BINARY);
+    }
+
+    @Benchmark
+    public int json() {
+        return prepare(PacketFormat.JSON);
+    }
+
+    @Benchmark
+    public int jsonObject() throws Exception {
+        int i = counter++;
+        JSONObject json = new JSONObject();
+
+        json.put("left_motor_speed", i & 0xFF);
+        json.put("right_motor_speed", (i >> 8) & 0xFF);
+        json.put("direction", i & 1);
+        json.put("driving_mode", 0);
+        json.put("driving_algorithm", 0);
+
+        return json.toString().getBytes().length;
+    }
+
+    private int prepare(PacketFormat format) {
+        int i = counter++;
+
+        frame.set(i & 0xFF, (i >> 8) & 0xFF, i & 1, 0, 0);
+        buffer.clear();
+        frame.encode(buffer, format);
+        buffer.flip();
+
+        return buffer.limit();
+    }
+}
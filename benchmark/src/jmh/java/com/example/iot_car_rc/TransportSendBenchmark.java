@@ -0,0 +1,91 @@
+package com.example.iot_car_rc;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Benchmarks of a send of the transmitter over the loopback interface, through each transport
+ * and through the per-send ByteBuffer and DatagramPacket the transmitter used before them.
+ * Loopback throughput says nothing about the soft-AP, the B/op of the gc profiler is the point.
+ */
+@State(Scope.Thread)
+public class TransportSendBenchmark {
+    @Param({"legacy", "socket", "blocking", "nonBlocking"})
+    public String path;
+
+    private final CommandFrame frame = new CommandFrame().set(255, 255, 1, 0, 0);
+    private DatagramChannel car;
+    private InetSocketAddress address;
+    private DatagramSocket socket;
+    private CommandTransport transport;
+    private ByteBuffer message;
+
+    @Setup
+    public void setUp() throws IOException {
+        car = DatagramChannel.open();
+        car.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        address = (InetSocketAddress) car.getLocalAddress();
+
+        switch (path) {
+            case "legacy":
+                socket = new DatagramSocket();
+                message = ByteBuffer.allocate(CommandFrame.SIZE);
+                return;
+            case "socket":
+                transport = new DatagramSocketTransport();
+                message = ByteBuffer.allocate(CommandFrame.SIZE);
+                break;
+            default:
+                transport = new DatagramChannelTransport(path.equals("nonBlocking"));
+                message = ByteBuffer.allocateDirect(CommandFrame.SIZE);
+                break;
+        }
+
+        transport.connect(address);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+
+        if (transport != null) {
+            transport.close();
+        }
+
+        car.close();
+    }
+
+    @Benchmark
+    public int send() throws IOException {
+        message.clear();
+        frame.encodeBinary(message);
+        message.flip();
+
+        if (transport != null) {
+            transport.send(message);
+        } else {
+            //  The send task of the transmitter before the transport
+            byte[] bytes = new byte[message.remaining()];
+            message.get(bytes);
+            ByteBuffer copy = ByteBuffer.allocate(bytes.length);
+            copy.put(bytes).rewind();
+            socket.send(new DatagramPacket(copy.array(), copy.limit(), address.getAddress(), address.getPort()));
+        }
+
+        return message.limit();
+    }
+}
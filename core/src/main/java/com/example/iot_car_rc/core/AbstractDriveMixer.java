@@ -0,0 +1,131 @@
+package com.example.iot_car_rc.core;
+
+/**
+ * Represents the mixing shared by all DriveMixer implementations.
+ * Implementations only differ in how a stick deflection is turned into a speed.
+ *
+ * @author Rafał Dąbrowski
+ */
+public abstract class AbstractDriveMixer implements DriveMixer {
+    private ResponseCurve responseCurve;
+    private int maxSpeed;
+
+    private int leftMotorSpeed;
+    private int rightMotorSpeed;
+    private int direction = FORWARD;
+
+    /**
+     * A constructor for AbstractDriveMixer
+     *
+     * @param responseCurve The response curve applied to the stick positions.
+     * @param maxSpeed      The speed reached at full stick deflection, ranges from <0, 255>.
+     * @return AbstractDriveMixer instance.
+     * @throws IllegalArgumentException if the speed is out of range.
+     */
+    protected AbstractDriveMixer(ResponseCurve responseCurve, int maxSpeed) {
+        setResponseCurve(responseCurve);
+        setMaxSpeed(maxSpeed);
+    }
+
+    @Override
+    public void arcade(int turn, int throttle) {
+        int speed = speedOf(throttle);
+        int speedOffset = speedOf(turn);
+        int outerSpeed = Math.min(this.maxSpeed, speed + speedOffset);
+        int innerSpeed = Math.max(0, speed - speedOffset);
+
+        if (turn < 0) {
+            this.leftMotorSpeed = innerSpeed;
+            this.rightMotorSpeed = outerSpeed;
+        } else {
+            this.leftMotorSpeed = outerSpeed;
+            this.rightMotorSpeed = innerSpeed;
+        }
+
+        this.direction = throttle < 0 ? BACKWARD : FORWARD;
+    }
+
+    @Override
+    public void tank(int left, int right) {
+        boolean forward = left + right >= 0;
+
+        //  A motor asked to turn against the driving direction stops
+        this.leftMotorSpeed = (left >= 0) == forward || left == 0 ? speedOf(left) : 0;
+        this.rightMotorSpeed = (right >= 0) == forward || right == 0 ? speedOf(right) : 0;
+        this.direction = forward ? FORWARD : BACKWARD;
+    }
+
+    @Override
+    public int getLeftMotorSpeed() {
+        return this.leftMotorSpeed;
+    }
+
+    @Override
+    public int getRightMotorSpeed() {
+        return this.rightMotorSpeed;
+    }
+
+    @Override
+    public int getDirection() {
+        return this.direction;
+    }
+
+    @Override
+    public void setResponseCurve(ResponseCurve responseCurve) {
+        if (responseCurve == null) {
+            throw new IllegalArgumentException("The response curve must not be null");
+        }
+
+        this.responseCurve = responseCurve;
+    }
+
+    /**
+     * This method returns the response curve applied to the stick positions.
+     *
+     * @return The response curve.
+     */
+    public ResponseCurve getResponseCurve() {
+        return this.responseCurve;
+    }
+
+    @Override
+    public void setMaxSpeed(int maxSpeed) {
+        if (maxSpeed < 0 || maxSpeed > MAX_SPEED) {
+            throw new IllegalArgumentException("The maximum speed must range from 0 to 255");
+        }
+
+        this.maxSpeed = maxSpeed;
+    }
+
+    /**
+     * This method returns the speed reached at full stick deflection.
+     *
+     * @return The maximum speed, ranges from <0, 255>.
+     */
+    public int getMaxSpeed() {
+        return this.maxSpeed;
+    }
+
+    /**
+     * This method turns a stick offset into a speed, ignoring its sign.
+     * Offsets beyond the stick's range are clamped.
+     *
+     * @param offset The stick offset, ranges from <-100, 100>.
+     * @return The speed, ranges from <0, max speed>.
+     */
+    private int speedOf(int offset) {
+        int deflection = Math.min(MAX_INPUT, Math.abs(offset));
+
+        return Math.min(this.maxSpeed, scale(deflection, this.responseCurve, this.maxSpeed));
+    }
+
+    /**
+     * This method applies the response curve to a stick deflection and scales it to a speed.
+     *
+     * @param deflection    The stick deflection, ranges from <0, 100>.
+     * @param responseCurve The response curve.
+     * @param maxSpeed      The speed at full deflection.
+     * @return The speed, rounded to the nearest integer.
+     */
+    protected abstract int scale(int deflection, ResponseCurve responseCurve, int maxSpeed);
+}
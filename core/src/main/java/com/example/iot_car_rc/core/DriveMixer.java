@@ -0,0 +1,81 @@
+package com.example.iot_car_rc.core;
+
+/**
+ * Interface for mixing stick positions into the speeds of the left and right motor
+ * of a differential-drive car. The result of the last mix is kept in the mixer,
+ * so mixing does not allocate memory. Like the car's protocol, a mix results in
+ * one driving direction and two unsigned motor speeds.
+ *
+ * <p>A mixer is used by a single thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+public interface DriveMixer {
+    //  Stick positions range from <-MAX_INPUT, MAX_INPUT>
+    int MAX_INPUT = 100;
+    int MAX_SPEED = 255;
+
+    //  The driving directions, the same values as sent to the car
+    int FORWARD = 1;
+    int BACKWARD = 0;
+
+    /**
+     * This method mixes the position of a single stick, arcade style.
+     * The throttle sets the speed and the direction of both motors, the turn speeds up
+     * the outer motor and slows down the inner one.
+     *
+     * @param turn     The offset of the stick in the X axis, ranges from <-100, 100>, positive turns right.
+     * @param throttle The offset of the stick in the Y axis, ranges from <-100, 100>, positive drives forward.
+     * @return Nothing.
+     */
+    void arcade(int turn, int throttle);
+
+    /**
+     * This method mixes the positions of two sticks, tank style. Every stick drives one motor.
+     * The direction follows the average of both sticks, a motor asked to turn the other way stops,
+     * since the car cannot drive its motors in opposite directions.
+     *
+     * @param left  The offset of the left stick in the Y axis, ranges from <-100, 100>.
+     * @param right The offset of the right stick in the Y axis, ranges from <-100, 100>.
+     * @return Nothing.
+     */
+    void tank(int left, int right);
+
+    /**
+     * This method returns the speed of the left motor of the last mix.
+     *
+     * @return The speed of the left motor, ranges from <0, max speed>.
+     */
+    int getLeftMotorSpeed();
+
+    /**
+     * This method returns the speed of the right motor of the last mix.
+     *
+     * @return The speed of the right motor, ranges from <0, max speed>.
+     */
+    int getRightMotorSpeed();
+
+    /**
+     * This method returns the driving direction of the last mix.
+     *
+     * @return FORWARD or BACKWARD.
+     */
+    int getDirection();
+
+    /**
+     * This method sets the response curve applied to the stick positions.
+     *
+     * @param responseCurve The response curve.
+     * @return Nothing.
+     */
+    void setResponseCurve(ResponseCurve responseCurve);
+
+    /**
+     * This method sets the speed reached at full stick deflection.
+     *
+     * @param maxSpeed The maximum speed, ranges from <0, 255>.
+     * @return Nothing.
+     * @throws IllegalArgumentException if the speed is out of range.
+     */
+    void setMaxSpeed(int maxSpeed);
+}
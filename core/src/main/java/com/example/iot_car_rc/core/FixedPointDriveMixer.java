@@ -0,0 +1,40 @@
+package com.example.iot_car_rc.core;
+
+/**
+ * Represents a DriveMixer evaluating the response curve in Q16.16 fixed point,
+ * for targets without a fast floating-point unit. The speed of every stick axis agrees
+ * with the FloatDriveMixer within one speed step.
+ *
+ * @author Rafał Dąbrowski
+ */
+public class FixedPointDriveMixer extends AbstractDriveMixer {
+    private static final int HALF = ResponseCurve.ONE >> 1;
+
+    /**
+     * A constructor for FixedPointDriveMixer, with a linear response and the full speed range.
+     *
+     * @return FixedPointDriveMixer instance.
+     */
+    public FixedPointDriveMixer() {
+        this(ResponseCurve.LINEAR, MAX_SPEED);
+    }
+
+    /**
+     * A constructor for FixedPointDriveMixer
+     *
+     * @param responseCurve The response curve applied to the stick positions.
+     * @param maxSpeed      The speed reached at full stick deflection, ranges from <0, 255>.
+     * @return FixedPointDriveMixer instance.
+     * @throws IllegalArgumentException if the speed is out of range.
+     */
+    public FixedPointDriveMixer(ResponseCurve responseCurve, int maxSpeed) {
+        super(responseCurve, maxSpeed);
+    }
+
+    @Override
+    protected int scale(int deflection, ResponseCurve responseCurve, int maxSpeed) {
+        int x = (deflection << ResponseCurve.FRACTION_BITS) / MAX_INPUT;
+
+        return (responseCurve.applyFixed(x) * maxSpeed + HALF) >> ResponseCurve.FRACTION_BITS;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.iot_car_rc.core;
+
+/**
+ * Represents a DriveMixer evaluating the response curve in floating point.
+ *
+ * @author Rafał Dąbrowski
+ */
+public class FloatDriveMixer extends AbstractDriveMixer {
+    /**
+     * A constructor for FloatDriveMixer, with a linear response and the full speed range.
+     *
+     * @return FloatDriveMixer instance.
+     */
+    public FloatDriveMixer() {
+        this(ResponseCurve.LINEAR, MAX_SPEED);
+    }
+
+    /**
+     * A constructor for FloatDriveMixer
+     *
+     * @param responseCurve The response curve applied to the stick positions.
+     * @param maxSpeed      The speed reached at full stick deflection, ranges from <0, 255>.
+     * @return FloatDriveMixer instance.
+     * @throws IllegalArgumentException if the speed is out of range.
+     */
+    public FloatDriveMixer(ResponseCurve responseCurve, int maxSpeed) {
+        super(responseCurve, maxSpeed);
+    }
+
+    @Override
+    protected int scale(int deflection, ResponseCurve responseCurve, int maxSpeed) {
+        return Math.round(responseCurve.apply(deflection / (float) MAX_INPUT) * maxSpeed);
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.iot_car_rc.core;
+
+/**
+ * Represents a One Euro filter, a low-pass filter whose cutoff frequency adapts to the speed
+ * of the signal (Casiez, Roussel and Vogel, CHI 2012). A slow signal is smoothed heavily to remove
+ * jitter, a fast one lightly to keep the lag low. Samples may arrive at any rate,
+ * the filter works with their timestamps.
+ *
+ * <p>Filtering does not allocate memory. A filter is used by a single thread.
+ *
+ * @author Rafał Dąbrowski
+ */
+public class OneEuroFilter {
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final float minCutoff;
+    private final float beta;
+    private final float derivativeCutoff;
+
+    private boolean initialized;
+    private float value;
+    private float derivative;
+    private long timeNanos;
+
+    /**
+     * A constructor for OneEuroFilter
+     *
+     * @param minCutoff        The cutoff frequency of a still signal in Hz, lower removes more jitter.
+     * @param beta             How fast the cutoff frequency grows with the speed of the signal,
+     *                         in Hz per signal unit per second, higher lowers the lag.
+     * @param derivativeCutoff The cutoff frequency of the speed estimate in Hz, usually 1.
+     * @return OneEuroFilter instance.
+     * @throws IllegalArgumentException if a cutoff frequency is not positive or beta is negative.
+     */
+    public OneEuroFilter(float minCutoff, float beta, float derivativeCutoff) {
+        if (!(minCutoff > 0) || !(derivativeCutoff > 0) || !(beta >= 0)) {
+            throw new IllegalArgumentException("The cutoff frequencies must be positive and beta not negative");
+        }
+
+        this.minCutoff = minCutoff;
+        this.beta = beta;
+        this.derivativeCutoff = derivativeCutoff;
+    }
+
+    /**
+     * This method filters the next sample. The first sample after a reset passes unchanged.
+     * A sample which is not newer than the previous one does not change the filter.
+     *
+     * @param sample    The raw sample.
+     * @param timeNanos The time of the sample in nanoseconds, from a monotonic clock.
+     * @return The filtered value.
+     */
+    public float filter(float sample, long timeNanos) {
+        if (!this.initialized) {
+            this.initialized = true;
+            this.value = sample;
+            this.derivative = 0;
+            this.timeNanos = timeNanos;
+
+            return sample;
+        }
+
+        long elapsedNanos = timeNanos - this.timeNanos;
+
+        if (elapsedNanos <= 0) {
+            return this.value;
+        }
+
+        float elapsed = (float) (elapsedNanos / NANOS_PER_SECOND);
+        float rawDerivative = (sample - this.value) / elapsed;
+
+        this.derivative += alpha(elapsed, this.derivativeCutoff) * (rawDerivative - this.derivative);
+
+        float cutoff = this.minCutoff + this.beta * Math.abs(this.derivative);
+
+        this.value += alpha(elapsed, cutoff) * (sample - this.value);
+        this.timeNanos = timeNanos;
+
+        return this.value;
+    }
+
+    /**
+     * This method returns the last filtered value.
+     *
+     * @return The filtered value, 0 if nothing was filtered since the last reset.
+     */
+    public float getValue() {
+        return this.initialized ? this.value : 0;
+    }
+
+    /**
+     * This method forgets the signal, the next sample passes unchanged.
+     *
+     * @return Nothing.
+     */
+    public void reset() {
+        this.initialized = false;
+        this.value = 0;
+        this.derivative = 0;
+    }
+
+    /**
+     * This method returns the smoothing factor of an exponential low-pass filter.
+     *
+     * @param elapsed The time since the previous sample in seconds.
+     * @param cutoff  The cutoff frequency in Hz.
+     * @return The smoothing factor, ranges from (0, 1).
+     */
+    private static float alpha(float elapsed, float cutoff) {
+        float tau = (float) (1 / (2 * Math.PI * cutoff));
+
+        return 1 / (1 + tau / elapsed);
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.iot_car_rc.core;
+
+/**
+ * Represents the response curve applied to a stick deflection before it is scaled to a motor speed.
+ * The curve is the usual RC expo, a blend of the linear and the cubic response:
+ * <pre>
+ *     f(x) = (1 - expo) * x + expo * x^3
+ * </pre>
+ * An expo of 0 is linear, higher values soften the response around the center
+ * while still reaching full speed at full deflection.
+ * The curve is immutable and can be evaluated in floating or in fixed point.
+ *
+ * @author Rafał Dąbrowski
+ */
+public final class ResponseCurve {
+    //  Fixed-point values are Q16.16, ONE is 1.0
+    public static final int FRACTION_BITS = 16;
+    public static final int ONE = 1 << FRACTION_BITS;
+
+    public static final ResponseCurve LINEAR = new ResponseCurve(0);
+
+    private final float expo;
+    private final int fixedExpo;
+
+    /**
+     * A constructor for ResponseCurve
+     *
+     * @param expo The share of the cubic response, ranges from <0, 1>.
+     * @return ResponseCurve instance.
+     */
+    private ResponseCurve(float expo) {
+        this.expo = expo;
+        this.fixedExpo = Math.round(expo * ONE);
+    }
+
+    /**
+     * This method returns an expo response curve.
+     *
+     * @param expo The share of the cubic response, ranges from <0, 1>, 0 is linear.
+     * @return The response curve.
+     * @throws IllegalArgumentException if the expo is out of range.
+     */
+    public static ResponseCurve expo(float expo) {
+        if (!(expo >= 0 && expo <= 1)) {
+            throw new IllegalArgumentException("The expo must range from 0 to 1");
+        }
+
+        return expo == 0 ? LINEAR : new ResponseCurve(expo);
+    }
+
+    /**
+     * This method returns the share of the cubic response.
+     *
+     * @return The expo, ranges from <0, 1>.
+     */
+    public float getExpo() {
+        return this.expo;
+    }
+
+    /**
+     * This method evaluates the curve in floating point.
+     *
+     * @param x The stick deflection, ranges from <0, 1>.
+     * @return The response, ranges from <0, 1>.
+     */
+    public float apply(float x) {
+        return (1 - this.expo) * x + this.expo * x * x * x;
+    }
+
+    /**
+     * This method evaluates the curve in Q16.16 fixed point.
+     *
+     * @param x The stick deflection, ranges from <0, ONE>.
+     * @return The response, ranges from <0, ONE>.
+     */
+    public int applyFixed(int x) {
+        long cube = ((((long) x * x) >> FRACTION_BITS) * x) >> FRACTION_BITS;
+
+        return (int) (((long) (ONE - this.fixedExpo) * x + (long) this.fixedExpo * cube) >> FRACTION_BITS);
+    }
+}
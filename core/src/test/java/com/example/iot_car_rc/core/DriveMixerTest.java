@@ -0,0 +1,235 @@
+package com.example.iot_car_rc.core;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+/**
+ * Exhaustive tests of the drive mixers over the whole <-100, 100> stick grid.
+ */
+public class DriveMixerTest {
+    private static final int MAX = DriveMixer.MAX_INPUT;
+
+    private final DriveMixer floatMixer = new FloatDriveMixer();
+    private final DriveMixer fixedMixer = new FixedPointDriveMixer();
+
+    @Test
+    public void arcade_matchesLegacyMixing() {
+        for (int x = -MAX; x <= MAX; x++) {
+            for (int y = -MAX; y <= MAX; y++) {
+                int[] legacy = legacyMix(x, y);
+
+                for (DriveMixer mixer : new DriveMixer[]{floatMixer, fixedMixer}) {
+                    mixer.arcade(x, y);
+
+                    //  The legacy mixing truncated, the mixers round
+                    assertEquals(at(x, y), legacy[0], mixer.getLeftMotorSpeed(), 2);
+                    assertEquals(at(x, y), legacy[1], mixer.getRightMotorSpeed(), 2);
+                    assertEquals(at(x, y), legacy[2], mixer.getDirection());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void fixedPoint_agreesWithFloat() {
+        float[] expos = {0, 0.2f, 0.5f, 1};
+        int[] maxSpeeds = {255, 180, 37};
+
+        for (float expo : expos) {
+            for (int maxSpeed : maxSpeeds) {
+                DriveMixer floating = new FloatDriveMixer(ResponseCurve.expo(expo), maxSpeed);
+                DriveMixer fixed = new FixedPointDriveMixer(ResponseCurve.expo(expo), maxSpeed);
+
+                for (int x = -MAX; x <= MAX; x++) {
+                    for (int y = -MAX; y <= MAX; y++) {
+                        //  Arcade mixing adds two speeds, each of them may be off by one step
+                        floating.arcade(x, y);
+                        fixed.arcade(x, y);
+                        assertEquals(at(x, y), floating.getLeftMotorSpeed(), fixed.getLeftMotorSpeed(), 2);
+                        assertEquals(at(x, y), floating.getRightMotorSpeed(), fixed.getRightMotorSpeed(), 2);
+
+                        floating.tank(x, y);
+                        fixed.tank(x, y);
+                        assertEquals(at(x, y), floating.getLeftMotorSpeed(), fixed.getLeftMotorSpeed(), 1);
+                        assertEquals(at(x, y), floating.getRightMotorSpeed(), fixed.getRightMotorSpeed(), 1);
+                        assertEquals(at(x, y), floating.getDirection(), fixed.getDirection());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void arcade_isSymmetricAndBounded() {
+        for (DriveMixer mixer : new DriveMixer[]{
+                new FloatDriveMixer(ResponseCurve.expo(0.4f), 200),
+                new FixedPointDriveMixer(ResponseCurve.expo(0.4f), 200)}) {
+            for (int x = -MAX; x <= MAX; x++) {
+                for (int y = -MAX; y <= MAX; y++) {
+                    mixer.arcade(x, y);
+                    int left = mixer.getLeftMotorSpeed();
+                    int right = mixer.getRightMotorSpeed();
+
+                    assertTrue(at(x, y), left >= 0 && left <= 200);
+                    assertTrue(at(x, y), right >= 0 && right <= 200);
+
+                    //  Mirroring the turn swaps the motors, mirroring the throttle flips the direction
+                    mixer.arcade(-x, y);
+                    if (x != 0) {
+                        assertEquals(at(x, y), left, mixer.getRightMotorSpeed());
+                        assertEquals(at(x, y), right, mixer.getLeftMotorSpeed());
+                    }
+
+                    mixer.arcade(x, -y);
+                    assertEquals(at(x, y), left, mixer.getLeftMotorSpeed());
+                    assertEquals(at(x, y), right, mixer.getRightMotorSpeed());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void speed_growsWithDeflection() {
+        for (DriveMixer mixer : new DriveMixer[]{
+                new FloatDriveMixer(ResponseCurve.expo(0.7f), 255),
+                new FixedPointDriveMixer(ResponseCurve.expo(0.7f), 255)}) {
+            for (int x = 0; x <= MAX; x++) {
+                int lastOuter = -1;
+
+                for (int y = 0; y <= MAX; y++) {
+                    mixer.arcade(x, y);
+                    assertTrue(at(x, y), mixer.getLeftMotorSpeed() >= lastOuter);
+                    lastOuter = mixer.getLeftMotorSpeed();
+                }
+            }
+
+            mixer.arcade(0, MAX);
+            assertEquals(255, mixer.getLeftMotorSpeed());
+            mixer.arcade(0, 0);
+            assertEquals(0, mixer.getLeftMotorSpeed());
+        }
+    }
+
+    @Test
+    public void expo_softensTheCenterOnly() {
+        DriveMixer linear = new FloatDriveMixer();
+        DriveMixer expo = new FloatDriveMixer(ResponseCurve.expo(0.5f), 255);
+
+        for (int y = 0; y <= MAX; y++) {
+            linear.arcade(0, y);
+            expo.arcade(0, y);
+            assertTrue(at(0, y), expo.getLeftMotorSpeed() <= linear.getLeftMotorSpeed());
+        }
+
+        expo.arcade(0, 50);
+        assertEquals(80, expo.getLeftMotorSpeed());
+        expo.arcade(0, MAX);
+        assertEquals(255, expo.getLeftMotorSpeed());
+    }
+
+    @Test
+    public void maxSpeed_scalesTheOutput() {
+        DriveMixer mixer = new FixedPointDriveMixer(ResponseCurve.LINEAR, 100);
+
+        mixer.arcade(MAX, MAX);
+        assertEquals(100, mixer.getLeftMotorSpeed());
+        assertEquals(0, mixer.getRightMotorSpeed());
+
+        mixer.setMaxSpeed(0);
+        mixer.arcade(MAX, MAX);
+        assertEquals(0, mixer.getLeftMotorSpeed());
+    }
+
+    @Test
+    public void tank_drivesEachMotorFromItsStick() {
+        for (DriveMixer mixer : new DriveMixer[]{floatMixer, fixedMixer}) {
+            for (int left = -MAX; left <= MAX; left++) {
+                for (int right = -MAX; right <= MAX; right++) {
+                    mixer.tank(left, right);
+                    boolean forward = left + right >= 0;
+
+                    assertEquals(at(left, right), forward ? DriveMixer.FORWARD : DriveMixer.BACKWARD,
+                            mixer.getDirection());
+                    assertTrue(at(left, right), mixer.getLeftMotorSpeed() <= DriveMixer.MAX_SPEED);
+                    assertTrue(at(left, right), mixer.getRightMotorSpeed() <= DriveMixer.MAX_SPEED);
+
+                    //  A stick against the driving direction stops its motor
+                    if (left != 0 && (left > 0) != forward) {
+                        assertEquals(at(left, right), 0, mixer.getLeftMotorSpeed());
+                    } else {
+                        assertEquals(at(left, right), Math.abs(left) * 255 / 100.0, mixer.getLeftMotorSpeed(), 1);
+                    }
+                    if (right != 0 && (right > 0) != forward) {
+                        assertEquals(at(left, right), 0, mixer.getRightMotorSpeed());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void offsetsBeyondTheRange_areClamped() {
+        fixedMixer.arcade(-500, 500);
+        assertEquals(0, fixedMixer.getLeftMotorSpeed());
+        assertEquals(255, fixedMixer.getRightMotorSpeed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxSpeed_mustBeInRange() {
+        new FloatDriveMixer(ResponseCurve.LINEAR, 256);
+    }
+
+    @Test
+    public void mixing_doesNotAllocate() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        DriveMixer expo = new FixedPointDriveMixer(ResponseCurve.expo(0.3f), 255);
+
+        //  Warm up, so the measured loop runs compiled code
+        mixGrid(expo);
+        mixGrid(floatMixer);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        mixGrid(expo);
+        mixGrid(floatMixer);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static int mixGrid(DriveMixer mixer) {
+        int sink = 0;
+
+        for (int x = -MAX; x <= MAX; x++) {
+            for (int y = -MAX; y <= MAX; y++) {
+                mixer.arcade(x, y);
+                sink += mixer.getLeftMotorSpeed();
+                mixer.tank(x, y);
+                sink += mixer.getRightMotorSpeed();
+            }
+        }
+
+        return sink;
+    }
+
+    private static String at(int x, int y) {
+        return "(" + x + ", " + y + ")";
+    }
+
+    /**
+     * The integer map and constrain mixing MainActivity used before the mixers.
+     */
+    private static int[] legacyMix(int xOffset, int yOffset) {
+        int speed = Math.abs(yOffset) * 255 / 100;
+        int speedOffset = Math.abs(xOffset) * 255 / 100;
+        int outer = Math.min(255, speed + speedOffset);
+        int inner = Math.max(0, speed - speedOffset);
+        int direction = yOffset < 0 ? DriveMixer.BACKWARD : DriveMixer.FORWARD;
+
+        return xOffset < 0 ? new int[]{inner, outer, direction} : new int[]{outer, inner, direction};
+    }
+}
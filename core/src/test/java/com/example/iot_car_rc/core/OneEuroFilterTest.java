@@ -0,0 +1,78 @@
+package com.example.iot_car_rc.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the One Euro filter.
+ */
+public class OneEuroFilterTest {
+    private static final long MS = 1_000_000;
+
+    @Test
+    public void firstSample_passesUnchanged() {
+        OneEuroFilter filter = new OneEuroFilter(1, 0.01f, 1);
+
+        assertEquals(42, filter.filter(42, 0), 0);
+        assertEquals(42, filter.filter(42, 10 * MS), 0);
+
+        filter.reset();
+        assertEquals(0, filter.getValue(), 0);
+        assertEquals(-7, filter.filter(-7, 20 * MS), 0);
+    }
+
+    @Test
+    public void stillSignal_losesItsJitter() {
+        OneEuroFilter filter = new OneEuroFilter(1, 0.01f, 1);
+        Random random = new Random(42);
+        double rawVariance = 0;
+        double filteredVariance = 0;
+
+        for (int i = 0; i < 1_000; i++) {
+            float noise = (float) random.nextGaussian() * 3;
+            float filtered = filter.filter(50 + noise, i * 8 * MS);
+
+            if (i >= 100) {
+                rawVariance += noise * noise;
+                filteredVariance += (filtered - 50) * (filtered - 50);
+            }
+        }
+
+        assertTrue(filteredVariance * 10 < rawVariance);
+    }
+
+    @Test
+    public void fastSignal_isFollowedClosely() {
+        OneEuroFilter adaptive = new OneEuroFilter(1, 0.05f, 1);
+        OneEuroFilter fixed = new OneEuroFilter(1, 0, 1);
+        float adaptiveLag = 0;
+        float fixedLag = 0;
+
+        //  A swipe across the whole range in 200 ms
+        for (int i = 0; i <= 25; i++) {
+            float sample = -100 + i * 8;
+            adaptiveLag = sample - adaptive.filter(sample, i * 8 * MS);
+            fixedLag = sample - fixed.filter(sample, i * 8 * MS);
+        }
+
+        assertTrue(adaptiveLag < 20);
+        assertTrue(adaptiveLag * 3 < fixedLag);
+    }
+
+    @Test
+    public void staleSample_isIgnored() {
+        OneEuroFilter filter = new OneEuroFilter(1, 0.01f, 1);
+
+        filter.filter(10, 100 * MS);
+        assertEquals(10, filter.filter(90, 100 * MS), 0);
+        assertEquals(10, filter.filter(90, 50 * MS), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cutoff_mustBePositive() {
+        new OneEuroFilter(0, 0.01f, 1);
+    }
+}
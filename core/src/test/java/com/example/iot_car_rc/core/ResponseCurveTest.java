@@ -0,0 +1,45 @@
+package com.example.iot_car_rc.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests of the response curve.
+ */
+public class ResponseCurveTest {
+    @Test
+    public void curve_keepsTheEndpoints() {
+        for (float expo = 0; expo <= 1; expo += 0.125f) {
+            ResponseCurve curve = ResponseCurve.expo(expo);
+
+            assertEquals(0, curve.apply(0), 0);
+            assertEquals(1, curve.apply(1), 1e-6);
+            assertEquals(0, curve.applyFixed(0));
+            assertEquals(ResponseCurve.ONE, curve.applyFixed(ResponseCurve.ONE));
+        }
+    }
+
+    @Test
+    public void fixedPoint_tracksFloatingPoint() {
+        ResponseCurve curve = ResponseCurve.expo(0.65f);
+
+        for (int i = 0; i <= 1000; i++) {
+            float x = i / 1000f;
+            float fixed = curve.applyFixed(Math.round(x * ResponseCurve.ONE)) / (float) ResponseCurve.ONE;
+
+            assertEquals(curve.apply(x), fixed, 1e-4);
+        }
+    }
+
+    @Test
+    public void zeroExpo_isLinear() {
+        assertSame(ResponseCurve.LINEAR, ResponseCurve.expo(0));
+        assertEquals(0.3f, ResponseCurve.LINEAR.apply(0.3f), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void expo_mustBeInRange() {
+        ResponseCurve.expo(1.5f);
+    }
+}